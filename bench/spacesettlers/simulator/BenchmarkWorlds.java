@@ -0,0 +1,84 @@
+package spacesettlers.simulator;
+
+import java.awt.Color;
+import java.util.Random;
+
+import spacesettlers.objects.Asteroid;
+import spacesettlers.objects.Beacon;
+import spacesettlers.objects.Ship;
+import spacesettlers.utilities.Position;
+import spacesettlers.utilities.Vector2D;
+
+/**
+ * Makes random worlds for the benchmarks.  The size of the world grows with the number
+ * of objects so the density stays close to a normal game (about 100 objects in a
+ * 1600x1080 world).
+ */
+class BenchmarkWorlds {
+	/**
+	 * Time step used by the standard configurations
+	 */
+	static final double TIMESTEP = 0.05;
+
+	/**
+	 * Make a world with the specified number of objects (mostly asteroids with some
+	 * beacons and ships).  The same seed always makes the same world.
+	 *
+	 * @param numObjects
+	 * @param seed
+	 * @return
+	 */
+	static Toroidal2DPhysics makeWorld(int numObjects, long seed) {
+		double scale = Math.sqrt(numObjects / 100.0);
+		int width = (int) (1600 * scale);
+		int height = (int) (1080 * scale);
+		Toroidal2DPhysics space = new Toroidal2DPhysics(height, width, TIMESTEP);
+		Random random = new Random(seed);
+
+		int numShips = Math.max(2, numObjects / 25);
+		int numBeacons = Math.max(2, numObjects / 10);
+		int numAsteroids = numObjects - numShips - numBeacons;
+
+		for (int i = 0; i < numShips; i++) {
+			Position location = randomLocation(random, width, height);
+			location.setTranslationalVelocity(randomVelocity(random, 50));
+			space.addObject(new Ship("team" + (i % 4), Color.BLUE, location));
+		}
+
+		for (int i = 0; i < numBeacons; i++) {
+			space.addObject(new Beacon(randomLocation(random, width, height)));
+		}
+
+		for (int i = 0; i < numAsteroids; i++) {
+			Position location = randomLocation(random, width, height);
+			boolean moveable = random.nextBoolean();
+			if (moveable) {
+				location.setTranslationalVelocity(randomVelocity(random, 15));
+			}
+			int radius = Asteroid.MIN_ASTEROID_RADIUS
+					+ random.nextInt(Asteroid.MAX_ASTEROID_RADIUS - Asteroid.MIN_ASTEROID_RADIUS);
+			space.addObject(new Asteroid(location, random.nextBoolean(), radius, moveable, .33, .33, .34));
+		}
+
+		return space;
+	}
+
+	/**
+	 * @param random
+	 * @param width
+	 * @param height
+	 * @return a random location in the world
+	 */
+	static Position randomLocation(Random random, int width, int height) {
+		return new Position(random.nextDouble() * width, random.nextDouble() * height);
+	}
+
+	/**
+	 * @param random
+	 * @param maxVelocity
+	 * @return a random velocity with each component up to maxVelocity
+	 */
+	static Vector2D randomVelocity(Random random, double maxVelocity) {
+		return new Vector2D((random.nextDouble() * 2 - 1) * maxVelocity, (random.nextDouble() * 2 - 1) * maxVelocity);
+	}
+}
@@ -0,0 +1,75 @@
+package spacesettlers.simulator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.utilities.Position;
+
+/**
+ * Benchmark for CollisionHandler.collide.  Every invocation gets a fresh copy of the 
+ * world where the objects have been paired up and each pair is touching, then collides 
+ * every pair (so there are numObjects / 2 collisions of mixed types).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CollisionHandlerBenchmarks {
+	/**
+	 * Number of objects in the world
+	 */
+	@Param({"50", "500", "5000"})
+	int numObjects;
+
+	Toroidal2DPhysics world;
+	Toroidal2DPhysics space;
+	AbstractObject[] objects;
+	CollisionHandler collisionHandler;
+
+	@Setup(Level.Trial)
+	public void makeWorld() {
+		world = BenchmarkWorlds.makeWorld(numObjects, 42);
+		collisionHandler = new CollisionHandler();
+	}
+
+	@Setup(Level.Invocation)
+	public void makeContacts() {
+		space = world.deepClone();
+		objects = space.getAllObjects().toArray(new AbstractObject[0]);
+
+		// move every other object so it just touches the one before it
+		for (int i = 0; i + 1 < objects.length; i += 2) {
+			Position first = objects[i].getPosition();
+			double overlap = objects[i].getRadius() + objects[i + 1].getRadius() - 1;
+			Position touching = new Position(first.getX() + overlap, first.getY());
+			touching.setTranslationalVelocity(objects[i + 1].getPosition().getTranslationalVelocity());
+			space.toroidalWrap(touching);
+			objects[i + 1].setPosition(touching);
+		}
+	}
+
+	/**
+	 * Collide every touching pair
+	 */
+	@Benchmark
+	public void collide() {
+		for (int i = 0; i + 1 < objects.length; i += 2) {
+			collisionHandler.collide(objects[i], objects[i + 1], space);
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package spacesettlers.simulator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.objects.powerups.SpaceSettlersPowerupEnum;
+import spacesettlers.utilities.Position;
+
+/**
+ * Benchmarks for the hot paths of the physics engine.  Each benchmark runs on
+ * generated worlds of 50, 500 and 5000 objects.  Run them with "ant benchmark".
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PhysicsBenchmarks {
+	/**
+	 * Number of objects in the world
+	 */
+	@Param({"50", "500", "5000"})
+	int numObjects;
+
+	/**
+	 * The world (made again every iteration since most benchmarks change it)
+	 */
+	Toroidal2DPhysics space;
+
+	/**
+	 * Positions of all of the objects and some random locations to query
+	 */
+	Position[] objectPositions;
+	Position[] queryLocations;
+
+	/**
+	 * Roadmap sized paths (from each query location) and the asteroids they have to avoid
+	 */
+	Position[] pathGoals;
+	Set<AbstractObject> obstructions;
+
+	Random random;
+	HashMap<UUID, SpaceSettlersPowerupEnum> noPowerups;
+	int step;
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		space = BenchmarkWorlds.makeWorld(numObjects, 42);
+		random = new Random(42);
+		noPowerups = new HashMap<UUID, SpaceSettlersPowerupEnum>();
+		step = 0;
+
+		ArrayList<Position> positions = new ArrayList<Position>();
+		for (AbstractObject object : space.getAllObjects()) {
+			positions.add(object.getPosition());
+		}
+		objectPositions = positions.toArray(new Position[positions.size()]);
+
+		queryLocations = new Position[256];
+		for (int i = 0; i < queryLocations.length; i++) {
+			queryLocations[i] = BenchmarkWorlds.randomLocation(random, space.getWidth(), space.getHeight());
+		}
+
+		pathGoals = new Position[queryLocations.length];
+		for (int i = 0; i < pathGoals.length; i++) {
+			pathGoals[i] = new Position(queryLocations[i].getX() + random.nextDouble() * 600 - 300,
+					queryLocations[i].getY() + random.nextDouble() * 600 - 300);
+			space.toroidalWrap(pathGoals[i]);
+		}
+		obstructions = new LinkedHashSet<AbstractObject>(space.getAsteroids());
+	}
+
+	/**
+	 * One full step of the physics (collisions, movement, deaths)
+	 */
+	@Benchmark
+	public void advanceTime() {
+		space.setPhysicsStateStore(false);
+		space.setParallelIntegration(false, 0);
+		space.advanceTime(random, step++, noPowerups);
+	}
+
+	/**
+	 * One full step with asteroids and weapons kept in the primitive array state store
+	 */
+	@Benchmark
+	public void advanceTimeStateStore() {
+		space.setPhysicsStateStore(true);
+		space.setParallelIntegration(false, 0);
+		space.advanceTime(random, step++, noPowerups);
+	}
+
+	/**
+	 * One full step with the passive objects moved on a fork-join pool
+	 */
+	@Benchmark
+	public void advanceTimeParallel() {
+		space.setPhysicsStateStore(true);
+		space.setParallelIntegration(true, 0);
+		space.advanceTime(random, step++, noPowerups);
+	}
+
+	/**
+	 * Collision detection with the spatial hash grid
+	 */
+	@Benchmark
+	public void detectCollisions() {
+		space.setBruteForceCollisionDetection(false);
+		space.detectCollisions();
+	}
+
+	/**
+	 * Collision detection checking every pair of objects
+	 */
+	@Benchmark
+	public void detectCollisionsBruteForce() {
+		space.setBruteForceCollisionDetection(true);
+		space.detectCollisions();
+	}
+
+	/**
+	 * Copying the whole world (what the clients used to get every call)
+	 */
+	@Benchmark
+	public Toroidal2DPhysics deepClone() {
+		return space.deepClone();
+	}
+
+	/**
+	 * Distance vectors from one location to every object
+	 */
+	@Benchmark
+	public void findShortestDistanceVector(Blackhole blackhole) {
+		Position location = queryLocations[step++ & (queryLocations.length - 1)];
+		for (Position position : objectPositions) {
+			blackhole.consume(space.findShortestDistanceVector(location, position));
+		}
+	}
+
+	/**
+	 * Checking random locations for a ship sized hole
+	 */
+	@Benchmark
+	public boolean isLocationFree() {
+		Position location = queryLocations[step++ & (queryLocations.length - 1)];
+		return space.isLocationFree(location, 30);
+	}
+
+	/**
+	 * Checking 256 paths one at a time against every asteroid
+	 */
+	@Benchmark
+	public void isPathClearOfObstructions(Blackhole blackhole) {
+		for (int i = 0; i < queryLocations.length; i++) {
+			blackhole.consume(space.isPathClearOfObstructions(queryLocations[i], pathGoals[i], obstructions, 10));
+		}
+	}
+
+	/**
+	 * Checking the same 256 paths with the obstruction grid
+	 */
+	@Benchmark
+	public boolean[] arePathsClearOfObstructions() {
+		return space.arePathsClearOfObstructions(queryLocations, pathGoals, obstructions, 10);
+	}
+}
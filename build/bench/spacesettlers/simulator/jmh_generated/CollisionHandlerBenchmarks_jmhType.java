@@ -0,0 +1,4 @@
+package spacesettlers.simulator.jmh_generated;
+public class CollisionHandlerBenchmarks_jmhType extends CollisionHandlerBenchmarks_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package spacesettlers.simulator.jmh_generated;
+public class PhysicsBenchmarks_jmhType extends PhysicsBenchmarks_jmhType_B3 {
+}
+
@@ -10,6 +10,7 @@ import spacesettlers.objects.Asteroid;
 import spacesettlers.objects.Base;
 import spacesettlers.objects.Beacon;
 import spacesettlers.objects.Ship;
+import spacesettlers.simulator.ObstructionGrid;
 import spacesettlers.simulator.Toroidal2DPhysics;
 import spacesettlers.utilities.Position;
 import spacesettlers.utilities.Vector2D;
@@ -63,32 +64,30 @@ public class AStarSearch  {
 	 */
 
 	public static boolean isFreeLine(Position position1, Position position2, Toroidal2DPhysics state) {
-		// get a vector from location 1 to location 2
-		Vector2D line = state.findShortestDistanceVector(position1, position2);
+		// one line isn't worth building a grid for
+		return ObstructionGrid.isPathClearByScan(state, position1, position2, state.getAsteroids(), fudge_factor);
+	}
 
-		for (Asteroid asteroid : state.getAsteroids()) {
-			// now find the distance to the obstacle (vector pointing from location 1 to the obstacle)
-			Vector2D obstacleVec = state.findShortestDistanceVector(position1, asteroid.getPosition());
-
-			// project the obstacle down to the line
-			Vector2D projectedLoc = line.vectorProject(obstacleVec);
-
-			double innerProduct = projectedLoc.dot(line);
-			if (innerProduct >= 0) {
-				if (Math.abs(projectedLoc.getXValue()) <= Math.abs(line.getXValue()) &&
-						Math.abs(projectedLoc.getYValue()) <= Math.abs(line.getYValue())) {
-					// now find the vector from the obstacle to the line
-					Vector2D worldCoordsProjection = projectedLoc.add(new Vector2D(position1));
-					double obstacleToLineDist = state.findShortestDistance(new Position(worldCoordsProjection), asteroid.getPosition());
-
-					// if it the distance is less than the obstacle radius, they intersect
-					if (obstacleToLineDist < (asteroid.getRadius() + fudge_factor)) {
-						return false;
-					}
-				}
-			}
-		}
-		return true;
+	/**
+	 * Is the space free from position1 to position2 alone a line?  Use this version with
+	 * a grid from createAsteroidGrid when checking lots of lines in the same state.
+	 * @param position1
+	 * @param position2
+	 * @param asteroidGrid
+	 * @return
+	 */
+	public static boolean isFreeLine(Position position1, Position position2, ObstructionGrid asteroidGrid) {
+		return asteroidGrid.isPathClear(position1, position2);
+	}
+
+	/**
+	 * Put all the asteroids in a grid for isFreeLine (lines must stay fudge_factor 
+	 * away from each asteroid)
+	 * @param state
+	 * @return
+	 */
+	public static ObstructionGrid createAsteroidGrid(Toroidal2DPhysics state) {
+		return new ObstructionGrid(state, state.getAsteroids(), fudge_factor);
 	}
 
 
@@ -151,12 +150,14 @@ public class AStarSearch  {
 			}
 		}
 		
+		// the obstacles are the same for every edge so only put them in a grid once
+		ObstructionGrid obstructionGrid = new ObstructionGrid(state, obstaclesForGraph, fudge_factor * 1.5);
+
 		for (Vertex vertex1 : graph.getVertices()) {
 			for (Vertex vertex2 : graph.getVertices()) {
 				double distance = state.findShortestDistance(vertex1.getPosition(), vertex2.getPosition());
 				if (distance > 0 && distance < maxNodeDistance && 
-						state.isPathClearOfObstructions(vertex1.getPosition(), vertex2.getPosition(), 
-								obstaclesForGraph, fudge_factor)) {
+						obstructionGrid.isPathClear(vertex1.getPosition(), vertex2.getPosition())) {
 					Vector2D lineVec = state.findShortestDistanceVector(vertex1.getPosition(), vertex2.getPosition());
 					Edge edge = new Edge(vertex1, vertex2, lineVec);
 					vertex1.addEdge(edge);
@@ -221,12 +222,14 @@ public class AStarSearch  {
 			}
 		}
 		
+		// the obstacles are the same for every edge so only put them in a grid once
+		ObstructionGrid obstructionGrid = new ObstructionGrid(state, obstaclesForGraph, fudge_factor * 1.5);
+
 		for (Vertex vertex1 : graph.getVertices()) {
 			for (Vertex vertex2 : graph.getVertices()) {
 				double distance = state.findShortestDistance(vertex1.getPosition(), vertex2.getPosition());
 				if (distance > 0 && distance < maxDistance && 
-						state.isPathClearOfObstructions(vertex1.getPosition(), vertex2.getPosition(), 
-								obstaclesForGraph, fudge_factor)) {
+						obstructionGrid.isPathClear(vertex1.getPosition(), vertex2.getPosition())) {
 					Vector2D lineVec = state.findShortestDistanceVector(vertex1.getPosition(), vertex2.getPosition());
 					Edge edge = new Edge(vertex1, vertex2, lineVec);
 					vertex1.addEdge(edge);
@@ -372,8 +372,7 @@ public class AStarGraph {
 		int radius = GRID_SIZE*3/4;
 		for (AbstractObject object : obstructions) {
 			// fixed bug where it only checked radius and not diameter
-			if (space.findShortestDistanceVector(object.getPosition(), pc)
-					.getMagnitude() <= (radius + (2 * object.getRadius()))) {
+			if (space.findShortestDistance(object.getPosition(), pc) <= (radius + (2 * object.getRadius()))) {
 				return false;
 			}
 		}
@@ -11,7 +11,6 @@ import spacesettlers.objects.Ship;
 import spacesettlers.objects.weapons.Missile;
 import spacesettlers.simulator.Toroidal2DPhysics;
 import spacesettlers.utilities.Position;
-import spacesettlers.utilities.Vector2D;
 
 /**
  * Contains utility methods used by multiple agents, to encourage code reuse
@@ -180,6 +179,9 @@ public class AgentUtils {
 	
 	/**
 	 * Checks if an object is likely being targeted by an opponent by projecting enemy velocity vectors.
+	 * Uses the closest approach predictions the space shares between everyone each time step.
+	 * Our own ship's time is its current distance over its current speed (the time to closest 
+	 * approach is 0 whenever our ship isn't closing on the asteroid, which would never abandon it).
 	 * @param space
 	 * @param ship
 	 * @param asteroid
@@ -189,28 +191,17 @@ public class AgentUtils {
 		for(Ship enemy: space.getShips()) {
 			if(!enemy.getTeamName().equals(ship.getTeamName())) {
 				Position pE = enemy.getPosition();
-				Vector2D vE = pE.getTranslationalVelocity();
 				Position pD = asteroid.getPosition();
-				// Check Y projection (enemy)
-				double tY = (pD.getX() - pE.getX()) / vE.getXValue();
-				double pY = vE.getYValue() * tY + pE.getY() % space.getHeight();
-				Position projY = new Position(pD.getX(), pY);
-				// Check X projection (enemy)
-				double tX = (pD.getY() - pE.getY()) / vE.getYValue();
-				double pX = vE.getXValue() * tX + pE.getX() % space.getWidth();
-				Position projX = new Position(pX, pD.getY());
-				double minProjDistance = Math.min(space.findShortestDistance(pD, projX), space.findShortestDistance(pD, projY));
+				double minProjDistance = space.distanceAtClosestApproach(enemy, asteroid);
 				// Is the opponent on track to take this item?
 				if(minProjDistance < MIN_DISTANCE_PROJECTION_SAFETY) {
 					// Are they closer than me?
-					if(space.findShortestDistance(pD, pE) < space.findShortestDistance(ship.getPosition(), pD)) {
+					double shipDistance = space.findShortestDistance(ship.getPosition(), pD);
+					if(space.findShortestDistance(pD, pE) < shipDistance) {
 						// Will they get there before me?
-						double minProjTime = Math.min(tX, tY);
-						Position pS = ship.getPosition();
-						Vector2D vS = pS.getTranslationalVelocity();
-						double tXS = (pD.getY() - pS.getY()) / vS.getYValue();
-						double tYS = (pD.getX() - pS.getX()) / vS.getXValue();
-						double minShipTime = Math.min(tXS, tYS);
+						double minProjTime = space.timeToClosestApproach(enemy, asteroid);
+						double shipSpeed = ship.getPosition().getTotalTranslationalVelocity();
+						double minShipTime = shipSpeed > 0 ? shipDistance / shipSpeed : Double.POSITIVE_INFINITY;
 						if(minProjTime < minShipTime) {
 							// Abandon
 							if(DEBUG) {
@@ -32,7 +32,7 @@ import spacesettlers.utilities.Position;
  * 
  * @author amy
  */
-public class AggressiveHeuristicAsteroidCollectorTeamClient extends TeamClient {
+public class AggressiveHeuristicAsteroidCollectorTeamClient extends TeamClient implements ReadOnlySpaceTeamClient {
 	HashMap <UUID, Ship> asteroidToShipMap;
 	HashMap <UUID, Boolean> aimingForBase;
 	HashMap <UUID, Boolean> goingForCore;
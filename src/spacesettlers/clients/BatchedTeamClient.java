@@ -0,0 +1,44 @@
+package spacesettlers.clients;
+
+import java.util.Set;
+
+import spacesettlers.actions.PurchaseCosts;
+import spacesettlers.objects.AbstractActionableObject;
+import spacesettlers.objects.resources.ResourcePile;
+import spacesettlers.simulator.Toroidal2DPhysics;
+
+/**
+ * Optional interface for team clients that want to answer everything for a step at once.
+ * A TeamClient that implements it is asked once per step for its actions, power ups and 
+ * purchases together (one copy of the space and one call instead of three) and is told
+ * about the end of each step without the simulator waiting for it.  Its getMovementStart,
+ * getPowerups, getTeamPurchases and getMovementEnd are never called by the simulator.
+ * 
+ * The end of step call runs on the client's thread after the simulator has moved on, so 
+ * it should be quick: the next getTeamTurn waits for it and the time counts against 
+ * that call.
+ *
+ */
+public interface BatchedTeamClient {
+	/**
+	 * Called at the start of each step instead of getMovementStart, getPowerups and 
+	 * getTeamPurchases.  The purchases are made at the end of the step like normal purchases.
+	 * 
+	 * @param space physics
+	 * @param actionableObjects the ships, bases and drones for this team
+	 * @param resourcesAvailable how much resourcesAvailable you have
+	 * @param purchaseCosts how much each type of purchase currently costs for this team
+	 * @return the actions, power ups and purchases for this step
+	 */
+	public TeamTurn getTeamTurn(Toroidal2DPhysics space, Set<AbstractActionableObject> actionableObjects,
+			ResourcePile resourcesAvailable, PurchaseCosts purchaseCosts);
+
+	/**
+	 * Called at the end of each step instead of getMovementEnd (the simulator doesn't wait
+	 * for it to finish)
+	 * 
+	 * @param space physics
+	 * @param actionableObjects the ships, bases and drones for this team
+	 */
+	public void movementEnded(Toroidal2DPhysics space, Set<AbstractActionableObject> actionableObjects);
+}
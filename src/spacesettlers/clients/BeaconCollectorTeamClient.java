@@ -26,7 +26,7 @@ import spacesettlers.utilities.Position;
  *  
  * @author amy
  */
-public class BeaconCollectorTeamClient extends TeamClient {
+public class BeaconCollectorTeamClient extends TeamClient implements ReadOnlySpaceTeamClient {
 	/**
 	 * Map of the beacon to which ship is aiming for it
 	 */
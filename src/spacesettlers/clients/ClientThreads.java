@@ -0,0 +1,74 @@
+package spacesettlers.clients;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Makes the threads the team clients are called on.  These can be virtual threads
+ * (Java 21 and later) so running many games at once (as the ladder does) doesn't need
+ * a platform thread for every team of every game.  The code is built for Java 8 so the 
+ * virtual thread builder is found by reflection, and platform threads are used when 
+ * the Java running the simulator doesn't have virtual threads.
+ *
+ */
+public class ClientThreads {
+	/**
+	 * True once the missing virtual threads have been reported (so it is only printed once)
+	 */
+	static boolean reportedMissing = false;
+
+	/**
+	 * Make a factory for client threads
+	 * 
+	 * @param name name of the threads
+	 * @param virtual true to use virtual threads if this Java has them
+	 * @return a factory for daemon (or virtual) threads
+	 */
+	public static ThreadFactory newThreadFactory(final String name, boolean virtual) {
+		if (virtual) {
+			ThreadFactory factory = newVirtualThreadFactory(name);
+			if (factory != null) {
+				return factory;
+			}
+		}
+
+		return new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * @return true if this Java has virtual threads
+	 */
+	public static boolean isVirtualThreadsSupported() {
+		return newVirtualThreadFactory("test") != null;
+	}
+
+	/**
+	 * Same as Thread.ofVirtual().name(name).factory() (done by reflection)
+	 * 
+	 * @param name
+	 * @return the factory or null if this Java doesn't have virtual threads
+	 */
+	private static ThreadFactory newVirtualThreadFactory(String name) {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Method setName = builderClass.getMethod("name", String.class);
+			builder = setName.invoke(builder, name);
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+		} catch (ReflectiveOperationException e) {
+			synchronized (ClientThreads.class) {
+				if (!reportedMissing) {
+					reportedMissing = true;
+					System.out.println("Virtual threads need Java 21 or later: using platform threads for the clients");
+				}
+			}
+			return null;
+		}
+	}
+}
@@ -27,7 +27,7 @@ import spacesettlers.utilities.Position;
  *  
  * @author amy
  */
-public class CoreCollectorTeamClient extends TeamClient {
+public class CoreCollectorTeamClient extends TeamClient implements ReadOnlySpaceTeamClient {
 	/**
 	 * Map of the core to which ship is aiming for it
 	 */
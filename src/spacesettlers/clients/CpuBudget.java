@@ -0,0 +1,250 @@
+package spacesettlers.clients;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Keeps track of how much CPU time a team's client uses.  Each call to the client is
+ * timed with the CPU time of the thread it runs on (so a client isn't charged for the
+ * time it spends waiting for a processor when many games run at once) and the team is
+ * charged for it.  If the thread's CPU time can't be read (some virtual machines and
+ * virtual threads), the wall clock time of the call is charged instead.
+ *
+ * A team can have a budget for each time step and a budget for a rolling window of time
+ * steps.  Calls that go over a budget are paid for out of the grace bank (a fixed amount
+ * for the whole game).  Once the bank is empty, a call is stopped when it reaches the
+ * budget.  With no budgets the calls are only timed.
+ */
+class CpuBudget {
+	/**
+	 * How the CPU time of the client threads is read
+	 */
+	static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Budget for one time step and for the window (in nanoseconds, 0 means no budget)
+	 */
+	long stepBudget, windowBudget;
+
+	/**
+	 * Time used in each step of the window (a ring with the current step at windowIndex)
+	 */
+	long[] windowUsage;
+	int windowIndex;
+
+	/**
+	 * Time used in the window and in the current step
+	 */
+	long usedInWindow, usedThisStep;
+
+	/**
+	 * Time left in the grace bank
+	 */
+	long graceLeft;
+
+	/**
+	 * True once the current step has gone over a budget (so it is only counted once)
+	 */
+	boolean overrunThisStep;
+
+	/**
+	 * Statistics for the game
+	 */
+	int numTimeouts, numOverruns;
+	long totalUsed;
+
+	/**
+	 * The thread running the current call to the client (null if there isn't one) and
+	 * the time it started at (CPU time of the thread or the wall clock)
+	 */
+	volatile Thread callThread;
+	volatile long callStart;
+	volatile boolean callUsesWallClock;
+
+	/**
+	 * Make a budget that only times the calls
+	 */
+	CpuBudget() {
+		this(0, 0, 0, 0);
+	}
+
+	/**
+	 * Make a budget
+	 *
+	 * @param millisPerStep CPU time a team can use each step (0 for no limit)
+	 * @param windowSteps number of steps in the rolling window (0 for no window)
+	 * @param millisPerWindow CPU time a team can use in the window
+	 * @param graceMillis CPU time a team can go over its budgets in the whole game
+	 */
+	CpuBudget(double millisPerStep, int windowSteps, double millisPerWindow, double graceMillis) {
+		stepBudget = (long) (millisPerStep * 1e6);
+		if (windowSteps > 0 && millisPerWindow > 0) {
+			windowBudget = (long) (millisPerWindow * 1e6);
+			windowUsage = new long[windowSteps];
+		}
+		graceLeft = (long) (graceMillis * 1e6);
+	}
+
+	/**
+	 * @return true if the calls are limited by a budget
+	 */
+	boolean isEnabled() {
+		return stepBudget > 0 || windowBudget > 0;
+	}
+
+	/**
+	 * Start a new time step
+	 */
+	synchronized void startStep() {
+		usedThisStep = 0;
+		overrunThisStep = false;
+		if (windowUsage != null) {
+			windowIndex = (windowIndex + 1) % windowUsage.length;
+			usedInWindow -= windowUsage[windowIndex];
+			windowUsage[windowIndex] = 0;
+		}
+	}
+
+	/**
+	 * Time left in the budgets before the grace bank is used
+	 *
+	 * @return nanoseconds (Long.MAX_VALUE if there are no budgets)
+	 */
+	synchronized long getBudgetLeft() {
+		long left = Long.MAX_VALUE;
+		if (stepBudget > 0) {
+			left = Math.min(left, stepBudget - usedThisStep);
+		}
+		if (windowBudget > 0) {
+			left = Math.min(left, windowBudget - usedInWindow);
+		}
+		return Math.max(0, left);
+	}
+
+	/**
+	 * Time the current call can still use (including the grace bank)
+	 *
+	 * @return nanoseconds (Long.MAX_VALUE if there are no budgets)
+	 */
+	synchronized long getAllowance() {
+		long left = getBudgetLeft();
+		if (left == Long.MAX_VALUE) {
+			return left;
+		}
+		return left + graceLeft - getCallUsage();
+	}
+
+	/**
+	 * Charge the team for time its client used
+	 *
+	 * @param nanos
+	 */
+	synchronized void charge(long nanos) {
+		long left = getBudgetLeft();
+		if (nanos > left) {
+			graceLeft -= Math.min(graceLeft, nanos - left);
+			if (!overrunThisStep) {
+				overrunThisStep = true;
+				numOverruns++;
+			}
+		}
+		usedThisStep += nanos;
+		if (windowUsage != null) {
+			windowUsage[windowIndex] += nanos;
+			usedInWindow += nanos;
+		}
+		totalUsed += nanos;
+	}
+
+	/**
+	 * Count a call that was stopped for taking too long
+	 */
+	synchronized void timedOut() {
+		numTimeouts++;
+	}
+
+	/**
+	 * Called on the client thread when a call to the client starts
+	 *
+	 * @param wallClock true to charge the wall clock time of the call (for clients that
+	 * run in another process, where the thread here only waits)
+	 */
+	void callStarted(boolean wallClock) {
+		long cpuTime = wallClock ? -1 : currentThreadCpuTime();
+		callUsesWallClock = cpuTime < 0;
+		callStart = callUsesWallClock ? System.nanoTime() : cpuTime;
+		callThread = Thread.currentThread();
+	}
+
+	/**
+	 * Called on the client thread when a call to the client ends (even if it failed)
+	 */
+	void callEnded() {
+		long used = getCallUsage();
+		callThread = null;
+		charge(used);
+	}
+
+	/**
+	 * Time used so far by the current call (this can be asked from any thread)
+	 *
+	 * @return nanoseconds (0 if no call is running)
+	 */
+	long getCallUsage() {
+		Thread thread = callThread;
+		if (thread == null) {
+			return 0;
+		}
+		long start = callStart;
+		if (callUsesWallClock) {
+			return System.nanoTime() - start;
+		}
+		long cpuTime = thread == Thread.currentThread() ? currentThreadCpuTime()
+				: threadBean.getThreadCpuTime(thread.getId());
+		return cpuTime < 0 ? 0 : Math.max(0, cpuTime - start);
+	}
+
+	/**
+	 * CPU time of the calling thread
+	 *
+	 * @return nanoseconds or -1 if it can't be read
+	 */
+	private static long currentThreadCpuTime() {
+		try {
+			if (threadBean.isCurrentThreadCpuTimeSupported()) {
+				return threadBean.getCurrentThreadCpuTime();
+			}
+		} catch (UnsupportedOperationException e) {
+			// fall through to the wall clock
+		}
+		return -1;
+	}
+
+	/**
+	 * @return number of calls stopped for going over the budget (or the wall clock timeout)
+	 */
+	synchronized int getNumTimeouts() {
+		return numTimeouts;
+	}
+
+	/**
+	 * @return number of steps the team went over a budget
+	 */
+	synchronized int getNumOverruns() {
+		return numOverruns;
+	}
+
+	/**
+	 * @return total time used by the client in milliseconds
+	 */
+	synchronized double getTotalMillis() {
+		return totalUsed / 1e6;
+	}
+
+	/**
+	 * @return time left in the grace bank in milliseconds
+	 */
+	synchronized double getGraceMillisLeft() {
+		return graceLeft / 1e6;
+	}
+}
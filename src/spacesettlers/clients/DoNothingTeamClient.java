@@ -16,11 +16,12 @@ import spacesettlers.objects.powerups.SpaceSettlersPowerupEnum;
 import spacesettlers.objects.resources.ResourcePile;
 import spacesettlers.simulator.Toroidal2DPhysics;
 /**
- * Client that literally never moves (not a horrible strategy if you just want to never die)
+ * Client that literally never moves (not a horrible strategy if you just want to never die).
+ * It is also the example of a batched client: the simulator asks it once per step.
  * @author amy
  *
  */
-public class DoNothingTeamClient extends TeamClient {
+public class DoNothingTeamClient extends TeamClient implements BatchedTeamClient, ReadOnlySpaceTeamClient {
 	@Override
 	public void initialize(Toroidal2DPhysics space) {
 		// TODO Auto-generated method stub
@@ -75,4 +76,20 @@ public class DoNothingTeamClient extends TeamClient {
 		return null;
 	}
 
+	/**
+	 * Everything for the step at once (the same answers as the separate calls)
+	 */
+	@Override
+	public TeamTurn getTeamTurn(Toroidal2DPhysics space, Set<AbstractActionableObject> actionableObjects,
+			ResourcePile resourcesAvailable, PurchaseCosts purchaseCosts) {
+		return new TeamTurn(getMovementStart(space, actionableObjects), 
+				getTeamPurchases(space, actionableObjects, resourcesAvailable, purchaseCosts),
+				getPowerups(space, actionableObjects));
+	}
+
+	@Override
+	public void movementEnded(Toroidal2DPhysics space, Set<AbstractActionableObject> actionableObjects) {
+		getMovementEnd(space, actionableObjects);
+	}
+
 }
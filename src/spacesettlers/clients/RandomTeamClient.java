@@ -29,7 +29,7 @@ import spacesettlers.utilities.Position;
  * @author amy
  *
  */
-public class RandomTeamClient extends TeamClient {
+public class RandomTeamClient extends TeamClient implements ReadOnlySpaceTeamClient {
 	HashSet<SpacewarGraphics> graphics;
 	boolean fired = false;
 	
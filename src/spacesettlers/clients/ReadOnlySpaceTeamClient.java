@@ -0,0 +1,14 @@
+package spacesettlers.clients;
+
+/**
+ * Optional interface for team clients that never change the space they are given.  A 
+ * TeamClient that implements it is handed the read-only snapshot of the space that is 
+ * shared by all of the teams instead of its own clone (which saves copying the whole 
+ * space for every team and every call).  Nothing in the snapshot can be changed: any 
+ * setter on its objects, positions or resources throws an UnsupportedOperationException.
+ * Use deepClone() on an object (or the space) to get a copy you can change.
+ * 
+ * Clients that don't implement it get their own clone like they always have.
+ */
+public interface ReadOnlySpaceTeamClient {
+}
@@ -0,0 +1,200 @@
+package spacesettlers.clients;
+
+import java.awt.Color;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import spacesettlers.actions.PurchaseCosts;
+import spacesettlers.objects.AbstractActionableObject;
+import spacesettlers.objects.resources.ResourcePile;
+import spacesettlers.simulator.SnapshotCodec;
+import spacesettlers.simulator.Toroidal2DPhysics;
+
+/**
+ * The main program of the process a RemoteTeamClient runs its client in.  It connects
+ * back to the simulator, makes the client when asked to and then answers the simulator's
+ * requests one at a time until it is told to shut down (or the simulator goes away).
+ *
+ * Usage: RemoteClientHost port token
+ */
+public class RemoteClientHost {
+	/**
+	 * The client being run (made by the first INITIALIZE)
+	 */
+	TeamClient client;
+
+	/**
+	 * The last space the simulator sent
+	 */
+	Toroidal2DPhysics space;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: RemoteClientHost port token");
+			System.exit(1);
+		}
+		int port = Integer.parseInt(args[0]);
+		long token = Long.parseLong(args[1]);
+
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		socket.setTcpNoDelay(true);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+		out.writeLong(token);
+		out.flush();
+
+		try {
+			new RemoteClientHost().run(in, out);
+		} finally {
+			socket.close();
+		}
+
+		// the client may have left threads running
+		System.exit(0);
+	}
+
+	/**
+	 * Answer requests until the simulator is done
+	 *
+	 * @param in
+	 * @param out
+	 * @throws IOException
+	 */
+	void run(DataInputStream in, DataOutputStream out) throws IOException {
+		while (true) {
+			byte type;
+			try {
+				type = RemoteClientProtocol.readType(in);
+			} catch (EOFException e) {
+				// the simulator closed the connection
+				return;
+			}
+			byte[] body = RemoteClientProtocol.readBody(in);
+
+			if (type == RemoteClientProtocol.SNAPSHOT) {
+				space = SnapshotCodec.decode(body);
+				continue;
+			}
+
+			byte[] answer;
+			try {
+				Object result = answer(type, new DataInputStream(new ByteArrayInputStream(body)));
+				answer = new RemoteClientProtocol.Body().writeObject(result).toByteArray();
+			} catch (Throwable e) {
+				StringWriter trace = new StringWriter();
+				e.printStackTrace(new PrintWriter(trace));
+				RemoteClientProtocol.writeMessage(out, RemoteClientProtocol.ERROR, trace.toString().getBytes("UTF-8"));
+				continue;
+			}
+			RemoteClientProtocol.writeMessage(out, RemoteClientProtocol.ANSWER, answer);
+
+			if (type == RemoteClientProtocol.SHUTDOWN) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Pass one request on to the client
+	 *
+	 * @param type
+	 * @param body
+	 * @return what the client answered (null for calls with no answer)
+	 * @throws Exception
+	 */
+	Object answer(byte type, DataInputStream body) throws Exception {
+		switch (type) {
+		case RemoteClientProtocol.INITIALIZE:
+			client = createClient(body);
+			client.initialize(space.deepClone());
+			// encode something once so the first real answer doesn't wait for the codec to warm up
+			SnapshotCodec.encode(space);
+			return null;
+		case RemoteClientProtocol.MOVEMENT_START:
+			return client.getMovementStart(getClientSpace(), getActionableObjects(body));
+		case RemoteClientProtocol.MOVEMENT_END:
+			client.getMovementEnd(getClientSpace(), getActionableObjects(body));
+			return null;
+		case RemoteClientProtocol.PURCHASES:
+			Set<AbstractActionableObject> actionableObjects = getActionableObjects(body);
+			ResourcePile resourcesAvailable = (ResourcePile) SnapshotCodec.readObject(body);
+			PurchaseCosts purchaseCosts = (PurchaseCosts) SnapshotCodec.readObject(body);
+			return client.getTeamPurchases(getClientSpace(), actionableObjects, resourcesAvailable, purchaseCosts);
+		case RemoteClientProtocol.POWERUPS:
+			return client.getPowerups(getClientSpace(), getActionableObjects(body));
+		case RemoteClientProtocol.GRAPHICS:
+			return client.getGraphics();
+		case RemoteClientProtocol.SHUTDOWN:
+			client.shutDown(space);
+			return null;
+		default:
+			throw new IOException("Unknown request " + type);
+		}
+	}
+
+	/**
+	 * Get the space to give the client (the same as Team does: only clients that asked 
+	 * for the read-only space get it, the rest get their own clone)
+	 *
+	 * @return
+	 */
+	Toroidal2DPhysics getClientSpace() {
+		if (space.isReadOnly() && client instanceof ReadOnlySpaceTeamClient) {
+			return space;
+		}
+		return space.deepClone();
+	}
+
+	/**
+	 * Make the client the same way the simulator does
+	 *
+	 * @param body
+	 * @return
+	 * @throws Exception
+	 */
+	TeamClient createClient(DataInputStream body) throws Exception {
+		String className = body.readUTF();
+		TeamClient newClient = (TeamClient) Class.forName(className).getDeclaredConstructor().newInstance();
+		newClient.setTeamName(body.readUTF());
+		newClient.setTeamColor(new Color(body.readInt(), true));
+		String knowledgeFile = body.readUTF();
+		newClient.setKnowledgeFile(knowledgeFile.length() == 0 ? null : knowledgeFile);
+		newClient.setMaxNumberShips(body.readInt());
+		newClient.setRandom(new Random());
+		return newClient;
+	}
+
+	/**
+	 * Copy the team's objects out of the space (the client gets copies just like in
+	 * the simulator)
+	 *
+	 * @param body
+	 * @return
+	 * @throws IOException
+	 */
+	Set<AbstractActionableObject> getActionableObjects(DataInputStream body) throws IOException {
+		List<UUID> ids = RemoteClientProtocol.readIds(body);
+		Set<AbstractActionableObject> clones = new LinkedHashSet<AbstractActionableObject>();
+		for (UUID id : ids) {
+			AbstractActionableObject object = (AbstractActionableObject) space.getObjectById(id);
+			if (object != null) {
+				clones.add((AbstractActionableObject) object.deepClone());
+			}
+		}
+		return clones;
+	}
+}
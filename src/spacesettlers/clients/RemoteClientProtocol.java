@@ -0,0 +1,140 @@
+package spacesettlers.clients;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import spacesettlers.simulator.SnapshotCodec;
+
+/**
+ * The messages between the simulator and a team client running in its own process
+ * (see RemoteTeamClient and RemoteClientHost).  Every message is a type byte, the length
+ * of the body and the body.  The simulator only sends a snapshot when the space has
+ * changed since the last one that child saw, and the requests after it just name the
+ * actionable objects (by id) since the child already has them in the snapshot.
+ */
+class RemoteClientProtocol {
+	/**
+	 * Sent by the simulator
+	 */
+	static final byte SNAPSHOT = 1;
+	static final byte INITIALIZE = 2;
+	static final byte MOVEMENT_START = 3;
+	static final byte MOVEMENT_END = 4;
+	static final byte PURCHASES = 5;
+	static final byte POWERUPS = 6;
+	static final byte GRAPHICS = 7;
+	static final byte SHUTDOWN = 8;
+
+	/**
+	 * Sent by the child (the answer or the stack trace of an error in the client)
+	 */
+	static final byte ANSWER = 20;
+	static final byte ERROR = 21;
+
+	/**
+	 * Largest message either side will read (so a broken stream can't ask for all the memory)
+	 */
+	static final int MAX_MESSAGE_LENGTH = 256 * 1024 * 1024;
+
+	/**
+	 * Write one message
+	 *
+	 * @param out
+	 * @param type
+	 * @param body
+	 * @throws IOException
+	 */
+	static void writeMessage(DataOutputStream out, byte type, byte[] body) throws IOException {
+		out.writeByte(type);
+		out.writeInt(body.length);
+		out.write(body);
+		out.flush();
+	}
+
+	/**
+	 * Read the type of the next message (the body is read with readBody)
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	static byte readType(DataInputStream in) throws IOException {
+		return in.readByte();
+	}
+
+	/**
+	 * Read the body of a message
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	static byte[] readBody(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0 || length > MAX_MESSAGE_LENGTH) {
+			throw new IOException("Bad message length " + length);
+		}
+		byte[] body = new byte[length];
+		in.readFully(body);
+		return body;
+	}
+
+	/**
+	 * Collects the body of a message
+	 */
+	static class Body {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		Body writeIds(List<UUID> ids) throws IOException {
+			out.writeInt(ids.size());
+			for (UUID id : ids) {
+				out.writeLong(id.getMostSignificantBits());
+				out.writeLong(id.getLeastSignificantBits());
+			}
+			return this;
+		}
+
+		Body writeObject(Object object) throws IOException {
+			out.flush();
+			SnapshotCodec.writeObject(out, object);
+			return this;
+		}
+
+		Body writeUTF(String string) throws IOException {
+			out.writeUTF(string == null ? "" : string);
+			return this;
+		}
+
+		Body writeInt(int value) throws IOException {
+			out.writeInt(value);
+			return this;
+		}
+
+		byte[] toByteArray() throws IOException {
+			out.flush();
+			return bytes.toByteArray();
+		}
+	}
+
+	/**
+	 * Read the ids written by Body.writeIds
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	static List<UUID> readIds(DataInputStream in) throws IOException {
+		int numIds = in.readInt();
+		List<UUID> ids = new ArrayList<UUID>(numIds);
+		for (int i = 0; i < numIds; i++) {
+			ids.add(new UUID(in.readLong(), in.readLong()));
+		}
+		return ids;
+	}
+}
@@ -0,0 +1,407 @@
+package spacesettlers.clients;
+
+import java.awt.Color;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import spacesettlers.actions.AbstractAction;
+import spacesettlers.actions.PurchaseCosts;
+import spacesettlers.actions.PurchaseTypes;
+import spacesettlers.graphics.SpacewarGraphics;
+import spacesettlers.objects.AbstractActionableObject;
+import spacesettlers.objects.powerups.SpaceSettlersPowerupEnum;
+import spacesettlers.objects.resources.ResourcePile;
+import spacesettlers.simulator.SnapshotCodec;
+import spacesettlers.simulator.Toroidal2DPhysics;
+
+/**
+ * Runs a team client in its own Java process (started with RemoteClientHost) and passes
+ * the calls to it over a local socket.  A client that runs away or crashes can then be
+ * killed without leaving a thread behind in the simulator.  After it is killed, a new
+ * process is started (and the client initialized with the last space it saw) in the
+ * background.  The team skips its calls until the new process is ready.
+ *
+ * Each space is only encoded once no matter how many remote clients it is sent to, and it
+ * is only sent to a child once even if the child is asked several things about it.
+ *
+ * The child makes its own random number generator, so games with remote clients won't
+ * repeat exactly even with a random seed.  Remote clients can't use the keyboard or mouse.
+ */
+public class RemoteTeamClient extends TeamClient implements ReadOnlySpaceTeamClient {
+	/**
+	 * Longest wait for a new child to connect (in milliseconds)
+	 */
+	static final int CONNECT_TIMEOUT = 30000;
+
+	/**
+	 * The last read-only space that was encoded, its bytes and its number (shared by
+	 * all of the remote clients)
+	 */
+	static Toroidal2DPhysics sharedSpace;
+	static byte[] sharedBytes;
+	static long sharedId;
+
+	/**
+	 * The class of the client to run and any options for its Java process
+	 */
+	String className;
+	String jvmOptions;
+
+	/**
+	 * The child and the connection to it (null when it isn't running).  These and lastSpace 
+	 * are transient since bases and drones carry a copy of their team (and its client) 
+	 * when they are sent to a child.
+	 */
+	transient volatile Process process;
+	transient volatile Socket socket;
+	transient DataInputStream in;
+	transient DataOutputStream out;
+
+	/**
+	 * Number of the last space sent to the child
+	 */
+	long sentSnapshotId;
+
+	/**
+	 * The last space the client was asked about (used to initialize it again after a restart)
+	 */
+	transient Toroidal2DPhysics lastSpace;
+
+	/**
+	 * True while a new child is being started in the background and true for good once
+	 * the client has been stopped at the end of the game
+	 */
+	volatile boolean starting;
+	volatile boolean stopped;
+
+	/**
+	 * Number of times the child has been started
+	 */
+	int numStarts;
+
+	/**
+	 * Make a client that runs in its own process
+	 *
+	 * @param className the TeamClient to run
+	 * @param jvmOptions options for the child's Java (such as -Xmx256m), can be null
+	 */
+	public RemoteTeamClient(String className, String jvmOptions) {
+		this.className = className;
+		this.jvmOptions = jvmOptions;
+	}
+
+	@Override
+	public void initialize(Toroidal2DPhysics space) {
+		try {
+			synchronized (this) {
+				lastSpace = space;
+				start(space);
+			}
+		} catch (IOException e) {
+			kill();
+			throw new IllegalStateException("Unable to start remote client " + className + " for " + getTeamName(), e);
+		}
+	}
+
+	@Override
+	public Map<UUID, AbstractAction> getMovementStart(Toroidal2DPhysics space,
+			Set<AbstractActionableObject> actionableObjects) {
+		return read(request(RemoteClientProtocol.MOVEMENT_START, space, actionableObjects));
+	}
+
+	@Override
+	public void getMovementEnd(Toroidal2DPhysics space, Set<AbstractActionableObject> actionableObjects) {
+		request(RemoteClientProtocol.MOVEMENT_END, space, actionableObjects);
+	}
+
+	@Override
+	public Map<UUID, SpaceSettlersPowerupEnum> getPowerups(Toroidal2DPhysics space,
+			Set<AbstractActionableObject> actionableObjects) {
+		return read(request(RemoteClientProtocol.POWERUPS, space, actionableObjects));
+	}
+
+	@Override
+	public Map<UUID, PurchaseTypes> getTeamPurchases(Toroidal2DPhysics space,
+			Set<AbstractActionableObject> actionableObjects, ResourcePile resourcesAvailable,
+			PurchaseCosts purchaseCosts) {
+		try {
+			byte[] body = new RemoteClientProtocol.Body().writeIds(getIds(actionableObjects))
+					.writeObject(resourcesAvailable).writeObject(purchaseCosts).toByteArray();
+			return read(request(RemoteClientProtocol.PURCHASES, space, body));
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public Set<SpacewarGraphics> getGraphics() {
+		// no point starting a child just to draw it
+		if (process == null) {
+			return new LinkedHashSet<SpacewarGraphics>();
+		}
+		return read(request(RemoteClientProtocol.GRAPHICS, null, new byte[0]));
+	}
+
+	@Override
+	public void shutDown(Toroidal2DPhysics space) {
+		try {
+			Process child = process;
+			if (child != null) {
+				request(RemoteClientProtocol.SHUTDOWN, space, new byte[0]);
+				child.waitFor(1, TimeUnit.SECONDS);
+			}
+		} catch (InterruptedException e) {
+			// stop it below
+		} finally {
+			stop();
+		}
+	}
+
+	/**
+	 * @return false while a new child is being started in the background
+	 */
+	public boolean isReady() {
+		return !starting;
+	}
+
+	/**
+	 * Kill the child and start a new one in the background.  A call that is waiting for 
+	 * the old child fails.
+	 */
+	public void restart() {
+		if (stopped) {
+			return;
+		}
+		kill();
+		starting = true;
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					synchronized (RemoteTeamClient.this) {
+						if (process == null && !stopped) {
+							start(lastSpace);
+						}
+					}
+				} catch (IOException e) {
+					System.err.println("Unable to restart the remote client for " + getTeamName() + " (" + e.getMessage() + ")");
+					kill();
+				} catch (RuntimeException e) {
+					System.err.println("Error restarting the remote client for " + getTeamName() + " (" + e.getMessage() + ")");
+					kill();
+				} finally {
+					starting = false;
+				}
+			}
+		}, "Restart " + getTeamName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Kill the child for good (at the end of the game)
+	 */
+	public void stop() {
+		stopped = true;
+		kill();
+	}
+
+	/**
+	 * Stop the child right away.  A call that is waiting for the child fails.
+	 */
+	void kill() {
+		Socket oldSocket = socket;
+		Process oldProcess = process;
+		socket = null;
+		process = null;
+		if (oldSocket != null) {
+			try {
+				oldSocket.close();
+			} catch (IOException e) {
+				// it is going away anyway
+			}
+		}
+		if (oldProcess != null) {
+			oldProcess.destroyForcibly();
+		}
+	}
+
+	/**
+	 * @return the number of times the child has been started
+	 */
+	public int getNumStarts() {
+		return numStarts;
+	}
+
+	/**
+	 * Send a request about some of the team's objects
+	 */
+	private byte[] request(byte type, Toroidal2DPhysics space, Set<AbstractActionableObject> actionableObjects) {
+		try {
+			return request(type, space, new RemoteClientProtocol.Body().writeIds(getIds(actionableObjects)).toByteArray());
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Send a request (and the space first if the child hasn't seen it) and wait for the answer
+	 *
+	 * @param type
+	 * @param space the space the request is about (null to use the last one)
+	 * @param body
+	 * @return the body of the answer
+	 */
+	private synchronized byte[] request(byte type, Toroidal2DPhysics space, byte[] body) {
+		try {
+			if (process == null) {
+				if (space == null || stopped) {
+					throw new IOException("not running");
+				}
+				start(space);
+			}
+			if (space != null) {
+				lastSpace = space;
+				sendSnapshot(space);
+			}
+			RemoteClientProtocol.writeMessage(out, type, body);
+			return readAnswer();
+		} catch (IOException e) {
+			kill();
+			throw new IllegalStateException("Remote client for " + getTeamName() + " stopped (" + e.getMessage() + ")", e);
+		}
+	}
+
+	/**
+	 * Start the child, connect to it and initialize the client
+	 *
+	 * @param space
+	 * @throws IOException
+	 */
+	private void start(Toroidal2DPhysics space) throws IOException {
+		if (numStarts > 0) {
+			System.err.println("Restarting the remote client for " + getTeamName());
+		}
+		numStarts++;
+
+		// the child proves it is ours by sending back a random number
+		long token = new SecureRandom().nextLong();
+		ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		try {
+			server.setSoTimeout(CONNECT_TIMEOUT);
+
+			List<String> command = new ArrayList<String>();
+			command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+			command.addAll(SnapshotCodec.getJvmOptions());
+			if (jvmOptions != null && jvmOptions.trim().length() > 0) {
+				for (String option : jvmOptions.trim().split("\\s+")) {
+					command.add(option);
+				}
+			}
+			command.add("-cp");
+			command.add(System.getProperty("java.class.path"));
+			command.add(RemoteClientHost.class.getName());
+			command.add(Integer.toString(server.getLocalPort()));
+			command.add(Long.toString(token));
+			process = new ProcessBuilder(command).inheritIO().start();
+
+			socket = server.accept();
+		} finally {
+			server.close();
+		}
+		socket.setTcpNoDelay(true);
+		in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+		out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+		if (in.readLong() != token) {
+			throw new IOException("Wrong process connected");
+		}
+		sentSnapshotId = -1;
+
+		sendSnapshot(space);
+		Color color = getTeamColor();
+		byte[] body = new RemoteClientProtocol.Body().writeUTF(className).writeUTF(getTeamName())
+				.writeInt(color == null ? 0 : color.getRGB()).writeUTF(getKnowledgeFile())
+				.writeInt(getMaxNumberShips()).toByteArray();
+		RemoteClientProtocol.writeMessage(out, RemoteClientProtocol.INITIALIZE, body);
+		readAnswer();
+	}
+
+	/**
+	 * Send the space unless the child already has it
+	 *
+	 * @param space
+	 * @throws IOException
+	 */
+	private void sendSnapshot(Toroidal2DPhysics space) throws IOException {
+		long id;
+		byte[] bytes;
+		synchronized (RemoteTeamClient.class) {
+			// read-only spaces never change so they are encoded once for everyone
+			if (space != sharedSpace || !space.isReadOnly()) {
+				sharedBytes = SnapshotCodec.encode(space);
+				sharedSpace = space.isReadOnly() ? space : null;
+				sharedId++;
+			}
+			id = sharedId;
+			bytes = sharedBytes;
+		}
+		if (id != sentSnapshotId) {
+			RemoteClientProtocol.writeMessage(out, RemoteClientProtocol.SNAPSHOT, bytes);
+			sentSnapshotId = id;
+		}
+	}
+
+	/**
+	 * Wait for the answer to a request
+	 *
+	 * @return the body of the answer
+	 * @throws IOException if the connection broke
+	 */
+	private byte[] readAnswer() throws IOException {
+		byte type = RemoteClientProtocol.readType(in);
+		byte[] body = RemoteClientProtocol.readBody(in);
+		if (type == RemoteClientProtocol.ERROR) {
+			// the client threw an exception (the child keeps running)
+			throw new RuntimeException("Error in remote client " + className + ":\n" + new String(body, "UTF-8"));
+		}
+		if (type != RemoteClientProtocol.ANSWER) {
+			throw new IOException("Unexpected message " + type);
+		}
+		return body;
+	}
+
+	/**
+	 * Read the object in the body of an answer
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T read(byte[] body) {
+		try {
+			return (T) SnapshotCodec.readObject(new DataInputStream(new ByteArrayInputStream(body)));
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static List<UUID> getIds(Set<AbstractActionableObject> actionableObjects) {
+		List<UUID> ids = new ArrayList<UUID>(actionableObjects.size());
+		for (AbstractActionableObject object : actionableObjects) {
+			ids.add(object.getId());
+		}
+		return ids;
+	}
+}
@@ -4,8 +4,10 @@ import java.awt.Color;
 import java.awt.event.KeyAdapter;
 import java.awt.event.MouseAdapter;
 import java.awt.geom.AffineTransform;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
@@ -14,9 +16,13 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import spacesettlers.actions.AbstractAction;
 import spacesettlers.actions.PurchaseCosts;
@@ -78,6 +84,12 @@ public class Team {
 	 * The client for this team
 	 */
 	TeamClient teamClient;
+
+	/**
+	 * For batched clients: the power ups and purchases the client gave with its actions
+	 * this step (handed out when the simulator asks for them)
+	 */
+	TeamTurn batchedTurn;
 	
 	/**
 	 * current team score (set in the simulator, which knows how the team is being scored)
@@ -146,9 +158,48 @@ public class Team {
 	int maxNumberShips;
 	
 	/**
-	 * Thread for this team
+	 * Thread for this team (created on the first call to the client and reused for the whole game)
 	 */
 	ExecutorService executor;
+
+	/**
+	 * True while a call to the client is running (calls are skipped while the client is busy)
+	 */
+	final AtomicBoolean clientBusy = new AtomicBoolean(false);
+
+	/**
+	 * The movement end notification waiting for a batched client's thread (a newer one 
+	 * replaces it so a slow client doesn't pile them up)
+	 */
+	final AtomicReference<Runnable> pendingMovementEnd = new AtomicReference<Runnable>();
+
+	/**
+	 * Bytes allocated on the team's worker thread by the calls to the client (calls made 
+	 * directly on another thread are counted by that thread)
+	 */
+	final AtomicLong workerAllocatedBytes = new AtomicLong();
+
+	/**
+	 * If true, the client is called directly on the caller's thread with no timeouts 
+	 * (only for trusted clients in turbo mode)
+	 */
+	boolean directClientCalls = false;
+
+	/**
+	 * If true, the client is called on a virtual thread (when this Java has them)
+	 */
+	boolean virtualThreads = false;
+
+	/**
+	 * CPU time used by the client (and the budget it is held to, if there is one)
+	 */
+	CpuBudget cpuBudget = new CpuBudget();
+
+	/**
+	 * When the calls are held to a CPU budget, they are still stopped after this many times 
+	 * the usual timeout on the wall clock (so a client that sleeps or blocks can't hang the game)
+	 */
+	static final int BUDGET_WALL_CLOCK_FACTOR = 10;
 	
 	/**
 	 * Initialize the team client to have an empty list of ships and drones.
@@ -222,6 +273,22 @@ public class Team {
 	}
 
 	
+	/**
+	 * Get the copy of the space to give to the client.  Read-only snapshots from the 
+	 * simulator are shared by all of the teams so they are passed along as is to clients 
+	 * that asked for them (see ReadOnlySpaceTeamClient).  Anything else is cloned so the 
+	 * client can't change the real space or what another team sees.
+	 * 
+	 * @param space
+	 * @return
+	 */
+	private Toroidal2DPhysics getClientSpace(Toroidal2DPhysics space) {
+		if (space.isReadOnly() && teamClient instanceof ReadOnlySpaceTeamClient) {
+			return space;
+		}
+		return space.deepClone();
+	}
+
 	/**
 	 * Make a cloned list of the team's actionable objects (ships and bases)
 	 * 
@@ -395,124 +462,148 @@ public class Team {
 	 * @return
 	 */
 	public Map<UUID, AbstractAction> getTeamMovementStart(Toroidal2DPhysics space) {
-        Map<UUID, AbstractAction> teamActions = new HashMap<UUID, AbstractAction>();
+		// batched clients answer everything for the step now
+		if (teamClient instanceof BatchedTeamClient) {
+			batchedTurn = askTeamTurn(getClientSpace(space), getTeamActionableObjectsClone(space), 
+					new ResourcePile(availableResources), getPurchaseCostClone());
+			return batchedTurn.getActions();
+		}
 
 		// ask the client for its movement
-		final Toroidal2DPhysics clonedSpace = space.deepClone();
-		final Set<AbstractActionableObject> clonedActionableObjects = getTeamActionableObjectsClone(space);
-		
-		// if the previous thread call hasn't finished, then just return default
-		if (executor == null || executor.isTerminated()) {
-			executor = Executors.newSingleThreadExecutor();
-		} else {
-			return teamActions;
-		}
-		
-        Future<Map<UUID, AbstractAction>> future = executor.submit(
-        		new Callable<Map<UUID, AbstractAction>>(){
-        			public Map<UUID, AbstractAction> call() {
-        				Map<UUID, AbstractAction> teamActions = null;
-    					teamActions = teamClient.getMovementStart(clonedSpace, clonedActionableObjects);
-        				return teamActions;
-        			}
-        		});
-        
-        try {
-            //start
-            teamActions = future.get(SpaceSettlersSimulator.TEAM_ACTION_TIMEOUT, TimeUnit.MILLISECONDS);
-            //finished in time
-        } catch (TimeoutException e) {
-            //was terminated
-        	//return empty map, this will invoke default behavior of using DoNothingAction
-        	teamActions = new HashMap<UUID, AbstractAction>();
-        	System.err.println(getTeamName() + " timed out in getTeamMovementStart");
-        } catch (InterruptedException e) {
-        	//we were interrupted (should not happen but lets be good programmers) 
-        	//return empty map, this will invoke default behavior of using DoNothingAction
-        	teamActions = new HashMap<UUID, AbstractAction>();
-			e.printStackTrace();
-		} catch (ExecutionException e) {
-			//the executor threw and exception (should not happen but lets be good programmers) 
-        	//return empty map, this will invoke default behavior of using DoNothingAction
-        	teamActions = new HashMap<UUID, AbstractAction>();
-			e.printStackTrace();
-		} catch (Exception e) {
-			// we shouldn't do this but it seems necessary to make
-			// the agent behave (do nothing) if it crashes
-			System.err.println("Error in agent, stack trace to follow");
-			e.printStackTrace();
-        	teamActions = new HashMap<UUID, AbstractAction>();
-		}
+		return askMovementStart(getClientSpace(space), getTeamActionableObjectsClone(space));
+	}
+
+	private TeamTurn askTeamTurn(final Toroidal2DPhysics clonedSpace,
+			final Set<AbstractActionableObject> clonedActionableObjects, final ResourcePile clonedResources,
+			final PurchaseCosts clonedPurchaseCost) {
+		// if the previous call hasn't finished, then just return default (nothing for this step)
+		Future<TeamTurn> future = submitToClient(
+				new Callable<TeamTurn>(){
+					public TeamTurn call() {
+						return ((BatchedTeamClient) teamClient).getTeamTurn(clonedSpace, clonedActionableObjects, 
+								clonedResources, clonedPurchaseCost);
+					}
+				});
 
+		TeamTurn turn = waitForClient(future, SpaceSettlersSimulator.TEAM_ACTION_TIMEOUT, "getTeamTurn");
+		if (turn == null) {
+			turn = new TeamTurn(null, null, null);
+		}
+		return turn;
+	}
 
-        executor.shutdownNow();
-        
-        return teamActions;
+	private Map<UUID, AbstractAction> askMovementStart(final Toroidal2DPhysics clonedSpace,
+			final Set<AbstractActionableObject> clonedActionableObjects) {
+		// if the previous call hasn't finished, then just return default
+		// (an empty map invokes the default behavior of using DoNothingAction)
+		Future<Map<UUID, AbstractAction>> future = submitToClient(
+				new Callable<Map<UUID, AbstractAction>>(){
+					public Map<UUID, AbstractAction> call() {
+						return teamClient.getMovementStart(clonedSpace, clonedActionableObjects);
+					}
+				});
 		
-// 		HashMap<UUID, AbstractAction> teamActions = teamClient.getAction(clonedSpace, clonedTeamShips);
-//		return teamActions;
+		Map<UUID, AbstractAction> teamActions = waitForClient(future, SpaceSettlersSimulator.TEAM_ACTION_TIMEOUT, 
+				"getTeamMovementStart");
+		if (teamActions == null) {
+			teamActions = new HashMap<UUID, AbstractAction>();
+		}
+		return teamActions;
 	}
 
 	/**
 	 * Allows the client to do cleanup after an action and before
-	 * the next one (if needed)
+	 * the next one (if needed).  The simulator updates the team's statistics 
+	 * from the real space afterwards (see updateStatistics).
 	 * 
-	 * @param simulatedSpace
+	 * @param space the space to give the client
 	 * @return
 	 */
 	public void getTeamMovementEnd(Toroidal2DPhysics space) {
-		final Toroidal2DPhysics clonedSpace = space.deepClone();
-		final Set<AbstractActionableObject> clonedActionableObjects = getTeamActionableObjectsClone(space);
-
-		// if the previous thread call hasn't finished, then just return default
-		if (executor == null || executor.isTerminated()) {
-			executor = Executors.newSingleThreadExecutor();
+		if (teamClient instanceof BatchedTeamClient) {
+			notifyMovementEnded(getClientSpace(space), getTeamActionableObjectsClone(space));
 		} else {
+			askMovementEnd(getClientSpace(space), getTeamActionableObjectsClone(space));
+		}
+	}
+
+	/**
+	 * Tell a batched client the step ended without waiting for it.  The call runs on the 
+	 * client's thread so the next call to the client waits behind it.  A client still busy 
+	 * with an earlier call misses the notification, and only the latest notification waits 
+	 * for the thread.
+	 */
+	private void notifyMovementEnded(final Toroidal2DPhysics clonedSpace,
+			final Set<AbstractActionableObject> clonedActionableObjects) {
+		Runnable call = new Runnable() {
+			public void run() {
+				cpuBudget.callStarted(false);
+				try {
+					((BatchedTeamClient) teamClient).movementEnded(clonedSpace, clonedActionableObjects);
+				} finally {
+					cpuBudget.callEnded();
+				}
+			}
+		};
+
+		// trusted clients in turbo mode are called right here
+		if (directClientCalls) {
+			call.run();
 			return;
 		}
 
-		//System.out.println("exec " + executor.isTerminated());
-        Future<Boolean> future = executor.submit(
-        		new Callable<Boolean>(){
-        			public Boolean call() throws Exception {
-        				teamClient.getMovementEnd(clonedSpace, clonedActionableObjects);
-        				return true;
-        			}
-        		});
-        
-        Boolean didReturn = false;
-        try {
-            //start
-        	didReturn = future.get(SpaceSettlersSimulator.TEAM_END_ACTION_TIMEOUT, TimeUnit.MILLISECONDS);
-            //finished in time
-        } catch (TimeoutException e) {
-            //was terminated
-        	//set didReturn false
-        	System.out.println(getTeamName() + " timed out in getTeamMovementEnd");
-        	didReturn = false;
-        } catch (InterruptedException e) {
-        	//we were interrupted (should not happen but lets be good programmers) 
-        	//set didReturn false
-        	didReturn = false;
-			e.printStackTrace();
-		} catch (ExecutionException e) {
-			//the executor threw and exception (should not happen but lets be good programmers) 
-			//set didReturn false
-        	didReturn = false;
-			e.printStackTrace();
+		// the client is still in a call that timed out
+		if (clientBusy.get()) {
+			return;
+		}
+
+		// an earlier notification that hasn't started yet is replaced by this one
+		if (pendingMovementEnd.getAndSet(call) != null) {
+			return;
+		}
+
+		try {
+			getExecutor().submit(new Runnable() {
+				public void run() {
+					Runnable latest = pendingMovementEnd.getAndSet(null);
+					if (latest != null) {
+						long startAllocatedBytes = SpaceSettlersSimulator.getThreadAllocatedBytes();
+						try {
+							latest.run();
+						} finally {
+							workerAllocatedBytes.addAndGet(SpaceSettlersSimulator.getThreadAllocatedBytes() 
+									- startAllocatedBytes);
+						}
+					}
+				}
+			});
 		} catch (RejectedExecutionException e) {
-			System.err.println("exec" + executor.isTerminated());
-			e.printStackTrace();
-		}catch (Exception e) {
-			// we shouldn't do this but it seems necessary to make
-			// the agent behave (do nothing) if it crashes
-        	didReturn = false;
-        	System.err.println("Error in agent.  Printing stack trace.");
-			e.printStackTrace();
+			// the team has been shut down
+			pendingMovementEnd.set(null);
 		}
+	}
 
-        executor.shutdownNow();
+	private void askMovementEnd(final Toroidal2DPhysics clonedSpace,
+			final Set<AbstractActionableObject> clonedActionableObjects) {
+		// if the previous call hasn't finished, then skip this one
+		Future<Boolean> future = submitToClient(
+				new Callable<Boolean>(){
+					public Boolean call() throws Exception {
+						teamClient.getMovementEnd(clonedSpace, clonedActionableObjects);
+						return true;
+					}
+				});
 		
+		waitForClient(future, SpaceSettlersSimulator.TEAM_END_ACTION_TIMEOUT, "getTeamMovementEnd");
+	}
+
+	/**
+	 * Add up the beacons, hits, kills and damage of the team's ships and bases
+	 * (done at the end of every step)
+	 * 
+	 * @param space the real space
+	 */
+	public void updateStatistics(Toroidal2DPhysics space) {
 		// figure out how many beacons the team has collected
 		// figure out how many hitsInflicted and killsInflicted the team has
 		int beacons = 0;
@@ -558,59 +649,36 @@ public class Team {
 	 * @return
 	 */
 	public Map<UUID,PurchaseTypes> getTeamPurchases(Toroidal2DPhysics space) {
-        Map<UUID,PurchaseTypes> purchase = new HashMap<UUID,PurchaseTypes>();
+		// batched clients gave their purchases with their actions
+		if (teamClient instanceof BatchedTeamClient) {
+			Map<UUID, PurchaseTypes> purchases = batchedTurn != null ? batchedTurn.getPurchases() 
+					: new HashMap<UUID, PurchaseTypes>();
+			batchedTurn = null;
+			return purchases;
+		}
 
-		final Toroidal2DPhysics clonedSpace = space.deepClone();
-		final Set<AbstractActionableObject> clonedActionableObjects = getTeamActionableObjectsClone(space);
-		final PurchaseCosts clonedPurchaseCost = getPurchaseCostClone();
-		final ResourcePile clonedResources = new ResourcePile(availableResources);
+		return askPurchases(getClientSpace(space), getTeamActionableObjectsClone(space), 
+				new ResourcePile(availableResources), getPurchaseCostClone());
+	}
+
+	private Map<UUID,PurchaseTypes> askPurchases(final Toroidal2DPhysics clonedSpace,
+			final Set<AbstractActionableObject> clonedActionableObjects, final ResourcePile clonedResources,
+			final PurchaseCosts clonedPurchaseCost) {
+		// if the previous call hasn't finished, then just return default (don't buy anything)
+		Future<Map<UUID,PurchaseTypes>> future = submitToClient(
+				new Callable<Map<UUID,PurchaseTypes>>(){
+					public Map<UUID,PurchaseTypes> call() throws Exception {
+						return teamClient.getTeamPurchases(clonedSpace, 
+								clonedActionableObjects, clonedResources , clonedPurchaseCost);
+					}
+				});
 		
-        // if the previous thread call hasn't finished, then just return default
-		if (executor == null || executor.isTerminated()) {
-			executor = Executors.newSingleThreadExecutor();
-		} else {
-			return purchase;
-		}
-
-		//System.out.println("exec " + executor.isTerminated());
-        Future<Map<UUID,PurchaseTypes>> future = executor.submit(
-        		new Callable<Map<UUID,PurchaseTypes>>(){
-        			public Map<UUID,PurchaseTypes> call() throws Exception {
-        				return teamClient.getTeamPurchases(clonedSpace, 
-        						clonedActionableObjects, clonedResources , clonedPurchaseCost);
-        			}
-        		});
-        
-        try {
-            //start
-        	purchase = future.get(SpaceSettlersSimulator.TEAM_ACTION_TIMEOUT, TimeUnit.MILLISECONDS);
-            //finished in time
-        } catch (TimeoutException e) {
-            //was terminated
-        	//return empty map, don't buy anything
-        	System.out.println(getTeamName() + " timed out in getTeamPurchases");
-        	purchase = new HashMap<UUID,PurchaseTypes>();
-        } catch (InterruptedException e) {
-        	//we were interrupted (should not happen but lets be good programmers) 
-        	//return empty map, don't buy anything
-        	purchase = new HashMap<UUID,PurchaseTypes>();
-			e.printStackTrace();
-		} catch (ExecutionException e) {
-			//the executor threw and exception (should not happen but lets be good programmers) 
-        	//return empty map, don't buy anything
-        	purchase = new HashMap<UUID,PurchaseTypes>();
-			e.printStackTrace();
-		} catch (RejectedExecutionException e) {
-			System.err.println("exec" + executor.isTerminated());
-			e.printStackTrace();
-		} catch (Exception e) {
-        	purchase = new HashMap<UUID,PurchaseTypes>();
-			e.printStackTrace();
+		Map<UUID,PurchaseTypes> purchase = waitForClient(future, SpaceSettlersSimulator.TEAM_ACTION_TIMEOUT, 
+				"getTeamPurchases");
+		if (purchase == null) {
+			purchase = new HashMap<UUID,PurchaseTypes>();
 		}
-
-        executor.shutdownNow();
-        
-        return purchase;
+		return purchase;
 	}
 
 	/**
@@ -628,56 +696,102 @@ public class Team {
 	 * @return
 	 */
 	public Map<UUID, SpaceSettlersPowerupEnum> getTeamPowerups(Toroidal2DPhysics space) {
-        Map<UUID, SpaceSettlersPowerupEnum> powerups = new HashMap<UUID,SpaceSettlersPowerupEnum>();
+		// batched clients gave their power ups with their actions
+		if (teamClient instanceof BatchedTeamClient) {
+			return batchedTurn != null ? batchedTurn.getPowerups() : new HashMap<UUID, SpaceSettlersPowerupEnum>();
+		}
+
+		return askPowerups(getClientSpace(space), getTeamActionableObjectsClone(space));
+	}
 
-		final Toroidal2DPhysics clonedSpace = space.deepClone();
-		final Set<AbstractActionableObject> clonedActionableObjects = getTeamActionableObjectsClone(space);
+	private Map<UUID, SpaceSettlersPowerupEnum> askPowerups(final Toroidal2DPhysics clonedSpace,
+			final Set<AbstractActionableObject> clonedActionableObjects) {
+		// if the previous call hasn't finished, then just return default (no power ups)
+		Future<Map<UUID,SpaceSettlersPowerupEnum>> future = submitToClient(
+				new Callable<Map<UUID,SpaceSettlersPowerupEnum>>(){
+					public Map<UUID,SpaceSettlersPowerupEnum> call() throws Exception {
+						return teamClient.getPowerups(clonedSpace, clonedActionableObjects);
+					}
+				});
 		
-        // if the previous thread call hasn't finished, then just return default
-		if (executor == null || executor.isTerminated()) {
-			executor = Executors.newSingleThreadExecutor();
-		} else {
-			return powerups;
-		}
-
-		//System.out.println("exec " + executor.isTerminated());
-        Future<Map<UUID,SpaceSettlersPowerupEnum>> future = executor.submit(
-        		new Callable<Map<UUID,SpaceSettlersPowerupEnum>>(){
-        			public Map<UUID,SpaceSettlersPowerupEnum> call() throws Exception {
-        				return teamClient.getPowerups(clonedSpace, clonedActionableObjects);
-        			}
-        		});
-        
-        try {
-            //start
-        	powerups = future.get(SpaceSettlersSimulator.TEAM_ACTION_TIMEOUT, TimeUnit.MILLISECONDS);
-            //finished in time
-        } catch (TimeoutException e) {
-            //was terminated
-        	//return empty map, don't buy anything
-        	System.out.println(getTeamName() + " timed out in getTeamPowerups");
-        	powerups = new HashMap<UUID,SpaceSettlersPowerupEnum>();
-        } catch (InterruptedException e) {
-        	//we were interrupted (should not happen but lets be good programmers) 
-        	//return empty map, don't buy anything
-        	powerups = new HashMap<UUID,SpaceSettlersPowerupEnum>();
-			e.printStackTrace();
-		} catch (ExecutionException e) {
-			//the executor threw and exception (should not happen but lets be good programmers) 
-        	//return empty map, don't buy anything
+		Map<UUID, SpaceSettlersPowerupEnum> powerups = waitForClient(future, SpaceSettlersSimulator.TEAM_ACTION_TIMEOUT, 
+				"getTeamPowerups");
+		if (powerups == null) {
 			powerups = new HashMap<UUID,SpaceSettlersPowerupEnum>();
-			e.printStackTrace();
-		} catch (Exception e) {
-			System.err.println("Error in agent.  Printing stack trace");
-        	powerups = new HashMap<UUID,SpaceSettlersPowerupEnum>();
-			e.printStackTrace();
 		}
+		return powerups;
+	}
+
+
+	/**
+	 * Get ready for one step of pipelined mode, where the client works on the next step
+	 * while the simulator moves the real space.  The returned call has the whole conversation
+	 * with the client for the step in the same order as a normal step: it ends the last
+	 * movement and asks for purchases looking at the end of the last step, then asks for 
+	 * actions and power ups looking at the space now.  The simulator uses the answers at 
+	 * the start of a later step.
+	 * 
+	 * Everything the call needs from the team is copied here so it can run on any thread,
+	 * but this must be called on the simulation thread.
+	 * 
+	 * @param endSnapshot read-only copy of the space at the end of the last step (before 
+	 * dead objects were cleaned up) or null if there was no last step
+	 * @param snapshot read-only copy of the space now
+	 * @return the call that asks the client
+	 */
+	public Callable<TeamTurn> prepareTeamTurn(final Toroidal2DPhysics endSnapshot, final Toroidal2DPhysics snapshot) {
+		final List<UUID> actionableIds = new ArrayList<UUID>();
+		for (Ship ship : teamShips) {
+			actionableIds.add(ship.getId());
+		}
+		actionableIds.addAll(teamBaseIDs);
+		actionableIds.addAll(teamDroneIDs);
+		final ResourcePile clonedResources = new ResourcePile(availableResources);
+		final PurchaseCosts clonedPurchaseCost = getPurchaseCostClone();
+
+		return new Callable<TeamTurn>() {
+			public TeamTurn call() throws Exception {
+				// batched clients hear about the end of the last step and answer everything at once
+				if (teamClient instanceof BatchedTeamClient) {
+					if (endSnapshot != null) {
+						notifyMovementEnded(getClientSpace(endSnapshot), cloneFromSnapshot(endSnapshot, actionableIds));
+					}
+					return askTeamTurn(getClientSpace(snapshot), cloneFromSnapshot(snapshot, actionableIds), 
+							clonedResources, clonedPurchaseCost);
+				}
 
-        executor.shutdownNow();
-        
-        return powerups;
+				Map<UUID, PurchaseTypes> purchases = null;
+				if (endSnapshot != null) {
+					askMovementEnd(getClientSpace(endSnapshot), cloneFromSnapshot(endSnapshot, actionableIds));
+					purchases = askPurchases(getClientSpace(endSnapshot), cloneFromSnapshot(endSnapshot, actionableIds), 
+							clonedResources, clonedPurchaseCost);
+				}
+				Map<UUID, AbstractAction> actions = askMovementStart(getClientSpace(snapshot), 
+						cloneFromSnapshot(snapshot, actionableIds));
+				Map<UUID, SpaceSettlersPowerupEnum> powerups = askPowerups(getClientSpace(snapshot), 
+						cloneFromSnapshot(snapshot, actionableIds));
+				return new TeamTurn(actions, purchases, powerups);
+			}
+		};
 	}
 
+	/**
+	 * Clone the team's actionable objects out of a snapshot (the real ships may be moving)
+	 * 
+	 * @param snapshot
+	 * @param actionableIds ids of the ships, bases and drones
+	 * @return
+	 */
+	private Set<AbstractActionableObject> cloneFromSnapshot(Toroidal2DPhysics snapshot, List<UUID> actionableIds) {
+		Set<AbstractActionableObject> clones = new LinkedHashSet<AbstractActionableObject>();
+		for (UUID id : actionableIds) {
+			AbstractActionableObject object = (AbstractActionableObject) snapshot.getObjectById(id);
+			if (object != null) {
+				clones.add((AbstractActionableObject) object.deepClone());
+			}
+		}
+		return clones;
+	}
 
 	/**
 	 * Get any graphics the team client wants to draw
@@ -685,50 +799,249 @@ public class Team {
 	 * @return  
 	 */
 	public Set<SpacewarGraphics> getGraphics() {
-        Set<SpacewarGraphics> graphics = new LinkedHashSet<SpacewarGraphics>();
+		// if the previous call hasn't finished, then just return default (no graphics)
+		Future<Set<SpacewarGraphics>> future = submitToClient(
+				new Callable<Set<SpacewarGraphics>>(){
+					public Set<SpacewarGraphics> call() throws Exception {
+						return teamClient.getGraphics();
+					}
+				});
+		
+		Set<SpacewarGraphics> graphics = waitForClient(future, SpaceSettlersSimulator.TEAM_GRAPHICS_TIMEOUT, 
+				"getTeamGraphics");
+		if (graphics == null) {
+			graphics = new LinkedHashSet<SpacewarGraphics>();
+		}
+		return graphics;
+	}
 
-        // if the previous thread call hasn't finished, then just return default
-		if (executor == null || executor.isTerminated()) {
-			executor = Executors.newSingleThreadExecutor();
-		} else {
-			return graphics;
-		}
-
-		Future<Set<SpacewarGraphics>> future = executor.submit(
-        		new Callable<Set<SpacewarGraphics>>(){
-        			public Set<SpacewarGraphics> call() throws Exception {
-        				return teamClient.getGraphics();
-        			}
-        		});
-        
-        try {
-            //start
-        	graphics = future.get(SpaceSettlersSimulator.TEAM_GRAPHICS_TIMEOUT, TimeUnit.MILLISECONDS);
-            //finished in time
-        } catch (TimeoutException e) {
-            //was terminated
-        	//set empty array of graphics
-        	System.out.println(getTeamName() + " timed out in getTeamGraphics");
-        	graphics = new LinkedHashSet<SpacewarGraphics>();
-        } catch (InterruptedException e) {
-        	//we were interrupted (should not happen but lets be good programmers) 
-        	//set empty array of graphics
-        	graphics = new LinkedHashSet<SpacewarGraphics>();
+	/**
+	 * Run a call to the client on the team's worker thread.  The thread lives for the 
+	 * whole game so it isn't created again for every call.
+	 * 
+	 * @param call
+	 * @return the future for the call or null if the client is still busy with an 
+	 * earlier call (which can happen if it timed out)
+	 */
+	private <T> Future<T> submitToClient(final Callable<T> clientCall) {
+		// the team is charged for the CPU time of every call
+		final Callable<T> call = new Callable<T>() {
+			public T call() throws Exception {
+				cpuBudget.callStarted(teamClient instanceof RemoteTeamClient);
+				try {
+					return clientCall.call();
+				} finally {
+					cpuBudget.callEnded();
+				}
+			}
+		};
+
+		// trusted clients in turbo mode are called right here
+		if (directClientCalls) {
+			FutureTask<T> task = new FutureTask<T>(call);
+			task.run();
+			return task;
+		}
+
+		// only one call to the client can run at once
+		if (!clientBusy.compareAndSet(false, true)) {
+			return null;
+		}
+
+		// a client in another process that is being restarted can't take calls yet
+		if (teamClient instanceof RemoteTeamClient && !((RemoteTeamClient) teamClient).isReady()) {
+			clientBusy.set(false);
+			return null;
+		}
+
+		try {
+			return getExecutor().submit(new Callable<T>() {
+				public T call() throws Exception {
+					long startAllocatedBytes = SpaceSettlersSimulator.getThreadAllocatedBytes();
+					try {
+						return call.call();
+					} finally {
+						workerAllocatedBytes.addAndGet(SpaceSettlersSimulator.getThreadAllocatedBytes() 
+								- startAllocatedBytes);
+						clientBusy.set(false);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// the team has been shut down
+			clientBusy.set(false);
+			return null;
+		}
+	}
+
+	/**
+	 * Get the thread for the team, making it on the first call
+	 * 
+	 * @return
+	 */
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newSingleThreadExecutor(ClientThreads.newThreadFactory("Team " + teamName, 
+					virtualThreads));
+		}
+		return executor;
+	}
+
+	/**
+	 * Wait for a call to the client to finish.  If it takes longer than the timeout, 
+	 * the client thread is interrupted and the call returns null.  Errors in the client 
+	 * also return null.
+	 * 
+	 * When the team has a CPU budget, the call is only stopped once the CPU time it used 
+	 * is more than the team has left (or it has taken BUDGET_WALL_CLOCK_FACTOR times the 
+	 * timeout on the wall clock).
+	 * 
+	 * @param future the future from submitToClient (null if the client was busy)
+	 * @param timeout how long to wait in milliseconds
+	 * @param methodName name used in error messages
+	 * @return the answer from the client or null if there wasn't one
+	 */
+	private <T> T waitForClient(Future<T> future, int timeout, String methodName) {
+		if (future == null) {
+			return null;
+		}
+
+		try {
+			//start
+			if (cpuBudget.isEnabled()) {
+				return waitForClientBudget(future, timeout);
+			}
+			return future.get(timeout, TimeUnit.MILLISECONDS);
+			//finished in time
+		} catch (TimeoutException e) {
+			//was terminated
+			System.err.println(getTeamName() + " timed out in " + methodName);
+			cpuBudget.timedOut();
+			future.cancel(true);
+			// a client in another process can't be interrupted so it is killed and started again
+			if (teamClient instanceof RemoteTeamClient) {
+				((RemoteTeamClient) teamClient).restart();
+			}
+		} catch (InterruptedException e) {
+			//we were interrupted (should not happen but lets be good programmers) 
+			future.cancel(true);
 			e.printStackTrace();
 		} catch (ExecutionException e) {
-			//the executor threw and exception (should not happen but lets be good programmers) 
-			//set empty array of graphics
-        	graphics = new LinkedHashSet<SpacewarGraphics>();
-			e.printStackTrace();
-		} catch (Exception e) {
-			System.err.println("Error in agent.  Printing stack trace");
-        	graphics = new LinkedHashSet<SpacewarGraphics>();
-			e.printStackTrace();
+			// we shouldn't do this but it seems necessary to make
+			// the agent behave (do nothing) if it crashes
+			System.err.println("Error in agent in " + methodName + ".  Printing stack trace.");
+			e.getCause().printStackTrace();
 		}
+		return null;
+	}
 
-        executor.shutdownNow();
-        
-		return graphics;
+	/**
+	 * Wait for a call until the team runs out of CPU time.  The wait wakes up whenever 
+	 * the call could have used up what the team had left and checks how much CPU time 
+	 * it really used.
+	 * 
+	 * @param future
+	 * @param timeout the usual timeout in milliseconds
+	 * @return the answer from the client
+	 * @throws TimeoutException if the call used up the budget or the wall clock limit
+	 */
+	private <T> T waitForClientBudget(Future<T> future, int timeout) 
+			throws InterruptedException, ExecutionException, TimeoutException {
+		long wallLimit = Math.min((long) timeout * BUDGET_WALL_CLOCK_FACTOR, Long.MAX_VALUE / 1000000L);
+		long wallDeadline = System.nanoTime() + wallLimit * 1000000L;
+		while (true) {
+			long allowance = cpuBudget.getAllowance();
+			long wallLeft = wallDeadline - System.nanoTime();
+			if (allowance <= 0 || wallLeft <= 0) {
+				throw new TimeoutException();
+			}
+			try {
+				return future.get(Math.min(allowance, wallLeft), TimeUnit.NANOSECONDS);
+			} catch (TimeoutException e) {
+				// see how much CPU time the call really used
+			}
+		}
+	}
+
+	/**
+	 * Hold the client to a CPU time budget instead of the wall clock timeouts.  Set this 
+	 * before the first call to the client.
+	 * 
+	 * @param millisPerStep CPU time the client can use each time step (0 for no limit)
+	 * @param windowSteps number of steps in the rolling window (0 for no window)
+	 * @param millisPerWindow CPU time the client can use in the window
+	 * @param graceMillis CPU time the client can go over its budgets in the whole game
+	 */
+	public void setCpuBudget(double millisPerStep, int windowSteps, double millisPerWindow, double graceMillis) {
+		cpuBudget = new CpuBudget(millisPerStep, windowSteps, millisPerWindow, graceMillis);
+	}
+
+	/**
+	 * Start a new time step for the CPU budget
+	 */
+	public void startCpuStep() {
+		cpuBudget.startStep();
+	}
+
+	/**
+	 * @return number of calls to the client that were stopped for taking too long
+	 */
+	public int getNumClientTimeouts() {
+		return cpuBudget.getNumTimeouts();
+	}
+
+	/**
+	 * @return number of time steps the client went over its CPU budget
+	 */
+	public int getNumBudgetOverruns() {
+		return cpuBudget.getNumOverruns();
+	}
+
+	/**
+	 * @return CPU time used by the client in milliseconds
+	 */
+	public double getClientCpuMillis() {
+		return cpuBudget.getTotalMillis();
+	}
+
+	/**
+	 * @return bytes allocated on the team's worker thread by the calls to the client
+	 */
+	public long getWorkerAllocatedBytes() {
+		return workerAllocatedBytes.get();
+	}
+
+	/**
+	 * Call the client directly on the simulation thread (no worker thread or timeouts).  
+	 * Only use this for trusted clients.
+	 * 
+	 * @param directClientCalls
+	 */
+	public void setDirectClientCalls(boolean directClientCalls) {
+		this.directClientCalls = directClientCalls;
+	}
+
+	/**
+	 * Call the client on a virtual thread instead of a platform thread (if this Java has 
+	 * virtual threads).  Calls still run one at a time and time out the same way.  Set 
+	 * this before the first call to the client.
+	 * 
+	 * @param virtualThreads
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+
+	/**
+	 * Stop the worker thread for the team (and its process if the client runs in one) at the end of the game
+	 */
+	public synchronized void shutdownExecutor() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+		if (teamClient instanceof RemoteTeamClient) {
+			((RemoteTeamClient) teamClient).stop();
+		}
 	}
 
 	/**
@@ -880,6 +1193,15 @@ public class Team {
 	 * Called at the end of a simulation to cleanup the clients
 	 */
 	public void shutdownClients(Toroidal2DPhysics space) {
+		// let a batched client finish hearing about the last step first
+		if (teamClient instanceof BatchedTeamClient && !directClientCalls) {
+			Future<Boolean> future = submitToClient(new Callable<Boolean>() {
+				public Boolean call() {
+					return true;
+				}
+			});
+			waitForClient(future, SpaceSettlersSimulator.TEAM_END_ACTION_TIMEOUT, "movementEnded");
+		}
 		teamClient.shutDown(space.deepClone());
 	}
 
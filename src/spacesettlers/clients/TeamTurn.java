@@ -0,0 +1,51 @@
+package spacesettlers.clients;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import spacesettlers.actions.AbstractAction;
+import spacesettlers.actions.PurchaseTypes;
+import spacesettlers.objects.powerups.SpaceSettlersPowerupEnum;
+
+/**
+ * Everything a team client answered for one step: what a BatchedTeamClient returns from 
+ * getTeamTurn, and what the simulator waits to use in pipelined mode (see 
+ * Team.prepareTeamTurn).  Missing answers (the client timed out or crashed) are empty maps.
+ *
+ */
+public class TeamTurn {
+	/**
+	 * The actions for the ships and drones
+	 */
+	Map<UUID, AbstractAction> actions;
+
+	/**
+	 * What the team wants to buy
+	 */
+	Map<UUID, PurchaseTypes> purchases;
+
+	/**
+	 * The power ups the team wants to use
+	 */
+	Map<UUID, SpaceSettlersPowerupEnum> powerups;
+
+	public TeamTurn(Map<UUID, AbstractAction> actions, Map<UUID, PurchaseTypes> purchases,
+			Map<UUID, SpaceSettlersPowerupEnum> powerups) {
+		this.actions = actions != null ? actions : new HashMap<UUID, AbstractAction>();
+		this.purchases = purchases != null ? purchases : new HashMap<UUID, PurchaseTypes>();
+		this.powerups = powerups != null ? powerups : new HashMap<UUID, SpaceSettlersPowerupEnum>();
+	}
+
+	public Map<UUID, AbstractAction> getActions() {
+		return actions;
+	}
+
+	public Map<UUID, PurchaseTypes> getPurchases() {
+		return purchases;
+	}
+
+	public Map<UUID, SpaceSettlersPowerupEnum> getPowerups() {
+		return powerups;
+	}
+}
@@ -72,6 +72,94 @@ public class SpaceSettlersConfig {
 	 * Scoring method for this game
 	 */
 	String scoringMethod;
+
+	/**
+	 * If true, collision detection checks every pair of objects instead of using the
+	 * spatial hash grid (useful for debugging the physics, defaults to false)
+	 */
+	boolean bruteForceCollisionDetection;
+
+	/**
+	 * If true, pairs of objects are also checked for passing through each other during the
+	 * time step (so larger time steps can be used without missing collisions)
+	 */
+	boolean continuousCollisionDetection;
+
+	/**
+	 * If more than 0, objects that move farther than this (in pixels) in one time step and are
+	 * near something have their contacts checked at points along the step this far apart
+	 */
+	double maxSubstepDisplacement;
+
+	/**
+	 * If true, every team gets its own clone of the space in each phase of a step (the old 
+	 * behavior).  By default all the teams share one read-only snapshot per phase (only
+	 * clients that implement ReadOnlySpaceTeamClient see it directly, the rest get their 
+	 * own clone of it).
+	 */
+	boolean cloneSpacePerTeam;
+
+	/**
+	 * Number of steps between a client seeing the space and its answers being used.  0 (the
+	 * default) asks the clients and waits for them every step.  1 or more lets the clients
+	 * think about a snapshot while the physics runs, so their actions, purchases and power
+	 * ups are used that many steps after the snapshot was taken.
+	 */
+	int clientActionLatency;
+
+	/**
+	 * If true, the team clients are called on virtual threads (Java 21 and later, platform
+	 * threads are used otherwise).  Useful when the ladder runs many games at once.  The 
+	 * CPU budgets can't read the CPU time of virtual threads and use the wall clock instead.
+	 */
+	boolean virtualClientThreads;
+
+	/**
+	 * CPU time (in milliseconds) each team can use per step.  0 (the default) keeps the
+	 * wall clock timeouts.  The budget counts the CPU time of the client threads so teams
+	 * aren't punished for waiting on a busy machine.
+	 */
+	double clientCpuMillisPerStep;
+
+	/**
+	 * A rolling CPU budget: each team can use clientCpuMillisPerWindow milliseconds in any
+	 * clientCpuWindowSteps steps in a row (0 steps means no rolling budget)
+	 */
+	int clientCpuWindowSteps;
+	double clientCpuMillisPerWindow;
+
+	/**
+	 * CPU time (in milliseconds) each team can go over its budgets in the whole game
+	 */
+	double clientCpuGraceMillis;
+
+	/**
+	 * If true, each team client runs in its own Java process so a client that runs away
+	 * can be killed (and started again).  remoteClientJvmOptions are passed to those
+	 * processes (such as -Xmx256m).
+	 */
+	boolean remoteClients;
+	String remoteClientJvmOptions;
+
+	/**
+	 * If true, the physics keeps the state of asteroids, weapons and cores in primitive
+	 * arrays so moving them doesn't create garbage (defaults to false)
+	 */
+	boolean physicsStateStore;
+
+	/**
+	 * If true, the objects that aren't being controlled (asteroids, weapons, flags) are
+	 * moved in parallel on integrationThreads threads (0 means one per processor)
+	 */
+	boolean parallelIntegration;
+	int integrationThreads;
+
+	/**
+	 * If true, the collisions of each step are split into independent islands that are
+	 * resolved in parallel on collisionThreads threads (0 means one per processor)
+	 */
+	boolean parallelCollisions;
+	int collisionThreads;
 	
 	/**
 	 * @return the height of the simulation environment.  This is measured in pixels.
@@ -174,6 +262,125 @@ public class SpaceSettlersConfig {
 		return scoringMethod;
 	}
 
+	/**
+	 * @return true if collision detection should check every pair of objects
+	 */
+	public boolean isBruteForceCollisionDetection() {
+		return bruteForceCollisionDetection;
+	}
+
+	/**
+	 * @return true if collisions should be checked over the whole time step
+	 */
+	public boolean isContinuousCollisionDetection() {
+		return continuousCollisionDetection;
+	}
+
+	/**
+	 * @return the most an object can move between sub-steps (0 for no sub-stepping)
+	 */
+	public double getMaxSubstepDisplacement() {
+		return maxSubstepDisplacement;
+	}
+
+	/**
+	 * @return true if each team should get its own clone of the space
+	 */
+	public boolean isCloneSpacePerTeam() {
+		return cloneSpacePerTeam;
+	}
+
+	/**
+	 * @return the number of steps before client answers are used (0 to wait for them every step)
+	 */
+	public int getClientActionLatency() {
+		return clientActionLatency;
+	}
+
+	/**
+	 * @return true if the team clients should be called on virtual threads
+	 */
+	public boolean isVirtualClientThreads() {
+		return virtualClientThreads;
+	}
+
+	/**
+	 * @return CPU milliseconds each team can use per step (0 for the wall clock timeouts)
+	 */
+	public double getClientCpuMillisPerStep() {
+		return clientCpuMillisPerStep;
+	}
+
+	/**
+	 * @return the number of steps in the rolling CPU budget (0 for none)
+	 */
+	public int getClientCpuWindowSteps() {
+		return clientCpuWindowSteps;
+	}
+
+	/**
+	 * @return CPU milliseconds each team can use in the rolling window
+	 */
+	public double getClientCpuMillisPerWindow() {
+		return clientCpuMillisPerWindow;
+	}
+
+	/**
+	 * @return CPU milliseconds each team can go over its budgets in the whole game
+	 */
+	public double getClientCpuGraceMillis() {
+		return clientCpuGraceMillis;
+	}
+
+	/**
+	 * @return true if each team client should run in its own process
+	 */
+	public boolean isRemoteClients() {
+		return remoteClients;
+	}
+
+	/**
+	 * @return options for the Java processes of the remote clients (can be null)
+	 */
+	public String getRemoteClientJvmOptions() {
+		return remoteClientJvmOptions;
+	}
+
+	/**
+	 * @return true if the physics should keep object state in primitive arrays
+	 */
+	public boolean isPhysicsStateStore() {
+		return physicsStateStore;
+	}
+
+	/**
+	 * @return true if the physics should move passive objects in parallel
+	 */
+	public boolean isParallelIntegration() {
+		return parallelIntegration;
+	}
+
+	/**
+	 * @return the number of threads used to move objects in parallel (0 means one per processor)
+	 */
+	public int getIntegrationThreads() {
+		return integrationThreads;
+	}
+
+	/**
+	 * @return true if the physics should resolve collisions in parallel
+	 */
+	public boolean isParallelCollisions() {
+		return parallelCollisions;
+	}
+
+	/**
+	 * @return the number of threads used to resolve collisions (0 means one per processor)
+	 */
+	public int getCollisionThreads() {
+		return collisionThreads;
+	}
+
 	public void setTeams(HighLevelTeamConfig[] teams) {
 		this.teams = teams;
 	}
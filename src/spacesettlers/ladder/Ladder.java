@@ -384,6 +384,9 @@ public class Ladder {
 		str += "<th>Average Kills</th>";
 		str += "<th>Average Assists</th>";
 		str += "<th>Average Cores</th>";
+		str += "<th>Average Timeouts</th>";
+		str += "<th>Average Budget Overruns</th>";
+		str += "<th>Average Client CPU (ms)</th>";
 		str += "</tr>";
 		
 		int place = 1;
@@ -398,6 +401,9 @@ public class Ladder {
 			str += "<td>" + String.format("%02.02f", record.getAverageKills()) + "</td>\n";
 			str += "<td>" + String.format("%02.02f", record.getAverageAssists()) + "</td>\n";
 			str += "<td>" + String.format("%02.02f", record.getAverageCores()) + "</td>\n";
+			str += "<td>" + String.format("%02.02f", record.getAverageTimeouts()) + "</td>\n";
+			str += "<td>" + String.format("%02.02f", record.getAverageOverruns()) + "</td>\n";
+			str += "<td>" + String.format("%.1f", record.getAverageClientCpuMillis()) + "</td>\n";
 			str += "</tr>";
 			place++;
 		}
@@ -172,6 +172,11 @@ public class LadderSingleGame implements Callable {
 				ladderOutputString.add(str);
 				System.out.println(str);
 
+				str = "Team: " + team.getLadderName() + " timeouts " + team.getNumClientTimeouts() 
+						+ ", budget overruns " + team.getNumBudgetOverruns() 
+						+ ", client CPU " + String.format("%.1f", team.getClientCpuMillis()) + " ms";
+				ladderOutputString.add(str);
+
 				ladderResultsMap.put(team.getLadderName(), team);
 			}
 		} catch (Exception e) {
@@ -97,6 +97,11 @@ public class RunLadder {
 								JSAP.BOOLEAN_PARSER, "false", JSAP.REQUIRED,
 								JSAP.NO_SHORTFLAG, "debug",
 								"boolean stating if debugging mode (single threading) is on (true) or not (false)"),
+						new FlaggedOption("turbo",
+								JSAP.BOOLEAN_PARSER, "false", JSAP.NOT_REQUIRED,
+								JSAP.NO_SHORTFLAG, "turbo",
+								"boolean stating if headless turbo mode is on (true) or not (false).  Turbo mode calls " +
+								"the clients directly with no threads, timeouts, or graphics so only use it with trusted clients"),
 					});
 		} catch (JSAPException e) {
 			e.printStackTrace();
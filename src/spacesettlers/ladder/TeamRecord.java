@@ -25,6 +25,12 @@ public class TeamRecord {
 	int totalKills, totalDeaths, totalAssists, totalCores;
 	
 	double averageKills, averageDeaths, averageAssists, averageCores;
+	
+	int totalTimeouts, totalOverruns;
+	
+	double totalClientCpuMillis;
+	
+	double averageTimeouts, averageOverruns, averageClientCpuMillis;
 			
 	String teamName;
 	
@@ -58,6 +64,12 @@ public class TeamRecord {
 		averageKills = 0;
 		averageAssists = 0;
 		averageCores = 0;
+		totalTimeouts = 0;
+		totalOverruns = 0;
+		totalClientCpuMillis = 0;
+		averageTimeouts = 0;
+		averageOverruns = 0;
+		averageClientCpuMillis = 0;
 	}
 
 	@Override
@@ -113,6 +125,15 @@ public class TeamRecord {
 		
 		totalCores += team.getTotalCoresCollected();
 		averageCores = (double) totalCores / numGames;
+		
+		totalTimeouts += team.getNumClientTimeouts();
+		averageTimeouts = (double) totalTimeouts / numGames;
+		
+		totalOverruns += team.getNumBudgetOverruns();
+		averageOverruns = (double) totalOverruns / numGames;
+		
+		totalClientCpuMillis += team.getClientCpuMillis();
+		averageClientCpuMillis = totalClientCpuMillis / numGames;
 	}
 
 	public double getAverageScore() {
@@ -150,6 +171,18 @@ public class TeamRecord {
 	public double getAverageCores() {
 		return averageCores;
 	}
+	
+	public double getAverageTimeouts() {
+		return averageTimeouts;
+	}
+	
+	public double getAverageOverruns() {
+		return averageOverruns;
+	}
+	
+	public double getAverageClientCpuMillis() {
+		return averageClientCpuMillis;
+	}
 
 	@Override
 	public String toString() {
@@ -157,7 +190,8 @@ public class TeamRecord {
 				+ ", totalBeacons=" + totalBeacons + ", averageBeacons=" + averageBeacons + ", totalResources="
 				+ totalResources + ", averageResources=" + averageResources + ", totalKills=" + totalKills
 				+ ", totalDeaths=" + totalDeaths + ", averageKills=" + averageKills + ", averageDeaths=" + averageDeaths
-				+ ", teamName=" + teamName + "]";
+				+ ", totalTimeouts=" + totalTimeouts + ", totalOverruns=" + totalOverruns 
+				+ ", averageClientCpuMillis=" + averageClientCpuMillis + ", teamName=" + teamName + "]";
 	}
 
 	
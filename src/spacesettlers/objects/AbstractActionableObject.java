@@ -1,5 +1,6 @@
 package spacesettlers.objects;
 
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
@@ -71,12 +72,13 @@ abstract public class AbstractActionableObject extends AbstractObject {
 
 	/**
 	 * Call the super constructor on objects
+	 * @param typeTag
 	 * @param mass
 	 * @param radius
 	 * @param position
 	 */
-	public AbstractActionableObject(int mass, int radius, Position position) {
-		super(mass, radius, position);
+	public AbstractActionableObject(int typeTag, int mass, int radius, Position position) {
+		super(typeTag, mass, radius, position);
 		currentPowerups = new LinkedHashSet<SpaceSettlersPowerupEnum>();
 		weaponCapacity = INITIAL_WEAPON_CAPACITY;
 		hitsInflicted = killsInflicted = damageInflicted = damageReceived = killsReceived = assistsInflicted = 0;
@@ -84,11 +86,12 @@ abstract public class AbstractActionableObject extends AbstractObject {
 
 	/**
 	 * Call the super constructor on objects
+	 * @param typeTag
 	 * @param mass
 	 * @param radius
 	 */
-	public AbstractActionableObject(int mass, int radius) {
-		super(mass, radius);
+	public AbstractActionableObject(int typeTag, int mass, int radius) {
+		super(typeTag, mass, radius);
 		currentPowerups = new LinkedHashSet<SpaceSettlersPowerupEnum>();
 	}
 	
@@ -105,6 +108,7 @@ abstract public class AbstractActionableObject extends AbstractObject {
 	 * @param weaponCapacity
 	 */
 	public void setWeaponCapacity(int weaponCapacity) {
+		checkWritable();
 		this.weaponCapacity = weaponCapacity;
 	}
 
@@ -129,6 +133,7 @@ abstract public class AbstractActionableObject extends AbstractObject {
 	 * @param powerup
 	 */
 	public void addPowerup(SpaceSettlersPowerupEnum powerup) {
+		checkWritable();
 		currentPowerups.add(powerup);
 	}
 	
@@ -136,6 +141,7 @@ abstract public class AbstractActionableObject extends AbstractObject {
 	 * When an item dies, its power ups disappear
 	 */
 	public void resetPowerups() {
+		checkWritable();
 		currentPowerups.clear();
 	}
 	
@@ -144,6 +150,7 @@ abstract public class AbstractActionableObject extends AbstractObject {
 	 * @param powerup
 	 */
 	public void removePowerup(SpaceSettlersPowerupEnum powerup) {
+		checkWritable();
 		currentPowerups.remove(powerup);
 	}
 	
@@ -184,6 +191,7 @@ abstract public class AbstractActionableObject extends AbstractObject {
 	 * @param maxEnergy
 	 */
 	public void setMaxEnergy(int maxEnergy) {
+		checkWritable();
 		this.maxEnergy = maxEnergy;
 	}
 
@@ -208,6 +216,7 @@ abstract public class AbstractActionableObject extends AbstractObject {
 	 * @param freezeCount
 	 */
 	public void setFreezeCount(int freezeCount) {
+		checkWritable();
 		this.freezeCount = freezeCount;
 		if (freezeCount > 0) {
 			super.isControllable = false;
@@ -219,6 +228,7 @@ abstract public class AbstractActionableObject extends AbstractObject {
 	 * and set the ship back to controllable when it gets to 0
 	 */
 	public void decrementFreezeCount() {
+		checkWritable();
 		freezeCount--;
 		if (freezeCount <= 0) {
 			super.isControllable = true;
@@ -229,6 +239,7 @@ abstract public class AbstractActionableObject extends AbstractObject {
 	 * @param teamName the teamName to set
 	 */
 	public void setTeamName(String teamName) {
+		checkWritable();
 		this.teamName = teamName;
 	}
 
@@ -252,6 +263,7 @@ abstract public class AbstractActionableObject extends AbstractObject {
 	 * increment the hitsInflicted for this ship
 	 */
 	public void incrementHitsInflicted() {
+		checkWritable();
 		this.hitsInflicted++;
 	}
 
@@ -283,6 +295,7 @@ abstract public class AbstractActionableObject extends AbstractObject {
 	 * increment the kill for this object
 	 */
 	public void incrementKillsInflicted() {
+		checkWritable();
 		this.killsInflicted++;
 	}
 
@@ -290,6 +303,7 @@ abstract public class AbstractActionableObject extends AbstractObject {
 	 * increment the assists for this object
 	 */
 	public void incrementAssistsInflicted() {
+		checkWritable();
 		this.assistsInflicted++;
 	}
 
@@ -297,6 +311,7 @@ abstract public class AbstractActionableObject extends AbstractObject {
 	 * increment the kill received for this object
 	 */
 	public void incrementKillsReceived() {
+		checkWritable();
 		this.killsReceived++;
 	}
 
@@ -312,6 +327,7 @@ abstract public class AbstractActionableObject extends AbstractObject {
 	 * increment the damageReceived for this object
 	 */
 	public void incrementDamageReceived(int increment) {
+		checkWritable();
 		this.damageReceived += increment;
 	}
 	
@@ -327,6 +343,7 @@ abstract public class AbstractActionableObject extends AbstractObject {
 	 * increment the damageInflicted for this ship
 	 */
 	public void incrementDamageInflicted(int increment) {
+		checkWritable();
 		this.damageInflicted += increment;
 	}
 	
@@ -337,8 +354,24 @@ abstract public class AbstractActionableObject extends AbstractObject {
 	 * @return current powerups (as a set, there is no order)
 	 */
 	public Set<SpaceSettlersPowerupEnum> getCurrentPowerups() {
+		if (readOnly) {
+			return Collections.unmodifiableSet(currentPowerups);
+		}
 		return currentPowerups;
 	}
+
+	/**
+	 * The ships tagged for kills and assists are copies that go with this object
+	 */
+	public void makeReadOnly() {
+		super.makeReadOnly();
+		if (killTagTeam != null) {
+			killTagTeam.makeReadOnly();
+		}
+		if (assistTagTeam != null) {
+			assistTagTeam.makeReadOnly();
+		}
+	}
 	
 	/**
 	 * Tag the current shooter in case of kill 
@@ -346,6 +379,7 @@ abstract public class AbstractActionableObject extends AbstractObject {
 	 * @param teamName
 	 */
 	public void tagShooter(Ship firingShip) {
+		checkWritable();
 		if (killTagTeam != null) {
 			// if there was already a kill tag team, move it to assist
 			assistTagTeam = killTagTeam;
@@ -365,6 +399,7 @@ abstract public class AbstractActionableObject extends AbstractObject {
 	}		
 	
 	public void updateTags() {
+		checkWritable();
 		if (this.getEnergy() > TAG_MAX_ENERGY) {
 			this.killTagTeam = null;
 			this.assistTagTeam = null;
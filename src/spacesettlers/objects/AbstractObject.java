@@ -13,6 +13,22 @@ import spacesettlers.utilities.Position;
  * @author amy
  */
 abstract public class AbstractObject {
+	/**
+	 * Type tags for each kind of object (used to look up what happens when two objects
+	 * collide without a chain of instanceof checks)
+	 */
+	public static final int TYPE_OTHER = 0;
+	public static final int TYPE_ASTEROID = 1;
+	public static final int TYPE_BASE = 2;
+	public static final int TYPE_BEACON = 3;
+	public static final int TYPE_SHIP = 4;
+	public static final int TYPE_DRONE = 5;
+	public static final int TYPE_FLAG = 6;
+	public static final int TYPE_AI_CORE = 7;
+	public static final int TYPE_MISSILE = 8;
+	public static final int TYPE_EMP = 9;
+	public static final int NUM_TYPES = 10;
+
 	/**
 	 * Position of the object in the simulator space 
 	 */
@@ -80,10 +96,42 @@ abstract public class AbstractObject {
 	 */
 	protected boolean respawn;
 	
+	/**
+	 * The type tag of this object (one of the TYPE constants)
+	 */
+	protected final int typeTag;
+	
+	/**
+	 * Small id for the object that is unique in the space it is in (-1 until it is added 
+	 * to a space).  Slots are reused once an object is removed so they can index arrays.
+	 */
+	protected int slotId;
+	
+	/**
+	 * Told when the object dies (set by the space the object is in)
+	 */
+	protected DeathListener deathListener;
+
+	/**
+	 * True for the objects in a read-only snapshot of the space (see makeReadOnly)
+	 */
+	protected transient boolean readOnly;
+	
+	/**
+	 * Listens for objects dying so the space only has to clean up the objects that died
+	 */
+	public interface DeathListener {
+		void objectDied(AbstractObject object);
+	}
+	
 	/**
 	 * All objects start at rest
+	 * 
+	 * @param typeTag the TYPE constant of the concrete class (its TYPE_TAG)
 	 */
-	public AbstractObject(int mass, int radius) {
+	public AbstractObject(int typeTag, int mass, int radius) {
+		this.typeTag = typeTag;
+		this.slotId = -1;
 		this.mass = mass;
 		this.originalMass = mass;
 		this.radius = radius;
@@ -97,8 +145,12 @@ abstract public class AbstractObject {
 
 	/**
 	 * All objects start at rest
+	 * 
+	 * @param typeTag the TYPE constant of the concrete class (its TYPE_TAG)
 	 */
-	public AbstractObject(int mass, int radius, Position position) {
+	public AbstractObject(int typeTag, int mass, int radius, Position position) {
+		this.typeTag = typeTag;
+		this.slotId = -1;
 		this.mass = mass;
 		this.originalMass = mass;
 		this.radius = radius;
@@ -110,12 +162,63 @@ abstract public class AbstractObject {
 		this.numCores = 0;
 	}
 
+	/**
+	 * Return the type tag of the object
+	 * 
+	 * @return one of the TYPE constants
+	 */
+	public final int getTypeTag() {
+		return typeTag;
+	}
+
+	/**
+	 * Return the slot id of the object.  Copies of the space keep the same slot ids so 
+	 * this can be used to index arrays instead of hashing the UUID.  A slot can be given 
+	 * to a new object after this one is removed from the space.
+	 * 
+	 * @return the slot id (or -1 if the object is not in a space)
+	 */
+	public final int getSlotId() {
+		return slotId;
+	}
+
+	/**
+	 * Set the slot id (only the simulator should call this when adding and removing objects)
+	 * 
+	 * @param slotId
+	 */
+	public void setSlotId(int slotId) {
+		checkWritable();
+		this.slotId = slotId;
+	}
+
+	/**
+	 * Set the listener that is told when this object dies (only the simulator should 
+	 * call this when adding and removing objects)
+	 * 
+	 * @param deathListener the listener or null for none
+	 */
+	public void setDeathListener(DeathListener deathListener) {
+		checkWritable();
+		this.deathListener = deathListener;
+	}
+
+	/**
+	 * @return the listener that is told when this object dies (null if there isn't one)
+	 */
+	public DeathListener getDeathListener() {
+		return deathListener;
+	}
 	
 	/**
 	 * @param isAlive set to true if the object is alive
 	 */
 	public void setAlive(boolean isAlive) {
+		checkWritable();
 		this.isAlive = isAlive;
+		if (!isAlive && deathListener != null) {
+			deathListener.objectDied(this);
+		}
 	}
 
 	/**
@@ -123,6 +226,7 @@ abstract public class AbstractObject {
 	 * drawn if it is alive as well.
 	 */
 	public void setDrawable(boolean isDrawable) {
+		checkWritable();
 		this.isDrawable = isDrawable;
 	}
 	
@@ -157,6 +261,7 @@ abstract public class AbstractObject {
 	 * @param location
 	 */
 	public void setPosition(Position location) {
+		checkWritable();
 		this.position = location;
 	}
 
@@ -182,6 +287,7 @@ abstract public class AbstractObject {
 	 * @param mass the new mass
 	 */
 	public void setMass(int mass) {
+		checkWritable();
 		this.mass = mass;
 	}
 
@@ -191,6 +297,7 @@ abstract public class AbstractObject {
 	 * @param newResources new list of AbstractResource to add to the cargo bay
 	 */
 	public void addResources(ResourcePile newResources) {
+		checkWritable();
 		resources.add(newResources);
 		setMass((int) (ResourceFactory.REFINED_RESOURCE_DENSITY_MULTIPLIER * resources.getMass() + originalMass));
 	}
@@ -208,6 +315,7 @@ abstract public class AbstractObject {
 	 * Reset the list of resources (probably because the ship died)
 	 */
 	public void resetResources() {
+		checkWritable();
 		resources.reset();
 		setMass(originalMass);
 	}
@@ -252,6 +360,7 @@ abstract public class AbstractObject {
 	 * @return
 	 */
 	public void setRespawn(boolean newRespawn) {
+		checkWritable();
 		this.respawn = newRespawn;
 	}
 	
@@ -308,10 +417,38 @@ abstract public class AbstractObject {
 		return "AbstractObject at " + position;
 	}
 	
+	/**
+	 * Stop this object from being changed.  The objects in a read-only snapshot of the 
+	 * space are shared by all of the teams (and all of the actions in a step), so none of 
+	 * them can change what the others see.  deepClone gives a copy that can be changed.
+	 */
+	public void makeReadOnly() {
+		readOnly = true;
+		position.makeReadOnly();
+		resources.makeReadOnly();
+	}
+
+	/**
+	 * @return true if this object is in a read-only snapshot and can't be changed
+	 */
+	public boolean isReadOnly() {
+		return readOnly;
+	}
+
+	/**
+	 * Throw an exception if something tries to change an object in a read-only snapshot
+	 */
+	protected void checkWritable() {
+		if (readOnly) {
+			throw new UnsupportedOperationException("This object is in a read-only snapshot.  Use deepClone() to get a copy you can change.");
+		}
+	}
+
 	/**
 	 * Resets the UUID of the object (for respawning)
 	 */
 	public void resetId() {
+		checkWritable();
 		id = UUID.randomUUID();
 	}
 
@@ -327,6 +464,7 @@ abstract public class AbstractObject {
 	 * Increment the number of flags held by this object
 	 */
 	public void incrementFlags() {
+		checkWritable();
 		numFlags++;
 	}
 
@@ -342,6 +480,7 @@ abstract public class AbstractObject {
 	 * Increment the number of cores held by this object
 	 */
 	public void incrementCores(int number) {
+		checkWritable();
 		numCores+= number;
 	}
 
@@ -17,6 +17,11 @@ import spacesettlers.utilities.Position;
  *
  */
 public class AiCore extends AbstractObject{
+	/**
+	 * The type tag of every AI core (see AbstractObject.getTypeTag())
+	 */
+	public static final int TYPE_TAG = TYPE_AI_CORE;
+
 	
 	/**
 	 * The radius of an AiCore
@@ -44,7 +49,7 @@ public class AiCore extends AbstractObject{
 
 	
 	public AiCore(Position location, String teamNameIn, Color teamColorIn) {
-		super(CORE_MASS, CORE_RADIUS, location);
+		super(TYPE_TAG, CORE_MASS, CORE_RADIUS, location);
 		this.teamName = teamNameIn;
 		this.teamColor = teamColorIn;
 		this.energy = CORE_MAX_ENERGY;
@@ -62,6 +67,7 @@ public class AiCore extends AbstractObject{
 		newCore.setAlive(isAlive);
 		newCore.energy = energy;
 		newCore.id = id;
+		newCore.slotId = slotId;
 		return newCore;
 	}
 	
@@ -69,6 +75,7 @@ public class AiCore extends AbstractObject{
 	 * Resets the energy back to full for the core
 	 */
 	public void resetCoreEnergy() {
+		checkWritable();
 		this.energy = AiCore.CORE_MAX_ENERGY;
 	}
 	
@@ -76,6 +83,7 @@ public class AiCore extends AbstractObject{
 	 * Update the energy of the core and kill it energy is depleted
 	 */
 	public void updateEnergy(int change) {
+		checkWritable();
 		this.energy += change;
 		if (this.energy <= 0) {
 			this.setAlive(false);
@@ -13,6 +13,11 @@ import spacesettlers.utilities.Position;
  *
  */
 public class Asteroid extends AbstractObject {
+	/**
+	 * The type tag of every asteroid (see AbstractObject.getTypeTag())
+	 */
+	public static final int TYPE_TAG = TYPE_ASTEROID;
+
 	public static final int MIN_ASTEROID_RADIUS = 5;
 	public static final int MAX_ASTEROID_RADIUS = 15;
 	public static final int MIN_ASTEROID_MASS = 2000;
@@ -36,7 +41,7 @@ public class Asteroid extends AbstractObject {
      * @param metals
      */
     public Asteroid(Position location, boolean mineable, int radius, boolean moveable, double fuel, double water, double metals) {
-		super(MIN_ASTEROID_MASS, radius, location);
+		super(TYPE_TAG, MIN_ASTEROID_MASS, radius, location);
 		
 		setDrawable(true);
 		setAlive(true);
@@ -68,7 +73,7 @@ public class Asteroid extends AbstractObject {
      * @param initialResources
      */
     public Asteroid(Position location, boolean mineable, int radius, boolean moveable, ResourcePile initialResources) {
-		super(MIN_ASTEROID_MASS, radius, location);
+		super(TYPE_TAG, MIN_ASTEROID_MASS, radius, location);
 		
 		setDrawable(true);
 		setAlive(true);
@@ -102,6 +107,7 @@ public class Asteroid extends AbstractObject {
     			fuelProportion, waterProportion, metalsProportion);
     	newAsteroid.setAlive(isAlive);
     	newAsteroid.id = id;
+    	newAsteroid.slotId = slotId;
     	return newAsteroid;
     }
     
@@ -110,6 +116,7 @@ public class Asteroid extends AbstractObject {
      * Sets the resource value based on the radius
      */
     public void resetResources() {
+    	checkWritable();
     	resources.setResources(ResourceTypes.FUEL, ResourceFactory.getResourceQuantity(ResourceTypes.FUEL, radius));
     	resources.setResources(ResourceTypes.WATER, ResourceFactory.getResourceQuantity(ResourceTypes.WATER, radius));
     	resources.setResources(ResourceTypes.METALS, ResourceFactory.getResourceQuantity(ResourceTypes.METALS, radius));
@@ -152,6 +159,7 @@ public class Asteroid extends AbstractObject {
 	 * @param newMineable
 	 */
 	public void setMineable(boolean newMineable) {
+		checkWritable();
 		this.isMineable = newMineable;
 	}
 
@@ -15,6 +15,11 @@ import spacesettlers.utilities.Position;
  *
  */
 public class Base extends AbstractActionableObject {
+    /**
+     * The type tag of every base (see AbstractObject.getTypeTag())
+     */
+    public static final int TYPE_TAG = TYPE_BASE;
+
     public static final int BASE_RADIUS = 10;
     public static final int BASE_MASS = 1000;
     public static final int INITIAL_BASE_ENERGY = 5000;
@@ -44,7 +49,7 @@ public class Base extends AbstractActionableObject {
 	
 	
 	public Base(Position location, String teamName, Team team, boolean isHomeBase) {
-		super(BASE_MASS, BASE_RADIUS, location);
+		super(TYPE_TAG, BASE_MASS, BASE_RADIUS, location);
 		this.teamName = teamName;
 		teamColor = team.getTeamColor();
 		graphic = new BaseGraphics(this, teamColor);
@@ -72,6 +77,7 @@ public class Base extends AbstractActionableObject {
 		newBase.energy = energy;
 		newBase.setAlive(isAlive);
 		newBase.id = id;
+		newBase.slotId = slotId;
 		newBase.maxEnergy = maxEnergy;
 		newBase.currentPowerups = new LinkedHashSet<SpaceSettlersPowerupEnum>(currentPowerups);
 		newBase.weaponCapacity = weaponCapacity;
@@ -112,6 +118,7 @@ public class Base extends AbstractActionableObject {
 	 * @param numCores
 	 */
 	public void incrementCores(int numCores) { 
+		checkWritable();
 		super.incrementCores(numCores);
 		team.incrementCoresCollected(numCores);
 	}
@@ -145,6 +152,7 @@ public class Base extends AbstractActionableObject {
 	 * @param healingIncrement
 	 */
 	public void setHealingIncrement(int healingIncrement) {
+		checkWritable();
 		this.healingIncrement = healingIncrement;
 	}
 
@@ -156,6 +164,7 @@ public class Base extends AbstractActionableObject {
 	 * @param difference
 	 */
 	public void addResources(ResourcePile newResources) {
+		checkWritable();
 		super.addResources(newResources);
 		
 		// and increment the resources for the entire team
@@ -169,6 +178,7 @@ public class Base extends AbstractActionableObject {
 	 * @param flag
 	 */
 	public void addFlag(Flag flag) {
+		checkWritable();
 		flag.depositFlag();
 		super.incrementFlags();
 		team.incrementTotalFlagsCollected();
@@ -180,6 +190,7 @@ public class Base extends AbstractActionableObject {
 	 * @param difference
 	 */
 	public void updateEnergy(int difference) {
+		checkWritable();
 		energy += difference;
 		
 		if (energy < 0) {
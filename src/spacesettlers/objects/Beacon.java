@@ -4,6 +4,11 @@ import spacesettlers.graphics.BeaconGraphics;
 import spacesettlers.utilities.Position;
 
 public class Beacon extends AbstractObject {
+	/**
+	 * The type tag of every beacon (see AbstractObject.getTypeTag())
+	 */
+	public static final int TYPE_TAG = TYPE_BEACON;
+
 	/**
 	 * The radius of a beacon
 	 */
@@ -14,7 +19,7 @@ public class Beacon extends AbstractObject {
 	public static final int BEACON_ENERGY_BOOST = 2500;
 	
 	public Beacon(Position location) {
-		super(BEACON_MASS, BEACON_RADIUS, location);
+		super(TYPE_TAG, BEACON_MASS, BEACON_RADIUS, location);
 		
 		setDrawable(true);
 		setAlive(true);
@@ -29,6 +34,7 @@ public class Beacon extends AbstractObject {
 		Beacon newBeacon = new Beacon(getPosition().deepCopy());
 		newBeacon.setAlive(isAlive);
 		newBeacon.id = id;
+		newBeacon.slotId = slotId;
 		return newBeacon;
 	}
 
@@ -22,6 +22,11 @@ import spacesettlers.utilities.Position;
  * @author josiah
  */
 public class Drone extends AbstractActionableObject {
+	/**
+	 * The type tag of every drone (see AbstractObject.getTypeTag())
+	 */
+	public static final int TYPE_TAG = TYPE_DRONE;
+
 	public static final int DRONE_RADIUS = 8;
 	public static final int DRONE_MASS = 20;
 	public static final int DRONE_INITIAL_ENERGY = 500;
@@ -64,7 +69,7 @@ public class Drone extends AbstractActionableObject {
 	 * @param teamName
 	 */
 	public Drone(String teamName, Color teamColor, Team team, Position location, ResourcePile resources) {
-		super(DRONE_MASS, DRONE_RADIUS, location);
+		super(TYPE_TAG, DRONE_MASS, DRONE_RADIUS, location);
 		this.position = location;
 		this.team = team;
 		setDrawable(true);
@@ -101,6 +106,7 @@ public class Drone extends AbstractActionableObject {
 		newDrone.graphic = new DroneGraphics(newDrone, teamColor);
 		newDrone.currentAction = currentAction;
 		newDrone.id = id;
+		newDrone.slotId = slotId;
 		newDrone.maxEnergy = maxEnergy;
 		newDrone.weaponCapacity = weaponCapacity;
 		newDrone.hitsInflicted = hitsInflicted;
@@ -135,6 +141,7 @@ public class Drone extends AbstractActionableObject {
 	 * Resets the drone's energy to the initial level
 	 */
 	public void resetEnergy() {
+		checkWritable();
 		energy = DRONE_INITIAL_ENERGY;
 	}
 
@@ -155,12 +162,23 @@ public class Drone extends AbstractActionableObject {
 		return flag;
 	}
 
+	/**
+	 * The flag being carried is a copy that goes with this object
+	 */
+	public void makeReadOnly() {
+		super.makeReadOnly();
+		if (flag != null) {
+			flag.makeReadOnly();
+		}
+	}
+
 	/**
 	 * Add the flag to the drone's inventory
 	 * 
 	 * @param flag
 	 */
 	public void addFlag(Flag flag) {
+		checkWritable();
 		this.flag = flag;
 		this.carryingFlag = true;
 		this.incrementFlags();
@@ -189,6 +207,7 @@ public class Drone extends AbstractActionableObject {
 	 * @param space
 	 */
 	public void setDeadAndDropObjects(Random rand, Toroidal2DPhysics space) {
+		checkWritable();
 		resetResources();
 		resetPowerups();
 		resetAiCores(); 
@@ -205,6 +224,7 @@ public class Drone extends AbstractActionableObject {
 	 * so this is an override of the abstract class.
 	 */
 	public void setAlive(boolean value) {
+		checkWritable();
 		if (value == false) {
 			resetResources();
 			resetPowerups();
@@ -222,6 +242,7 @@ public class Drone extends AbstractActionableObject {
 	 * Will also need code inside physics sim to drop all AiCores
 	 */
 	public void resetAiCores() {
+		checkWritable();
 		//Just erase the core count, as we are not currently tracking the specific cores held by a ship.
 		numCores = 0;
 		/*
@@ -237,6 +258,7 @@ public class Drone extends AbstractActionableObject {
 	 * A drone has received cores.
 	 */
 	public void setCores(int numCores) {
+		checkWritable();
 		
 		super.incrementCores(numCores);//herr0861 edit
 	}
@@ -338,6 +360,7 @@ public class Drone extends AbstractActionableObject {
 	 * @return
 	 */
 	public void setCurrentAction(Toroidal2DPhysics space) {
+		checkWritable();
 		//TODO Make this method call the 
 		
 		if (this.resources.getTotal() > 0 || this.carryingFlag || this.getNumCores() > 0) { //if we are carrying resources, a flag, or cores
@@ -392,6 +415,7 @@ public class Drone extends AbstractActionableObject {
 	 * @param currentAction
 	 */
 	public void setCurrentAction(AbstractAction currentAction) {
+		checkWritable();
 		this.currentAction = currentAction;
 	}
 
@@ -415,6 +439,7 @@ public class Drone extends AbstractActionableObject {
 	 */
 	@Override
 	public void updateEnergy(int difference) {
+		checkWritable();
 		energy += difference;
 
 		if (energy > maxEnergy) {
@@ -426,6 +451,7 @@ public class Drone extends AbstractActionableObject {
 	 * Deposit the flag by setting the ship to not carry it
 	 */
 	public void depositFlag() {
+		checkWritable();
 		this.carryingFlag = false;
 		flag.depositFlag();
 		flag = null;
@@ -20,6 +20,11 @@ import spacesettlers.utilities.Position;
  * @author amy
  */
 public class Flag extends AbstractObject {
+    /**
+     * The type tag of every flag (see AbstractObject.getTypeTag())
+     */
+    public static final int TYPE_TAG = TYPE_FLAG;
+
     public static final int FLAG_RADIUS = 10;
     public static final int FLAG_MASS = 100;
 
@@ -62,7 +67,7 @@ public class Flag extends AbstractObject {
 	 * @param startingLocations
 	 */
 	public Flag(Position position, String teamName, Team team, Position[] startingLocations) {
-		super(FLAG_MASS, FLAG_RADIUS, position);
+		super(TYPE_TAG, FLAG_MASS, FLAG_RADIUS, position);
 		this.teamName = teamName;
 		this.team = team;
 		teamColor = team.getTeamColor();
@@ -92,6 +97,7 @@ public class Flag extends AbstractObject {
 			newFlag.carryingShipOrDrone = this.carryingShipOrDrone.deepClone();
 		}
 		newFlag.id = id;
+		newFlag.slotId = slotId;
 		return newFlag;
 	}
 
@@ -120,6 +126,7 @@ public class Flag extends AbstractObject {
 	 * @param ship
 	 */
 	public void pickupFlag(Drone drone) {
+		checkWritable();
 		this.beingCarried = true;
 		this.carryingShipOrDrone = drone;
 		setPosition(drone.getPosition().deepCopy());
@@ -135,6 +142,7 @@ public class Flag extends AbstractObject {
 	 * @param ship
 	 */
 	public void pickupFlag(Ship ship) {
+		checkWritable();
 		this.beingCarried = true;
 		this.carryingShipOrDrone = ship;
 		setPosition(ship.getPosition().deepCopy());
@@ -148,6 +156,7 @@ public class Flag extends AbstractObject {
 	 * Drop the flag (likely the ship died)
 	 */
 	public void dropFlag(Random rand, Toroidal2DPhysics space) {
+		checkWritable();
 		//System.out.println("Flag being dropped at " + carryingShip.getPosition());
 		this.beingCarried = false;
 		this.setDrawable(true);
@@ -168,6 +177,7 @@ public class Flag extends AbstractObject {
 	 * and sets it to not being carried.  It will regenerate on the next timestep.
 	 */
 	public void depositFlag() {
+		checkWritable();
 		this.beingCarried = false;
 		this.setAlive(false);
 		this.setDrawable(false);
@@ -0,0 +1,135 @@
+package spacesettlers.objects;
+
+import java.awt.Color;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+
+import spacesettlers.objects.weapons.Missile;
+import spacesettlers.utilities.Position;
+import spacesettlers.utilities.Vector2D;
+
+/**
+ * Writes the objects there are a lot of (asteroids, beacons, cores and missiles) as a few
+ * numbers each so a space can be sent to another process quickly.  Reading one back gives
+ * the same object deepClone would.  Everything else is left to SnapshotCodec.
+ */
+public class ObjectCodec {
+	/**
+	 * @param object
+	 * @return true if the object can be written here
+	 */
+	public static boolean canWrite(AbstractObject object) {
+		Class<?> type = object.getClass();
+		return type == Asteroid.class || type == Beacon.class || type == AiCore.class || type == Missile.class;
+	}
+
+	/**
+	 * Write an object (canWrite has to be true for it)
+	 *
+	 * @param out
+	 * @param object
+	 * @throws IOException
+	 */
+	public static void write(DataOutputStream out, AbstractObject object) throws IOException {
+		out.writeByte(object.getTypeTag());
+		writeId(out, object.id);
+		out.writeInt(object.slotId);
+		out.writeBoolean(object.isAlive);
+		writePosition(out, object.position);
+
+		if (object instanceof Asteroid) {
+			Asteroid asteroid = (Asteroid) object;
+			out.writeBoolean(asteroid.isMineable);
+			out.writeInt(asteroid.radius);
+			out.writeBoolean(asteroid.isMoveable);
+			out.writeDouble(asteroid.getFuelProportion());
+			out.writeDouble(asteroid.getWaterProportion());
+			out.writeDouble(asteroid.getMetalsProportion());
+		} else if (object instanceof AiCore) {
+			AiCore core = (AiCore) object;
+			out.writeUTF(core.teamName);
+			out.writeInt(core.teamColor.getRGB());
+			out.writeInt(core.energy);
+		} else if (object instanceof Missile) {
+			writeId(out, ((Missile) object).getFiringShip().getId());
+		}
+	}
+
+	/**
+	 * Read an object written by write
+	 *
+	 * @param in
+	 * @param ships the ships of the space (missiles are given their ship)
+	 * @return
+	 * @throws IOException
+	 */
+	public static AbstractObject read(DataInputStream in, Map<UUID, Ship> ships) throws IOException {
+		int typeTag = in.readByte();
+		UUID id = readId(in);
+		int slotId = in.readInt();
+		boolean isAlive = in.readBoolean();
+		Position position = readPosition(in);
+
+		AbstractObject object;
+		switch (typeTag) {
+		case AbstractObject.TYPE_ASTEROID:
+			boolean mineable = in.readBoolean();
+			int radius = in.readInt();
+			boolean moveable = in.readBoolean();
+			object = new Asteroid(position, mineable, radius, moveable, in.readDouble(), in.readDouble(), in.readDouble());
+			break;
+		case AbstractObject.TYPE_BEACON:
+			object = new Beacon(position);
+			break;
+		case AbstractObject.TYPE_AI_CORE:
+			AiCore core = new AiCore(position, in.readUTF(), new Color(in.readInt(), true));
+			core.energy = in.readInt();
+			object = core;
+			break;
+		case AbstractObject.TYPE_MISSILE:
+			Ship firingShip = ships.get(readId(in));
+			if (firingShip == null) {
+				throw new IOException("Missile without its ship");
+			}
+			// the missile moves itself (and the position it is given) out in front of the ship
+			object = new Missile(position.deepCopy(), firingShip);
+			object.position = position;
+			break;
+		default:
+			throw new IOException("Unknown object type " + typeTag);
+		}
+
+		object.setAlive(isAlive);
+		object.id = id;
+		object.slotId = slotId;
+		return object;
+	}
+
+	private static void writeId(DataOutputStream out, UUID id) throws IOException {
+		out.writeLong(id.getMostSignificantBits());
+		out.writeLong(id.getLeastSignificantBits());
+	}
+
+	private static UUID readId(DataInputStream in) throws IOException {
+		return new UUID(in.readLong(), in.readLong());
+	}
+
+	private static void writePosition(DataOutputStream out, Position position) throws IOException {
+		out.writeDouble(position.getX());
+		out.writeDouble(position.getY());
+		out.writeDouble(position.getOrientation());
+		out.writeDouble(position.getTranslationalVelocityX());
+		out.writeDouble(position.getTranslationalVelocityY());
+		out.writeDouble(position.getAngularVelocity());
+	}
+
+	private static Position readPosition(DataInputStream in) throws IOException {
+		Position position = new Position(in.readDouble(), in.readDouble(), in.readDouble());
+		position.setTranslationalVelocity(new Vector2D(in.readDouble(), in.readDouble()));
+		position.setAngularVelocity(in.readDouble());
+		return position;
+	}
+}
@@ -20,6 +20,11 @@ import spacesettlers.utilities.Position;
  * @author amy
  */
 public class Ship extends AbstractActionableObject {
+	/**
+	 * The type tag of every ship (see AbstractObject.getTypeTag())
+	 */
+	public static final int TYPE_TAG = TYPE_SHIP;
+
 	public static final int SHIP_RADIUS = 15;
 	public static final int SHIP_MASS = 200;
 	public static final int SHIP_INITIAL_ENERGY = 5000;
@@ -73,7 +78,7 @@ public class Ship extends AbstractActionableObject {
 	 * @param teamName
 	 */
 	public Ship(String teamName, Color teamColor, Position location) {
-		super(SHIP_MASS, SHIP_RADIUS, location);
+		super(TYPE_TAG, SHIP_MASS, SHIP_RADIUS, location);
 		setDrawable(true);
 		setAlive(true);
 		this.teamName = teamName;
@@ -117,6 +122,7 @@ public class Ship extends AbstractActionableObject {
 		newShip.currentAction = currentAction;
 		newShip.numWeaponsInAir = numWeaponsInAir;
 		newShip.id = id;
+		newShip.slotId = slotId;
 		newShip.maxEnergy = maxEnergy;
 		newShip.currentPowerups = new LinkedHashSet<SpaceSettlersPowerupEnum>(currentPowerups);
 		newShip.weaponCapacity = weaponCapacity;
@@ -166,6 +172,7 @@ public class Ship extends AbstractActionableObject {
 		newShip.currentAction = currentAction;
 		newShip.numWeaponsInAir = numWeaponsInAir;
 		newShip.id = id;
+		newShip.slotId = slotId;
 		newShip.maxEnergy = maxEnergy;
 		newShip.currentPowerups = new LinkedHashSet<SpaceSettlersPowerupEnum>(currentPowerups);
 		newShip.weaponCapacity = weaponCapacity;
@@ -193,6 +200,7 @@ public class Ship extends AbstractActionableObject {
 	 * Resets the ship energy to the initial level
 	 */
 	public void resetEnergy() {
+		checkWritable();
 		energy = SHIP_INITIAL_ENERGY;
 	}
 
@@ -214,12 +222,23 @@ public class Ship extends AbstractActionableObject {
 		return flag;
 	}
 
+	/**
+	 * The flag being carried is a copy that goes with this object
+	 */
+	public void makeReadOnly() {
+		super.makeReadOnly();
+		if (flag != null) {
+			flag.makeReadOnly();
+		}
+	}
+
 	/**
 	 * Add the flag to the ship's inventory
 	 * 
 	 * @param flag
 	 */
 	public void addFlag(Flag flag) {
+		checkWritable();
 		this.flag = flag;
 		this.carryingFlag = true;
 		this.incrementFlags();
@@ -257,6 +276,7 @@ public class Ship extends AbstractActionableObject {
 	 * Increment the weapons in play
 	 */
 	public void incrementWeaponCount(){
+		checkWritable();
 		numWeaponsInAir++;
 	}
 
@@ -264,6 +284,7 @@ public class Ship extends AbstractActionableObject {
 	 * Decrease the weapon count by one
 	 */
 	public void decrementWeaponCount() {
+		checkWritable();
 		numWeaponsInAir--;
 	}
 
@@ -273,6 +294,7 @@ public class Ship extends AbstractActionableObject {
 	 * @param space
 	 */
 	public void setDeadAndDropObjects(Random rand, Toroidal2DPhysics space) {
+		checkWritable();
 		respawnCounter = Math.min(lastRespawnCounter * RESPAWN_INCREMENT, MAX_RESPAWN_INTERVAL);
 		lastRespawnCounter = respawnCounter; 
 		resetResources();
@@ -290,6 +312,7 @@ public class Ship extends AbstractActionableObject {
 	 * so this is an override of the abstract class
 	 */
 	public void setAlive(boolean value) {
+		checkWritable();
 		if (value == false) {
 			respawnCounter = Math.min(lastRespawnCounter * RESPAWN_INCREMENT, MAX_RESPAWN_INTERVAL);
 			lastRespawnCounter = respawnCounter; 
@@ -308,6 +331,7 @@ public class Ship extends AbstractActionableObject {
 	 * Will also need code inside physics sim to drop all AiCores
 	 */
 	public void resetAiCores() {
+		checkWritable();
 		//Just erase the core count, as we are not currently tracking the specific cores held by a ship.
 		numCores = 0;
 		/*
@@ -323,6 +347,7 @@ public class Ship extends AbstractActionableObject {
 	 * A ship has collided with a core and collected it.
 	 */
 	public void incrementCores() {
+		checkWritable();
 		super.incrementCores(1);//herr0861 edit
 	}
 	
@@ -341,6 +366,7 @@ public class Ship extends AbstractActionableObject {
 	 * When an item dies, its power ups disappear
 	 */
 	public void resetPowerups() {
+		checkWritable();
 		super.resetPowerups();
 		currentPowerups.add(SpaceSettlersPowerupEnum.FIRE_MISSILE);
 	}
@@ -358,6 +384,7 @@ public class Ship extends AbstractActionableObject {
 	 * Increment the number of beacons for this ship
 	 */
 	public void incrementBeaconCount() {
+		checkWritable();
 		numBeacons++;
 	}
 
@@ -377,6 +404,7 @@ public class Ship extends AbstractActionableObject {
 	 * @param currentAction
 	 */
 	public void setCurrentAction(AbstractAction currentAction) {
+		checkWritable();
 		this.currentAction = currentAction;
 	}
 
@@ -405,6 +433,7 @@ public class Ship extends AbstractActionableObject {
 	 */
 	@Override
 	public void updateEnergy(int difference) {
+		checkWritable();
 		energy += difference;
 
 		if (energy > maxEnergy) {
@@ -416,6 +445,7 @@ public class Ship extends AbstractActionableObject {
 	 * Deposit the flag by setting the ship to not carry it
 	 */
 	public void depositFlag() {
+		checkWritable();
 		this.carryingFlag = false;
 		flag.depositFlag();
 		flag = null;
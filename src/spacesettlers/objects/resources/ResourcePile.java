@@ -1,5 +1,6 @@
 package spacesettlers.objects.resources;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -11,6 +12,11 @@ import java.util.Map;
 public class ResourcePile {
 	Map<ResourceTypes, Integer> resources;
 
+	/**
+	 * True if the pile can't be changed (see makeReadOnly)
+	 */
+	transient boolean readOnly;
+
 	/**
 	 * Initialize with zero resources (can be set using setResource)
 	 * @param resources
@@ -56,6 +62,7 @@ public class ResourcePile {
 	 * @param value the new value
 	 */
 	public void setResources(ResourceTypes type, int value) {
+		checkWritable();
 		resources.put(type, value);
 	}
 
@@ -66,6 +73,9 @@ public class ResourcePile {
 	 * @return the current resources
 	 */
 	public Map<ResourceTypes, Integer> getResources() {
+		if (readOnly) {
+			return Collections.unmodifiableMap(resources);
+		}
 		return resources;
 	}
 	
@@ -85,6 +95,7 @@ public class ResourcePile {
 	 * @param newResource new resource to add in
 	 */
 	public void add(ResourcePile otherPile) {
+		checkWritable();
 		for (ResourceTypes type : resources.keySet()) {
 			resources.put(type, resources.get(type) + otherPile.getResourceQuantity(type));
 		}
@@ -94,6 +105,7 @@ public class ResourcePile {
 	 * Resets the resources available
 	 */
 	public void reset() {
+		checkWritable();
 		resources.put(ResourceTypes.WATER, 0);
 		resources.put(ResourceTypes.FUEL, 0);
 		resources.put(ResourceTypes.METALS, 0);
@@ -103,6 +115,7 @@ public class ResourcePile {
 	 * Double the costs (e.g. how much an item costs, which piles are also used for, in addition to storage)
 	 */
 	public void doubleCosts() {
+		checkWritable();
 		resources.put(ResourceTypes.WATER, resources.get(ResourceTypes.WATER) * 2);
 		resources.put(ResourceTypes.FUEL, resources.get(ResourceTypes.FUEL) * 2);
 		resources.put(ResourceTypes.METALS, resources.get(ResourceTypes.METALS) * 2);
@@ -130,6 +143,7 @@ public class ResourcePile {
 	 * @param removeResources
 	 */
 	public void subtract(ResourcePile removeResources) {
+		checkWritable();
 		for (ResourceTypes type : resources.keySet()) {
 			resources.put(type, Math.max(resources.get(type) - removeResources.getResourceQuantity(type), 0));
 		}
@@ -160,6 +174,23 @@ public class ResourcePile {
 		return sum;
 	}
 	
+	/**
+	 * Stop the pile from being changed (used by the objects in read-only snapshots of 
+	 * the space).  The copy constructor gives a pile that can be changed.
+	 */
+	public void makeReadOnly() {
+		readOnly = true;
+	}
+
+	/**
+	 * Throw an exception if something tries to change a read-only pile
+	 */
+	private void checkWritable() {
+		if (readOnly) {
+			throw new UnsupportedOperationException("This resource pile is in a read-only snapshot.  Copy it to get a pile you can change.");
+		}
+	}
+
 	public String toString() {
 		String str = "Water: " + resources.get(ResourceTypes.WATER) + " Fuel: " + resources.get(ResourceTypes.FUEL) + 
 				" Metals: " + resources.get(ResourceTypes.METALS);
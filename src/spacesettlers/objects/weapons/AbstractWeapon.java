@@ -30,6 +30,7 @@ abstract public class AbstractWeapon extends AbstractObject implements SpaceSett
 	/**
 	 * Make a new weapon with the required information
 	 * 
+	 * @param typeTag
 	 * @param mass
 	 * @param radius
 	 * @param position
@@ -38,8 +39,8 @@ abstract public class AbstractWeapon extends AbstractObject implements SpaceSett
 	 * @param teamName Needed to ensure this weapon belongs to the ship that fired it
 	 * @param firingShipId Needed to ensure this weapon belongs to the ship that fired it
 	 */
-	public AbstractWeapon(int mass, int radius, Position position, int damage, int costToUse, Ship firingShip) {
-		super(mass, radius, position);
+	public AbstractWeapon(int typeTag, int mass, int radius, Position position, int damage, int costToUse, Ship firingShip) {
+		super(typeTag, mass, radius, position);
 		this.damage = damage;
 		this.costToUse = costToUse;
 		this.firingShip = firingShip;
@@ -51,6 +52,7 @@ abstract public class AbstractWeapon extends AbstractObject implements SpaceSett
 	 */
 	public void shiftWeaponFiringLocation(double initialSpeed) 
 	{
+		checkWritable();
 		int radiusToShift = firingShip.getRadius() + radius * 2;
 		position.setX(position.getX() + (radiusToShift * Math.cos(position.getOrientation())));
 		position.setY(position.getY() + (radiusToShift * Math.sin(position.getOrientation())));
@@ -83,11 +85,20 @@ abstract public class AbstractWeapon extends AbstractObject implements SpaceSett
 		return firingShip;
 	}
 
+	/**
+	 * The firing ship is a copy that goes with the weapon
+	 */
+	public void makeReadOnly() {
+		super.makeReadOnly();
+		firingShip.makeReadOnly();
+	}
+
 	/**
 	 * Set the firing ship (should only be inside the simulator)
 	 * @param firingShip
 	 */
 	public void setFiringShip(Ship firingShip) {
+		checkWritable();
 		this.firingShip = firingShip;
 	}
 	
@@ -16,6 +16,11 @@ import spacesettlers.utilities.Position;
  *
  */
 public final class EMP extends AbstractWeapon implements SpaceSettlersPowerup {
+	/**
+	 * The type tag of every EMP (see AbstractObject.getTypeTag())
+	 */
+	public static final int TYPE_TAG = TYPE_EMP;
+
 	public static final int EMP_DAMAGE = 0;
 	public static final int EMP_COST = -100;
 	public static final int EMP_RADIUS = 5;
@@ -30,7 +35,7 @@ public final class EMP extends AbstractWeapon implements SpaceSettlersPowerup {
 	int freezeCount;
 	
 	public EMP(Position position, Ship firingShip) {
-		super(EMP_MASS, EMP_RADIUS, position, EMP_DAMAGE, EMP_COST, firingShip);
+		super(TYPE_TAG, EMP_MASS, EMP_RADIUS, position, EMP_DAMAGE, EMP_COST, firingShip);
 		super.shiftWeaponFiringLocation(INITIAL_VELOCITY);
 		graphic = new EMPGraphics(this);
 		setDrawable(true);
@@ -48,6 +53,7 @@ public final class EMP extends AbstractWeapon implements SpaceSettlersPowerup {
 		EMP newEMP = new EMP(position.deepCopy(), firingShip.deepClone());
 		newEMP.setAlive(isAlive);
 		newEMP.id = id;
+		newEMP.slotId = slotId;
 		newEMP.freezeCount = freezeCount;
 		newEMP.position = position.deepCopy();
 		return newEMP;
@@ -12,6 +12,11 @@ import spacesettlers.utilities.Position;
  *
  */
 public final class Missile extends AbstractWeapon {
+	/**
+	 * The type tag of every missile (see AbstractObject.getTypeTag())
+	 */
+	public static final int TYPE_TAG = TYPE_MISSILE;
+
 	public static final int MISSILE_DAMAGE = -200;
 	public static final int MISSILE_COST = -50;
 	public static final int MISSILE_RADIUS = 3;
@@ -23,7 +28,7 @@ public final class Missile extends AbstractWeapon {
 	 * Needs to be shifted so it doesn't hit the ship it is firing from
 	 */
 	public Missile(Position position, Ship firingShip) {
-		super(MISSILE_MASS, MISSILE_RADIUS, position, MISSILE_DAMAGE, MISSILE_COST,firingShip);
+		super(TYPE_TAG, MISSILE_MASS, MISSILE_RADIUS, position, MISSILE_DAMAGE, MISSILE_COST,firingShip);
 		super.shiftWeaponFiringLocation(Math.abs(firingShip.getPosition().getTotalTranslationalVelocity()) + INITIAL_VELOCITY);
 		graphic = new MissileGraphics(this);
 		setDrawable(true);
@@ -39,6 +44,7 @@ public final class Missile extends AbstractWeapon {
 		Missile newBullet = new Missile(position.deepCopy(), firingShip.deepClone());
 		newBullet.setAlive(isAlive);
 		newBullet.id = id;
+		newBullet.slotId = slotId;
 		newBullet.position = position.deepCopy();
 		return newBullet;
 	}
@@ -37,118 +37,157 @@ public class CollisionHandler {
 	}
 	
 	/**
-	 * Collide the objects and then take care of side effects based on object type
-	 * 
-	 * @param object1
-	 * @param object2
-	 * @param space
+	 * What happens when an object of one type hits an object of another type
 	 */
-	public void collide(AbstractObject object1, AbstractObject object2, Toroidal2DPhysics space) {
-		// if either object is a beacon, handle that (and don't elastically collide)
-		if (object1 instanceof Beacon) {
-			beaconCollision((Beacon) object1, object2);
-			return;
-		} else if (object2 instanceof Beacon) {
-			beaconCollision((Beacon) object2, object1);
-			return;
-		}
+	interface CollisionRule {
+		void collide(AbstractObject object1, AbstractObject object2, Toroidal2DPhysics space);
+	}
 
-		// if either object is a missile, handle that (and don't elastically collide)
-		if (object1 instanceof Missile) {
-			missileCollision((Missile) object1, object2);
-			return;
-		} else if (object2 instanceof Missile) {
-			missileCollision((Missile) object2, object1);
-			return;
-		}
-		
-		// if either object is a EMP, handle that (and don't elastically collide)
-		if (object1 instanceof EMP) {
-			EMPCollision((EMP) object1, object2);
-			return;
-		} else if (object2 instanceof EMP) {
-			EMPCollision((EMP) object2, object1);
-			return;
-		}
-		
-		// if the object is a flag, handle either moving it (same team) or picking it up (opposite team)
-		// and don't elastically collide
-		if (object1 instanceof Flag && object2 instanceof Ship) {
-			flagCollision((Flag) object1, (Ship) object2);
-			return;
-		} else if (object2 instanceof Flag && object1 instanceof Ship) {
-			flagCollision((Flag) object2, (Ship) object1);
-			return;
+	/**
+	 * The rule for each pair of type tags (see AbstractObject.getTypeTag()).  Each rule is
+	 * stored under both orders of the pair so one lookup finds it.
+	 */
+	CollisionRule[][] rules;
+
+	/**
+	 * Make the handler and fill in the table of rules
+	 */
+	public CollisionHandler() {
+		rules = new CollisionRule[AbstractObject.NUM_TYPES][AbstractObject.NUM_TYPES];
+
+		// by default objects bounce off each other.  The rules are added from the lowest
+		// priority to the highest so the later rules replace the earlier ones.
+		for (int type1 = 0; type1 < AbstractObject.NUM_TYPES; type1++) {
+			for (int type2 = 0; type2 < AbstractObject.NUM_TYPES; type2++) {
+				rules[type1][type2] = this::bounce;
+			}
 		}
-		
-		// handle mineable asteroid collisions (e.g. mine them if needed and don't elastically collide, e.g
-		// no damage for mining)
-		if (object1 instanceof Asteroid && object2 instanceof Ship) {
-			if (((Asteroid) object1).isMineable()) {
-				mineAsteroid((Asteroid) object1, (Ship) object2);
-				return;
+
+		// AiCores hitting AiCores damage each other and then bounce
+		addRule(AiCore.class, AiCore.class, (core1, core2, space) -> {
+			damageAiCore(core1);
+			damageAiCore(core2);
+		}, true);
+
+		// Drones colliding with ships - herr0861 edit (and then they still bounce)
+		addRule(Drone.class, Ship.class, (drone, ship, space) -> droneCollision(drone, ship), true);
+
+		// AiCore collisions with Asteroids damage the energy of the AiCore (and then bounce)
+		addRule(AiCore.class, Asteroid.class, (core, asteroid, space) -> damageAiCore(core), true);
+
+		// AiCore collisions with bases (core is collected) and then collides if it is an enemy
+		addRule(AiCore.class, Base.class, (core, base, space) -> baseCoreCollide(core, base), true);
+
+		// AiCore collisions with ships (Destroy them if same team, collect them if different team)
+		addRule(AiCore.class, Ship.class, (core, ship, space) -> collectCore(core, ship), false);
+
+		// mineable asteroids are mined (no damage for mining) and the rest bounce
+		addRule(Asteroid.class, Ship.class, (asteroid, ship, space) -> {
+			if (asteroid.isMineable()) {
+				mineAsteroid(asteroid, ship);
+			} else {
+				bounce(asteroid, ship, space);
 			}
-		} else if (object2 instanceof Asteroid && object1 instanceof Ship) {
-			if (((Asteroid) object2).isMineable()) {
-				mineAsteroid((Asteroid) object2, (Ship) object1);
-				return;
+		}, false);
+
+		// flags are either moved (same team) or picked up (opposite team)
+		addRule(Flag.class, Ship.class, (flag, ship, space) -> flagCollision(flag, ship), false);
+
+		// weapons and beacons hit anything without bouncing (beacons first, then missiles, then EMPs)
+		addRule(EMP.class, AbstractObject.class, (emp, object, space) -> EMPCollision(emp, object), false);
+		addRule(Missile.class, AbstractObject.class, (missile, object, space) -> missileCollision(missile, object),
+				false);
+		addRule(Beacon.class, AbstractObject.class, (beacon, object, space) -> beaconCollision(beacon, object),
+				false);
+	}
+
+	/**
+	 * A rule written for a specific pair of classes
+	 */
+	interface TypedCollisionRule<T1 extends AbstractObject, T2 extends AbstractObject> {
+		void collide(T1 object1, T2 object2, Toroidal2DPhysics space);
+	}
+
+	/**
+	 * Put a rule into the table under both orders of the pair of types.  The rule always gets
+	 * its objects in the order of its types.  If thenBounce is true the objects bounce off each
+	 * other after the rule (in the order they were passed to collide).
+	 * 
+	 * @param class1 type of the first object (AbstractObject to match every type)
+	 * @param class2 type of the second object (AbstractObject to match every type)
+	 * @param rule
+	 * @param thenBounce
+	 */
+	private <T1 extends AbstractObject, T2 extends AbstractObject> void addRule(final Class<T1> class1,
+			final Class<T2> class2, final TypedCollisionRule<T1, T2> rule, final boolean thenBounce) {
+		CollisionRule forward = (object1, object2, space) -> {
+			rule.collide(class1.cast(object1), class2.cast(object2), space);
+			if (thenBounce) {
+				bounce(object1, object2, space);
+			}
+		};
+		CollisionRule backward = (object1, object2, space) -> {
+			rule.collide(class1.cast(object2), class2.cast(object1), space);
+			if (thenBounce) {
+				bounce(object1, object2, space);
+			}
+		};
+
+		// fill in the backward order first so a pair of the same type uses the forward one
+		for (int type1 : getTypeTags(class1)) {
+			for (int type2 : getTypeTags(class2)) {
+				rules[type2][type1] = backward;
 			}
 		}
-		
-		//Handle AiCore Collisions with ships (Destroy them if same team, collect them if different team) and don't elastically collide
-		if (object1 instanceof AiCore && object2 instanceof Ship) {
-			collectCore((AiCore)object1, (Ship)object2);
-			return;
-		} else if (object2 instanceof AiCore && object1 instanceof Ship) {
-			collectCore((AiCore)object2, (Ship)object1);
-			return;
-		}
-		
-		//Handle AiCore collisions with Beacons (Restoring the energy of the AiCore) and don't elastically collide
-		if (object1 instanceof AiCore && object2 instanceof Beacon) {
-			healAiCore((AiCore)object1, (Beacon)object2);
-			return;
-		} else if (object2 instanceof AiCore && object1 instanceof Beacon) {
-			healAiCore((AiCore)object2, (Beacon)object1);
-			return;
-		}
-		
-		//Handle AiCore collisions with bases (core is collected) and then collides if it is an enemy
-		if (object1 instanceof AiCore && object2 instanceof Base) {
-			baseCoreCollide((AiCore)object1, (Base)object2);
-		} else if (object2 instanceof AiCore && object1 instanceof Base) {
-			baseCoreCollide((AiCore)object2, (Base)object1);
-		}
-		
-		//Handle AiCore collisions with Asteroids (Damaging the energy of the AiCore)
-		if (object1 instanceof AiCore && object2 instanceof Asteroid) {
-			damageAiCore((AiCore)object1);
-		} else if (object2 instanceof AiCore && object1 instanceof Asteroid) {
-			damageAiCore((AiCore)object2);
-			//no return because we still want to collide
+		for (int type1 : getTypeTags(class1)) {
+			for (int type2 : getTypeTags(class2)) {
+				rules[type1][type2] = forward;
+			}
 		}
-		
-		//Handle Drones colliding with ships - herr0861 edit
-		if (object1 instanceof Drone && object2 instanceof Ship) {
-			droneCollision((Drone)object1, (Ship)object2);
-//			Drone drone = (Drone) object1;
-//			Ship ship = (Ship) object2;
-//			if (drone.getTeamName().equalsIgnoreCase(ship.getTeamName())) {
-//				return;
-//			}
-		} else if (object2 instanceof Drone && object1 instanceof Ship) {
-			droneCollision((Drone)object2, (Ship)object1);
-			//no return because we still want to collide
+	}
+
+	/**
+	 * The type tags that belong to a class (all of them for AbstractObject, otherwise the
+	 * TYPE_TAG the class gives its objects)
+	 * 
+	 * @param objectClass
+	 * @return
+	 */
+	private static int[] getTypeTags(Class<? extends AbstractObject> objectClass) {
+		if (objectClass == AbstractObject.class) {
+			int[] allTypes = new int[AbstractObject.NUM_TYPES];
+			for (int type = 0; type < allTypes.length; type++) {
+				allTypes[type] = type;
+			}
+			return allTypes;
 		}
-		
-		//Handle AiCore collisions with AiCores (Damaging the energy of the AiCore)
-		if (object1 instanceof AiCore && object2 instanceof AiCore) {
-			damageAiCore((AiCore)object1);
-			damageAiCore((AiCore)object2);
-			//no return because we still want to collide
+		try {
+			return new int[] { objectClass.getField("TYPE_TAG").getInt(null) };
+		} catch (NoSuchFieldException | IllegalAccessException e) {
+			throw new IllegalArgumentException("No type tag for " + objectClass, e);
 		}
-		
+	}
+
+	/**
+	 * Collide the objects and then take care of side effects based on object type
+	 * 
+	 * @param object1
+	 * @param object2
+	 * @param space
+	 */
+	public void collide(AbstractObject object1, AbstractObject object2, Toroidal2DPhysics space) {
+		rules[object1.getTypeTag()][object2.getTypeTag()].collide(object1, object2, space);
+	}
 
+	/**
+	 * Elastically collide the objects and then apply the damage from running into things
+	 * (used for everything but beacons, weapons and the pickups)
+	 * 
+	 * @param object1
+	 * @param object2
+	 * @param space
+	 */
+	private void bounce(AbstractObject object1, AbstractObject object2, Toroidal2DPhysics space) {
 		// only elastically collide if it isn't a beacon, missile, or other weapon
 		if (!object1.isMoveable()) {
 			elasticCollision2DWithNonMoveableObject(object2, object1, space);
@@ -159,33 +198,31 @@ public class CollisionHandler {
 		}
 
 		// if it is a ship, give it an energy penalty for running into the object
-		if (object1.getClass() == Ship.class) {
+		if (object1.getTypeTag() == AbstractObject.TYPE_SHIP) {
 			shipCollision((Ship) object1);
 		} 
 
 		// handle ships running into ships
-		if (object2.getClass() == Ship.class) {
+		if (object2.getTypeTag() == AbstractObject.TYPE_SHIP) {
 			shipCollision((Ship) object2);
 		}
 		
 		//If it is a drone, damage it for running into an object - herr0861 edit
-		if (object1.getClass() == Drone.class) {
+		if (object1.getTypeTag() == AbstractObject.TYPE_DRONE) {
 			droneCollision((Drone)object1);
 		}
 		
 		//Drone on drone violence is no laughing matter.
-		if (object2.getClass() == Drone.class) {
+		if (object2.getTypeTag() == AbstractObject.TYPE_DRONE) {
 			droneCollision((Drone)object2);
 		}
 
-		
 		// handle base collisions
-		if (object1 instanceof Base) {
+		if (object1.getTypeTag() == AbstractObject.TYPE_BASE) {
 			baseCollision((Base) object1, object2);
-		} else if (object2 instanceof Base) {
+		} else if (object2.getTypeTag() == AbstractObject.TYPE_BASE) {
 			baseCollision((Base) object2, object1);
 		}
-		
 	}
 	
 	/**
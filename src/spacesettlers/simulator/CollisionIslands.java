@@ -0,0 +1,390 @@
+package spacesettlers.simulator;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import spacesettlers.objects.AbstractObject;
+
+/**
+ * Resolves the collisions of one time step on a fork-join pool.  The physics first hands
+ * over every pair of objects that could touch this step (within the reach the collision
+ * grid is sized for), in the order the serial loop would check them.  The pairs are split
+ * into islands (groups of objects connected by pairs) and each island checks its own pairs
+ * in that same order.  Islands don't share any objects so the result is the same as
+ * checking all the pairs one at a time.
+ *
+ * Only islands made of asteroids, beacons and weapons are resolved on the pool since
+ * collisions with ships, bases, drones, cores and flags also change teams and other objects.
+ * Weapons are put in the same island as the ship that fired them because their collisions
+ * change its weapon count.  All the other islands are resolved on the calling thread
+ * while the pool works.
+ *
+ * Objects that die while the islands are being resolved are remembered with the pair
+ * that killed them and handed back to the physics in the serial order afterwards.
+ */
+class CollisionIslands {
+	/**
+	 * Fewer pairs than this are checked on the calling thread without making islands
+	 */
+	static final int MIN_PARALLEL_PAIRS = 256;
+
+	/**
+	 * Smallest number of pairs given to one task
+	 */
+	static final int MIN_PAIRS_PER_TASK = 128;
+
+	/**
+	 * The pool the islands are resolved on
+	 */
+	ForkJoinPool pool;
+
+	/**
+	 * The objects of this time step (the pairs are indices into this array)
+	 */
+	AbstractObject[] objects;
+	int numObjects;
+
+	/**
+	 * The pairs in serial order
+	 */
+	int[] pairFirst, pairSecond;
+	int numPairs;
+
+	/**
+	 * Union-find over the objects and whether each object (only looked at for roots
+	 * after grouping) has to be resolved on the calling thread
+	 */
+	int[] parent;
+	boolean[] serialObject;
+
+	/**
+	 * The pairs of each island (islandPairs[islandStart[k]] up to islandPairs[islandStart[k + 1]])
+	 * and the island each root object was given
+	 */
+	int[] islandOfRoot;
+	int[] islandStart;
+	int[] islandPairs;
+	boolean[] serialIsland;
+	int numIslands;
+
+	/**
+	 * The islands that are resolved on the pool
+	 */
+	int[] parallelIslands;
+	int numParallelIslands;
+
+	/**
+	 * True while the islands are being resolved (deaths are recorded instead of reported)
+	 */
+	volatile boolean resolving;
+
+	/**
+	 * The pair each thread is checking
+	 */
+	final ThreadLocal<int[]> currentPair = ThreadLocal.withInitial(() -> new int[1]);
+
+	/**
+	 * Objects that died while resolving (with the pair and then the order they died in)
+	 */
+	AbstractObject[] deadObjects;
+	long[] deathKeys;
+	int numDeaths;
+
+	/**
+	 * Make the islands with their own pool
+	 *
+	 * @param numThreads the number of threads to use (0 means one per processor)
+	 */
+	CollisionIslands(int numThreads) {
+		if (numThreads <= 0) {
+			numThreads = Runtime.getRuntime().availableProcessors();
+		}
+		pool = new ForkJoinPool(numThreads);
+		pairFirst = new int[256];
+		pairSecond = new int[256];
+		parent = new int[0];
+		serialObject = new boolean[0];
+		islandOfRoot = new int[0];
+		deadObjects = new AbstractObject[16];
+		deathKeys = new long[16];
+	}
+
+	/**
+	 * @return the number of threads in the pool
+	 */
+	int getNumThreads() {
+		return pool.getParallelism();
+	}
+
+	/**
+	 * Start a new time step
+	 *
+	 * @param objects the objects of this time step in serial order
+	 * @param numObjects
+	 */
+	void reset(AbstractObject[] objects, int numObjects) {
+		this.objects = objects;
+		this.numObjects = numObjects;
+		numPairs = 0;
+		if (parent.length < numObjects) {
+			parent = new int[2 * numObjects];
+			serialObject = new boolean[parent.length];
+			islandOfRoot = new int[parent.length];
+		}
+		for (int i = 0; i < numObjects; i++) {
+			parent[i] = i;
+		}
+		Arrays.fill(serialObject, 0, numObjects, false);
+	}
+
+	/**
+	 * Add the next pair to check (pairs have to be added in serial order)
+	 *
+	 * @param first index of the object checked first
+	 * @param second index of the other object
+	 */
+	void addPair(int first, int second) {
+		if (numPairs == pairFirst.length) {
+			pairFirst = Arrays.copyOf(pairFirst, 2 * numPairs);
+			pairSecond = Arrays.copyOf(pairSecond, 2 * numPairs);
+		}
+		pairFirst[numPairs] = first;
+		pairSecond[numPairs++] = second;
+		link(first, second);
+	}
+
+	/**
+	 * Put two objects into the same island even if they don't touch
+	 *
+	 * @param object1 index of one object
+	 * @param object2 index of the other
+	 */
+	void link(int object1, int object2) {
+		int root1 = find(object1);
+		int root2 = find(object2);
+		if (root1 != root2) {
+			// the smaller index becomes the root so the result doesn't depend on the order
+			if (root1 < root2) {
+				parent[root2] = root1;
+			} else {
+				parent[root1] = root2;
+			}
+		}
+	}
+
+	/**
+	 * The island containing this object has to be resolved on the calling thread
+	 *
+	 * @param object index of the object
+	 */
+	void markSerial(int object) {
+		serialObject[object] = true;
+	}
+
+	private int find(int object) {
+		while (parent[object] != object) {
+			parent[object] = parent[parent[object]];
+			object = parent[object];
+		}
+		return object;
+	}
+
+	/**
+	 * Check all the pairs that have been added
+	 *
+	 * @param space the physics that checks each pair
+	 */
+	void resolve(Toroidal2DPhysics space) {
+		if (numPairs < MIN_PARALLEL_PAIRS) {
+			resolvePairs(space, 0, numPairs, null);
+			return;
+		}
+
+		buildIslands();
+
+		numDeaths = 0;
+		resolving = true;
+		try {
+			ForkJoinTask<?> task = null;
+			if (numParallelIslands > 0) {
+				task = pool.submit(new ResolveTask(space, this, 0, numParallelIslands));
+			}
+			for (int island = 0; island < numIslands; island++) {
+				if (serialIsland[island]) {
+					resolvePairs(space, islandStart[island], islandStart[island + 1], islandPairs);
+				}
+			}
+			if (task != null) {
+				task.join();
+			}
+		} finally {
+			resolving = false;
+		}
+
+		reportDeaths(space);
+	}
+
+	/**
+	 * Group the pairs by island (keeping the serial order inside each island) and decide
+	 * where each island is resolved
+	 */
+	private void buildIslands() {
+		numIslands = 0;
+		Arrays.fill(islandOfRoot, 0, numObjects, -1);
+		if (islandStart == null || islandStart.length < numPairs + 2) {
+			islandStart = new int[2 * numPairs + 2];
+			serialIsland = new boolean[islandStart.length];
+			parallelIslands = new int[islandStart.length];
+		}
+		if (islandPairs == null || islandPairs.length < numPairs) {
+			islandPairs = new int[2 * numPairs];
+		}
+
+		// number the islands in the order of their first pair and count their pairs
+		for (int p = 0; p < numPairs; p++) {
+			int root = find(pairFirst[p]);
+			if (islandOfRoot[root] == -1) {
+				islandOfRoot[root] = numIslands;
+				islandStart[numIslands + 1] = 0;
+				serialIsland[numIslands] = false;
+				numIslands++;
+			}
+			islandStart[islandOfRoot[root] + 1]++;
+		}
+		for (int i = 0; i < numObjects; i++) {
+			if (serialObject[i]) {
+				int island = islandOfRoot[find(i)];
+				if (island != -1) {
+					serialIsland[island] = true;
+				}
+			}
+		}
+
+		islandStart[0] = 0;
+		for (int island = 0; island < numIslands; island++) {
+			islandStart[island + 1] += islandStart[island];
+		}
+
+		// stable placement keeps the pairs of each island in serial order
+		int[] nextFree = Arrays.copyOf(islandStart, numIslands);
+		for (int p = 0; p < numPairs; p++) {
+			int island = islandOfRoot[find(pairFirst[p])];
+			islandPairs[nextFree[island]++] = p;
+		}
+
+		numParallelIslands = 0;
+		for (int island = 0; island < numIslands; island++) {
+			if (!serialIsland[island]) {
+				parallelIslands[numParallelIslands++] = island;
+			}
+		}
+	}
+
+	/**
+	 * Check a run of pairs in order.  Like the serial loop, the first object of a pair is
+	 * only checked for being alive when its run of pairs starts.
+	 *
+	 * @param space
+	 * @param from first position to check
+	 * @param to one past the last position
+	 * @param order the pairs to check (null to check the pairs themselves in order)
+	 */
+	void resolvePairs(Toroidal2DPhysics space, int from, int to, int[] order) {
+		int[] current = currentPair.get();
+		int lastFirst = -1;
+		boolean firstAlive = false;
+		boolean firstSleeping = false;
+		for (int k = from; k < to; k++) {
+			int p = order == null ? k : order[k];
+			AbstractObject object1 = objects[pairFirst[p]];
+			AbstractObject object2 = objects[pairSecond[p]];
+			if (pairFirst[p] != lastFirst) {
+				lastFirst = pairFirst[p];
+				firstAlive = object1.isAlive();
+				firstSleeping = space.isSleeping(object1);
+			}
+			if (!firstAlive) {
+				continue;
+			}
+			current[0] = p;
+			if (space.checkCandidatePair(object1, object2, firstSleeping) && firstSleeping) {
+				firstSleeping = space.isSleeping(object1);
+			}
+		}
+	}
+
+	/**
+	 * Remember an object that died while resolving
+	 *
+	 * @param object
+	 */
+	synchronized void recordDeath(AbstractObject object) {
+		if (numDeaths == deadObjects.length) {
+			deadObjects = Arrays.copyOf(deadObjects, 2 * numDeaths);
+			deathKeys = Arrays.copyOf(deathKeys, 2 * numDeaths);
+		}
+		deadObjects[numDeaths] = object;
+		deathKeys[numDeaths] = ((long) currentPair.get()[0] << 32) | numDeaths;
+		numDeaths++;
+	}
+
+	/**
+	 * Hand the deaths back to the physics in the order of the pairs that caused them
+	 */
+	private void reportDeaths(Toroidal2DPhysics space) {
+		if (numDeaths == 0) {
+			return;
+		}
+		long[] keys = Arrays.copyOf(deathKeys, numDeaths);
+		Arrays.sort(keys);
+		for (int d = 0; d < numDeaths; d++) {
+			int index = (int) (keys[d] & 0xFFFFFFFFL);
+			space.objectDied(deadObjects[index]);
+		}
+		Arrays.fill(deadObjects, 0, numDeaths, null);
+		numDeaths = 0;
+	}
+
+	/**
+	 * Stop the threads in the pool
+	 */
+	void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Resolves a range of the parallel islands, splitting in half until there are few pairs
+	 */
+	@SuppressWarnings("serial")
+	static class ResolveTask extends RecursiveAction {
+		Toroidal2DPhysics space;
+		CollisionIslands islands;
+		int from, to;
+
+		ResolveTask(Toroidal2DPhysics space, CollisionIslands islands, int from, int to) {
+			this.space = space;
+			this.islands = islands;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			int firstIsland = islands.parallelIslands[from];
+			int lastIsland = islands.parallelIslands[to - 1];
+			int numPairs = islands.islandStart[lastIsland + 1] - islands.islandStart[firstIsland];
+			if (to - from == 1 || numPairs < 2 * MIN_PAIRS_PER_TASK) {
+				for (int i = from; i < to; i++) {
+					int island = islands.parallelIslands[i];
+					islands.resolvePairs(space, islands.islandStart[island], islands.islandStart[island + 1],
+							islands.islandPairs);
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new ResolveTask(space, islands, from, middle), new ResolveTask(space, islands, middle, to));
+			}
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package spacesettlers.simulator;
+
+import java.util.Random;
+
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.utilities.Position;
+
+/**
+ * Occupancy grid used to find a free location when random guessing isn't working
+ * (the map is crowded).  The region is split into cells about the size of the free
+ * radius, the center of every cell is checked once and then one of the free cells is
+ * picked at random.  All of the choices come from the Random that is passed in so the
+ * same seed always gives the same location.
+ *
+ * If no cell is free the center of the least crowded cell is used so the search always
+ * ends.
+ */
+class FreeLocationSampler {
+	/**
+	 * Most cells to check (the cells get bigger for large regions)
+	 */
+	static final int MAX_CELLS = 4096;
+
+	/**
+	 * Find a free location inside a box (wrapped around the edges of the space) and
+	 * optionally also within maxDistance of a center location.
+	 *
+	 * @param space the space to search (its index must be up to date)
+	 * @param rand Random number generator
+	 * @param freeRadius the radius around the location that must be free
+	 * @param regionX upper left corner of the box
+	 * @param regionY
+	 * @param regionWidth size of the box
+	 * @param regionHeight
+	 * @param center if not null, the location must be within maxDistance of this
+	 * @param maxDistance
+	 * @return a free location if there is one and the least crowded location otherwise
+	 */
+	static Position sample(Toroidal2DPhysics space, Random rand, int freeRadius, double regionX, double regionY,
+			double regionWidth, double regionHeight, Position center, double maxDistance) {
+		regionWidth = Math.max(regionWidth, 1);
+		regionHeight = Math.max(regionHeight, 1);
+
+		double spacing = Math.max(freeRadius, 1);
+		int numCols = Math.max(1, (int) Math.ceil(regionWidth / spacing));
+		int numRows = Math.max(1, (int) Math.ceil(regionHeight / spacing));
+		while ((long) numCols * numRows > MAX_CELLS) {
+			spacing *= 2;
+			numCols = Math.max(1, (int) Math.ceil(regionWidth / spacing));
+			numRows = Math.max(1, (int) Math.ceil(regionHeight / spacing));
+		}
+		double cellWidth = regionWidth / numCols;
+		double cellHeight = regionHeight / numRows;
+
+		// mark the cells whose centers are free
+		int[] freeCells = new int[numCols * numRows];
+		int numFree = 0;
+		for (int cell = 0; cell < numCols * numRows; cell++) {
+			Position cellCenter = getLocation(space, regionX, regionY, cellWidth, cellHeight, numCols, cell, 0.5, 0.5);
+			if (isInRegion(space, cellCenter, center, maxDistance)
+					&& space.isLocationFreeIndexed(cellCenter.getX(), cellCenter.getY(), freeRadius)) {
+				freeCells[numFree++] = cell;
+			}
+		}
+
+		if (numFree > 0) {
+			int cell = freeCells[rand.nextInt(numFree)];
+
+			// try a random spot in the cell before settling for its center
+			Position location = getLocation(space, regionX, regionY, cellWidth, cellHeight, numCols, cell,
+					rand.nextDouble(), rand.nextDouble());
+			if (isInRegion(space, location, center, maxDistance)
+					&& space.isLocationFreeIndexed(location.getX(), location.getY(), freeRadius)) {
+				return location;
+			}
+			return getLocation(space, regionX, regionY, cellWidth, cellHeight, numCols, cell, 0.5, 0.5);
+		}
+
+		return findLeastCrowdedLocation(space, regionX, regionY, cellWidth, cellHeight, numCols, numRows, center,
+				maxDistance);
+	}
+
+	/**
+	 * Nothing is free so use the cell center that is farthest from everything (measured
+	 * the same way as isLocationFree).  Ties go to the first cell so this is deterministic.
+	 */
+	private static Position findLeastCrowdedLocation(Toroidal2DPhysics space, double regionX, double regionY,
+			double cellWidth, double cellHeight, int numCols, int numRows, Position center, double maxDistance) {
+		Position bestLocation = null;
+		double bestClearance = Double.NEGATIVE_INFINITY;
+
+		for (int cell = 0; cell < numCols * numRows; cell++) {
+			Position cellCenter = getLocation(space, regionX, regionY, cellWidth, cellHeight, numCols, cell, 0.5, 0.5);
+			if (!isInRegion(space, cellCenter, center, maxDistance)) {
+				continue;
+			}
+
+			double clearance = Double.POSITIVE_INFINITY;
+			for (AbstractObject object : space.getAllObjects()) {
+				double distance = space.findShortestDistance(cellCenter, object.getPosition()) - 2 * object.getRadius();
+				clearance = Math.min(clearance, distance);
+			}
+
+			if (bestLocation == null || clearance > bestClearance) {
+				bestLocation = cellCenter;
+				bestClearance = clearance;
+			}
+		}
+
+		// the region is smaller than one cell so just use its center
+		if (bestLocation == null) {
+			if (center != null) {
+				bestLocation = new Position(center.getX(), center.getY());
+			} else {
+				bestLocation = new Position(regionX + numCols * cellWidth / 2, regionY + numRows * cellHeight / 2);
+			}
+			space.toroidalWrap(bestLocation);
+		}
+		return bestLocation;
+	}
+
+	/**
+	 * Location inside a cell (the offsets are from 0 to 1 across the cell) wrapped into the space
+	 */
+	private static Position getLocation(Toroidal2DPhysics space, double regionX, double regionY, double cellWidth,
+			double cellHeight, int numCols, int cell, double offsetX, double offsetY) {
+		int col = cell % numCols;
+		int row = cell / numCols;
+		Position location = new Position(regionX + (col + offsetX) * cellWidth, regionY + (row + offsetY) * cellHeight);
+		space.toroidalWrap(location);
+		return location;
+	}
+
+	/**
+	 * Is the location close enough to the center (always true if there is no center)?
+	 */
+	private static boolean isInRegion(Toroidal2DPhysics space, Position location, Position center, double maxDistance) {
+		return center == null || space.findShortestDistance(center, location) <= maxDistance;
+	}
+}
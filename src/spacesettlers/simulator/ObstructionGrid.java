@@ -0,0 +1,316 @@
+package spacesettlers.simulator;
+
+import java.util.Collection;
+
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.utilities.Position;
+
+/**
+ * Answers many "is this straight line path clear?" questions against one fixed set of
+ * obstructions (for example when connecting all the nodes of a roadmap for path planning).
+ *
+ * Each obstruction is registered in every grid cell its circle (plus the clearance) touches.
+ * A query then walks only the cells the path crosses, wrapping around the edges of the
+ * space, and tests the obstructions in those cells.  The test is exactly the one used by
+ * Toroidal2DPhysics.isPathClearOfObstructions so the answers are the same.
+ *
+ * The grid copies the obstruction locations when it is made, so make a new one if the
+ * obstructions move.  Queries don't change the grid so it can be shared between threads.
+ */
+public class ObstructionGrid {
+	/**
+	 * Smallest cell size in pixels and most cells in each direction
+	 */
+	static final double MIN_CELL_SIZE = 32;
+	static final int MAX_CELLS_PER_SIDE = 256;
+
+	/**
+	 * Extra room added to the cells an obstruction is put into so rounding in the
+	 * path test can never miss it
+	 */
+	static final double REGISTRATION_MARGIN = 1;
+
+	Toroidal2DPhysics space;
+
+	/**
+	 * Distance added to the radius of every obstruction
+	 */
+	double clearance;
+
+	/**
+	 * Grid layout
+	 */
+	int numCols, numRows;
+	double cellWidth, cellHeight;
+
+	/**
+	 * Obstruction locations and radii (copied when the grid is made)
+	 */
+	double[] obstructionX, obstructionY;
+	int[] obstructionRadius;
+
+	/**
+	 * Obstructions in each cell stored as a list of indices per cell: the indices for
+	 * cell c are cellObstructions[cellStart[c]] up to cellObstructions[cellStart[c + 1]]
+	 */
+	int[] cellStart;
+	int[] cellObstructions;
+
+	/**
+	 * Make the grid for a set of obstructions
+	 *
+	 * @param space the space the paths are in
+	 * @param obstructions the objects to avoid
+	 * @param clearance the distance a path must stay away from the edge of each obstruction
+	 */
+	public ObstructionGrid(Toroidal2DPhysics space, Collection<? extends AbstractObject> obstructions,
+			double clearance) {
+		this.space = space;
+		this.clearance = clearance;
+
+		int numObstructions = obstructions.size();
+		obstructionX = new double[numObstructions];
+		obstructionY = new double[numObstructions];
+		obstructionRadius = new int[numObstructions];
+		int maxRadius = 0;
+		int index = 0;
+		for (AbstractObject obstruction : obstructions) {
+			obstructionX[index] = obstruction.getPosition().getX();
+			obstructionY[index] = obstruction.getPosition().getY();
+			obstructionRadius[index] = obstruction.getRadius();
+			maxRadius = Math.max(maxRadius, obstruction.getRadius());
+			index++;
+		}
+
+		// cells about the size of the biggest obstruction
+		double cellSize = Math.max(MIN_CELL_SIZE, 2 * (maxRadius + clearance));
+		int width = space.getWidth();
+		int height = space.getHeight();
+		numCols = Math.min(MAX_CELLS_PER_SIDE, Math.max(1, (int) (width / cellSize)));
+		numRows = Math.min(MAX_CELLS_PER_SIDE, Math.max(1, (int) (height / cellSize)));
+		cellWidth = (double) width / numCols;
+		cellHeight = (double) height / numRows;
+
+		buildCells();
+	}
+
+	/**
+	 * Put each obstruction into all the cells covered by the box around its circle
+	 * (counting first so the cells can be packed into one array)
+	 */
+	private void buildCells() {
+		int numCells = numCols * numRows;
+		int[] cellCounts = new int[numCells + 1];
+		for (int i = 0; i < obstructionX.length; i++) {
+			countOrAdd(i, cellCounts, null);
+		}
+
+		cellStart = new int[numCells + 1];
+		for (int cell = 0; cell < numCells; cell++) {
+			cellStart[cell + 1] = cellStart[cell] + cellCounts[cell];
+		}
+
+		cellObstructions = new int[cellStart[numCells]];
+		int[] nextFree = new int[numCells];
+		System.arraycopy(cellStart, 0, nextFree, 0, numCells);
+		for (int i = 0; i < obstructionX.length; i++) {
+			countOrAdd(i, nextFree, cellObstructions);
+		}
+	}
+
+	/**
+	 * Visit the cells covered by an obstruction.  If cellObstructions is null this counts
+	 * the obstruction in each cell and otherwise it stores it at the next free slot.
+	 */
+	private void countOrAdd(int obstruction, int[] cellCounters, int[] cellObstructions) {
+		double reach = obstructionRadius[obstruction] + clearance + REGISTRATION_MARGIN;
+		int firstCol = (int) Math.floor((obstructionX[obstruction] - reach) / cellWidth);
+		int lastCol = (int) Math.floor((obstructionX[obstruction] + reach) / cellWidth);
+		int firstRow = (int) Math.floor((obstructionY[obstruction] - reach) / cellHeight);
+		int lastRow = (int) Math.floor((obstructionY[obstruction] + reach) / cellHeight);
+
+		// don't wrap all the way around onto the same cells twice
+		lastCol = Math.min(lastCol, firstCol + numCols - 1);
+		lastRow = Math.min(lastRow, firstRow + numRows - 1);
+
+		for (int row = firstRow; row <= lastRow; row++) {
+			int wrappedRow = Math.floorMod(row, numRows);
+			for (int col = firstCol; col <= lastCol; col++) {
+				int cell = wrappedRow * numCols + Math.floorMod(col, numCols);
+				if (cellObstructions == null) {
+					cellCounters[cell]++;
+				} else {
+					cellObstructions[cellCounters[cell]++] = obstruction;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Is the straight line path between the two locations clear of the obstructions?
+	 *
+	 * @param startPosition
+	 * @param goalPosition
+	 * @return true if the path does not come within the clearance of any obstruction
+	 */
+	public boolean isPathClear(Position startPosition, Position goalPosition) {
+		return isPathClear(startPosition.getX(), startPosition.getY(), goalPosition.getX(), goalPosition.getY());
+	}
+
+	/**
+	 * Check many paths at once against the same obstructions
+	 *
+	 * @param startPositions
+	 * @param goalPositions the goal for each start (same length as startPositions)
+	 * @param clear set to true for each path that is clear (same length as startPositions)
+	 * @return the number of clear paths
+	 */
+	public int arePathsClear(Position[] startPositions, Position[] goalPositions, boolean[] clear) {
+		int numClear = 0;
+		for (int i = 0; i < startPositions.length; i++) {
+			clear[i] = isPathClear(startPositions[i], goalPositions[i]);
+			if (clear[i]) {
+				numClear++;
+			}
+		}
+		return numClear;
+	}
+
+	/**
+	 * Is one straight line path clear of the obstructions?  This tests every obstruction 
+	 * directly, which is cheaper than making a grid when there is only one path to check.
+	 *
+	 * @param space the space the path is in
+	 * @param startPosition
+	 * @param goalPosition
+	 * @param obstructions the objects to avoid
+	 * @param clearance the distance the path must stay away from the edge of each obstruction
+	 * @return true if the path does not come within the clearance of any obstruction
+	 */
+	public static boolean isPathClearByScan(Toroidal2DPhysics space, Position startPosition, Position goalPosition,
+			Collection<? extends AbstractObject> obstructions, double clearance) {
+		double pathX = space.wrapDeltaX(goalPosition.getX() - startPosition.getX());
+		double pathY = space.wrapDeltaY(goalPosition.getY() - startPosition.getY());
+		double pathLength = Math.sqrt(pathX * pathX + pathY * pathY);
+
+		for (AbstractObject obstruction : obstructions) {
+			if (isBlockedBy(space, startPosition.getX(), startPosition.getY(), pathX, pathY, pathLength,
+					obstruction.getPosition().getX(), obstruction.getPosition().getY(), 
+					obstruction.getRadius() + clearance)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Walk the cells along the path from (startX, startY) to the goal (the shortest way
+	 * around the space) and test the obstructions in each one.  This is the standard grid
+	 * traversal where t is how far along the path we are (from 0 to 1).
+	 */
+	boolean isPathClear(double startX, double startY, double goalX, double goalY) {
+		double pathX = space.wrapDeltaX(goalX - startX);
+		double pathY = space.wrapDeltaY(goalY - startY);
+		double pathLength = Math.sqrt(pathX * pathX + pathY * pathY);
+
+		int col = (int) Math.floor(startX / cellWidth);
+		int row = (int) Math.floor(startY / cellHeight);
+		int stepCol = pathX > 0 ? 1 : -1;
+		int stepRow = pathY > 0 ? 1 : -1;
+
+		// how far along the path the next column and row boundaries are
+		double nextColT = Double.POSITIVE_INFINITY, colDeltaT = Double.POSITIVE_INFINITY;
+		if (pathX != 0) {
+			double boundary = (pathX > 0 ? col + 1 : col) * cellWidth;
+			nextColT = (boundary - startX) / pathX;
+			colDeltaT = cellWidth / Math.abs(pathX);
+		}
+		double nextRowT = Double.POSITIVE_INFINITY, rowDeltaT = Double.POSITIVE_INFINITY;
+		if (pathY != 0) {
+			double boundary = (pathY > 0 ? row + 1 : row) * cellHeight;
+			nextRowT = (boundary - startY) / pathY;
+			rowDeltaT = cellHeight / Math.abs(pathY);
+		}
+
+		// a path is never longer than half the space in each direction so it can't
+		// come back to a cell it has already left
+		int maxCells = numCols + numRows + 2;
+		for (int visited = 0; visited < maxCells; visited++) {
+			int cell = Math.floorMod(row, numRows) * numCols + Math.floorMod(col, numCols);
+			for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+				int obstruction = cellObstructions[i];
+				if (isBlockedBy(space, startX, startY, pathX, pathY, pathLength, obstructionX[obstruction],
+						obstructionY[obstruction], obstructionRadius[obstruction] + clearance)) {
+					return false;
+				}
+			}
+
+			if (nextColT < nextRowT) {
+				if (nextColT > 1) {
+					break;
+				}
+				col += stepCol;
+				nextColT += colDeltaT;
+			} else {
+				if (nextRowT > 1) {
+					break;
+				}
+				row += stepRow;
+				nextRowT += rowDeltaT;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * The path test from isPathClearOfObstructions: an obstruction blocks the path if it is
+	 * no farther away than the goal, in front of the start and closer to the path than
+	 * its radius plus the clearance.  The math is done the same way as the Vector2D version
+	 * so the answers match exactly.
+	 *
+	 * @param space
+	 * @param startX start of the path
+	 * @param startY
+	 * @param pathX shortest vector from the start to the goal
+	 * @param pathY
+	 * @param pathLength length of that vector
+	 * @param obstructionX location of the obstruction
+	 * @param obstructionY
+	 * @param minDistance the path must stay at least this far from the obstruction's center
+	 * @return true if the obstruction blocks the path
+	 */
+	static boolean isBlockedBy(Toroidal2DPhysics space, double startX, double startY, double pathX, double pathY,
+			double pathLength, double obstructionX, double obstructionY, double minDistance) {
+		double toObstructionX = space.wrapDeltaX(obstructionX - startX);
+		double toObstructionY = space.wrapDeltaY(obstructionY - startY);
+		double distance = Math.sqrt(toObstructionX * toObstructionX + toObstructionY * toObstructionY);
+
+		// If the distance to the obstruction is greater than the distance to the end
+		// goal, ignore the obstruction
+		if (distance > pathLength) {
+			return false;
+		}
+
+		// angle between the path and the obstruction (same as Vector2D.angleBetween)
+		double angleBetween;
+		double num = toObstructionX * pathX + toObstructionY * pathY;
+		double den = distance * pathLength;
+		if (den == 0) {
+			angleBetween = 0;
+		} else {
+			if (Math.abs(num) > Math.abs(den)) {
+				num = (num > den) ? den : -den;
+			}
+			angleBetween = (float) Math.acos(num / den);
+		}
+
+		// Ignore angles > 90 degrees
+		if (angleBetween > Math.PI / 2) {
+			return false;
+		}
+
+		// Compare distance between obstruction and path with buffer distance
+		return distance * Math.sin(angleBetween) < minDistance;
+	}
+}
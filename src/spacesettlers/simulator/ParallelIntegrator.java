@@ -0,0 +1,121 @@
+package spacesettlers.simulator;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import spacesettlers.objects.AbstractObject;
+
+/**
+ * Moves the passive objects (asteroids, weapons, flags and frozen ships) of one time step
+ * on a fork-join pool.  The physics adds the objects in the order it comes to them and
+ * then asks for all of them to be moved.  Each object only looks at its own state when it
+ * moves, so the result is exactly the same as moving them one at a time.
+ */
+class ParallelIntegrator {
+	/**
+	 * Smallest number of objects given to one task (fewer than twice this are moved on the
+	 * calling thread since splitting wouldn't pay off)
+	 */
+	static final int MIN_OBJECTS_PER_TASK = 256;
+
+	/**
+	 * The pool the objects are moved on
+	 */
+	ForkJoinPool pool;
+
+	/**
+	 * Objects waiting to be moved
+	 */
+	AbstractObject[] pending;
+	int numPending;
+
+	/**
+	 * Make an integrator with its own pool
+	 *
+	 * @param numThreads the number of threads to use (0 means one per processor)
+	 */
+	ParallelIntegrator(int numThreads) {
+		if (numThreads <= 0) {
+			numThreads = Runtime.getRuntime().availableProcessors();
+		}
+		pool = new ForkJoinPool(numThreads);
+		pending = new AbstractObject[256];
+	}
+
+	/**
+	 * @return the number of threads in the pool
+	 */
+	int getNumThreads() {
+		return pool.getParallelism();
+	}
+
+	/**
+	 * Add an object to be moved the next time moveAll is called
+	 *
+	 * @param object
+	 */
+	void add(AbstractObject object) {
+		if (numPending == pending.length) {
+			AbstractObject[] newPending = new AbstractObject[2 * pending.length];
+			System.arraycopy(pending, 0, newPending, 0, numPending);
+			pending = newPending;
+		}
+		pending[numPending++] = object;
+	}
+
+	/**
+	 * Move all the objects that have been added and forget them
+	 *
+	 * @param space the physics that moves each object
+	 */
+	void moveAll(Toroidal2DPhysics space) {
+		if (numPending < 2 * MIN_OBJECTS_PER_TASK) {
+			for (int i = 0; i < numPending; i++) {
+				space.movePassiveObject(pending[i]);
+			}
+		} else {
+			pool.invoke(new MoveTask(space, pending, 0, numPending));
+		}
+
+		for (int i = 0; i < numPending; i++) {
+			pending[i] = null;
+		}
+		numPending = 0;
+	}
+
+	/**
+	 * Stop the threads in the pool
+	 */
+	void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Moves a range of the objects, splitting in half until the ranges are small
+	 */
+	@SuppressWarnings("serial")
+	static class MoveTask extends RecursiveAction {
+		Toroidal2DPhysics space;
+		AbstractObject[] objects;
+		int from, to;
+
+		MoveTask(Toroidal2DPhysics space, AbstractObject[] objects, int from, int to) {
+			this.space = space;
+			this.objects = objects;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from < 2 * MIN_OBJECTS_PER_TASK) {
+				for (int i = from; i < to; i++) {
+					space.movePassiveObject(objects[i]);
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new MoveTask(space, objects, from, middle), new MoveTask(space, objects, middle, to));
+			}
+		}
+	}
+}
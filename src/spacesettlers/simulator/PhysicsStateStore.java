@@ -0,0 +1,360 @@
+package spacesettlers.simulator;
+
+import java.util.IdentityHashMap;
+
+import spacesettlers.objects.AbstractActionableObject;
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.objects.Flag;
+import spacesettlers.utilities.Position;
+import spacesettlers.utilities.Vector2D;
+
+/**
+ * Keeps the physics state (location, velocity, orientation, radius and mass) of the
+ * passive moveable objects (asteroids, weapons and cores) in primitive arrays instead of
+ * in a Position and Vector2D per object.  Each object gets a slot in the arrays and
+ * its position is replaced by a StoredPosition that reads and writes its slot, so
+ * getPosition() still works everywhere but moving an object doesn't make any garbage.
+ *
+ * Ships, drones and bases keep their normal positions since their movement code compares
+ * the old and new positions.  Flags do too because they follow whoever is carrying them.
+ *
+ * If something outside the physics gives a stored object a new Position (the collision
+ * handler does this), sync() copies it back into the arrays before the object moves again.
+ */
+class PhysicsStateStore {
+	/**
+	 * The state of each slot
+	 */
+	double[] x, y, velocityX, velocityY, orientation, angularVelocity;
+	int[] radius, mass;
+
+	/**
+	 * The object in each slot (null for free slots) and the view it was given
+	 */
+	AbstractObject[] objects;
+	StoredPosition[] views;
+
+	/**
+	 * Slot for each object (only used when the object's position is not its view)
+	 */
+	IdentityHashMap<AbstractObject, Integer> objectSlots;
+
+	/**
+	 * Freed slots are reused so the arrays stay dense
+	 */
+	int[] freeSlots;
+	int numFreeSlots;
+
+	/**
+	 * Number of slots ever used (the arrays are at least this long)
+	 */
+	int numSlots;
+
+	PhysicsStateStore() {
+		objectSlots = new IdentityHashMap<AbstractObject, Integer>();
+		resize(64);
+		freeSlots = new int[64];
+	}
+
+	/**
+	 * Can this object be kept in the store?
+	 *
+	 * @param object
+	 * @return true for moveable objects that are not ships, drones, bases or flags
+	 */
+	static boolean isStorable(AbstractObject object) {
+		return object.isMoveable() && !(object instanceof AbstractActionableObject) && !(object instanceof Flag);
+	}
+
+	/**
+	 * Grow the arrays
+	 *
+	 * @param capacity
+	 */
+	private void resize(int capacity) {
+		x = copyOf(x, capacity);
+		y = copyOf(y, capacity);
+		velocityX = copyOf(velocityX, capacity);
+		velocityY = copyOf(velocityY, capacity);
+		orientation = copyOf(orientation, capacity);
+		angularVelocity = copyOf(angularVelocity, capacity);
+		radius = copyOf(radius, capacity);
+		mass = copyOf(mass, capacity);
+
+		AbstractObject[] newObjects = new AbstractObject[capacity];
+		StoredPosition[] newViews = new StoredPosition[capacity];
+		if (objects != null) {
+			System.arraycopy(objects, 0, newObjects, 0, numSlots);
+			System.arraycopy(views, 0, newViews, 0, numSlots);
+		}
+		objects = newObjects;
+		views = newViews;
+	}
+
+	private static double[] copyOf(double[] array, int capacity) {
+		double[] newArray = new double[capacity];
+		if (array != null) {
+			System.arraycopy(array, 0, newArray, 0, array.length);
+		}
+		return newArray;
+	}
+
+	private static int[] copyOf(int[] array, int capacity) {
+		int[] newArray = new int[capacity];
+		if (array != null) {
+			System.arraycopy(array, 0, newArray, 0, array.length);
+		}
+		return newArray;
+	}
+
+	/**
+	 * Move an object into the store and give it a view of its slot as its position
+	 *
+	 * @param object
+	 */
+	void add(AbstractObject object) {
+		if (objectSlots.containsKey(object)) {
+			return;
+		}
+
+		int slot;
+		if (numFreeSlots > 0) {
+			slot = freeSlots[--numFreeSlots];
+		} else {
+			if (numSlots == objects.length) {
+				resize(2 * objects.length);
+			}
+			slot = numSlots++;
+		}
+
+		objects[slot] = object;
+		objectSlots.put(object, slot);
+		radius[slot] = object.getRadius();
+		mass[slot] = object.getMass();
+		load(slot, object.getPosition());
+
+		views[slot] = new StoredPosition(this, slot);
+		object.setPosition(views[slot]);
+	}
+
+	/**
+	 * Take an object out of the store (it gets a normal copy of its position back)
+	 *
+	 * @param object
+	 */
+	void remove(AbstractObject object) {
+		Integer slot = objectSlots.remove(object);
+		if (slot == null) {
+			return;
+		}
+
+		if (object.getPosition() == views[slot]) {
+			object.setPosition(views[slot].deepCopy());
+		}
+		objects[slot] = null;
+		views[slot] = null;
+
+		if (numFreeSlots == freeSlots.length) {
+			int[] newFreeSlots = new int[2 * freeSlots.length];
+			System.arraycopy(freeSlots, 0, newFreeSlots, 0, numFreeSlots);
+			freeSlots = newFreeSlots;
+		}
+		freeSlots[numFreeSlots++] = slot;
+	}
+
+	/**
+	 * Take every object out of the store
+	 */
+	void removeAll() {
+		for (int slot = 0; slot < numSlots; slot++) {
+			if (objects[slot] != null) {
+				remove(objects[slot]);
+			}
+		}
+	}
+
+	/**
+	 * Copy a position into a slot
+	 */
+	private void load(int slot, Position position) {
+		x[slot] = position.getX();
+		y[slot] = position.getY();
+		velocityX[slot] = position.getTranslationalVelocityX();
+		velocityY[slot] = position.getTranslationalVelocityY();
+		orientation[slot] = position.getOrientation();
+		angularVelocity[slot] = position.getAngularVelocity();
+	}
+
+	/**
+	 * Find the slot of an object, first copying in a new position if one was set from
+	 * outside the store
+	 *
+	 * @param object
+	 * @return the slot or -1 if the object isn't in the store
+	 */
+	int sync(AbstractObject object) {
+		Position position = object.getPosition();
+		int slot;
+		if (position instanceof StoredPosition && ((StoredPosition) position).store == this) {
+			slot = ((StoredPosition) position).slot;
+		} else {
+			Integer storedSlot = objectSlots.get(object);
+			if (storedSlot == null) {
+				return -1;
+			}
+			slot = storedSlot;
+			load(slot, position);
+			object.setPosition(views[slot]);
+		}
+		mass[slot] = object.getMass();
+		return slot;
+	}
+
+	/**
+	 * Same as Toroidal2DPhysics.moveOneTimestep but done in place on the arrays
+	 *
+	 * @param slot
+	 * @param timeStep
+	 * @param width width of the space
+	 * @param height height of the space
+	 */
+	void moveOneTimestep(int slot, double timeStep, int width, int height) {
+		double newOrientation = orientation[slot] + (angularVelocity[slot] * timeStep);
+		Toroidal2DPhysics.checkForNaNVelocity(angularVelocity[slot], velocityX[slot], velocityY[slot], views[slot]);
+
+		// make sure orientation wraps correctly (-pi to pi)
+		if (newOrientation > Math.PI) {
+			newOrientation -= (2 * Math.PI);
+		} else if (newOrientation < -Math.PI) {
+			newOrientation += (2 * Math.PI);
+		}
+		orientation[slot] = newOrientation;
+
+		// new x,y coordinates (wrapped the same way as toroidalWrap)
+		double newX = x[slot] + (velocityX[slot] * timeStep);
+		double newY = y[slot] + (velocityY[slot] * timeStep);
+		while (newX < 0) {
+			newX += width;
+		}
+		while (newY < 0) {
+			newY += height;
+		}
+		x[slot] = newX % width;
+		y[slot] = newY % height;
+	}
+
+	/**
+	 * A position that reads and writes one slot of the store
+	 */
+	static class StoredPosition extends Position {
+		final PhysicsStateStore store;
+		final int slot;
+
+		StoredPosition(PhysicsStateStore store, int slot) {
+			super(0, 0);
+			this.store = store;
+			this.slot = slot;
+		}
+
+		@Override
+		public Position deepCopy() {
+			Position newPosition = new Position(getX(), getY(), getOrientation());
+			newPosition.setTranslationalVelocity(getTranslationalVelocity());
+			newPosition.setAngularVelocity(getAngularVelocity());
+			return newPosition;
+		}
+
+		@Override
+		public double getX() {
+			return store.x[slot];
+		}
+
+		@Override
+		public double getY() {
+			return store.y[slot];
+		}
+
+		@Override
+		public double getOrientation() {
+			return store.orientation[slot];
+		}
+
+		@Override
+		public void setX(double x) {
+			store.x[slot] = x;
+		}
+
+		@Override
+		public void setY(double y) {
+			store.y[slot] = y;
+		}
+
+		@Override
+		public double getTotalTranslationalVelocity() {
+			return store.velocityX[slot] + store.velocityY[slot];
+		}
+
+		@Override
+		public double getTranslationalVelocityX() {
+			return store.velocityX[slot];
+		}
+
+		@Override
+		public double getTranslationalVelocityY() {
+			return store.velocityY[slot];
+		}
+
+		@Override
+		public Vector2D getTranslationalVelocity() {
+			return new Vector2D(store.velocityX[slot], store.velocityY[slot]);
+		}
+
+		@Override
+		public void setTranslationalVelocity(Vector2D newVel) {
+			store.velocityX[slot] = newVel.getXValue();
+			store.velocityY[slot] = newVel.getYValue();
+		}
+
+		@Override
+		public double getAngularVelocity() {
+			return store.angularVelocity[slot];
+		}
+
+		@Override
+		public void setOrientation(double orientation) {
+			store.orientation[slot] = orientation;
+		}
+
+		@Override
+		public double getxVelocity() {
+			return store.velocityX[slot];
+		}
+
+		@Override
+		public double getyVelocity() {
+			return store.velocityY[slot];
+		}
+
+		@Override
+		public void setAngularVelocity(double angularVelocity) {
+			store.angularVelocity[slot] = angularVelocity;
+		}
+
+		@Override
+		public String toString() {
+			return deepCopy().toString();
+		}
+
+		@Override
+		public boolean equalsLocationOnly(Position newPosition) {
+			return newPosition.getX() == getX() && newPosition.getY() == getY();
+		}
+
+		@Override
+		public boolean isValid() {
+			return Double.isFinite(getX()) && Double.isFinite(getY()) && Double.isFinite(getAngularVelocity())
+					&& Double.isFinite(getOrientation()) && Double.isFinite(store.velocityX[slot])
+					&& Double.isFinite(store.velocityY[slot]);
+		}
+	}
+}
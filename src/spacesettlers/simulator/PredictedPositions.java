@@ -0,0 +1,71 @@
+package spacesettlers.simulator;
+
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.utilities.Position;
+
+/**
+ * Where every object in a space will be some number of time steps from now if it keeps
+ * its current velocity.  This is exact for the objects nobody controls (asteroids, weapons,
+ * cores and dropped flags) until they hit something.  Ships and drones can thrust so their
+ * predictions are only a guess.
+ *
+ * The locations are kept by slot id and never change once made, so one set of predictions
+ * can be shared by all of the teams.  Get them from Toroidal2DPhysics.predictPositions.
+ */
+public class PredictedPositions {
+	/**
+	 * How many time steps ahead these predictions are
+	 */
+	final int stepsAhead;
+
+	/**
+	 * Predicted location for each slot
+	 */
+	final double[] x, y;
+
+	PredictedPositions(int stepsAhead, double[] x, double[] y) {
+		this.stepsAhead = stepsAhead;
+		this.x = x;
+		this.y = y;
+	}
+
+	/**
+	 * @return how many time steps ahead these predictions are
+	 */
+	public int getStepsAhead() {
+		return stepsAhead;
+	}
+
+	/**
+	 * Predicted x location of an object
+	 *
+	 * @param object an object from the space the predictions were made for (or a copy of one)
+	 * @return
+	 */
+	public double getX(AbstractObject object) {
+		return x[object.getSlotId()];
+	}
+
+	/**
+	 * Predicted y location of an object
+	 *
+	 * @param object an object from the space the predictions were made for (or a copy of one)
+	 * @return
+	 */
+	public double getY(AbstractObject object) {
+		return y[object.getSlotId()];
+	}
+
+	/**
+	 * Predicted location of an object (with its current velocity and orientation)
+	 *
+	 * @param object an object from the space the predictions were made for (or a copy of one)
+	 * @return a new position
+	 */
+	public Position getPosition(AbstractObject object) {
+		Position position = new Position(getX(object), getY(object), object.getPosition().getOrientation());
+		position.setTranslationalVelocity(object.getPosition().getTranslationalVelocity());
+		position.setAngularVelocity(object.getPosition().getAngularVelocity());
+		return position;
+	}
+}
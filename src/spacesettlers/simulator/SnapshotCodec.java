@@ -0,0 +1,218 @@
+package spacesettlers.simulator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.UUID;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.converters.reflection.Sun14ReflectionProvider;
+import com.thoughtworks.xstream.io.binary.BinaryStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamWriter;
+
+import spacesettlers.clients.ImmutableTeamInfo;
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.objects.ObjectCodec;
+import spacesettlers.objects.Ship;
+
+/**
+ * Turns a space into bytes and back so it can be sent to a team client running in
+ * another process.  The settings of the space are written as plain numbers, and so are 
+ * the asteroids, beacons, cores and missiles (see ObjectCodec), which are most of the 
+ * objects.  The ships, bases, drones, flags and anything else sent to or from the clients 
+ * use XStream's binary format, which writes each class and field name only once.  The 
+ * decoded space has the same objects in the same slots and order as the original.
+ */
+public class SnapshotCodec {
+	/**
+	 * Written first so mixed up versions fail right away
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * One XStream for everything (it is safe to share once it is set up)
+	 */
+	static final XStream xstream = createXStream();
+
+	/**
+	 * The JDK packages XStream reaches into.  Java 9 and later only allow that for packages
+	 * opened with --add-opens, so the simulator and every child need these.
+	 */
+	static final String[] OPEN_PACKAGES = {
+		"java.base/java.util", "java.base/java.util.concurrent.atomic", "java.base/java.lang.reflect",
+		"java.base/java.text", "java.desktop/java.awt.font"};
+
+	private static XStream createXStream() {
+		// the game objects don't have no-argument constructors so XStream has to make them
+		// without calling one (whatever Java the child runs on)
+		XStream xstream = new XStream(new Sun14ReflectionProvider());
+		// the physics sets this again when the object is added to the decoded space
+		xstream.omitField(AbstractObject.class, "deathListener");
+		xstream.setMode(XStream.ID_REFERENCES);
+		return xstream;
+	}
+
+	/**
+	 * @return the options a Java running the codec needs (none before Java 9)
+	 */
+	public static List<String> getJvmOptions() {
+		if (System.getProperty("java.specification.version").startsWith("1.")) {
+			return Collections.emptyList();
+		}
+		List<String> options = new ArrayList<String>();
+		for (String openPackage : OPEN_PACKAGES) {
+			options.add("--add-opens=" + openPackage + "=ALL-UNNAMED");
+		}
+		return options;
+	}
+
+	/**
+	 * Encode a space
+	 *
+	 * @param space
+	 * @return
+	 */
+	public static byte[] encode(Toroidal2DPhysics space) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(VERSION);
+			out.writeInt(space.height);
+			out.writeInt(space.width);
+			out.writeDouble(space.timeStep);
+			out.writeInt(space.currentTimeStep);
+			out.writeInt(space.maxTime);
+			out.writeBoolean(space.bruteForceCollisionDetection);
+			out.writeBoolean(space.continuousCollisionDetection);
+			out.writeDouble(space.substepScheduler == null ? 0 : space.substepScheduler.maxSubstepDisplacement);
+			out.writeBoolean(space.readOnly);
+
+			// the slot layout so every object keeps its slot
+			out.writeInt(space.objectsBySlot.length);
+			out.writeInt(space.numSlots);
+			out.writeInt(space.numFreeSlots);
+			for (int i = 0; i < space.numFreeSlots; i++) {
+				out.writeInt(space.freeSlots[i]);
+			}
+
+			// the objects XStream writes go first so missiles can find their ships
+			ArrayList<AbstractObject> otherObjects = new ArrayList<AbstractObject>();
+			for (AbstractObject object : space.allObjects) {
+				if (!ObjectCodec.canWrite(object)) {
+					otherObjects.add(object);
+				}
+			}
+			out.flush();
+			writeObject(out, otherObjects);
+			writeObject(out, new ArrayList<ImmutableTeamInfo>(space.teamInfo));
+
+			// then all of the objects in order
+			out.writeInt(space.allObjects.size());
+			for (AbstractObject object : space.allObjects) {
+				if (ObjectCodec.canWrite(object)) {
+					out.writeBoolean(true);
+					ObjectCodec.write(out, object);
+				} else {
+					out.writeBoolean(false);
+				}
+			}
+			out.flush();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			// can't happen writing to memory
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Make a space from bytes made by encode
+	 *
+	 * @param bytes
+	 * @return
+	 * @throws IOException if the bytes aren't a space
+	 */
+	@SuppressWarnings("unchecked")
+	public static Toroidal2DPhysics decode(byte[] bytes) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		if (in.readInt() != VERSION) {
+			throw new IOException("Snapshot was made by a different version of the simulator");
+		}
+		int height = in.readInt();
+		int width = in.readInt();
+		double timeStep = in.readDouble();
+		Toroidal2DPhysics space = new Toroidal2DPhysics(height, width, timeStep);
+		space.currentTimeStep = in.readInt();
+		space.maxTime = in.readInt();
+		space.bruteForceCollisionDetection = in.readBoolean();
+		space.continuousCollisionDetection = in.readBoolean();
+		space.setMaxSubstepDisplacement(in.readDouble());
+		boolean readOnly = in.readBoolean();
+
+		space.initializeSlots(in.readInt());
+		space.numSlots = in.readInt();
+		space.numFreeSlots = in.readInt();
+		space.freeSlots = new int[Math.max(16, space.numFreeSlots)];
+		for (int i = 0; i < space.numFreeSlots; i++) {
+			space.freeSlots[i] = in.readInt();
+		}
+
+		ArrayList<AbstractObject> otherObjects = (ArrayList<AbstractObject>) readObject(in);
+		space.setTeamInfo(new LinkedHashSet<ImmutableTeamInfo>((ArrayList<ImmutableTeamInfo>) readObject(in)));
+		HashMap<UUID, Ship> ships = new HashMap<UUID, Ship>();
+		for (AbstractObject object : otherObjects) {
+			if (object instanceof Ship) {
+				ships.put(object.getId(), (Ship) object);
+			}
+		}
+
+		int numObjects = in.readInt();
+		int nextOther = 0;
+		for (int i = 0; i < numObjects; i++) {
+			if (in.readBoolean()) {
+				space.addObject(ObjectCodec.read(in, ships));
+			} else {
+				space.addObject(otherObjects.get(nextOther++));
+			}
+		}
+
+		if (readOnly) {
+			space.makeReadOnly();
+		}
+		return space;
+	}
+
+	/**
+	 * Write any object (actions, graphics, resources and so on) in the binary format
+	 *
+	 * @param out
+	 * @param object
+	 * @throws IOException
+	 */
+	public static void writeObject(DataOutputStream out, Object object) throws IOException {
+		BinaryStreamWriter writer = new BinaryStreamWriter(out);
+		xstream.marshal(object, writer);
+		writer.flush();
+	}
+
+	/**
+	 * Read an object written by writeObject
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public static Object readObject(DataInputStream in) throws IOException {
+		try {
+			return xstream.unmarshal(new BinaryStreamReader(in));
+		} catch (RuntimeException e) {
+			throw new IOException("Unable to read an object from a remote client", e);
+		}
+	}
+}
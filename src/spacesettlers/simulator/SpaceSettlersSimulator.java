@@ -2,6 +2,10 @@ package spacesettlers.simulator;
 
 import java.awt.Color;
 import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
@@ -13,6 +17,9 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.martiansoftware.jsap.JSAPResult;
 import com.thoughtworks.xstream.XStream;
@@ -20,9 +27,12 @@ import com.thoughtworks.xstream.XStream;
 import spacesettlers.actions.AbstractAction;
 import spacesettlers.actions.DoNothingAction;
 import spacesettlers.actions.PurchaseTypes;
+import spacesettlers.clients.ClientThreads;
 import spacesettlers.clients.ImmutableTeamInfo;
+import spacesettlers.clients.RemoteTeamClient;
 import spacesettlers.clients.Team;
 import spacesettlers.clients.TeamClient;
+import spacesettlers.clients.TeamTurn;
 import spacesettlers.configs.*;
 import spacesettlers.gui.SpaceSettlersGUI;
 import spacesettlers.objects.AbstractActionableObject;
@@ -114,6 +124,47 @@ public final class SpaceSettlersSimulator {
 	 */
 	int graphicsSleep = 40;
 
+	/**
+	 * Read-only copy of the space shared by all the teams (null when it needs to be rebuilt)
+	 */
+	Toroidal2DPhysics clientSnapshot;
+
+	/**
+	 * Threads used to ask all of the teams for their actions at once (reused every step)
+	 */
+	ExecutorService teamExecutor;
+
+	/**
+	 * Pipelined mode only: the answers each team is working on right now and the answers
+	 * that are waiting to be used (oldest first)
+	 */
+	Map<Team, Future<TeamTurn>> pendingTeamTurns = new HashMap<Team, Future<TeamTurn>>();
+	Map<Team, ArrayDeque<TeamTurn>> waitingTeamTurns = new HashMap<Team, ArrayDeque<TeamTurn>>();
+
+	/**
+	 * Pipelined mode only: copy of the space at the end of the last step (before the dead 
+	 * objects were cleaned up) that the teams end their movements on
+	 */
+	Toroidal2DPhysics endSnapshot;
+
+	/**
+	 * If turbo mode is true, run headless and call the clients directly (trusted clients only)
+	 */
+	boolean turbo = false;
+
+	/**
+	 * How long each step took in nanoseconds (only recorded in turbo mode)
+	 */
+	long[] stepTimes;
+
+	/**
+	 * Bytes allocated during the steps by the simulation thread and the threads that ask 
+	 * the teams (each thread is counted once, the team worker threads are counted by their 
+	 * teams) and the number of steps measured.  Used to see how much garbage each step makes.
+	 */
+	AtomicLong totalAllocatedBytes = new AtomicLong();
+	int numMeasuredSteps;
+
 	/**
 	 * Create a simulator with the command line arguments already parsed.  
 	 * @param args
@@ -143,7 +194,12 @@ public final class SpaceSettlersSimulator {
 			MOVEMENT_TIMEOUT = Integer.MAX_VALUE;
 			TEAM_END_ACTION_TIMEOUT = Integer.MAX_VALUE;
 			TEAM_GRAPHICS_TIMEOUT = Integer.MAX_VALUE;
+			disableCpuBudgets();
 		}
+		checkCpuBudgetThreads();
+
+		// see if turbo mode is on
+		initializeTurboMode(parserConfig);
 
 		// create the GUI after everything is created in the simulator
 		System.out.println(this);
@@ -172,8 +228,11 @@ public final class SpaceSettlersSimulator {
 		// and use it to make agents and the world
 		initializeSimulation(parserConfig);
 
+		// see if turbo mode is on
+		initializeTurboMode(parserConfig);
+
 		// create the GUI if the user asked for it
-		if (parserConfig.getBoolean("graphics")) {
+		if (parserConfig.getBoolean("graphics") && !turbo) {
 			gui = new SpaceSettlersGUI(simConfig, this);
 		}
 
@@ -185,20 +244,53 @@ public final class SpaceSettlersSimulator {
 			MOVEMENT_TIMEOUT = Integer.MAX_VALUE;
 			TEAM_END_ACTION_TIMEOUT = Integer.MAX_VALUE;
 			TEAM_GRAPHICS_TIMEOUT = Integer.MAX_VALUE;
+			disableCpuBudgets();
 		}
+		checkCpuBudgetThreads();
+
 		// create the GUI after everything is created in the simulator
 		System.out.println(this);
 		createGUI(parserConfig);
 	}
 
+	/**
+	 * Turn on turbo mode if the user asked for it (the option is not in every 
+	 * command line parser).  In turbo mode the teams call their clients directly 
+	 * on the simulation thread with no timeouts and there are no graphics.
+	 * 
+	 * @param parserConfig
+	 */
+	private void initializeTurboMode(JSAPResult parserConfig) {
+		if (parserConfig.contains("turbo") && parserConfig.getBoolean("turbo")) {
+			turbo = true;
+			for (Team team : teams) {
+				team.setDirectClientCalls(true);
+			}
+		}
+	}
+
+	/**
+	 * Warn if the CPU budgets can't be measured.  Java can't read the CPU time of a virtual 
+	 * thread, so clients on virtual threads are charged for the wall clock time of their 
+	 * calls instead (which includes the time they spend waiting for a carrier thread).
+	 */
+	private void checkCpuBudgetThreads() {
+		boolean cpuBudget = simConfig.getClientCpuMillisPerStep() > 0 
+				|| (simConfig.getClientCpuWindowSteps() > 0 && simConfig.getClientCpuMillisPerWindow() > 0);
+		if (cpuBudget && !debug && simConfig.isVirtualClientThreads() && ClientThreads.isVirtualThreadsSupported()) {
+			System.err.println("Warning: the client CPU budgets can't measure CPU time on virtual threads so the " 
+					+ "clients are charged for wall clock time (turn off virtualClientThreads to charge CPU time)");
+		}
+	}
+
 	/**
 	 * Create the GUI after the simulator has been initialize
 	 * 
 	 * @param parserConfig
 	 */
 	public void createGUI(JSAPResult parserConfig) {
-		// create the GUI if the user asked for it
-		if (parserConfig.getBoolean("graphics")) {
+		// create the GUI if the user asked for it (never in turbo mode)
+		if (parserConfig.getBoolean("graphics") && !turbo) {
 			gui = new SpaceSettlersGUI(simConfig, this);
 		}
 	}
@@ -487,6 +579,9 @@ public final class SpaceSettlersSimulator {
 		int numShips = Math.min(simConfig.getMaximumInitialShipsPerTeam(), teamClientConfig.getNumberInitialShipsInTeam());
 
 		Team team = new Team(teamClient, teamClientConfig.getLadderName(), simConfig.getMaximumShipsPerTeam());
+		team.setVirtualThreads(simConfig.isVirtualClientThreads());
+		team.setCpuBudget(simConfig.getClientCpuMillisPerStep(), simConfig.getClientCpuWindowSteps(), 
+				simConfig.getClientCpuMillisPerWindow(), simConfig.getClientCpuGraceMillis());
 
 		for (int s = 0; s < numShips; s++) {
 			// put the ships in the initial region for the team
@@ -544,7 +639,13 @@ public final class SpaceSettlersSimulator {
 		try {
 			// make a team client of the class specified in the config file
 			Class<TeamClient> newTeamClass = (Class<TeamClient>) Class.forName(teamClientConfig.getClassname());
-			TeamClient newTeamClient = (TeamClient) newTeamClass.newInstance();
+			TeamClient newTeamClient;
+			if (simConfig.isRemoteClients()) {
+				// the client is made in its own process when it is initialized
+				newTeamClient = new RemoteTeamClient(newTeamClass.getName(), simConfig.getRemoteClientJvmOptions());
+			} else {
+				newTeamClient = (TeamClient) newTeamClass.newInstance();
+			}
 
 			Color teamColor = new Color(teamClientConfig.getTeamColorRed(), teamClientConfig.getTeamColorGreen(), 
 					teamClientConfig.getTeamColorBlue());
@@ -603,21 +704,37 @@ public final class SpaceSettlersSimulator {
 	 * Advance time one step
 	 */
 	void advanceTime() {
+		if (simConfig.getClientActionLatency() > 0) {
+			advanceTimePipelined();
+			return;
+		}
+
 		// update the team info (to send into the space for use by other teams)
 		updateTeamInfo();
+		startCpuSteps();
 
-		ExecutorService teamExecutor;
-		if (debug) {
-			teamExecutor = Executors.newSingleThreadExecutor();
-		} else {
-			teamExecutor = Executors.newCachedThreadPool();
+		// the pool of threads that ask the teams for actions lives for the whole game
+		if (!turbo) {
+			createTeamExecutor();
 		}
 		Map<Team, Future<Map<UUID,AbstractAction>>> clientActionFutures = 
 				new HashMap<Team, Future<Map<UUID,AbstractAction>>>();
 
-		// get the actions from each team
+		// measure how much memory the simulator uses this step
+		long startAllocatedBytes = getThreadAllocatedBytes();
+
+		// get the actions from each team (all teams share one copy of the space)
+		Toroidal2DPhysics clientSpace = getClientSpace();
 		for (Team team : teams) {
-			clientActionFutures.put(team, teamExecutor.submit(new AdvanceTimeCallable(team)));
+			AdvanceTimeCallable callable = new AdvanceTimeCallable(team, clientSpace, !turbo);
+			if (turbo) {
+				// ask the team right here on the simulation thread
+				FutureTask<Map<UUID,AbstractAction>> task = new FutureTask<Map<UUID,AbstractAction>>(callable);
+				task.run();
+				clientActionFutures.put(team, task);
+			} else {
+				clientActionFutures.put(team, teamExecutor.submit(callable));
+			}
 		}
 
 		for (Team team : teams) {
@@ -636,82 +753,243 @@ public final class SpaceSettlersSimulator {
 			} 
 
 
-			// get the actions for each ship
-			for (Ship ship : team.getShips()) {
-				// if the client forgets to set an action, set it to DoNothing
-				if (teamActions == null || !teamActions.containsKey(ship.getId())) {
-					teamActions.put(ship.getId(), new DoNothingAction());
-				}
-				ship.setCurrentAction(teamActions.get(ship.getId()));
-			}
-			
-			
-			
-			/*
-			 * herr0861
-			 * Loop through the drones and assign them their actions from the team. 
-			 */
-			for (UUID droneID : team.getDrones()) {
-				Drone drone = (Drone)simulatedSpace.getObjectById(droneID);
-				
-				
-				if (teamActions == null || !teamActions.containsKey(droneID)) {
-					drone.setCurrentAction(simulatedSpace.deepClone());
-					teamActions.put(droneID, drone.getCurrentAction());
-				}
-				
-				/*
-				 * herr0861
-				 * TODO: Check if this does everything
-				 * This allows the use to set in actions for the drones and have them be followed!
-				 */
-				drone.setCurrentAction(teamActions.get(drone.getId()));
-			}
+			setTeamActions(team, teamActions);
 		} //End for loop through teams
 
-		teamExecutor.shutdown();
+		// the ships have new actions so the teams need a new copy of the space
+		spaceChanged();
 
 		// get the power ups being used on this turn
 		Map<UUID, SpaceSettlersPowerupEnum> allPowerups = new HashMap<UUID, SpaceSettlersPowerupEnum>();
 		for (Team team : teams) {
-			Map<UUID, SpaceSettlersPowerupEnum> powerups = team.getTeamPowerups(simulatedSpace);
-			if (powerups != null) {
-				for (UUID key : powerups.keySet()) {
-					// verify power ups belong to this team
-					if (!team.isValidTeamID(key)) {
-						continue;
-					}
-
-					// get the object and ensure it can have a power up on it
-					AbstractObject swObject = simulatedSpace.getObjectById(key);
-					if (!(swObject instanceof AbstractActionableObject) || (swObject instanceof Drone)) {
-						continue;
-					}
-
-					// verify that the object has the power up associated with it
-					AbstractActionableObject actionableObject = (AbstractActionableObject) swObject;
-					if (actionableObject.isValidPowerup(powerups.get(key))) {
-						allPowerups.put(key, powerups.get(key));
-					}
-				}
-			}
+			addValidPowerups(team, team.getTeamPowerups(getClientSpace()), allPowerups);
 		}
 
 		// now update the physics on all objects
 		simulatedSpace.advanceTime(random, this.getTimestep(), allPowerups);
+		spaceChanged();
 
-		// and end any actions inside the team
+		// and end any actions inside the team (the statistics come from the real space 
+		// since the snapshot's bases don't keep their damage and kills)
 		for (Team team : teams) {
-			team.getTeamMovementEnd(simulatedSpace);
+			team.getTeamMovementEnd(getClientSpace());
+			team.updateStatistics(simulatedSpace);
 		}
 
 		// handle purchases at the end of a turn (so ships will have movements next turn)
 		for (Team team : teams) {
 			// now get purchases for the team
-			Map<UUID, PurchaseTypes> purchases = team.getTeamPurchases(simulatedSpace);
+			Map<UUID, PurchaseTypes> purchases = team.getTeamPurchases(getClientSpace());
 			handlePurchases(team, purchases);
+			if (isBuyingSomething(purchases)) {
+				spaceChanged();
+			}
+		}
+
+		finishStep();
+
+		totalAllocatedBytes.addAndGet(getThreadAllocatedBytes() - startAllocatedBytes);
+		numMeasuredSteps++;
+
+		//		for (Team team : teams) {
+		//			for (Ship ship : team.getShips()) {
+		//				System.out.println("Ship " + ship.getTeamName() + ship.getId() + " has resourcesAvailable " + ship.getMoney());
+		//			}
+		//		}
+	}
+
+	/**
+	 * Advance time one step with the clients working behind the physics (pipelined mode).
+	 * The answers the teams worked out during earlier steps are used first.  Then the teams 
+	 * are handed a snapshot of the space to think about on the team threads while the 
+	 * physics runs this step, so a step takes about as long as the slower of the two 
+	 * instead of both added together.  
+	 * 
+	 * The price is latency: actions, purchases and power ups are used clientActionLatency 
+	 * steps after the snapshot they were based on (the ships do nothing for the first 
+	 * steps of the game).  Each team still only has one call running at a time.
+	 */
+	private void advanceTimePipelined() {
+		int latency = simConfig.getClientActionLatency();
+
+		// update the team info (to send into the space for use by other teams)
+		updateTeamInfo();
+		startCpuSteps();
+
+		// the clients always run on the team threads (even in turbo mode) so they overlap the physics
+		createTeamExecutor();
+
+		// measure how much memory the simulator uses this step
+		long startAllocatedBytes = getThreadAllocatedBytes();
+
+		// collect what the teams worked out during the last step
+		collectTeamTurns();
+
+		// use the answers that have waited long enough (nothing happens until they start coming)
+		Map<Team, TeamTurn> turns = new HashMap<Team, TeamTurn>();
+		for (Team team : teams) {
+			ArrayDeque<TeamTurn> waiting = waitingTeamTurns.get(team);
+			if (waiting != null && waiting.size() >= latency) {
+				turns.put(team, waiting.poll());
+			} else {
+				turns.put(team, new TeamTurn(null, null, null));
+			}
+		}
+
+		Map<UUID, SpaceSettlersPowerupEnum> allPowerups = new HashMap<UUID, SpaceSettlersPowerupEnum>();
+		for (Team team : teams) {
+			setTeamActions(team, turns.get(team).getActions());
+			addValidPowerups(team, turns.get(team).getPowerups(), allPowerups);
+		}
+
+		// the purchases were made at the end of the step the team was thinking about
+		for (Team team : teams) {
+			handlePurchases(team, turns.get(team).getPurchases());
 		}
+		spaceChanged();
+
+		// hand the teams the space as it is now to think about while the physics runs
+		Toroidal2DPhysics snapshot = simulatedSpace.createReadOnlySnapshot();
+		for (Team team : teams) {
+			if (!waitingTeamTurns.containsKey(team)) {
+				waitingTeamTurns.put(team, new ArrayDeque<TeamTurn>());
+			}
+			TeamTurnCallable callable = new TeamTurnCallable(team.prepareTeamTurn(endSnapshot, snapshot));
+			pendingTeamTurns.put(team, teamExecutor.submit(callable));
+		}
+
+		// now update the physics on all objects
+		simulatedSpace.advanceTime(random, this.getTimestep(), allPowerups);
+		spaceChanged();
 
+		// the clients see the objects that died this step when they end their movements next step
+		endSnapshot = simulatedSpace.createReadOnlySnapshot();
+
+		// the clients end their movements on their own threads so only the statistics are done here
+		for (Team team : teams) {
+			team.updateStatistics(simulatedSpace);
+		}
+
+		finishStep();
+
+		totalAllocatedBytes.addAndGet(getThreadAllocatedBytes() - startAllocatedBytes);
+		numMeasuredSteps++;
+	}
+
+	/**
+	 * Wait for the answers the teams are working on (pipelined mode).  A team that crashed
+	 * or was interrupted gets empty answers.
+	 */
+	private void collectTeamTurns() {
+		for (Team team : teams) {
+			Future<TeamTurn> future = pendingTeamTurns.remove(team);
+			if (future == null) {
+				continue;
+			}
+
+			TeamTurn turn;
+			try {
+				turn = future.get();
+			} catch (InterruptedException e) {
+				turn = new TeamTurn(null, null, null);
+			} catch (ExecutionException e) {
+				turn = new TeamTurn(null, null, null);
+			}
+			waitingTeamTurns.get(team).add(turn);
+		}
+	}
+
+	/**
+	 * Make the pool of threads that ask the teams for actions (it lives for the whole game)
+	 */
+	private void createTeamExecutor() {
+		if (teamExecutor != null) {
+			return;
+		}
+		ThreadFactory daemonFactory = ClientThreads.newThreadFactory("Team actions", simConfig.isVirtualClientThreads());
+		if (debug) {
+			teamExecutor = Executors.newSingleThreadExecutor(daemonFactory);
+		} else {
+			teamExecutor = Executors.newFixedThreadPool(Math.max(1, teams.size()), daemonFactory);
+		}
+	}
+
+	/**
+	 * Give the team's ships and drones their new actions
+	 * 
+	 * @param team
+	 * @param teamActions the actions from the client (anything missing does nothing)
+	 */
+	private void setTeamActions(Team team, Map<UUID, AbstractAction> teamActions) {
+		// get the actions for each ship
+		for (Ship ship : team.getShips()) {
+			// if the client forgets to set an action, set it to DoNothing
+			if (teamActions == null || !teamActions.containsKey(ship.getId())) {
+				teamActions.put(ship.getId(), new DoNothingAction());
+			}
+			ship.setCurrentAction(teamActions.get(ship.getId()));
+		}
+		
+		
+		
+		/*
+		 * herr0861
+		 * Loop through the drones and assign them their actions from the team. 
+		 */
+		for (UUID droneID : team.getDrones()) {
+			Drone drone = (Drone)simulatedSpace.getObjectById(droneID);
+			
+			
+			if (teamActions == null || !teamActions.containsKey(droneID)) {
+				drone.setCurrentAction(getClientSpace());
+				teamActions.put(droneID, drone.getCurrentAction());
+			}
+			
+			/*
+			 * herr0861
+			 * TODO: Check if this does everything
+			 * This allows the use to set in actions for the drones and have them be followed!
+			 */
+			drone.setCurrentAction(teamActions.get(drone.getId()));
+		}
+	}
+
+	/**
+	 * Add the power ups a team asked for that are allowed
+	 * 
+	 * @param team
+	 * @param powerups the power ups from the client (can be null)
+	 * @param allPowerups the power ups used this step
+	 */
+	private void addValidPowerups(Team team, Map<UUID, SpaceSettlersPowerupEnum> powerups, 
+			Map<UUID, SpaceSettlersPowerupEnum> allPowerups) {
+		if (powerups == null) {
+			return;
+		}
+		for (UUID key : powerups.keySet()) {
+			// verify power ups belong to this team
+			if (!team.isValidTeamID(key)) {
+				continue;
+			}
+
+			// get the object and ensure it can have a power up on it
+			AbstractObject swObject = simulatedSpace.getObjectById(key);
+			if (!(swObject instanceof AbstractActionableObject) || (swObject instanceof Drone)) {
+				continue;
+			}
+
+			// verify that the object has the power up associated with it
+			AbstractActionableObject actionableObject = (AbstractActionableObject) swObject;
+			if (actionableObject.isValidPowerup(powerups.get(key))) {
+				allPowerups.put(key, powerups.get(key));
+			}
+		}
+	}
+
+	/**
+	 * Clean up the dead objects, make new asteroids and update the scores at the end of a step
+	 */
+	private void finishStep() {
 		// cleanup and remove dead weapons
 		simulatedSpace.cleanupDeadWeapons();
 
@@ -753,11 +1031,8 @@ public final class SpaceSettlersSimulator {
 
 		updateScores();
 
-		//		for (Team team : teams) {
-		//			for (Ship ship : team.getShips()) {
-		//				System.out.println("Ship " + ship.getTeamName() + ship.getId() + " has resourcesAvailable " + ship.getMoney());
-		//			}
-		//		}
+		// the space is about to change again so don't hold on to the old copy
+		spaceChanged();
 	}
 
 	/**
@@ -772,6 +1047,102 @@ public final class SpaceSettlersSimulator {
 		simulatedSpace.setTeamInfo(teamInfo);
 	}
 
+	/**
+	 * @param purchases
+	 * @return true if the purchases contain anything other than NOTHING
+	 */
+	private boolean isBuyingSomething(Map<UUID, PurchaseTypes> purchases) {
+		if (purchases == null) {
+			return false;
+		}
+		for (PurchaseTypes purchase : purchases.values()) {
+			if (purchase != PurchaseTypes.NOTHING) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Get the copy of the space that is handed to the teams.  One read-only snapshot is 
+	 * shared by all of the teams until the simulator changes the space (see spaceChanged).
+	 * Clients that implement ReadOnlySpaceTeamClient get it as is and the rest get their 
+	 * own clone of it.  If the config asks for the old behavior, each team clones the real 
+	 * space instead.
+	 * 
+	 * @return
+	 */
+	private Toroidal2DPhysics getClientSpace() {
+		if (simConfig.isCloneSpacePerTeam()) {
+			return simulatedSpace;
+		}
+		if (clientSnapshot == null) {
+			clientSnapshot = simulatedSpace.createReadOnlySnapshot();
+		}
+		return clientSnapshot;
+	}
+
+	/**
+	 * Called whenever the simulator changes the space so the teams get a new snapshot
+	 */
+	private void spaceChanged() {
+		clientSnapshot = null;
+	}
+
+	/**
+	 * Print out how fast the simulation ran (used in turbo mode)
+	 * 
+	 * @param wallTime total time for the game in nanoseconds
+	 */
+	private void printTurboReport(long wallTime) {
+		int numSteps = stepTimes.length;
+		if (numSteps == 0) {
+			return;
+		}
+
+		long totalStepTime = 0;
+		for (long stepTime : stepTimes) {
+			totalStepTime += stepTime;
+		}
+		long[] sortedTimes = Arrays.copyOf(stepTimes, numSteps);
+		Arrays.sort(sortedTimes);
+		int p99Index = Math.min(numSteps - 1, (int) Math.ceil(0.99 * numSteps) - 1);
+
+		System.out.println("Turbo mode: " + numSteps + " steps");
+		System.out.println("  wall time: " + String.format("%.3f", wallTime / 1e9) + " s");
+		System.out.println("  steps/sec: " + String.format("%.1f", numSteps / (totalStepTime / 1e9)));
+		System.out.println("  mean step time: " + String.format("%.3f", (totalStepTime / (double) numSteps) / 1e6) + " ms");
+		System.out.println("  p99 step time: " + String.format("%.3f", sortedTimes[p99Index] / 1e6) + " ms");
+		System.out.println("  bytes allocated per step: " + getAverageAllocatedBytesPerStep());
+	}
+
+	/**
+	 * @return the number of bytes allocated so far by the current thread (or 0 if the 
+	 * JVM can't measure it)
+	 */
+	public static long getThreadAllocatedBytes() {
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		if (threadBean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	/**
+	 * @return the average number of bytes allocated per time step (by the simulator and 
+	 * the team threads)
+	 */
+	public long getAverageAllocatedBytesPerStep() {
+		if (numMeasuredSteps == 0) {
+			return 0;
+		}
+		long allocatedBytes = totalAllocatedBytes.get();
+		for (Team team : teams) {
+			allocatedBytes += team.getWorkerAllocatedBytes();
+		}
+		return allocatedBytes / numMeasuredSteps;
+	}
+
 	/**
 	 * Handle purchases for a team
 	 * 
@@ -1064,6 +1435,11 @@ public final class SpaceSettlersSimulator {
 			gui.redraw();
 		}
 
+		long startTime = System.nanoTime();
+		if (turbo) {
+			stepTimes = new long[simConfig.getSimulationSteps()];
+		}
+
 		// run the game loop until the maximum time has elapsed
 		// if the pause is activated, just wait
 		for (timestep = 0; timestep < simConfig.getSimulationSteps(); timestep++) {
@@ -1071,7 +1447,11 @@ public final class SpaceSettlersSimulator {
 				mySleep(50);
 			}
 
+			long stepStartTime = System.nanoTime();
 			advanceTime();
+			if (turbo) {
+				stepTimes[timestep] = System.nanoTime() - stepStartTime;
+			}
 
 			if (gui != null) {
 				gui.redraw();
@@ -1090,20 +1470,65 @@ public final class SpaceSettlersSimulator {
 			}
 		}
 
+		// let any clients still thinking in pipelined mode finish (their answers are too late to use)
+		collectTeamTurns();
+
 		// update the team info (to send into the space for use by other teams)
 		updateTeamInfo();
 
+		printClientCpuReport();
+
+		if (turbo) {
+			printTurboReport(System.nanoTime() - startTime);
+		}
+
 		// shutdown all the teams
 		shutdownTeams();
 	}
 
+	/**
+	 * Start a new step of the CPU budget for each team
+	 */
+	private void startCpuSteps() {
+		for (Team team : teams) {
+			team.startCpuStep();
+		}
+	}
+
+	/**
+	 * No CPU budgets in debug mode (the clients can be stopped in the debugger)
+	 */
+	private void disableCpuBudgets() {
+		for (Team team : teams) {
+			team.setCpuBudget(0, 0, 0, 0);
+		}
+	}
+
+	/**
+	 * Print the CPU time each client used and how often it ran over its budget
+	 */
+	private void printClientCpuReport() {
+		for (Team team : teams) {
+			System.out.println("Team: " + team.getLadderName() + " client CPU time " 
+					+ String.format("%.1f", team.getClientCpuMillis()) + " ms, timeouts " 
+					+ team.getNumClientTimeouts() + ", budget overruns " + team.getNumBudgetOverruns());
+		}
+	}
+
 	/**
 	 * Called after the simulation ends so the clients all cleanly shutdown
 	 */
 	public void shutdownTeams() {
 		for (Team team : teams) {
 			team.shutdownClients(simulatedSpace);
+			team.shutdownExecutor();
 		}
+
+		if (teamExecutor != null) {
+			teamExecutor.shutdownNow();
+			teamExecutor = null;
+		}
+		simulatedSpace.shutdown();
 	}
 
 	/**
@@ -1129,14 +1554,34 @@ public final class SpaceSettlersSimulator {
 	 */
 	class AdvanceTimeCallable implements  Callable<Map<UUID,AbstractAction>>{
 		private Team team;
+		private Toroidal2DPhysics space;
+		private boolean countAllocations;
 
-		AdvanceTimeCallable(Team team){
+		/**
+		 * @param team
+		 * @param space
+		 * @param countAllocations count what the call allocates (false when it runs on the 
+		 * simulation thread, which is already counted)
+		 */
+		AdvanceTimeCallable(Team team, Toroidal2DPhysics space, boolean countAllocations){
 			this.team = team;
+			this.space = space;
+			this.countAllocations = countAllocations;
 		}
 
 		public Map<UUID,AbstractAction> call() throws Exception {
 			if(this.team != null){
-				return this.team.getTeamMovementStart(simulatedSpace);
+				if (!countAllocations) {
+					return this.team.getTeamMovementStart(space);
+				}
+
+				// count what this thread allocates as part of the step
+				long startAllocatedBytes = getThreadAllocatedBytes();
+				try {
+					return this.team.getTeamMovementStart(space);
+				} finally {
+					totalAllocatedBytes.addAndGet(getThreadAllocatedBytes() - startAllocatedBytes);
+				}
 			}else{
 				//something went wrong...lets return empty map
 				return new HashMap<UUID, AbstractAction>();
@@ -1145,6 +1590,27 @@ public final class SpaceSettlersSimulator {
 		}
 	}
 
+	/**
+	 * Runs one step of a team's client in pipelined mode (see Team.prepareTeamTurn)
+	 */
+	class TeamTurnCallable implements Callable<TeamTurn> {
+		private Callable<TeamTurn> turn;
+
+		TeamTurnCallable(Callable<TeamTurn> turn) {
+			this.turn = turn;
+		}
+
+		public TeamTurn call() throws Exception {
+			// count what this thread allocates as part of the step
+			long startAllocatedBytes = getThreadAllocatedBytes();
+			try {
+				return turn.call();
+			} finally {
+				totalAllocatedBytes.addAndGet(getThreadAllocatedBytes() - startAllocatedBytes);
+			}
+		}
+	}
+
 	/**
 	 * Returns the physics engine (should only be called outside of the clients because they don't have access to this for security)
 	 * @return
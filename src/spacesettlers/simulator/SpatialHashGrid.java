@@ -0,0 +1,193 @@
+package spacesettlers.simulator;
+
+import java.util.Arrays;
+
+import spacesettlers.objects.AbstractObject;
+
+/**
+ * Uniform grid broad phase for collision detection in toroidal space.  The grid is
+ * rebuilt from an array of objects (every time step for the moveable objects and only
+ * when they change for the static ones) and then asked for the objects in the same or
+ * neighboring cells of a given object or location.  Cells wrap around the edges
+ * of the environment the same way the physics does.
+ *
+ * The cells are always at least as large as the largest possible interaction distance
+ * so checking the 3x3 neighborhood of a cell is enough to find every overlapping pair.
+ *
+ * The arrays are reused between rebuilds so the broad phase does not create garbage
+ * once it has grown to the size of the world.
+ */
+class SpatialHashGrid {
+	/**
+	 * Size of the environment
+	 */
+	int width, height;
+
+	/**
+	 * Number of cells in each direction and their size in pixels
+	 */
+	int numCols, numRows;
+	double cellWidth, cellHeight;
+
+	/**
+	 * First object index in each cell (or -1 if the cell is empty)
+	 */
+	int[] cellHead;
+
+	/**
+	 * Next object index in the same cell as the object (or -1 at the end of the cell)
+	 */
+	int[] nextInCell;
+
+	/**
+	 * Cell that each object was put into during the last rebuild
+	 */
+	int[] objectCell;
+
+	/**
+	 * Used to avoid visiting the same cell twice when the grid is smaller than 3x3
+	 */
+	int[] cellVisitStamp;
+	int currentStamp;
+
+	/**
+	 * Make an empty grid for an environment of the specified size
+	 *
+	 * @param width
+	 * @param height
+	 */
+	SpatialHashGrid(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.cellHead = new int[0];
+		this.cellVisitStamp = new int[0];
+		this.nextInCell = new int[0];
+		this.objectCell = new int[0];
+	}
+
+	/**
+	 * Put all the objects into the grid.  The cells are at least minCellSize wide and tall.
+	 *
+	 * @param objects the objects to place (only the first numObjects are used)
+	 * @param numObjects
+	 * @param minCellSize the largest distance at which two objects can interact
+	 */
+	void rebuild(AbstractObject[] objects, int numObjects, double minCellSize) {
+		minCellSize = Math.max(minCellSize, 1);
+		numCols = Math.max(1, (int) (width / minCellSize));
+		numRows = Math.max(1, (int) (height / minCellSize));
+		cellWidth = (double) width / numCols;
+		cellHeight = (double) height / numRows;
+
+		int numCells = numCols * numRows;
+		if (cellHead.length < numCells) {
+			cellHead = new int[numCells];
+			cellVisitStamp = new int[numCells];
+			currentStamp = 0;
+		}
+		Arrays.fill(cellHead, 0, numCells, -1);
+
+		if (nextInCell.length < numObjects) {
+			nextInCell = new int[numObjects];
+			objectCell = new int[numObjects];
+		}
+
+		// insert backwards so each cell lists its objects in increasing index order
+		for (int i = numObjects - 1; i >= 0; i--) {
+			int cell = getCell(objects[i].getPosition().getX(), objects[i].getPosition().getY());
+			objectCell[i] = cell;
+			nextInCell[i] = cellHead[cell];
+			cellHead[cell] = i;
+		}
+	}
+
+	/**
+	 * Find the cell for a location (positions are already wrapped into the environment
+	 * but clamp anyway in case of rounding at the far edge)
+	 *
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	int getCell(double x, double y) {
+		int col = (int) (x / cellWidth);
+		int row = (int) (y / cellHeight);
+		col = Math.min(Math.max(col, 0), numCols - 1);
+		row = Math.min(Math.max(row, 0), numRows - 1);
+		return row * numCols + col;
+	}
+
+	/**
+	 * Collect the indices of all objects after the specified one (in index order) that are in
+	 * the same cell or one of the eight neighboring cells.  The result is sorted so pairs are
+	 * visited in the same order as a brute force loop over all pairs.
+	 *
+	 * @param index index of the object (as given to rebuild)
+	 * @param candidates array to store the candidates in (must hold all objects)
+	 * @return the number of candidates found
+	 */
+	int findCandidates(int index, int[] candidates) {
+		return findCandidatesAround(objectCell[index], index, candidates);
+	}
+
+	/**
+	 * Collect the indices of all objects after afterIndex that are in the same cell as the
+	 * location or one of the eight neighboring cells (sorted in index order).  This is used
+	 * to look up objects that are not in the grid themselves.
+	 *
+	 * @param x location to look around
+	 * @param y
+	 * @param afterIndex only objects with a larger index are returned (-1 for all of them)
+	 * @param candidates array to store the candidates in (must hold all objects)
+	 * @return the number of candidates found
+	 */
+	int findCandidates(double x, double y, int afterIndex, int[] candidates) {
+		return findCandidatesAround(getCell(x, y), afterIndex, candidates);
+	}
+
+	/**
+	 * Collect the objects after afterIndex in the 3x3 block of cells around a cell
+	 */
+	private int findCandidatesAround(int cell, int afterIndex, int[] candidates) {
+		int col = cell % numCols;
+		int row = cell / numCols;
+		int numCandidates = 0;
+
+		// small grids wrap onto themselves so remember which cells have been visited
+		boolean wraps = numCols < 3 || numRows < 3;
+		if (wraps) {
+			currentStamp++;
+			if (currentStamp == Integer.MAX_VALUE) {
+				Arrays.fill(cellVisitStamp, 0);
+				currentStamp = 1;
+			}
+		}
+
+		for (int dRow = -1; dRow <= 1; dRow++) {
+			int neighborRow = (row + dRow + numRows) % numRows;
+			for (int dCol = -1; dCol <= 1; dCol++) {
+				int neighborCol = (col + dCol + numCols) % numCols;
+				int neighborCell = neighborRow * numCols + neighborCol;
+
+				if (wraps) {
+					if (cellVisitStamp[neighborCell] == currentStamp) {
+						continue;
+					}
+					cellVisitStamp[neighborCell] = currentStamp;
+				}
+
+				for (int j = cellHead[neighborCell]; j != -1; j = nextInCell[j]) {
+					if (j > afterIndex) {
+						candidates[numCandidates++] = j;
+					}
+				}
+			}
+		}
+
+		if (numCandidates > 1) {
+			Arrays.sort(candidates, 0, numCandidates);
+		}
+		return numCandidates;
+	}
+
+}
@@ -0,0 +1,405 @@
+package spacesettlers.simulator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+import spacesettlers.objects.AbstractObject;
+
+/**
+ * Grid of all the objects in a space used to answer nearest, k-nearest and radius
+ * queries without looking at every object.  Objects are added and removed along with
+ * the space and refresh() moves any objects that have changed cells since the last
+ * refresh (the physics calls it after moving everything each time step).  Objects must
+ * already have their slot id from the space when they are added.
+ *
+ * Cells wrap around the edges like the space does.  Queries search outward from the
+ * cell of the query location one ring of cells at a time and stop as soon as no
+ * unvisited cell could hold anything closer.
+ */
+class SpatialIndex {
+	/**
+	 * Target size of a grid cell in pixels
+	 */
+	static final int CELL_SIZE = 100;
+
+	/**
+	 * Grid layout
+	 */
+	int width, height;
+	int numCols, numRows;
+	double cellWidth, cellHeight;
+
+	/**
+	 * Smallest distance across a cell (used to know when a search can stop)
+	 */
+	double minCellSize;
+
+	/**
+	 * Largest radius of any object added so far (radii never change)
+	 */
+	int maxRadius;
+
+	/**
+	 * The objects in each cell
+	 */
+	ArrayList<ArrayList<AbstractObject>> cells;
+
+	/**
+	 * The object in each slot and the cell it is currently filed under (by slot id since 
+	 * beacons change their UUID)
+	 */
+	AbstractObject[] slotObjects;
+	int[] slotCells;
+
+	/**
+	 * Make an empty index for a space of the specified size
+	 *
+	 * @param width
+	 * @param height
+	 */
+	SpatialIndex(int width, int height) {
+		this.width = width;
+		this.height = height;
+		numCols = Math.max(1, width / CELL_SIZE);
+		numRows = Math.max(1, height / CELL_SIZE);
+		cellWidth = (double) width / numCols;
+		cellHeight = (double) height / numRows;
+		minCellSize = Math.min(cellWidth, cellHeight);
+
+		cells = new ArrayList<ArrayList<AbstractObject>>(numCols * numRows);
+		for (int i = 0; i < numCols * numRows; i++) {
+			cells.add(new ArrayList<AbstractObject>());
+		}
+		slotObjects = new AbstractObject[64];
+		slotCells = new int[64];
+	}
+
+	/**
+	 * Find the cell for a location
+	 *
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	int getCell(double x, double y) {
+		int col = (int) Math.floor(x / cellWidth) % numCols;
+		int row = (int) Math.floor(y / cellHeight) % numRows;
+		if (col < 0) {
+			col += numCols;
+		}
+		if (row < 0) {
+			row += numRows;
+		}
+		return row * numCols + col;
+	}
+
+	/**
+	 * Add an object to the index
+	 *
+	 * @param object
+	 */
+	void add(AbstractObject object) {
+		int slot = object.getSlotId();
+		if (slot >= slotObjects.length) {
+			int newLength = Math.max(slot + 1, 2 * slotObjects.length);
+			slotObjects = Arrays.copyOf(slotObjects, newLength);
+			slotCells = Arrays.copyOf(slotCells, newLength);
+		}
+		if (slotObjects[slot] == object) {
+			return;
+		}
+		int cell = getCell(object.getPosition().getX(), object.getPosition().getY());
+		cells.get(cell).add(object);
+		slotObjects[slot] = object;
+		slotCells[slot] = cell;
+		maxRadius = Math.max(maxRadius, object.getRadius());
+	}
+
+	/**
+	 * Is the object in the index?
+	 * 
+	 * @param object
+	 * @return
+	 */
+	private boolean contains(AbstractObject object) {
+		int slot = object.getSlotId();
+		return slot >= 0 && slot < slotObjects.length && slotObjects[slot] == object;
+	}
+
+	/**
+	 * Remove an object from the index
+	 *
+	 * @param object
+	 */
+	void remove(AbstractObject object) {
+		if (contains(object)) {
+			int slot = object.getSlotId();
+			removeFromCell(cells.get(slotCells[slot]), object);
+			slotObjects[slot] = null;
+		}
+	}
+
+	/**
+	 * Remove an object from a cell list by identity
+	 *
+	 * @param cellObjects
+	 * @param object
+	 */
+	private void removeFromCell(ArrayList<AbstractObject> cellObjects, AbstractObject object) {
+		for (int i = 0; i < cellObjects.size(); i++) {
+			if (cellObjects.get(i) == object) {
+				cellObjects.remove(i);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Move an object to the right cell if it has moved
+	 *
+	 * @param object
+	 */
+	void update(AbstractObject object) {
+		if (contains(object)) {
+			int slot = object.getSlotId();
+			slotCells[slot] = moveIfNeeded(object, slotCells[slot]);
+		}
+	}
+
+	/**
+	 * Move every object that has changed cells since the last refresh
+	 */
+	void refresh() {
+		for (int slot = 0; slot < slotObjects.length; slot++) {
+			if (slotObjects[slot] != null) {
+				slotCells[slot] = moveIfNeeded(slotObjects[slot], slotCells[slot]);
+			}
+		}
+	}
+
+	/**
+	 * Move an object from its old cell to the cell for its current position (the caller
+	 * records the new cell)
+	 *
+	 * @param object
+	 * @param oldCell
+	 * @return the cell the object is now in
+	 */
+	private int moveIfNeeded(AbstractObject object, int oldCell) {
+		int newCell = getCell(object.getPosition().getX(), object.getPosition().getY());
+		if (newCell != oldCell) {
+			removeFromCell(cells.get(oldCell), object);
+			cells.get(newCell).add(object);
+		}
+		return newCell;
+	}
+
+	/**
+	 * @return the number of rings needed to cover the whole grid from any cell
+	 */
+	private int getMaxRing() {
+		return Math.max(numCols, numRows) / 2;
+	}
+
+	/**
+	 * Visit every cell in the ring of cells that are exactly ring cells away from the
+	 * center cell (wrapping around the edges) and call the visitor on each object of
+	 * the right type that passes the filter.  Stops early if the visitor returns false.
+	 *
+	 * The offsets are limited to one wrap of the grid so each cell belongs to exactly one
+	 * ring.  That way queries don't need any shared state and several clients can search
+	 * the same snapshot at once.
+	 */
+	private <T extends AbstractObject> boolean visitRing(int centerCell, int ring, Class<T> type,
+			Predicate<? super T> filter, RingVisitor<T> visitor) {
+		int centerCol = centerCell % numCols;
+		int centerRow = centerCell / numCols;
+		int minCol = Math.max(-ring, -(numCols - 1) / 2);
+		int maxCol = Math.min(ring, numCols / 2);
+		int minRow = Math.max(-ring, -(numRows - 1) / 2);
+		int maxRow = Math.min(ring, numRows / 2);
+
+		for (int dRow = minRow; dRow <= maxRow; dRow++) {
+			boolean edgeRow = (dRow == -ring || dRow == ring);
+			for (int dCol = minCol; dCol <= maxCol; dCol++) {
+				// only the outside of the square is new in this ring
+				if (!edgeRow && dCol != -ring && dCol != ring) {
+					continue;
+				}
+
+				int col = Math.floorMod(centerCol + dCol, numCols);
+				int row = Math.floorMod(centerRow + dRow, numRows);
+				int cell = row * numCols + col;
+
+				for (AbstractObject object : cells.get(cell)) {
+					if (type.isInstance(object)) {
+						T typedObject = type.cast(object);
+						if ((filter == null || filter.test(typedObject)) && !visitor.visit(typedObject)) {
+							return false;
+						}
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Called for each object found while searching a ring (return false to stop searching)
+	 */
+	private interface RingVisitor<T> {
+		boolean visit(T object);
+	}
+
+	/**
+	 * Find the closest object of the specified type that passes the filter
+	 *
+	 * @param space the space (used for toroidal distances)
+	 * @param x location to search from
+	 * @param y
+	 * @param type
+	 * @param filter can be null
+	 * @return the closest object or null if there isn't one
+	 */
+	<T extends AbstractObject> T nearest(final Toroidal2DPhysics space, final double x, final double y,
+			Class<T> type, Predicate<? super T> filter) {
+		List<T> closest = kNearest(space, x, y, 1, type, filter);
+		if (closest.isEmpty()) {
+			return null;
+		}
+		return closest.get(0);
+	}
+
+	/**
+	 * Find the k closest objects of the specified type that pass the filter
+	 *
+	 * @param space the space (used for toroidal distances)
+	 * @param x location to search from
+	 * @param y
+	 * @param k maximum number of objects to return
+	 * @param type
+	 * @param filter can be null
+	 * @return up to k objects sorted by distance (closest first)
+	 */
+	<T extends AbstractObject> List<T> kNearest(final Toroidal2DPhysics space, final double x, final double y,
+			final int k, Class<T> type, Predicate<? super T> filter) {
+		final ArrayList<T> best = new ArrayList<T>(Math.max(k, 0));
+		final double[] bestDistances = new double[Math.max(k, 0)];
+		if (k <= 0) {
+			return best;
+		}
+
+		RingVisitor<T> visitor = new RingVisitor<T>() {
+			public boolean visit(T object) {
+				double distance = space.findShortestDistance(x, y, object.getPosition().getX(), object.getPosition().getY());
+				int size = best.size();
+				if (size == k && distance >= bestDistances[k - 1]) {
+					return true;
+				}
+
+				// insertion sort into the list of the closest objects (ties keep the first one found)
+				int index = (size == k) ? k - 1 : size;
+				while (index > 0 && bestDistances[index - 1] > distance) {
+					if (index < k) {
+						bestDistances[index] = bestDistances[index - 1];
+					}
+					index--;
+				}
+				if (size == k) {
+					best.remove(k - 1);
+				}
+				best.add(index, object);
+				bestDistances[index] = distance;
+				return true;
+			}
+		};
+
+		int centerCell = getCell(x, y);
+		int maxRing = getMaxRing();
+		for (int ring = 0; ring <= maxRing; ring++) {
+			visitRing(centerCell, ring, type, filter, visitor);
+
+			// anything in a later ring is at least ring cells away
+			if (best.size() == k && bestDistances[k - 1] <= ring * minCellSize) {
+				break;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Find all objects of the specified type within a radius that pass the filter
+	 *
+	 * @param space the space (used for toroidal distances)
+	 * @param x location to search from
+	 * @param y
+	 * @param radius
+	 * @param type
+	 * @param filter can be null
+	 * @return the objects sorted by distance (closest first)
+	 */
+	<T extends AbstractObject> List<T> within(final Toroidal2DPhysics space, final double x, final double y,
+			final double radius, Class<T> type, Predicate<? super T> filter) {
+		final ArrayList<T> found = new ArrayList<T>();
+		final ArrayList<Double> foundDistances = new ArrayList<Double>();
+
+		RingVisitor<T> visitor = new RingVisitor<T>() {
+			public boolean visit(T object) {
+				double distance = space.findShortestDistance(x, y, object.getPosition().getX(), object.getPosition().getY());
+				if (distance <= radius) {
+					found.add(object);
+					foundDistances.add(distance);
+				}
+				return true;
+			}
+		};
+
+		int centerCell = getCell(x, y);
+		int maxRing = Math.min(getMaxRing(), (int) Math.ceil(radius / minCellSize) + 1);
+		for (int ring = 0; ring <= maxRing; ring++) {
+			visitRing(centerCell, ring, type, filter, visitor);
+		}
+
+		// sort by distance (stable so ties stay in the order they were found)
+		Integer[] order = new Integer[found.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(foundDistances.get(a), foundDistances.get(b)));
+		ArrayList<T> sorted = new ArrayList<T>(found.size());
+		for (Integer index : order) {
+			sorted.add(found.get(index));
+		}
+		return sorted;
+	}
+
+	/**
+	 * Same test as Toroidal2DPhysics.isLocationFree but only looking at nearby cells
+	 *
+	 * @param space the space (used for toroidal distances)
+	 * @param x
+	 * @param y
+	 * @param radius
+	 * @return true if no object is within radius + twice its own radius of the location
+	 */
+	boolean isLocationFree(final Toroidal2DPhysics space, final double x, final double y, final int radius) {
+		RingVisitor<AbstractObject> visitor = new RingVisitor<AbstractObject>() {
+			public boolean visit(AbstractObject object) {
+				// fixed bug where it only checked radius and not diameter
+				return !(space.findShortestDistance(x, y, object.getPosition().getX(),
+						object.getPosition().getY()) <= radius + (2 * object.getRadius()));
+			}
+		};
+
+		int centerCell = getCell(x, y);
+		int maxRing = Math.min(getMaxRing(), (int) Math.ceil((radius + 2 * maxRadius) / minCellSize) + 1);
+		for (int ring = 0; ring <= maxRing; ring++) {
+			if (!visitRing(centerCell, ring, AbstractObject.class, null, visitor)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,142 @@
+package spacesettlers.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.utilities.Position;
+
+/**
+ * Sub-steps the objects that move a long way in one time step and are near something
+ * (missiles closing on a target, ships next to asteroids).  Every object moves in a straight
+ * line during a step so sub-stepping an object means checking its contacts at evenly spaced
+ * times along that line, no more than maxSubstepDisplacement apart.  The first contact found
+ * is collided at that time (the objects are moved back, collided and then moved forward for
+ * the rest of the step with their new velocities).
+ *
+ * Slow objects and fast objects with nothing nearby just take the single full step, so the
+ * far away asteroids cost nothing extra.  Contacts at the end of the step are left for the
+ * normal collision detection at the start of the next step.
+ */
+class SubstepScheduler {
+	/**
+	 * Most distance an object can move between two checks of its contacts
+	 */
+	double maxSubstepDisplacement;
+
+	/**
+	 * The fast objects this step (kept to avoid making a new list each step)
+	 */
+	ArrayList<AbstractObject> fastObjects;
+
+	/**
+	 * Make a scheduler
+	 *
+	 * @param maxSubstepDisplacement the most distance (in pixels) an object moves between sub-steps
+	 */
+	SubstepScheduler(double maxSubstepDisplacement) {
+		this.maxSubstepDisplacement = maxSubstepDisplacement;
+		fastObjects = new ArrayList<AbstractObject>();
+	}
+
+	/**
+	 * Check the fast objects for contacts part way through the step that just happened
+	 * (all objects must be at their end of step positions and the index must be up to date)
+	 *
+	 * @param space
+	 * @return the number of collisions found between sub-steps
+	 */
+	int substep(Toroidal2DPhysics space) {
+		double timeStep = space.getTimestepDuration();
+
+		// find the fast objects and how far anything moved this step
+		double maxDisplacement = 0;
+		for (AbstractObject object : space.getAllObjects()) {
+			if (!object.isAlive()) {
+				continue;
+			}
+			double displacement = getSpeed(object) * timeStep;
+			maxDisplacement = Math.max(maxDisplacement, displacement);
+			if (displacement > maxSubstepDisplacement) {
+				fastObjects.add(object);
+			}
+		}
+
+		int numCollisions = 0;
+		for (int i = 0; i < fastObjects.size(); i++) {
+			if (substepObject(space, fastObjects.get(i), timeStep, maxDisplacement)) {
+				numCollisions++;
+			}
+		}
+		fastObjects.clear();
+		return numCollisions;
+	}
+
+	/**
+	 * Sub-step one fast object against everything near the line it moved along
+	 *
+	 * @return true if it collided with something
+	 */
+	private boolean substepObject(Toroidal2DPhysics space, AbstractObject object, double timeStep,
+			double maxDisplacement) {
+		// it may have died in an earlier collision this step
+		if (!object.isAlive()) {
+			return false;
+		}
+
+		Position position = object.getPosition();
+		double displacement = getSpeed(object) * timeStep;
+
+		// anything that could touch it during the step is near the middle of its path
+		Position middle = new Position(position.getX() - position.getTranslationalVelocityX() * timeStep / 2,
+				position.getY() - position.getTranslationalVelocityY() * timeStep / 2);
+		space.toroidalWrap(middle);
+		double searchRadius = displacement / 2 + object.getRadius() + space.spatialIndex.maxRadius + maxDisplacement;
+		List<AbstractObject> neighbors = space.within(middle, searchRadius, AbstractObject.class,
+				neighbor -> neighbor != object && neighbor.isAlive());
+		if (neighbors.isEmpty()) {
+			return false;
+		}
+
+		// step forward from the start of the step (only objects that weren't already touching
+		// at the start can make a new contact)
+		int numSubsteps = (int) Math.ceil(displacement / maxSubstepDisplacement);
+		for (int step = 1; step < numSubsteps; step++) {
+			double timeBeforeEnd = timeStep * (numSubsteps - step) / numSubsteps;
+			for (AbstractObject neighbor : neighbors) {
+				if (isTouching(space, object, neighbor, timeBeforeEnd)
+						&& !isTouching(space, object, neighbor, timeStep)) {
+					space.collideAtTime(object, neighbor, timeBeforeEnd);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Were the two objects touching the specified time before the end of the step?
+	 */
+	private boolean isTouching(Toroidal2DPhysics space, AbstractObject object1, AbstractObject object2,
+			double timeBeforeEnd) {
+		Position position1 = object1.getPosition();
+		Position position2 = object2.getPosition();
+		double dx = space.wrapDeltaX(position2.getX() - position1.getX())
+				- (position2.getTranslationalVelocityX() - position1.getTranslationalVelocityX()) * timeBeforeEnd;
+		double dy = space.wrapDeltaY(position2.getY() - position1.getY())
+				- (position2.getTranslationalVelocityY() - position1.getTranslationalVelocityY()) * timeBeforeEnd;
+		double radii = object1.getRadius() + object2.getRadius();
+		return dx * dx + dy * dy < radii * radii;
+	}
+
+	/**
+	 * @return the speed of a moveable object (0 for objects that can't move)
+	 */
+	private static double getSpeed(AbstractObject object) {
+		if (!object.isMoveable()) {
+			return 0;
+		}
+		Position position = object.getPosition();
+		return Math.hypot(position.getTranslationalVelocityX(), position.getTranslationalVelocityY());
+	}
+}
@@ -1,12 +1,17 @@
 package spacesettlers.simulator;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
+import java.util.function.Predicate;
 
 import spacesettlers.actions.DoNothingAction;
 import spacesettlers.actions.AbstractAction;
@@ -97,6 +102,39 @@ public class Toroidal2DPhysics {
 	 */
 	HashMap<UUID, AbstractObject> objectsById;
 
+	/**
+	 * Objects by their slot id (null for free slots).  Slots are handed out densely and
+	 * freed slots are kept on a stack to be reused (the stack can hold slots that have
+	 * since been taken again, those are skipped).
+	 */
+	AbstractObject[] objectsBySlot;
+	int numSlots;
+	int[] freeSlots;
+	int numFreeSlots;
+
+	/**
+	 * The order each slot's object was added in (the same order as allObjects)
+	 */
+	long[] slotAddOrder;
+	long numObjectsAdded;
+
+	/**
+	 * Objects that have died (or were added dead) and haven't been removed or respawned,
+	 * with one queue per type tag.  setAlive(false) puts objects here through the death
+	 * listener so the cleanup only looks at the objects that died instead of every object.
+	 * An object is in at most one queue and slotInDeathQueue is true while it is.
+	 */
+	ArrayList<ArrayList<AbstractObject>> deathQueues;
+	boolean[] slotInDeathQueue;
+	final AbstractObject.DeathListener deathListener = this::objectDied;
+
+	/**
+	 * Dead objects that might respawn this step (kept to avoid making a new list each step)
+	 */
+	ArrayList<AbstractObject> respawnCandidates;
+	final Comparator<AbstractObject> addOrderComparator = (object1, object2) -> Long
+			.compare(slotAddOrder[object1.getSlotId()], slotAddOrder[object2.getSlotId()]);
+
 	/**
 	 * The timestep used for simulation of physics
 	 */
@@ -114,11 +152,108 @@ public class Toroidal2DPhysics {
 	public static final double MAX_ANGULAR_VELOCITY = Math.PI;
 	public static final double ENERGY_PENALTY = 0.0005;
 
+	/**
+	 * Number of random guesses to make when looking for a free location before
+	 * switching to an occupancy grid of the region (so crowded maps can't spin forever)
+	 */
+	public static final int MAX_FREE_LOCATION_ATTEMPTS = 100;
+
 	/**
 	 * Handles collisions between spacewar objects
 	 */
 	CollisionHandler collisionHandler;
 
+	/**
+	 * If true, check all pairs of objects for collisions instead of using the grid
+	 */
+	boolean bruteForceCollisionDetection;
+
+	/**
+	 * If true, also collide objects that passed through each other during the last time step
+	 */
+	boolean continuousCollisionDetection;
+
+	/**
+	 * Sub-steps fast objects that are near something (null if sub-stepping is off)
+	 */
+	SubstepScheduler substepScheduler;
+
+	/**
+	 * Broad phase for collision detection (created on first use) and its reusable buffers
+	 */
+	SpatialHashGrid collisionGrid;
+	AbstractObject[] collisionObjects;
+	int[] collisionCandidates;
+
+	/**
+	 * The moveable objects of this time step (the only ones put into collisionGrid) and 
+	 * their index in collisionObjects
+	 */
+	AbstractObject[] dynamicObjects;
+	int[] dynamicIndices;
+
+	/**
+	 * Broad phase for the objects that never move (bases, beacons and non-moveable asteroids).
+	 * It is only rebuilt when a static object is added, removed or moved or when its cells 
+	 * are the wrong size for how fast things are moving.
+	 */
+	SpatialHashGrid staticGrid;
+	AbstractObject[] staticObjects;
+	double[] staticX, staticY;
+	int numStaticObjects;
+	double staticCellSize;
+	int[] staticIndices;
+	int[] staticCandidates;
+
+	/**
+	 * Each object (by slot), where it was at the end of the last collision check and 
+	 * whether it was touching anything then.  An object that is still there, has no 
+	 * velocity and wasn't touching anything is sleeping and two sleeping objects are 
+	 * never checked against each other.  touching is filled in during the current check.
+	 */
+	AbstractObject[] sleepingObjects;
+	double[] sleepingX, sleepingY;
+	boolean[] sleepingTouching, touching;
+
+	/**
+	 * Where each object was when the collision grids were built (by index in collisionObjects)
+	 * and the index of each object by slot
+	 */
+	double[] collisionX, collisionY;
+	int[] collisionIndexBySlot;
+
+	/**
+	 * Resolves the collisions in independent islands on a fork-join pool (null to resolve
+	 * them one pair at a time)
+	 */
+	CollisionIslands collisionIslands;
+
+	/**
+	 * Index of all the objects by location (used by nearest, kNearest and within)
+	 */
+	SpatialIndex spatialIndex;
+
+	/**
+	 * Primitive array storage for the state of passive moveable objects (null if not used)
+	 */
+	PhysicsStateStore stateStore;
+
+	/**
+	 * Moves the passive objects on a fork-join pool (null to move them one at a time)
+	 */
+	ParallelIntegrator parallelIntegrator;
+
+	/**
+	 * Straight line predictions for the current state of the space (made the first time
+	 * someone asks and thrown away whenever anything moves)
+	 */
+	volatile TrajectoryPredictor trajectoryPredictor;
+
+	/**
+	 * True if this space is a read-only snapshot that is shared between clients
+	 */
+	boolean readOnly;
+
 	/**
 	 * Maximum time step
 	 */
@@ -151,8 +286,22 @@ public class Toroidal2DPhysics {
 		flags = new LinkedHashSet<Flag>();
 		weapons = new LinkedHashSet<AbstractWeapon>();
 		objectsById = new HashMap<UUID, AbstractObject>();
+		initializeSlots(64);
 		maxTime = simConfig.getSimulationSteps();
 		teamInfo = new LinkedHashSet<ImmutableTeamInfo>();
+		bruteForceCollisionDetection = simConfig.isBruteForceCollisionDetection();
+		continuousCollisionDetection = simConfig.isContinuousCollisionDetection();
+		setMaxSubstepDisplacement(simConfig.getMaxSubstepDisplacement());
+		spatialIndex = new SpatialIndex(width, height);
+		if (simConfig.isPhysicsStateStore()) {
+			stateStore = new PhysicsStateStore();
+		}
+		if (simConfig.isParallelIntegration()) {
+			parallelIntegrator = new ParallelIntegrator(simConfig.getIntegrationThreads());
+		}
+		if (simConfig.isParallelCollisions()) {
+			collisionIslands = new CollisionIslands(simConfig.getCollisionThreads());
+		}
 	}
 
 	/**
@@ -180,7 +329,9 @@ public class Toroidal2DPhysics {
 		cores = new LinkedHashSet<AiCore>();
 		weapons = new LinkedHashSet<AbstractWeapon>();
 		objectsById = new HashMap<UUID, AbstractObject>();
+		initializeSlots(64);
 		teamInfo = new LinkedHashSet<ImmutableTeamInfo>();
+		spatialIndex = new SpatialIndex(width, height);
 	}
 
 	/**
@@ -210,8 +361,36 @@ public class Toroidal2DPhysics {
 		cores = new LinkedHashSet<AiCore>();
 		weapons = new LinkedHashSet<AbstractWeapon>();
 		objectsById = new HashMap<UUID, AbstractObject>();
+		// same slot layout as the original so the copied objects keep their slots
+		initializeSlots(other.objectsBySlot.length);
+		numSlots = other.numSlots;
+		freeSlots = other.freeSlots.clone();
+		numFreeSlots = other.numFreeSlots;
 		maxTime = other.maxTime;
 		teamInfo = new LinkedHashSet<ImmutableTeamInfo>(other.teamInfo);
+		bruteForceCollisionDetection = other.bruteForceCollisionDetection;
+		continuousCollisionDetection = other.continuousCollisionDetection;
+		if (other.substepScheduler != null) {
+			setMaxSubstepDisplacement(other.substepScheduler.maxSubstepDisplacement);
+		}
+		spatialIndex = new SpatialIndex(width, height);
+	}
+
+	/**
+	 * Make the empty slot tables and death queues
+	 * 
+	 * @param capacity number of slots to start with
+	 */
+	void initializeSlots(int capacity) {
+		objectsBySlot = new AbstractObject[capacity];
+		slotAddOrder = new long[capacity];
+		slotInDeathQueue = new boolean[capacity];
+		freeSlots = new int[16];
+		deathQueues = new ArrayList<ArrayList<AbstractObject>>(AbstractObject.NUM_TYPES);
+		for (int type = 0; type < AbstractObject.NUM_TYPES; type++) {
+			deathQueues.add(new ArrayList<AbstractObject>());
+		}
+		respawnCandidates = new ArrayList<AbstractObject>();
 	}
 
 	/**
@@ -220,6 +399,7 @@ public class Toroidal2DPhysics {
 	 * @param obj
 	 */
 	public void addObject(AbstractObject obj) {
+		checkWritable();
 		allObjects.add(obj);
 
 		if (obj instanceof Beacon) {
@@ -255,6 +435,18 @@ public class Toroidal2DPhysics {
 		}
 
 		objectsById.put(obj.getId(), obj);
+		assignSlot(obj);
+		spatialIndex.add(obj);
+
+		obj.setDeathListener(deathListener);
+		if (!obj.isAlive()) {
+			objectDied(obj);
+		}
+
+		if (stateStore != null && PhysicsStateStore.isStorable(obj)) {
+			stateStore.add(obj);
+		}
+		trajectoryPredictor = null;
 	}
 
 	/**
@@ -263,6 +455,7 @@ public class Toroidal2DPhysics {
 	 * @param obj
 	 */
 	public void removeObject(AbstractObject obj) {
+		checkWritable();
 		allObjects.remove(obj);
 
 		if (obj.getClass() == Beacon.class) {
@@ -298,6 +491,91 @@ public class Toroidal2DPhysics {
 		}
 
 		objectsById.remove(obj.getId());
+		spatialIndex.remove(obj);
+
+		if (stateStore != null) {
+			stateStore.remove(obj);
+		}
+
+		freeSlot(obj);
+		trajectoryPredictor = null;
+	}
+
+	/**
+	 * Give an object a slot.  It keeps the slot it already has if that slot is free here
+	 * (so copies of the space use the same slots) and otherwise gets a free slot.
+	 * 
+	 * @param obj
+	 */
+	private void assignSlot(AbstractObject obj) {
+		int slot = obj.getSlotId();
+		if (slot >= 0 && slot < numSlots && objectsBySlot[slot] == obj) {
+			return;
+		}
+		if (slot >= 0 && slot < numSlots && objectsBySlot[slot] == null) {
+			objectsBySlot[slot] = obj;
+			slotAddOrder[slot] = numObjectsAdded++;
+			return;
+		}
+
+		// reuse a freed slot if there is one (skipping any that were taken again)
+		slot = -1;
+		while (numFreeSlots > 0 && slot < 0) {
+			int freeSlot = freeSlots[--numFreeSlots];
+			if (objectsBySlot[freeSlot] == null) {
+				slot = freeSlot;
+			}
+		}
+		if (slot < 0) {
+			if (numSlots == objectsBySlot.length) {
+				objectsBySlot = Arrays.copyOf(objectsBySlot, 2 * objectsBySlot.length);
+				slotAddOrder = Arrays.copyOf(slotAddOrder, objectsBySlot.length);
+				slotInDeathQueue = Arrays.copyOf(slotInDeathQueue, objectsBySlot.length);
+			}
+			slot = numSlots++;
+		}
+
+		objectsBySlot[slot] = obj;
+		slotAddOrder[slot] = numObjectsAdded++;
+		obj.setSlotId(slot);
+	}
+
+	/**
+	 * Free the slot of an object that has been removed so it can be reused
+	 * 
+	 * @param obj
+	 */
+	private void freeSlot(AbstractObject obj) {
+		int slot = obj.getSlotId();
+		if (slot < 0 || slot >= numSlots || objectsBySlot[slot] != obj) {
+			return;
+		}
+
+		// take it out of its death queue (if it is in one)
+		if (slotInDeathQueue[slot]) {
+			slotInDeathQueue[slot] = false;
+			ArrayList<AbstractObject> queue = deathQueues.get(obj.getTypeTag());
+			for (int i = 0; i < queue.size(); i++) {
+				if (queue.get(i) == obj) {
+					queue.remove(i);
+					break;
+				}
+			}
+		}
+		if (obj.getDeathListener() == deathListener) {
+			obj.setDeathListener(null);
+		}
+
+		objectsBySlot[slot] = null;
+		if (sleepingObjects != null && slot < sleepingObjects.length) {
+			sleepingObjects[slot] = null;
+			touching[slot] = false;
+		}
+		obj.setSlotId(-1);
+		if (numFreeSlots == freeSlots.length) {
+			freeSlots = Arrays.copyOf(freeSlots, 2 * freeSlots.length);
+		}
+		freeSlots[numFreeSlots++] = slot;
 	}
 
 	/**
@@ -310,6 +588,54 @@ public class Toroidal2DPhysics {
 		return objectsById.get(id);
 	}
 
+	/**
+	 * Called when an object in this space dies (or is added dead).  It is put into the 
+	 * death queue for its type unless it is already there.
+	 * 
+	 * @param object
+	 */
+	void objectDied(AbstractObject object) {
+		// snapshots are shared by the clients and never cleaned up
+		if (readOnly) {
+			return;
+		}
+		// the islands report their deaths in serial order once they are done
+		if (collisionIslands != null && collisionIslands.resolving) {
+			collisionIslands.recordDeath(object);
+			return;
+		}
+		int slot = object.getSlotId();
+		if (slot < 0 || slot >= numSlots || objectsBySlot[slot] != object || slotInDeathQueue[slot]) {
+			return;
+		}
+		slotInDeathQueue[slot] = true;
+		deathQueues.get(object.getTypeTag()).add(object);
+	}
+
+	/**
+	 * Return an object by its slot id (see AbstractObject.getSlotId()).  This is an array
+	 * lookup so it is faster than getObjectById.
+	 * 
+	 * @param slotId
+	 * @return the object in that slot or null if the slot is free
+	 */
+	public AbstractObject getObjectBySlot(int slotId) {
+		if (slotId < 0 || slotId >= numSlots) {
+			return null;
+		}
+		return objectsBySlot[slotId];
+	}
+
+	/**
+	 * Return one more than the largest slot id in use.  Arrays of this size can be indexed 
+	 * by the slot id of any object in the space.
+	 * 
+	 * @return
+	 */
+	public int getNumSlots() {
+		return numSlots;
+	}
+
 	/**
 	 * Return the list of asteroids
 	 * 
@@ -409,6 +735,118 @@ public class Toroidal2DPhysics {
 		return timeStep;
 	}
 
+	/**
+	 * Turn on brute force (all pairs) collision detection instead of the spatial hash grid
+	 * 
+	 * @param bruteForceCollisionDetection
+	 */
+	public void setBruteForceCollisionDetection(boolean bruteForceCollisionDetection) {
+		this.bruteForceCollisionDetection = bruteForceCollisionDetection;
+	}
+
+	/**
+	 * Turn on continuous collision detection.  Objects that don't overlap at the end of a 
+	 * time step are swept back along their velocities over the step and collide if they 
+	 * passed through each other.  This allows larger time steps without objects tunneling.
+	 * 
+	 * @param continuousCollisionDetection
+	 */
+	public void setContinuousCollisionDetection(boolean continuousCollisionDetection) {
+		this.continuousCollisionDetection = continuousCollisionDetection;
+	}
+
+	/**
+	 * Turn on sub-stepping of fast objects.  Objects that move farther than this in one time 
+	 * step and are near something have their contacts checked at points along their path 
+	 * no more than this far apart.  This keeps collisions accurate with a larger time step.
+	 * 
+	 * @param maxSubstepDisplacement most pixels to move between checks (0 to turn it off)
+	 */
+	public void setMaxSubstepDisplacement(double maxSubstepDisplacement) {
+		if (maxSubstepDisplacement > 0) {
+			substepScheduler = new SubstepScheduler(maxSubstepDisplacement);
+		} else {
+			substepScheduler = null;
+		}
+	}
+
+	/**
+	 * Keep the state of asteroids, weapons and cores in primitive arrays so that moving
+	 * them doesn't create any garbage.  Their getPosition() becomes a view of the arrays.
+	 * Copies of the space (deepClone and snapshots) always use normal positions.
+	 * 
+	 * @param usePhysicsStateStore
+	 */
+	public void setPhysicsStateStore(boolean usePhysicsStateStore) {
+		if (usePhysicsStateStore && stateStore == null) {
+			stateStore = new PhysicsStateStore();
+			for (AbstractObject object : allObjects) {
+				if (PhysicsStateStore.isStorable(object)) {
+					stateStore.add(object);
+				}
+			}
+		} else if (!usePhysicsStateStore && stateStore != null) {
+			stateStore.removeAll();
+			stateStore = null;
+		}
+	}
+
+	/**
+	 * Move the asteroids, weapons and other objects that aren't being controlled on a 
+	 * fork-join pool.  The results are exactly the same as moving them one at a time.
+	 * 
+	 * @param parallelIntegration true to move objects in parallel
+	 * @param numThreads number of threads to use (0 for one per processor)
+	 */
+	public void setParallelIntegration(boolean parallelIntegration, int numThreads) {
+		if (parallelIntegration && parallelIntegrator != null
+				&& (numThreads <= 0 || parallelIntegrator.getNumThreads() == numThreads)) {
+			return;
+		}
+		if (parallelIntegrator != null) {
+			parallelIntegrator.shutdown();
+			parallelIntegrator = null;
+		}
+		if (parallelIntegration) {
+			parallelIntegrator = new ParallelIntegrator(numThreads);
+		}
+	}
+
+	/**
+	 * Resolve the collisions of each step in independent islands on a fork-join pool.  
+	 * The results are exactly the same as resolving them one pair at a time.
+	 * 
+	 * @param parallelCollisions true to resolve collisions in parallel
+	 * @param numThreads number of threads to use (0 for one per processor)
+	 */
+	public void setParallelCollisions(boolean parallelCollisions, int numThreads) {
+		if (parallelCollisions && collisionIslands != null
+				&& (numThreads <= 0 || collisionIslands.getNumThreads() == numThreads)) {
+			return;
+		}
+		if (collisionIslands != null) {
+			collisionIslands.shutdown();
+			collisionIslands = null;
+		}
+		if (parallelCollisions) {
+			collisionIslands = new CollisionIslands(numThreads);
+		}
+	}
+
+	/**
+	 * Stop any threads used by the physics (called at the end of a game)
+	 */
+	public void shutdown() {
+		if (parallelIntegrator != null) {
+			parallelIntegrator.shutdown();
+			parallelIntegrator = null;
+		}
+		if (collisionIslands != null) {
+			collisionIslands.shutdown();
+			collisionIslands = null;
+		}
+	}
+
 	/**
 	 * Return the timestep
 	 * 
@@ -419,24 +857,30 @@ public class Toroidal2DPhysics {
 	}
 
 	/**
-	 * Returns a new random free location in space
+	 * Returns a new random free location in space.  After MAX_FREE_LOCATION_ATTEMPTS 
+	 * random guesses it picks from the free cells of an occupancy grid instead (and if
+	 * nothing is free it returns the least crowded location).
 	 * 
 	 * @param rand   Random number generator
 	 * @param radius the radius around the new location that must be free
 	 * @return
 	 */
 	public Position getRandomFreeLocation(Random rand, int radius) {
-		Position randLocation = new Position(rand.nextFloat() * width, rand.nextFloat() * height);
+		prepareFreeLocationSearch();
 
-		while (!isLocationFree(randLocation, radius)) {
-			randLocation = new Position(rand.nextFloat() * width, rand.nextFloat() * height);
+		for (int attempt = 0; attempt < MAX_FREE_LOCATION_ATTEMPTS; attempt++) {
+			Position randLocation = new Position(rand.nextFloat() * width, rand.nextFloat() * height);
+			if (isLocationFreeIndexed(randLocation.getX(), randLocation.getY(), radius)) {
+				return randLocation;
+			}
 		}
 
-		return randLocation;
+		return FreeLocationSampler.sample(this, rand, radius, 0, 0, width, height, null, 0);
 	}
 
 	/**
-	 * Returns a new random free location in space
+	 * Returns a new random free location within maxDistance of the center.  Uses the
+	 * same bounded search as getRandomFreeLocation.
 	 * 
 	 * @param rand       Random number generator
 	 * @param freeRadius the radius around the object that must be free
@@ -444,25 +888,28 @@ public class Toroidal2DPhysics {
 	 */
 	public Position getRandomFreeLocationInRegion(Random rand, int freeRadius, int centerX, int centerY,
 			double maxDistance) {
+		prepareFreeLocationSearch();
+
 		Position centerPosition = new Position(centerX, centerY);
-		double newX = ((2 * rand.nextDouble()) - 1) * maxDistance + centerX;
-		double newY = ((2 * rand.nextDouble()) - 1) * maxDistance + centerY;
-		Position randLocation = new Position(newX, newY);
-		toroidalWrap(randLocation);
-
-		while (!isLocationFree(randLocation, freeRadius)
-				|| findShortestDistance(centerPosition, randLocation) > maxDistance) {
-			newX = ((2 * rand.nextDouble()) - 1) * maxDistance + centerX;
-			newY = ((2 * rand.nextDouble()) - 1) * maxDistance + centerY;
-			randLocation = new Position(newX, newY);
+		for (int attempt = 0; attempt < MAX_FREE_LOCATION_ATTEMPTS; attempt++) {
+			double newX = ((2 * rand.nextDouble()) - 1) * maxDistance + centerX;
+			double newY = ((2 * rand.nextDouble()) - 1) * maxDistance + centerY;
+			Position randLocation = new Position(newX, newY);
 			toroidalWrap(randLocation);
+
+			if (isLocationFreeIndexed(randLocation.getX(), randLocation.getY(), freeRadius)
+					&& findShortestDistance(centerPosition, randLocation) <= maxDistance) {
+				return randLocation;
+			}
 		}
 
-		return randLocation;
+		return FreeLocationSampler.sample(this, rand, freeRadius, centerX - maxDistance, centerY - maxDistance,
+				2 * maxDistance, 2 * maxDistance, centerPosition, maxDistance);
 	}
 
 	/**
-	 * Returns a new random free location inside the specified box of space
+	 * Returns a new random free location inside the specified box of space.  Uses the
+	 * same bounded search as getRandomFreeLocation.
 	 * 
 	 * @param rand Random number generator
 	 * @return
@@ -477,20 +924,44 @@ public class Toroidal2DPhysics {
 
 		Position centerPosition = new Position(boxWidth / 2 + ULX, boxHeight / 2 + ULY);
 		// System.out.println("Center position is " + centerPosition);
-		double newX = ((2 * rand.nextDouble()) - 1) * (boxWidth / 2.0) + centerPosition.getX();
-		double newY = ((2 * rand.nextDouble()) - 1) * (boxHeight / 2.0) + centerPosition.getY();
-		Position randLocation = new Position(newX, newY);
-		toroidalWrap(randLocation);
-
-		while (!isLocationFree(randLocation, freeRadius)) {
-			newX = ((2 * rand.nextDouble()) - 1) * (boxWidth / 2.0) + centerPosition.getX();
-			newY = ((2 * rand.nextDouble()) - 1) * (boxHeight / 2.0) + centerPosition.getY();
-			randLocation = new Position(newX, newY);
+		prepareFreeLocationSearch();
+		for (int attempt = 0; attempt < MAX_FREE_LOCATION_ATTEMPTS; attempt++) {
+			double newX = ((2 * rand.nextDouble()) - 1) * (boxWidth / 2.0) + centerPosition.getX();
+			double newY = ((2 * rand.nextDouble()) - 1) * (boxHeight / 2.0) + centerPosition.getY();
+			Position randLocation = new Position(newX, newY);
 			toroidalWrap(randLocation);
+
+			if (isLocationFreeIndexed(randLocation.getX(), randLocation.getY(), freeRadius)) {
+				// System.out.println("random location chosen is " + randLocation);
+				return randLocation;
+			}
 		}
 
-		// System.out.println("random location chosen is " + randLocation);
-		return randLocation;
+		return FreeLocationSampler.sample(this, rand, freeRadius, centerPosition.getX() - boxWidth / 2.0,
+				centerPosition.getY() - boxHeight / 2.0, boxWidth, boxHeight, null, 0);
+	}
+
+	/**
+	 * Bring the index up to date before a search for free locations (objects may have 
+	 * been moved since the last time step).  Read-only snapshots never change.
+	 */
+	private void prepareFreeLocationSearch() {
+		if (!readOnly) {
+			spatialIndex.refresh();
+		}
+	}
+
+	/**
+	 * Same as isLocationFree but only checks the objects near the location (the index
+	 * must be up to date)
+	 * 
+	 * @param x
+	 * @param y
+	 * @param radius
+	 * @return true if the location is free and false otherwise
+	 */
+	boolean isLocationFreeIndexed(double x, double y, int radius) {
+		return spatialIndex.isLocationFree(this, x, y, radius);
 	}
 
 	/**
@@ -501,10 +972,14 @@ public class Toroidal2DPhysics {
 	 * @return true if the location is free and false otherwise
 	 */
 	public boolean isLocationFree(Position location, int radius) {
+		// snapshots never change so their index is always up to date
+		if (readOnly) {
+			return isLocationFreeIndexed(location.getX(), location.getY(), radius);
+		}
+
 		for (AbstractObject object : allObjects) {
 			// fixed bug where it only checked radius and not diameter
-			if (findShortestDistanceVector(object.getPosition(), location)
-					.getMagnitude() <= (radius + (2 * object.getRadius()))) {
+			if (findShortestDistance(object.getPosition(), location) <= (radius + (2 * object.getRadius()))) {
 				return false;
 			}
 		}
@@ -536,8 +1011,139 @@ public class Toroidal2DPhysics {
 	 *         location1 to location2)
 	 */
 	public double findShortestDistance(Position location1, Position location2) {
-		Vector2D shortDist = findShortestDistanceVector(location1, location2, width, height, halfWidth, halfHeight);
-		return shortDist.getMagnitude();
+		return findShortestDistance(location1.getX(), location1.getY(), location2.getX(), location2.getY());
+	}
+
+	/**
+	 * Shortest toroidal distance between two points given by their coordinates.  
+	 * This does not create any objects so it is safe to use in tight loops.
+	 * 
+	 * @param x1
+	 * @param y1
+	 * @param x2
+	 * @param y2
+	 * @return shortest distance from (x1, y1) to (x2, y2)
+	 */
+	public double findShortestDistance(double x1, double y1, double x2, double y2) {
+		double dx = wrapDeltaX(x2 - x1);
+		double dy = wrapDeltaY(y2 - y1);
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * Square of the shortest toroidal distance between two locations.  Cheaper than 
+	 * findShortestDistance when you are only comparing distances.
+	 * 
+	 * @param location1
+	 * @param location2
+	 * @return the squared distance from location1 to location2
+	 */
+	public double findShortestDistanceSquared(Position location1, Position location2) {
+		return findShortestDistanceSquared(location1.getX(), location1.getY(), location2.getX(), location2.getY());
+	}
+
+	/**
+	 * Square of the shortest toroidal distance between two points given by their coordinates.
+	 * 
+	 * @param x1
+	 * @param y1
+	 * @param x2
+	 * @param y2
+	 * @return the squared distance from (x1, y1) to (x2, y2)
+	 */
+	public double findShortestDistanceSquared(double x1, double y1, double x2, double y2) {
+		double dx = wrapDeltaX(x2 - x1);
+		double dy = wrapDeltaY(y2 - y1);
+		return dx * dx + dy * dy;
+	}
+
+	/**
+	 * Finds the shortest toroidal vector from location1 to location2 without making a 
+	 * Vector2D.  The x part goes into delta[0] and the y part into delta[1].
+	 * 
+	 * @param location1
+	 * @param location2
+	 * @param delta array of at least two doubles to store the answer in
+	 */
+	public void findShortestDistanceDelta(Position location1, Position location2, double[] delta) {
+		findShortestDistanceDelta(location1.getX(), location1.getY(), location2.getX(), location2.getY(), delta);
+	}
+
+	/**
+	 * Finds the shortest toroidal vector from (x1, y1) to (x2, y2) without making a 
+	 * Vector2D.  The x part goes into delta[0] and the y part into delta[1].
+	 * 
+	 * @param x1
+	 * @param y1
+	 * @param x2
+	 * @param y2
+	 * @param delta array of at least two doubles to store the answer in
+	 */
+	public void findShortestDistanceDelta(double x1, double y1, double x2, double y2, double[] delta) {
+		delta[0] = wrapDeltaX(x2 - x1);
+		delta[1] = wrapDeltaY(y2 - y1);
+	}
+
+	/**
+	 * Finds the shortest distance from one location to each of a list of positions.
+	 * 
+	 * @param location the location to measure from
+	 * @param positions the positions to measure to
+	 * @param distances array (at least as long as positions) to store the distances in
+	 */
+	public void findShortestDistances(Position location, Position[] positions, double[] distances) {
+		double x = location.getX();
+		double y = location.getY();
+		for (int i = 0; i < positions.length; i++) {
+			distances[i] = findShortestDistance(x, y, positions[i].getX(), positions[i].getY());
+		}
+	}
+
+	/**
+	 * Finds the shortest distance from one point to each of a list of points given by 
+	 * their coordinates.
+	 * 
+	 * @param x the point to measure from
+	 * @param y 
+	 * @param xs x coordinates of the points to measure to
+	 * @param ys y coordinates of the points to measure to
+	 * @param count number of points to use from xs and ys
+	 * @param distances array (at least count long) to store the distances in
+	 */
+	public void findShortestDistances(double x, double y, double[] xs, double[] ys, int count, double[] distances) {
+		for (int i = 0; i < count; i++) {
+			distances[i] = findShortestDistance(x, y, xs[i], ys[i]);
+		}
+	}
+
+	/**
+	 * Wrap the x part of a vector between two points so it takes the shortest way around
+	 * 
+	 * @param dx
+	 * @return
+	 */
+	double wrapDeltaX(double dx) {
+		if (dx > halfWidth) {
+			return dx - width;
+		} else if (dx < -halfWidth) {
+			return dx + width;
+		}
+		return dx;
+	}
+
+	/**
+	 * Wrap the y part of a vector between two points so it takes the shortest way around
+	 * 
+	 * @param dy
+	 * @return
+	 */
+	double wrapDeltaY(double dy) {
+		if (dy > halfHeight) {
+			return dy - height;
+		} else if (dy < -halfHeight) {
+			return dy + height;
+		}
+		return dy;
 	}
 
 	/**
@@ -586,6 +1192,7 @@ public class Toroidal2DPhysics {
 	 * Move all moveable objects and handle power ups.
 	 */
 	public void advanceTime(Random rand, int currentTimeStep, Map<UUID, SpaceSettlersPowerupEnum> powerups) {
+		checkWritable();
 
 		this.currentTimeStep = currentTimeStep;
 
@@ -611,6 +1218,10 @@ public class Toroidal2DPhysics {
 			handlePowerup((AbstractActionableObject) swobject, powerups.get(key));
 		}
 
+		// one read-only copy of the space is shared by all the actions this step (so every 
+		// action sees the space as it was before anything moved)
+		Toroidal2DPhysics actionSnapshot = createReadOnlySnapshot();
+
 		// now move all objects that are moveable (which may include weapons)
 		for (AbstractObject object : allObjects) {
 			// skip non-moveable objects or dead object
@@ -618,12 +1229,22 @@ public class Toroidal2DPhysics {
 				continue;
 			}
 
+			// objects that aren't controlled just drift (on the pool in parallel mode)
+			if (!(object instanceof Drone) && !object.isControllable()) {
+				if (parallelIntegrator != null) {
+					parallelIntegrator.add(object);
+				} else {
+					movePassiveObject(object);
+				}
+				continue;
+			}
+
 			Position currentPosition = object.getPosition();
 
 			if (object instanceof Drone) { // herr0861 edit
 				Drone drone = (Drone) object;
 				if (drone.getCurrentAction() == null) {
-					drone.setCurrentAction(this.deepClone());
+					drone.setCurrentAction(actionSnapshot);
 				}
 
 				AbstractAction action = drone.getCurrentAction();
@@ -642,7 +1263,7 @@ public class Toroidal2DPhysics {
 				 * to specify behavior for the drone.
 				 */
 
-				Movement actionMovement = action.getMovement(this.deepClone(), drone.deepClone());
+				Movement actionMovement = action.getMovement(actionSnapshot, drone.deepClone());
 
 				Position newPosition = applyMovement(currentPosition, actionMovement, timeStep);
 
@@ -668,7 +1289,7 @@ public class Toroidal2DPhysics {
 				int penalty = (int) Math.floor(0.7 * ENERGY_PENALTY * (angularInertia + linearInertia));
 				drone.updateEnergy(-penalty);
 
-			} else if (object.isControllable() && !(object instanceof Drone)) {
+			} else {
 
 				Ship ship = (Ship) object;
 				AbstractAction action = ship.getCurrentAction();
@@ -679,8 +1300,8 @@ public class Toroidal2DPhysics {
 				}
 
 				// need to clone the ship and space because otherwise the ship can affect
-				// itself inside AbstractAction
-				Movement actionMovement = action.getMovement(this.deepClone(), ship.deepClone());
+				// itself inside AbstractAction (the space copy is shared by all ships)
+				Movement actionMovement = action.getMovement(actionSnapshot, ship.deepClone());
 
 				Vector2D currentVelocity = currentPosition.getTranslationalVelocity();
 				double currentAngularVelocity = currentPosition.getAngularVelocity();
@@ -718,15 +1339,6 @@ public class Toroidal2DPhysics {
 				// System.out.println("Ship " + ship.getTeamName() + ship.getId() + " is dead");
 				// }
 
-			} else {
-				// move all other types of objects
-				Position newPosition = moveOneTimestep(currentPosition);
-				object.setPosition(newPosition);
-				if (object instanceof Flag && Double.isNaN(newPosition.getX())) {
-					System.out.println("alive: " + object.isAlive() + " draw: " + object.isDrawable() + " old pos is "
-							+ currentPosition + " new position is " + newPosition);
-					System.exit(-1);
-				}
 			}
 
 			// if any ships or bases are frozen, decrement their frozen count
@@ -737,7 +1349,19 @@ public class Toroidal2DPhysics {
 
 		}
 
-		// go through and see if any bases have died
+		if (parallelIntegrator != null) {
+			parallelIntegrator.moveAll(this);
+		}
+
+		// everything has moved so update the index before looking for nearby objects
+		spatialIndex.refresh();
+
+		// check the fast objects for contacts part way through the step
+		if (substepScheduler != null) {
+			substepScheduler.substep(this);
+		}
+
+		// go through and see if any bases have died
 		Set<Base> basesClone = new LinkedHashSet<Base>(bases);
 		for (Base base : basesClone) {
 			// this isn't the most general fix but it will work for now (also has to be done
@@ -840,6 +1464,41 @@ public class Toroidal2DPhysics {
 		for (Ship ship : ships) {
 			ship.updateTags();
 		}
+
+		// dropped flags and resources may have moved
+		spatialIndex.refresh();
+		trajectoryPredictor = null;
+	}
+
+	/**
+	 * Move an object that isn't being controlled (asteroids, weapons, flags and frozen 
+	 * ships).  This only changes the object itself so different objects can be moved at 
+	 * the same time.
+	 * 
+	 * @param object
+	 */
+	void movePassiveObject(AbstractObject object) {
+		// objects kept in the state store move in place without making garbage
+		int slot = (stateStore == null) ? -1 : stateStore.sync(object);
+		if (slot >= 0) {
+			stateStore.moveOneTimestep(slot, timeStep, width, height);
+		} else {
+			// move all other types of objects
+			Position currentPosition = object.getPosition();
+			Position newPosition = moveOneTimestep(currentPosition);
+			object.setPosition(newPosition);
+			if (object instanceof Flag && Double.isNaN(newPosition.getX())) {
+				System.out.println("alive: " + object.isAlive() + " draw: " + object.isDrawable() + " old pos is "
+						+ currentPosition + " new position is " + newPosition);
+				System.exit(-1);
+			}
+		}
+
+		// if any ships or bases are frozen, decrement their frozen count
+		if (object instanceof AbstractActionableObject && !object.isControllable()) {
+			AbstractActionableObject actionable = (AbstractActionableObject) object;
+			actionable.decrementFreezeCount();
+		}
 	}
 
 	/**
@@ -851,17 +1510,8 @@ public class Toroidal2DPhysics {
 	 * @param resources
 	 */
 	private void distributeResourcesToNearbyAsteroids(Position position, ResourcePile resources) {
-		double nearestDistance = Double.MAX_VALUE;
-		Asteroid nearestAsteroid = null;
-
 		// first find the nearest asteroid
-		for (Asteroid asteroid : asteroids) {
-			double dist = findShortestDistance(position, asteroid.getPosition());
-			if (dist < nearestDistance) {
-				nearestDistance = dist;
-				nearestAsteroid = asteroid;
-			}
-		}
+		Asteroid nearestAsteroid = nearest(position, Asteroid.class);
 
 		// if it is mineable, just add the resources
 		nearestAsteroid.addResources(resources);
@@ -936,6 +1586,20 @@ public class Toroidal2DPhysics {
 
 	}
 
+	/**
+	 * Warn if a velocity got set to NaN (used by every way of moving an object)
+	 * 
+	 * @param angularVelocity
+	 * @param velocityX
+	 * @param velocityY
+	 * @param position the position being moved (for the message)
+	 */
+	static void checkForNaNVelocity(double angularVelocity, double velocityX, double velocityY, Position position) {
+		if (Double.isNaN(angularVelocity) || Double.isNaN(velocityX) || Double.isNaN(velocityY)) {
+			System.out.println("Help: velocity got set to Nan " + position);
+		}
+	}
+
 	/**
 	 * Advances one time step using the set velocities
 	 * 
@@ -945,9 +1609,8 @@ public class Toroidal2DPhysics {
 	private Position moveOneTimestep(Position position) {
 		double angularVelocity = position.getAngularVelocity();
 		double orientation = position.getOrientation() + (angularVelocity * timeStep);
-		if (Double.isNaN(angularVelocity) || Double.isNaN(position.getTotalTranslationalVelocity())) {
-			System.out.println("Help: velocity got set to Nan " + position);
-		}
+		checkForNaNVelocity(angularVelocity, position.getTranslationalVelocityX(), 
+				position.getTranslationalVelocityY(), position);
 
 		// make sure orientation wraps correctly (-pi to pi)
 		if (orientation > Math.PI) {
@@ -971,8 +1634,364 @@ public class Toroidal2DPhysics {
 	 * Step through all the objects and ensure they are not colliding. If they are,
 	 * call the collision handler for those objects. Sometimes you bounce
 	 * (asteroids) and sometimes you pick the object up (beacons), etc.
+	 * 
+	 * Uses a spatial hash grid to only check nearby pairs of objects unless brute 
+	 * force collision detection has been turned on.  Pairs are checked in the same 
+	 * order either way.  Two sleeping objects are never checked against each other 
+	 * (see isSleeping) so objects that can't move are only checked against each other 
+	 * until they are found apart.
+	 */
+	void detectCollisions() {
+		if (bruteForceCollisionDetection) {
+			detectCollisionsBruteForce();
+			return;
+		}
+		ensureSleepingCapacity();
+
+		int numObjects = allObjects.size();
+		if (collisionObjects == null || collisionObjects.length < numObjects) {
+			collisionObjects = new AbstractObject[2 * numObjects];
+			collisionCandidates = new int[collisionObjects.length];
+			dynamicObjects = new AbstractObject[collisionObjects.length];
+			dynamicIndices = new int[collisionObjects.length];
+			staticIndices = new int[collisionObjects.length];
+			staticCandidates = new int[collisionObjects.length];
+			collisionX = new double[collisionObjects.length];
+			collisionY = new double[collisionObjects.length];
+		}
+		if (collisionGrid == null) {
+			collisionGrid = new SpatialHashGrid(width, height);
+			staticGrid = new SpatialHashGrid(width, height);
+		}
+
+		// find the largest distance two objects can be apart and still collide
+		// this step.  Collisions move objects back along their velocity by up to
+		// two time steps and can double their speed so leave room for that.
+		// While going through, split the objects into the moveable ones and the
+		// static ones and see if the static ones are still the same as last time.
+		double maxRadius = 0;
+		double maxSpeed = 0;
+		int index = 0;
+		int numDynamic = 0;
+		int numStatic = 0;
+		boolean staticObjectsChanged = false;
+		for (AbstractObject object : allObjects) {
+			collisionObjects[index] = object;
+			collisionX[index] = object.getPosition().getX();
+			collisionY[index] = object.getPosition().getY();
+			maxRadius = Math.max(maxRadius, object.getRadius());
+			maxSpeed = Math.max(maxSpeed, object.getPosition().getTotalTranslationalVelocity());
+			if (object.isMoveable()) {
+				dynamicObjects[numDynamic] = object;
+				dynamicIndices[numDynamic++] = index;
+			} else {
+				if (numStatic >= numStaticObjects || staticObjects[numStatic] != object
+						|| staticX[numStatic] != object.getPosition().getX()
+						|| staticY[numStatic] != object.getPosition().getY()) {
+					staticObjectsChanged = true;
+				}
+				staticIndices[numStatic++] = index;
+			}
+			index++;
+		}
+		double maxDisplacement = 4.0 * timeStep * maxSpeed;
+		double cellSize = 2 * maxRadius + 2 * maxDisplacement;
+		collisionGrid.rebuild(dynamicObjects, numDynamic, cellSize);
+
+		// the static cells only have to be at least as big as the moveable ones
+		if (staticObjectsChanged || numStatic != numStaticObjects || staticGrid.numCols == 0
+				|| cellSize > staticCellSize || cellSize < staticCellSize / 2) {
+			rebuildStaticGrid(numStatic, cellSize);
+		}
+
+		double islandMargin = 0;
+		if (collisionIslands != null) {
+			islandMargin = prepareCollisionIslands(numObjects);
+		}
+
+		int numDynamicSoFar = 0;
+		for (int i = 0; i < numObjects; i++) {
+			AbstractObject object1 = collisionObjects[i];
+			boolean moveable = object1.isMoveable();
+			if (!object1.isAlive()) {
+				if (moveable) {
+					numDynamicSoFar++;
+				}
+				continue;
+			}
+
+			// every object looks at the moveable ones and the static ones after it
+			int numCandidates;
+			int staticIndex;
+			if (moveable) {
+				numCandidates = collisionGrid.findCandidates(numDynamicSoFar, collisionCandidates);
+				staticIndex = i - numDynamicSoFar - 1;
+				numDynamicSoFar++;
+			} else {
+				numCandidates = collisionGrid.findCandidates(collisionX[i], collisionY[i], numDynamicSoFar - 1,
+						collisionCandidates);
+				staticIndex = i - numDynamicSoFar;
+			}
+			for (int c = 0; c < numCandidates; c++) {
+				collisionCandidates[c] = dynamicIndices[collisionCandidates[c]];
+			}
+			if (numStatic > 0) {
+				int numNearbyStatic = staticGrid.findCandidates(collisionX[i], collisionY[i], staticIndex,
+						staticCandidates);
+				numCandidates = mergeStaticCandidates(numCandidates, numNearbyStatic);
+			}
+
+			if (collisionIslands != null) {
+				addIslandPairs(i, numCandidates, islandMargin);
+				continue;
+			}
+
+			// only a collision with object1 can wake it up
+			boolean sleeping1 = isSleeping(object1);
+			for (int c = 0; c < numCandidates; c++) {
+				AbstractObject object2 = collisionObjects[collisionCandidates[c]];
+				if (checkCandidatePair(object1, object2, sleeping1) && sleeping1) {
+					sleeping1 = isSleeping(object1);
+				}
+			}
+		}
+
+		if (collisionIslands != null) {
+			collisionIslands.resolve(this);
+		}
+
+		rememberSleepingPositions(collisionObjects, numObjects);
+
+		// don't hold on to dead objects until the next time step
+		Arrays.fill(collisionObjects, 0, numObjects, null);
+		Arrays.fill(dynamicObjects, 0, numDynamic, null);
+	}
+
+	/**
+	 * Check a pair found by the broad phase and collide them if they touch
+	 * 
+	 * @param object1 the object checked first
+	 * @param object2
+	 * @param sleeping1 is object1 sleeping?
+	 * @return true if they collided
+	 */
+	boolean checkCandidatePair(AbstractObject object1, AbstractObject object2, boolean sleeping1) {
+		if (!object2.isAlive()) {
+			return false;
+		}
+
+		// skip them if they are the same object
+		if (object1.equals(object2)) {
+			return false;
+		}
+
+		// neither has moved since they were last checked (and they weren't touching then)
+		if (sleeping1 && isSleeping(object2)) {
+			return false;
+		}
+
+		if (!checkForCollision(object1, object2)) {
+			return false;
+		}
+
+		// they have to be checked again next time even if neither moves
+		if (object1.getSlotId() >= 0) {
+			touching[object1.getSlotId()] = true;
+		}
+		if (object2.getSlotId() >= 0) {
+			touching[object2.getSlotId()] = true;
+		}
+		return true;
+	}
+
+	/**
+	 * Start the islands for this time step.  Objects whose collisions can change things
+	 * other than the two objects keep their islands on the calling thread and weapons 
+	 * share an island with the ship that fired them.
+	 * 
+	 * @param numObjects
+	 * @return how much farther apart than their radii two objects can be and still touch
+	 * during this step
+	 */
+	private double prepareCollisionIslands(int numObjects) {
+		collisionIslands.reset(collisionObjects, numObjects);
+		if (collisionIndexBySlot == null || collisionIndexBySlot.length < numSlots) {
+			collisionIndexBySlot = new int[Math.max(16, 2 * numSlots)];
+		}
+
+		double maxSpeed = 0;
+		for (int i = 0; i < numObjects; i++) {
+			AbstractObject object = collisionObjects[i];
+			Position position = object.getPosition();
+			maxSpeed = Math.max(maxSpeed,
+					Math.abs(position.getTranslationalVelocityX()) + Math.abs(position.getTranslationalVelocityY()));
+			if (object.getSlotId() >= 0) {
+				collisionIndexBySlot[object.getSlotId()] = i;
+			}
+			int typeTag = object.getTypeTag();
+			if (typeTag != AbstractObject.TYPE_ASTEROID && typeTag != AbstractObject.TYPE_BEACON
+					&& typeTag != AbstractObject.TYPE_MISSILE && typeTag != AbstractObject.TYPE_EMP) {
+				collisionIslands.markSerial(i);
+			}
+		}
+
+		for (int i = 0; i < numObjects; i++) {
+			if (!(collisionObjects[i] instanceof AbstractWeapon)) {
+				continue;
+			}
+			Ship firingShip = ((AbstractWeapon) collisionObjects[i]).getFiringShip();
+			int slot = firingShip == null ? -1 : firingShip.getSlotId();
+			if (slot >= 0 && slot < numSlots && objectsBySlot[slot] == firingShip) {
+				collisionIslands.link(i, collisionIndexBySlot[slot]);
+			} else {
+				collisionIslands.markSerial(i);
+			}
+		}
+
+		// the same room the grid cells leave for collisions moving things
+		return 2 * 4.0 * timeStep * maxSpeed;
+	}
+
+	/**
+	 * Give the islands the candidates of object i that are close enough to touch it this 
+	 * step (the same reach the grid cells are sized for)
+	 * 
+	 * @param i
+	 * @param numCandidates number of candidates in collisionCandidates
+	 * @param margin extra distance beyond their radii
+	 */
+	private void addIslandPairs(int i, int numCandidates, double margin) {
+		AbstractObject object1 = collisionObjects[i];
+		for (int c = 0; c < numCandidates; c++) {
+			int j = collisionCandidates[c];
+			AbstractObject object2 = collisionObjects[j];
+
+			// dead objects don't come back to life during collisions
+			if (!object2.isAlive()) {
+				continue;
+			}
+			double distance = findShortestDistance(collisionX[i], collisionY[i], collisionX[j], collisionY[j]);
+			if (distance < object1.getRadius() + object2.getRadius() + margin) {
+				collisionIslands.addPair(i, j);
+			}
+		}
+	}
+
+	/**
+	 * Merge the nearby static objects into the (sorted) moveable candidates.  Both lists 
+	 * are already in index order so this is done from the back without sorting.
+	 * 
+	 * @param numCandidates number of moveable candidates in collisionCandidates
+	 * @param numStatic number of static grid indices in staticCandidates
+	 * @return the total number of candidates
+	 */
+	private int mergeStaticCandidates(int numCandidates, int numStatic) {
+		for (int c = 0; c < numStatic; c++) {
+			staticCandidates[c] = staticIndices[staticCandidates[c]];
+		}
+
+		int dynamicPos = numCandidates - 1;
+		int staticPos = numStatic - 1;
+		for (int out = numCandidates + numStatic - 1; staticPos >= 0; out--) {
+			if (dynamicPos >= 0 && collisionCandidates[dynamicPos] > staticCandidates[staticPos]) {
+				collisionCandidates[out] = collisionCandidates[dynamicPos--];
+			} else {
+				collisionCandidates[out] = staticCandidates[staticPos--];
+			}
+		}
+		return numCandidates + numStatic;
+	}
+
+	/**
+	 * Put the static objects of this time step into their own grid and remember where 
+	 * they are so it is only rebuilt when they change
+	 * 
+	 * @param numStatic number of static objects (their indices are in staticIndices)
+	 * @param cellSize smallest size of the cells
+	 */
+	private void rebuildStaticGrid(int numStatic, double cellSize) {
+		if (staticObjects == null || staticObjects.length < numStatic) {
+			staticObjects = new AbstractObject[Math.max(16, 2 * numStatic)];
+			staticX = new double[staticObjects.length];
+			staticY = new double[staticObjects.length];
+		}
+		for (int s = 0; s < numStatic; s++) {
+			AbstractObject object = collisionObjects[staticIndices[s]];
+			staticObjects[s] = object;
+			staticX[s] = object.getPosition().getX();
+			staticY[s] = object.getPosition().getY();
+		}
+		Arrays.fill(staticObjects, numStatic, staticObjects.length, null);
+		numStaticObjects = numStatic;
+		staticCellSize = cellSize;
+		staticGrid.rebuild(staticObjects, numStatic, cellSize);
+	}
+
+	/**
+	 * Is the object sleeping?  It is if it is still exactly where it was at the end of the 
+	 * last collision check, wasn't touching anything then and has no velocity (objects that 
+	 * can't move only have to be in the same place).  Anything that moves it or gives it a 
+	 * velocity wakes it up.
+	 * 
+	 * @param object
+	 * @return true if the object is sleeping
+	 */
+	boolean isSleeping(AbstractObject object) {
+		int slot = object.getSlotId();
+		if (sleepingObjects == null || slot < 0 || slot >= sleepingObjects.length || sleepingObjects[slot] != object
+				|| sleepingTouching[slot]) {
+			return false;
+		}
+		Position position = object.getPosition();
+		if (position.getX() != sleepingX[slot] || position.getY() != sleepingY[slot]) {
+			return false;
+		}
+		return !object.isMoveable()
+				|| (position.getTranslationalVelocityX() == 0 && position.getTranslationalVelocityY() == 0);
+	}
+
+	/**
+	 * Make sure there is room to remember every slot before a collision check
 	 */
-	private void detectCollisions() {
+	private void ensureSleepingCapacity() {
+		if (sleepingObjects == null || sleepingObjects.length < numSlots) {
+			int capacity = Math.max(16, 2 * numSlots);
+			sleepingObjects = sleepingObjects == null ? new AbstractObject[capacity]
+					: Arrays.copyOf(sleepingObjects, capacity);
+			sleepingX = sleepingX == null ? new double[capacity] : Arrays.copyOf(sleepingX, capacity);
+			sleepingY = sleepingY == null ? new double[capacity] : Arrays.copyOf(sleepingY, capacity);
+			sleepingTouching = sleepingTouching == null ? new boolean[capacity] 
+					: Arrays.copyOf(sleepingTouching, capacity);
+			touching = touching == null ? new boolean[capacity] : Arrays.copyOf(touching, capacity);
+		}
+	}
+
+	/**
+	 * Remember where every object is at the end of a collision check and whether it 
+	 * touched anything during it
+	 * 
+	 * @param objects
+	 * @param numObjects
+	 */
+	private void rememberSleepingPositions(AbstractObject[] objects, int numObjects) {
+		for (int i = 0; i < numObjects; i++) {
+			AbstractObject object = objects[i];
+			int slot = object.getSlotId();
+			if (slot < 0) {
+				continue;
+			}
+			sleepingObjects[slot] = object;
+			sleepingX[slot] = object.getPosition().getX();
+			sleepingY[slot] = object.getPosition().getY();
+			sleepingTouching[slot] = touching[slot];
+			touching[slot] = false;
+		}
+	}
+
+	/**
+	 * Check every pair of objects for collisions (the original O(n^2) approach)
+	 */
+	private void detectCollisionsBruteForce() {
 		// would prefer to iterate over the set (as this is inefficient) but
 		// the set iterator collides a with b and then b with a, allowing them to
 		// pass through one another!
@@ -997,13 +2016,110 @@ public class Toroidal2DPhysics {
 					continue;
 				}
 
-				double distance = findShortestDistance(object1.getPosition(), object2.getPosition());
+				checkForCollision(object1, object2);
+			}
+		}
+	}
 
-				if (distance < (object1.getRadius() + object2.getRadius())) {
-					collisionHandler.collide(object1, object2, this);
-				}
+	/**
+	 * Collide two objects if they overlap or (with continuous collision detection on) if 
+	 * they passed through each other during the last time step
+	 * 
+	 * @param object1
+	 * @param object2
+	 * @return true if they collided
+	 */
+	private boolean checkForCollision(AbstractObject object1, AbstractObject object2) {
+		double distance = findShortestDistance(object1.getPosition(), object2.getPosition());
+
+		if (distance < (object1.getRadius() + object2.getRadius())) {
+			collisionHandler.collide(object1, object2, this);
+			return true;
+		} else if (continuousCollisionDetection) {
+			double timeSinceImpact = findTimeSinceImpact(object1, object2);
+			if (timeSinceImpact > 0) {
+				collideAtTime(object1, object2, timeSinceImpact);
+				return true;
 			}
 		}
+		return false;
+	}
+
+	/**
+	 * Collide two objects where they were a while ago (moving along their velocities) and
+	 * then move them the rest of the way with their new velocities
+	 * 
+	 * @param object1
+	 * @param object2
+	 * @param timeBeforeNow how long ago they touched
+	 */
+	void collideAtTime(AbstractObject object1, AbstractObject object2, double timeBeforeNow) {
+		object1.setPosition(translatePosition(object1, -timeBeforeNow));
+		object2.setPosition(translatePosition(object2, -timeBeforeNow));
+		collisionHandler.collide(object1, object2, this);
+		object1.setPosition(translatePosition(object1, timeBeforeNow));
+		object2.setPosition(translatePosition(object2, timeBeforeNow));
+	}
+
+	/**
+	 * Sweep two objects that don't overlap now back along their velocities over the last 
+	 * time step (the objects moved with their current velocities) and find when they first
+	 * touched.  The separation going back in time is d - w s where d is the shortest vector
+	 * between them now and w is their relative velocity, so the times they touched are the 
+	 * roots of |d - w s| = r1 + r2.
+	 * 
+	 * @param object1
+	 * @param object2
+	 * @return how long ago in this time step they first touched or -1 if they didn't touch
+	 */
+	double findTimeSinceImpact(AbstractObject object1, AbstractObject object2) {
+		Position position1 = object1.getPosition();
+		Position position2 = object2.getPosition();
+		double dx = wrapDeltaX(position2.getX() - position1.getX());
+		double dy = wrapDeltaY(position2.getY() - position1.getY());
+		double wx = position2.getTranslationalVelocityX() - position1.getTranslationalVelocityX();
+		double wy = position2.getTranslationalVelocityY() - position1.getTranslationalVelocityY();
+
+		// they were only closer in the past if they are moving apart
+		double dw = dx * wx + dy * wy;
+		double ww = wx * wx + wy * wy;
+		if (dw <= 0 || ww == 0) {
+			return -1;
+		}
+
+		double radii = object1.getRadius() + object2.getRadius();
+		double discriminant = dw * dw - ww * (dx * dx + dy * dy - radii * radii);
+		if (discriminant < 0) {
+			return -1;
+		}
+
+		// they stopped touching at lastContact and started at firstContact (both in the past)
+		double lastContact = (dw - Math.sqrt(discriminant)) / ww;
+		double firstContact = (dw + Math.sqrt(discriminant)) / ww;
+		if (lastContact > timeStep) {
+			return -1;
+		}
+		return Math.min(firstContact, timeStep);
+	}
+
+	/**
+	 * Move an object along its velocity for the specified time (negative to go back)
+	 * 
+	 * @param object
+	 * @param time
+	 * @return the new position (non-moveable objects stay where they are)
+	 */
+	private Position translatePosition(AbstractObject object, double time) {
+		Position position = object.getPosition();
+		if (!object.isMoveable()) {
+			return position;
+		}
+		Position newPosition = new Position(position.getX() + position.getTranslationalVelocityX() * time,
+				position.getY() + position.getTranslationalVelocityY() * time, position.getOrientation());
+		newPosition.setTranslationalVelocity(position.getTranslationalVelocity());
+		newPosition.setAngularVelocity(position.getAngularVelocity());
+		toroidalWrap(newPosition);
+		return newPosition;
 	}
 
 	/**
@@ -1076,8 +2192,32 @@ public class Toroidal2DPhysics {
 	 * they can respawn.  Asteroids do not respawn (they are re-created later randomly)
 	 */
 	public void respawnDeadObjects(Random random) {
-		for (AbstractObject object : allObjects) {
-			if (!object.isAlive() && object.canRespawn()) {
+		// only the objects in the death queues can be dead.  They are respawned in the order
+		// they were added (the order of allObjects) so the random locations are the same.
+		// (objects that have come back to life are dropped from the queues)
+		for (int type = 0; type < deathQueues.size(); type++) {
+			ArrayList<AbstractObject> queue = deathQueues.get(type);
+			int numKept = 0;
+			for (int i = 0; i < queue.size(); i++) {
+				AbstractObject object = queue.get(i);
+				if (object.isAlive()) {
+					slotInDeathQueue[object.getSlotId()] = false;
+				} else {
+					queue.set(numKept++, object);
+					respawnCandidates.add(object);
+				}
+			}
+			while (queue.size() > numKept) {
+				queue.remove(queue.size() - 1);
+			}
+		}
+		if (respawnCandidates.size() > 1) {
+			respawnCandidates.sort(addOrderComparator);
+		}
+
+		for (int i = 0; i < respawnCandidates.size(); i++) {
+			AbstractObject object = respawnCandidates.get(i);
+			if (object.canRespawn()) {
 				Position newPosition = null;
 
 				// flags should re-spawn at a randomly chosen starting location
@@ -1106,7 +2246,10 @@ public class Toroidal2DPhysics {
 				}
 			}
 		}
+		respawnCandidates.clear();
 
+		spatialIndex.refresh();
+		trajectoryPredictor = null;
 	}
 
 	/**
@@ -1128,78 +2271,119 @@ public class Toroidal2DPhysics {
 	}
 
 	/**
-	 * Loop through all weapons and remove any dead ones
+	 * Make a copy of the space that can be shared by everyone who only needs to look 
+	 * at it (such as all of the actions in one time step).  Objects can't be added to or 
+	 * removed from the snapshot, its sets can't be changed and the objects in it (and their 
+	 * positions and resources) are read-only too, so whoever it is shared with can't change 
+	 * what the others see.  If you need to simulate forward, deepClone the snapshot to get 
+	 * a space you can change.
+	 * 
+	 * @return a read-only deep copy of the space
 	 */
-	public void cleanupDeadWeapons() {
-		ArrayList<AbstractObject> deadObjects = new ArrayList<AbstractObject>();
+	public Toroidal2DPhysics createReadOnlySnapshot() {
+		Toroidal2DPhysics snapshot = deepClone();
+		snapshot.makeReadOnly();
+		return snapshot;
+	}
+
+	/**
+	 * Stop anything in this space from being changed
+	 */
+	void makeReadOnly() {
+		readOnly = true;
 		for (AbstractObject object : allObjects) {
-			if (object instanceof AbstractWeapon && !object.isAlive()) {
-				deadObjects.add(object);
-			}
+			object.makeReadOnly();
 		}
+		allObjects = Collections.unmodifiableSet(allObjects);
+		beacons = Collections.unmodifiableSet(beacons);
+		asteroids = Collections.unmodifiableSet(asteroids);
+		cores = Collections.unmodifiableSet(cores);
+		bases = Collections.unmodifiableSet(bases);
+		ships = Collections.unmodifiableSet(ships);
+		drones = Collections.unmodifiableSet(drones);
+		flags = Collections.unmodifiableSet(flags);
+		weapons = Collections.unmodifiableSet(weapons);
+		teamInfo = Collections.unmodifiableSet(teamInfo);
+	}
+
+	/**
+	 * @return true if this space is a read-only snapshot
+	 */
+	public boolean isReadOnly() {
+		return readOnly;
+	}
 
-		for (AbstractObject deadObject : deadObjects) {
-			removeObject(deadObject);
+	/**
+	 * Throw an exception if something tries to change a read-only snapshot
+	 */
+	private void checkWritable() {
+		if (readOnly) {
+			throw new UnsupportedOperationException("This space is a read-only snapshot.  Use deepClone() to get a copy you can change.");
 		}
+	}
 
+	/**
+	 * Loop through all weapons and remove any dead ones
+	 */
+	public void cleanupDeadWeapons() {
+		removeDeadObjects(AbstractObject.TYPE_MISSILE, AbstractWeapon.class);
+		removeDeadObjects(AbstractObject.TYPE_EMP, AbstractWeapon.class);
+		removeDeadObjects(AbstractObject.TYPE_OTHER, AbstractWeapon.class);
 	}
 
 	/**
 	 * Loop through all cores and remove any dead ones
 	 */
 	public void cleanupDeadCores() {
-		ArrayList<AbstractObject> deadObjects = new ArrayList<AbstractObject>();
-
-		for (AiCore core : cores) {
-			if (!core.isAlive()) {
-				deadObjects.add(core);
-			}
-		}
-
-		for (AbstractObject deadObject : deadObjects) {
-			removeObject(deadObject);
-		}
-
+		removeDeadObjects(AbstractObject.TYPE_AI_CORE, AiCore.class);
 	}
 
 	/**
 	 * Loop through all drones and remove any dead ones. herr0861 edit
 	 */
 	public void cleanupDeadDrones() {
-		ArrayList<AbstractObject> deadObjects = new ArrayList<AbstractObject>();
-
-		for (Drone drone : drones) {
-			if (!drone.isAlive()) {
-				deadObjects.add(drone);
-			}
-		}
-
-		for (AbstractObject deadObject : deadObjects) {
-			removeObject(deadObject);
-		}
+		removeDeadObjects(AbstractObject.TYPE_DRONE, Drone.class);
 	}
 
 	/**
 	 * Loop through all asteroids and remove any dead ones
 	 */
 	public int cleanupAllAndCountMineableDeadAsteroids() {
-		ArrayList<AbstractObject> deadObjects = new ArrayList<AbstractObject>();
+		// return the number of mineable ones that were removed
+		return removeDeadObjects(AbstractObject.TYPE_ASTEROID, Asteroid.class);
+	}
+
+	/**
+	 * Remove the dead objects of one class from the death queue for their type tag.  Objects 
+	 * that have come back to life are dropped from the queue and anything else is kept.
+	 * 
+	 * @param typeTag
+	 * @param type only objects of this class are removed
+	 * @return the number of mineable asteroids that were removed
+	 */
+	private int removeDeadObjects(int typeTag, Class<? extends AbstractObject> type) {
+		ArrayList<AbstractObject> queue = deathQueues.get(typeTag);
 		int numMineable = 0;
+		int numKept = 0;
+		for (int i = 0; i < queue.size(); i++) {
+			AbstractObject object = queue.get(i);
+			if (!object.isAlive() && !type.isInstance(object)) {
+				queue.set(numKept++, object);
+				continue;
+			}
 
-		for (Asteroid asteroid : asteroids) {
-			if (!asteroid.isAlive()) {
-				deadObjects.add(asteroid);
-				if (asteroid.isMineable()) {
+			// it is leaving the queue either way (removeObject doesn't need to look for it)
+			slotInDeathQueue[object.getSlotId()] = false;
+			if (!object.isAlive()) {
+				if (object instanceof Asteroid && ((Asteroid) object).isMineable()) {
 					numMineable++;
 				}
+				removeObject(object);
 			}
 		}
-
-		for (AbstractObject deadObject : deadObjects) {
-			removeObject(deadObject);
+		while (queue.size() > numKept) {
+			queue.remove(queue.size() - 1);
 		}
-		
-		// return the number of mineable ones that were removed
 		return numMineable;
 	}
 
@@ -1222,6 +2406,154 @@ public class Toroidal2DPhysics {
 		return allObjects;
 	}
 
+	/**
+	 * Find the object of the specified type closest to a location.  This uses an index
+	 * of the space so it is much faster than looping over all the objects.  Dead objects
+	 * are included so use the filter if you only want live ones.
+	 * 
+	 * @param location
+	 * @param type the class of object to look for (e.g. Asteroid.class)
+	 * @return the closest object of that type or null if there isn't one
+	 */
+	public <T extends AbstractObject> T nearest(Position location, Class<T> type) {
+		return nearest(location, type, null);
+	}
+
+	/**
+	 * Find the object of the specified type closest to a location that passes the filter
+	 * (for example nearest(position, Asteroid.class, a -> a.isMineable())).
+	 * 
+	 * @param location
+	 * @param type the class of object to look for
+	 * @param filter only objects where this is true are considered (null allows all)
+	 * @return the closest matching object or null if there isn't one
+	 */
+	public <T extends AbstractObject> T nearest(Position location, Class<T> type, Predicate<? super T> filter) {
+		return spatialIndex.nearest(this, location.getX(), location.getY(), type, filter);
+	}
+
+	/**
+	 * Find the k objects of the specified type closest to a location
+	 * 
+	 * @param location
+	 * @param k the maximum number of objects to return
+	 * @param type the class of object to look for
+	 * @return up to k objects sorted by distance (closest first)
+	 */
+	public <T extends AbstractObject> List<T> kNearest(Position location, int k, Class<T> type) {
+		return kNearest(location, k, type, null);
+	}
+
+	/**
+	 * Find the k objects of the specified type closest to a location that pass the filter
+	 * 
+	 * @param location
+	 * @param k the maximum number of objects to return
+	 * @param type the class of object to look for
+	 * @param filter only objects where this is true are considered (null allows all)
+	 * @return up to k objects sorted by distance (closest first)
+	 */
+	public <T extends AbstractObject> List<T> kNearest(Position location, int k, Class<T> type,
+			Predicate<? super T> filter) {
+		return spatialIndex.kNearest(this, location.getX(), location.getY(), k, type, filter);
+	}
+
+	/**
+	 * Find all the objects of the specified type whose centers are within radius of a location
+	 * 
+	 * @param location
+	 * @param radius
+	 * @param type the class of object to look for
+	 * @return the objects sorted by distance (closest first)
+	 */
+	public <T extends AbstractObject> List<T> within(Position location, double radius, Class<T> type) {
+		return within(location, radius, type, null);
+	}
+
+	/**
+	 * Find all the objects of the specified type whose centers are within radius of a 
+	 * location and that pass the filter
+	 * 
+	 * @param location
+	 * @param radius
+	 * @param type the class of object to look for
+	 * @param filter only objects where this is true are considered (null allows all)
+	 * @return the objects sorted by distance (closest first)
+	 */
+	public <T extends AbstractObject> List<T> within(Position location, double radius, Class<T> type,
+			Predicate<? super T> filter) {
+		return spatialIndex.within(this, location.getX(), location.getY(), radius, type, filter);
+	}
+
+	/**
+	 * Update the index used by nearest, kNearest and within (and forget the predictions 
+	 * made by predictPositions).  The simulator does this after every time step, so you 
+	 * only need it if you move objects yourself (for example when simulating forward on a 
+	 * deepClone of the space).  Read-only snapshots never change so this does nothing for them.
+	 */
+	public void updateSpatialIndex() {
+		if (readOnly) {
+			return;
+		}
+		spatialIndex.refresh();
+		trajectoryPredictor = null;
+	}
+
+	/**
+	 * Predict where every object will be if it keeps its current velocity.  This is 
+	 * exact for asteroids, weapons, cores and dropped flags until they hit something.
+	 * The predictions are made once per time step and shared by everyone who asks 
+	 * (including all the teams looking at the same snapshot).
+	 * 
+	 * @param stepsAhead number of time steps to look ahead
+	 * @return the predicted locations of all the objects
+	 */
+	public PredictedPositions predictPositions(int stepsAhead) {
+		return getTrajectoryPredictor().predict(stepsAhead);
+	}
+
+	/**
+	 * How long until two objects are closest to each other if they both keep their 
+	 * current velocity (going the shortest way between them now)
+	 * 
+	 * @param object1
+	 * @param object2
+	 * @return the time in seconds (0 if they are already moving apart)
+	 */
+	public double timeToClosestApproach(AbstractObject object1, AbstractObject object2) {
+		return getTrajectoryPredictor().timeToClosestApproach(this, object1.getSlotId(), object2.getSlotId());
+	}
+
+	/**
+	 * How close two objects get to each other if they both keep their current velocity
+	 * 
+	 * @param object1
+	 * @param object2
+	 * @return the distance between their centers at the time of closest approach
+	 */
+	public double distanceAtClosestApproach(AbstractObject object1, AbstractObject object2) {
+		return getTrajectoryPredictor().distanceAtClosestApproach(this, object1.getSlotId(), object2.getSlotId());
+	}
+
+	/**
+	 * Get the predictor for the current state, making it if nobody has asked yet
+	 * 
+	 * @return
+	 */
+	private TrajectoryPredictor getTrajectoryPredictor() {
+		TrajectoryPredictor predictor = trajectoryPredictor;
+		if (predictor == null) {
+			synchronized (this) {
+				predictor = trajectoryPredictor;
+				if (predictor == null) {
+					predictor = new TrajectoryPredictor(this);
+					trajectoryPredictor = predictor;
+				}
+			}
+		}
+		return predictor;
+	}
+
 	/**
 	 * Check to see if following a straight line path between two given locations
 	 * would result in a collision with a provided set of obstructions
@@ -1239,44 +2571,31 @@ public class Toroidal2DPhysics {
 	 */
 	public boolean isPathClearOfObstructions(Position startPosition, Position goalPosition,
 			Set<AbstractObject> obstructions, int freeRadius) {
-		Vector2D pathToGoal = findShortestDistanceVector(startPosition, goalPosition); // Shortest straight line path
-																						// from startPosition to
-																						// goalPosition
-		double distanceToGoal = pathToGoal.getMagnitude(); // Distance of straight line path
-
-		boolean pathIsClear = true; // Boolean showing whether or not the path is clear
-
 		// Calculate distance between obstruction center and path (including buffer for
 		// ship movement)
-		// Uses hypotenuse * sin(theta) = opposite (on a right hand triangle)
-		Vector2D pathToObstruction; // Vector from start position to obstruction
-		double angleBetween; // Angle between vector from start position to obstruction
-
-		// Loop through obstructions
-		for (AbstractObject obstruction : obstructions) {
-			// If the distance to the obstruction is greater than the distance to the end
-			// goal, ignore the obstruction
-			pathToObstruction = findShortestDistanceVector(startPosition, obstruction.getPosition());
-			if (pathToObstruction.getMagnitude() > distanceToGoal) {
-				continue;
-			}
-
-			// Ignore angles > 90 degrees
-			angleBetween = Math.abs(pathToObstruction.angleBetween(pathToGoal));
-			if (angleBetween > Math.PI / 2) {
-				continue;
-			}
-
-			// Compare distance between obstruction and path with buffer distance
-			if (pathToObstruction.getMagnitude() * Math.sin(angleBetween) < obstruction.getRadius()
-					+ freeRadius * 1.5) {
-				pathIsClear = false;
-				break;
-			}
-		}
-
-		return pathIsClear;
+		return ObstructionGrid.isPathClearByScan(this, startPosition, goalPosition, obstructions, freeRadius * 1.5);
+	}
 
+	/**
+	 * Check many straight line paths against the same obstructions.  The obstructions
+	 * are put into a grid once and each path only looks at the cells it crosses, which 
+	 * is much faster than calling isPathClearOfObstructions for every path (for example 
+	 * when connecting the nodes of a roadmap).  Use an ObstructionGrid directly if you 
+	 * want to ask about paths one at a time.
+	 * 
+	 * @param startPositions the start of each path
+	 * @param goalPositions  the end of each path (same length as startPositions)
+	 * @param obstructions   the objects to avoid
+	 * @param freeRadius     used to determine free space buffer size (same as 
+	 *                       isPathClearOfObstructions)
+	 * @return whether each path is clear
+	 */
+	public boolean[] arePathsClearOfObstructions(Position[] startPositions, Position[] goalPositions,
+			Set<AbstractObject> obstructions, int freeRadius) {
+		ObstructionGrid grid = new ObstructionGrid(this, obstructions, freeRadius * 1.5);
+		boolean[] clear = new boolean[startPositions.length];
+		grid.arePathsClear(startPositions, goalPositions, clear);
+		return clear;
 	}
 
 	/**
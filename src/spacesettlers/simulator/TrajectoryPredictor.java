@@ -0,0 +1,128 @@
+package spacesettlers.simulator;
+
+import java.util.HashMap;
+
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.utilities.Position;
+
+/**
+ * Straight line predictions for one time step of a space.  The locations and velocities of
+ * all the objects are copied into arrays (by slot id) when the predictor is made, and each
+ * number of steps ahead is only predicted once.  The physics throws the predictor away
+ * whenever anything moves, so everyone who asks during a time step shares the same arrays.
+ *
+ * Moving in a straight line from x for n steps lands on x + n * timeStep * velocity
+ * (wrapped around the space) which is where moveOneTimestep would put it.
+ */
+class TrajectoryPredictor {
+	/**
+	 * Size of the space and length of a time step
+	 */
+	int width, height;
+	double timeStep;
+
+	/**
+	 * Location and velocity of each slot (velocity is 0 for objects that can't move)
+	 */
+	double[] x, y, velocityX, velocityY;
+
+	/**
+	 * Predictions already made (by steps ahead)
+	 */
+	HashMap<Integer, PredictedPositions> predictions;
+
+	/**
+	 * Copy the state of all the objects in the space
+	 *
+	 * @param space
+	 */
+	TrajectoryPredictor(Toroidal2DPhysics space) {
+		width = space.getWidth();
+		height = space.getHeight();
+		timeStep = space.getTimestepDuration();
+		predictions = new HashMap<Integer, PredictedPositions>();
+
+		int numSlots = space.getNumSlots();
+		x = new double[numSlots];
+		y = new double[numSlots];
+		velocityX = new double[numSlots];
+		velocityY = new double[numSlots];
+		for (AbstractObject object : space.getAllObjects()) {
+			int slot = object.getSlotId();
+			Position position = object.getPosition();
+			x[slot] = position.getX();
+			y[slot] = position.getY();
+			if (object.isMoveable() && object.isAlive()) {
+				velocityX[slot] = position.getTranslationalVelocityX();
+				velocityY[slot] = position.getTranslationalVelocityY();
+			}
+		}
+	}
+
+	/**
+	 * Predict where everything will be
+	 *
+	 * @param stepsAhead
+	 * @return
+	 */
+	synchronized PredictedPositions predict(int stepsAhead) {
+		PredictedPositions predicted = predictions.get(stepsAhead);
+		if (predicted != null) {
+			return predicted;
+		}
+
+		double time = stepsAhead * timeStep;
+		double[] predictedX = new double[x.length];
+		double[] predictedY = new double[y.length];
+		for (int slot = 0; slot < x.length; slot++) {
+			predictedX[slot] = wrap(x[slot] + velocityX[slot] * time, width);
+			predictedY[slot] = wrap(y[slot] + velocityY[slot] * time, height);
+		}
+
+		predicted = new PredictedPositions(stepsAhead, predictedX, predictedY);
+		predictions.put(stepsAhead, predicted);
+		return predicted;
+	}
+
+	private static double wrap(double value, int size) {
+		value %= size;
+		return value < 0 ? value + size : value;
+	}
+
+	/**
+	 * Time until two objects are closest if they both keep their velocity, going the
+	 * shortest way between them now
+	 *
+	 * @param space the space the predictor was made for
+	 * @param slot1
+	 * @param slot2
+	 * @return the time in seconds (0 if they are moving apart or not moving relative to each other)
+	 */
+	double timeToClosestApproach(Toroidal2DPhysics space, int slot1, int slot2) {
+		double deltaX = space.wrapDeltaX(x[slot2] - x[slot1]);
+		double deltaY = space.wrapDeltaY(y[slot2] - y[slot1]);
+		double relativeVelocityX = velocityX[slot2] - velocityX[slot1];
+		double relativeVelocityY = velocityY[slot2] - velocityY[slot1];
+		double relativeSpeedSquared = relativeVelocityX * relativeVelocityX + relativeVelocityY * relativeVelocityY;
+		if (relativeSpeedSquared == 0) {
+			return 0;
+		}
+		double time = -(deltaX * relativeVelocityX + deltaY * relativeVelocityY) / relativeSpeedSquared;
+		return Math.max(0, time);
+	}
+
+	/**
+	 * How close two objects get if they both keep their velocity
+	 *
+	 * @param space the space the predictor was made for
+	 * @param slot1
+	 * @param slot2
+	 * @return the distance between their centers at the time of closest approach
+	 */
+	double distanceAtClosestApproach(Toroidal2DPhysics space, int slot1, int slot2) {
+		double time = timeToClosestApproach(space, slot1, slot2);
+		double deltaX = space.wrapDeltaX(x[slot2] - x[slot1]) + (velocityX[slot2] - velocityX[slot1]) * time;
+		double deltaY = space.wrapDeltaY(y[slot2] - y[slot1]) + (velocityY[slot2] - velocityY[slot1]) * time;
+		return Math.sqrt(deltaX * deltaX + deltaY * deltaY);
+	}
+}
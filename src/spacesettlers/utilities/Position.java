@@ -9,6 +9,11 @@ public class Position {
 	double x, y, orientation, angularVelocity;
 	Vector2D velocity;
 
+	/**
+	 * True if the position can't be changed (see makeReadOnly)
+	 */
+	transient boolean readOnly;
+
 	public Position(double x, double y) {
 		super();
 		this.x = x;
@@ -53,10 +58,12 @@ public class Position {
 	}
 	
 	public void setX(double x) {
+		checkWritable();
 		this.x = x;
 	}
 
 	public void setY(double y) {
+		checkWritable();
 		this.y = y;
 	}
 
@@ -77,6 +84,7 @@ public class Position {
 	}
 	
 	public void setTranslationalVelocity(Vector2D newVel) {
+		checkWritable();
 		this.velocity = newVel;
 	}
 	
@@ -85,6 +93,7 @@ public class Position {
 	}
 	
 	public void setOrientation(double orientation) {
+		checkWritable();
 		this.orientation = orientation;
 	}
 	
@@ -97,9 +106,34 @@ public class Position {
 	}
 
 	public void setAngularVelocity(double angularVelocity) {
+		checkWritable();
 		this.angularVelocity = angularVelocity;
 	}
 
+	/**
+	 * Stop the position from being changed (used by the objects in read-only snapshots of 
+	 * the space).  deepCopy gives a copy that can be changed.
+	 */
+	public void makeReadOnly() {
+		readOnly = true;
+	}
+
+	/**
+	 * @return true if the position can't be changed
+	 */
+	public boolean isReadOnly() {
+		return readOnly;
+	}
+
+	/**
+	 * Throw an exception if something tries to change a read-only position
+	 */
+	private void checkWritable() {
+		if (readOnly) {
+			throw new UnsupportedOperationException("This position is in a read-only snapshot.  Use deepCopy() to get a copy you can change.");
+		}
+	}
+
 	public String toString() {
 		String str = "(" + x + " , " + y + ", " + orientation + ") velocity: " + velocity + ", " + angularVelocity;
 		return str;
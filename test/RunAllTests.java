@@ -2,6 +2,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 import spacesettlers.actions.ActionTests;
+import spacesettlers.clients.ClientsTests;
 import spacesettlers.simulator.SimulatorTests;
 import spacesettlers.utilities.UtilitiesTest;
 import spacesettlers.ladder.TestLadder;
@@ -9,6 +10,7 @@ import spacesettlers.ladder.TestLadder;
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
   ActionTests.class,
+  ClientsTests.class,
   SimulatorTests.class,
   TestLadder.class,
   UtilitiesTest.class,
@@ -0,0 +1,15 @@
+package spacesettlers.clients;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+  TestCpuBudget.class,
+  TestRemoteTeamClient.class,
+  TestTeam.class,
+})
+
+public class ClientsTests {
+
+}
@@ -0,0 +1,109 @@
+package spacesettlers.clients;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestCpuBudget {
+	static final long MILLIS = 1000000L;
+
+	/**
+	 * With no budgets the calls are only timed
+	 */
+	@Test
+	public void testNoBudget() {
+		CpuBudget budget = new CpuBudget();
+		assertFalse(budget.isEnabled());
+		assertEquals(Long.MAX_VALUE, budget.getAllowance());
+
+		budget.charge(5 * MILLIS);
+		assertEquals(Long.MAX_VALUE, budget.getAllowance());
+		assertEquals(5.0, budget.getTotalMillis(), 0.0001);
+		assertEquals(0, budget.getNumOverruns());
+	}
+
+	/**
+	 * The step budget starts over every step and going over it is counted once per step
+	 */
+	@Test
+	public void testStepBudget() {
+		CpuBudget budget = new CpuBudget(10, 0, 0, 0);
+		assertTrue(budget.isEnabled());
+		budget.startStep();
+		assertEquals(10 * MILLIS, budget.getAllowance());
+
+		budget.charge(4 * MILLIS);
+		assertEquals(6 * MILLIS, budget.getAllowance());
+
+		budget.charge(8 * MILLIS);
+		budget.charge(1 * MILLIS);
+		assertEquals(0, budget.getAllowance());
+		assertEquals(1, budget.getNumOverruns());
+
+		budget.startStep();
+		assertEquals(10 * MILLIS, budget.getAllowance());
+		assertEquals(13.0, budget.getTotalMillis(), 0.0001);
+	}
+
+	/**
+	 * The window budget counts the last few steps
+	 */
+	@Test
+	public void testWindowBudget() {
+		CpuBudget budget = new CpuBudget(0, 3, 30, 0);
+		budget.startStep();
+		budget.charge(10 * MILLIS);
+		budget.startStep();
+		budget.charge(15 * MILLIS);
+		budget.startStep();
+		assertEquals(5 * MILLIS, budget.getAllowance());
+
+		// the first step leaves the window
+		budget.startStep();
+		assertEquals(15 * MILLIS, budget.getAllowance());
+		assertEquals(0, budget.getNumOverruns());
+	}
+
+	/**
+	 * Going over a budget is paid for out of the grace bank
+	 */
+	@Test
+	public void testGraceBank() {
+		CpuBudget budget = new CpuBudget(10, 0, 0, 5);
+		budget.startStep();
+		assertEquals(15 * MILLIS, budget.getAllowance());
+
+		budget.charge(13 * MILLIS);
+		assertEquals(2.0, budget.getGraceMillisLeft(), 0.0001);
+		assertEquals(2 * MILLIS, budget.getAllowance());
+		assertEquals(1, budget.getNumOverruns());
+
+		budget.startStep();
+		assertEquals(12 * MILLIS, budget.getAllowance());
+		budget.charge(20 * MILLIS);
+		assertEquals(0.0, budget.getGraceMillisLeft(), 0.0001);
+		assertEquals(2, budget.getNumOverruns());
+	}
+
+	/**
+	 * A call is charged for the time it used
+	 */
+	@Test
+	public void testCallIsCharged() {
+		CpuBudget budget = new CpuBudget();
+		budget.callStarted(false);
+		long start = System.nanoTime();
+		double sum = 0;
+		while (System.nanoTime() - start < 20 * MILLIS) {
+			sum += Math.sqrt(sum + 1);
+		}
+		assertTrue(budget.getCallUsage() > 0);
+		budget.callEnded();
+
+		assertTrue(sum > 0);
+		assertTrue(budget.getTotalMillis() > 1);
+		assertEquals(0, budget.getCallUsage());
+	}
+}
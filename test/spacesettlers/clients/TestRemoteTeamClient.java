@@ -0,0 +1,144 @@
+package spacesettlers.clients;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import spacesettlers.simulator.SpaceSettlersSimulator;
+import spacesettlers.simulator.Toroidal2DPhysics;
+
+public class TestRemoteTeamClient {
+	Toroidal2DPhysics space;
+	RemoteTeamClient client;
+	Team team;
+
+	/**
+	 * A remote client that can be held as not ready (as if it were being restarted)
+	 */
+	static class NotReadyRemoteTeamClient extends RemoteTeamClient {
+		volatile boolean ready = true;
+
+		NotReadyRemoteTeamClient(String className) {
+			super(className, null);
+		}
+
+		@Override
+		public boolean isReady() {
+			return ready && super.isReady();
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		space = new Toroidal2DPhysics(480, 640, 0.05);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (team != null) {
+			team.shutdownExecutor();
+		}
+	}
+
+	private void makeTeam(RemoteTeamClient remoteClient, String teamName) {
+		client = remoteClient;
+		client.setTeamName(teamName);
+		client.setTeamColor(Color.RED);
+		team = new Team(client, teamName, 1);
+	}
+
+	/**
+	 * @return true if a live thread's name starts with the prefix
+	 */
+	private static boolean hasThread(String prefix) {
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.isAlive() && thread.getName().startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Wait up to the connect timeout for the client to be ready again
+	 */
+	private static void waitUntilReady(RemoteTeamClient client) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + RemoteTeamClient.CONNECT_TIMEOUT;
+		while (!client.isReady() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+	}
+
+	/**
+	 * A client that never answers is killed when it times out and a new process is started
+	 * for it, and no threads are left behind once the team is shut down
+	 */
+	@Test
+	public void testTimeoutKillsAndRestartsTheProcess() throws Exception {
+		makeTeam(new RemoteTeamClient(InfiniteLoopTeamClient.class.getName(), null), "loop");
+		client.initialize(space);
+		assertEquals(1, client.getNumStarts());
+		Process firstProcess = client.process;
+		assertNotNull(firstProcess);
+		assertTrue(firstProcess.isAlive());
+
+		long start = System.nanoTime();
+		assertTrue(team.getTeamMovementStart(space).isEmpty());
+		long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue(waitedMillis >= SpaceSettlersSimulator.TEAM_ACTION_TIMEOUT);
+		assertEquals(1, team.getNumClientTimeouts());
+
+		// the stuck child is killed rather than left running
+		assertTrue(firstProcess.waitFor(5, TimeUnit.SECONDS));
+
+		// and a new one is started in the background
+		waitUntilReady(client);
+		assertTrue(client.isReady());
+		assertEquals(2, client.getNumStarts());
+		Process secondProcess = client.process;
+		assertNotNull(secondProcess);
+		assertTrue(secondProcess != firstProcess);
+		assertTrue(secondProcess.isAlive());
+
+		team.shutdownExecutor();
+		team = null;
+		assertNull(client.process);
+		assertTrue(secondProcess.waitFor(5, TimeUnit.SECONDS));
+
+		// the team's worker and the restart thread are gone
+		long deadline = System.currentTimeMillis() + 5000;
+		while ((hasThread("Team loop") || hasThread("Restart loop")) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertFalse(hasThread("Team loop"));
+		assertFalse(hasThread("Restart loop"));
+	}
+
+	/**
+	 * While the client isn't ready the team skips its calls (without waiting for the
+	 * timeout or starting a process)
+	 */
+	@Test
+	public void testCallsAreSkippedUntilReady() throws Exception {
+		NotReadyRemoteTeamClient notReady = new NotReadyRemoteTeamClient(DoNothingTeamClient.class.getName());
+		makeTeam(notReady, "waiting");
+		notReady.ready = false;
+
+		long start = System.nanoTime();
+		assertTrue(team.getTeamMovementStart(space).isEmpty());
+		long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue(waitedMillis < SpaceSettlersSimulator.TEAM_ACTION_TIMEOUT);
+		assertEquals(0, team.getNumClientTimeouts());
+		assertEquals(0, notReady.getNumStarts());
+		assertNull(notReady.process);
+	}
+}
@@ -0,0 +1,226 @@
+package spacesettlers.clients;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import spacesettlers.actions.AbstractAction;
+import spacesettlers.actions.PurchaseCosts;
+import spacesettlers.actions.PurchaseTypes;
+import spacesettlers.graphics.SpacewarGraphics;
+import spacesettlers.objects.AbstractActionableObject;
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.objects.Asteroid;
+import spacesettlers.objects.powerups.SpaceSettlersPowerupEnum;
+import spacesettlers.objects.resources.ResourcePile;
+import spacesettlers.simulator.Toroidal2DPhysics;
+import spacesettlers.utilities.Position;
+
+public class TestTeam {
+	Toroidal2DPhysics space;
+	SlowBatchedClient client;
+	Team team;
+
+	/**
+	 * A batched client whose movementEnded doesn't return until it is let go
+	 */
+	static class SlowBatchedClient extends TeamClient implements BatchedTeamClient {
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger numMovementEnded = new AtomicInteger();
+
+		public void movementEnded(Toroidal2DPhysics space, Set<AbstractActionableObject> actionableObjects) {
+			numMovementEnded.incrementAndGet();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		public TeamTurn getTeamTurn(Toroidal2DPhysics space, Set<AbstractActionableObject> actionableObjects,
+				ResourcePile resourcesAvailable, PurchaseCosts purchaseCosts) {
+			return null;
+		}
+
+		public Map<UUID, AbstractAction> getMovementStart(Toroidal2DPhysics space,
+				Set<AbstractActionableObject> actionableObjects) {
+			return null;
+		}
+
+		public void getMovementEnd(Toroidal2DPhysics space, Set<AbstractActionableObject> actionableObjects) {
+		}
+
+		public Map<UUID, SpaceSettlersPowerupEnum> getPowerups(Toroidal2DPhysics space,
+				Set<AbstractActionableObject> actionableObjects) {
+			return null;
+		}
+
+		public Map<UUID, PurchaseTypes> getTeamPurchases(Toroidal2DPhysics space,
+				Set<AbstractActionableObject> actionableObjects, ResourcePile resourcesAvailable,
+				PurchaseCosts purchaseCosts) {
+			return null;
+		}
+
+		public void initialize(Toroidal2DPhysics space) {
+		}
+
+		public void shutDown(Toroidal2DPhysics space) {
+		}
+
+		public Set<SpacewarGraphics> getGraphics() {
+			return null;
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		space = new Toroidal2DPhysics(480, 640, 0.05);
+		client = new SlowBatchedClient();
+		client.setTeamName("slow");
+		client.setTeamColor(Color.RED);
+		team = new Team(client, "slow", 1);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.release.countDown();
+		team.shutdownExecutor();
+	}
+
+	/**
+	 * A batched client stuck in movementEnded only has the latest notification waiting 
+	 * for it, not one for every step
+	 */
+	@Test
+	public void testMovementEndedDoesNotPileUp() throws Exception {
+		for (int step = 0; step < 100; step++) {
+			team.getTeamMovementEnd(space);
+		}
+
+		// let the queued notifications finish
+		client.release.countDown();
+		team.executor.shutdown();
+		assertTrue(team.executor.awaitTermination(5, TimeUnit.SECONDS));
+
+		// at most the one the client was stuck in and the latest one
+		assertTrue(client.numMovementEnded.get() >= 1);
+		assertTrue(client.numMovementEnded.get() <= 2);
+		assertNull(team.pendingMovementEnd.get());
+	}
+
+	/**
+	 * A client that tries to change the space it is given (and then changes its own copy)
+	 */
+	static class MeddlingClient extends SlowBatchedClient {
+		UUID asteroidId;
+		Toroidal2DPhysics seenSpace;
+		boolean changeRejected;
+		double seenX;
+		boolean seenAlive;
+
+		public TeamTurn getTeamTurn(Toroidal2DPhysics space, Set<AbstractActionableObject> actionableObjects,
+				ResourcePile resourcesAvailable, PurchaseCosts purchaseCosts) {
+			seenSpace = space;
+			AbstractObject asteroid = space.getObjectById(asteroidId);
+			seenX = asteroid.getPosition().getX();
+			seenAlive = asteroid.isAlive();
+			try {
+				asteroid.getPosition().setX(seenX + 100);
+				asteroid.setAlive(false);
+			} catch (UnsupportedOperationException e) {
+				changeRejected = true;
+			}
+
+			// its own copy is always fine to change
+			Toroidal2DPhysics copy = space.deepClone();
+			copy.getObjectById(asteroidId).getPosition().setX(seenX + 100);
+			copy.getObjectById(asteroidId).setAlive(false);
+			return null;
+		}
+	}
+
+	/**
+	 * The same client but it asked for the shared read-only space
+	 */
+	static class ReadOnlyMeddlingClient extends MeddlingClient implements ReadOnlySpaceTeamClient {
+	}
+
+	/**
+	 * Ask two teams about the same snapshot, one after the other
+	 */
+	private void askTeams(Toroidal2DPhysics snapshot, MeddlingClient client1, MeddlingClient client2, UUID asteroidId) {
+		client1.asteroidId = asteroidId;
+		client2.asteroidId = asteroidId;
+		Team team1 = new Team(client1, "meddler1", 1);
+		Team team2 = new Team(client2, "meddler2", 1);
+		try {
+			team1.getTeamMovementStart(snapshot);
+			team2.getTeamMovementStart(snapshot);
+		} finally {
+			team1.shutdownExecutor();
+			team2.shutdownExecutor();
+		}
+	}
+
+	/**
+	 * Clients that didn't ask for the read-only space get their own clone of the snapshot, 
+	 * so they can change it and the next team doesn't see it
+	 */
+	@Test
+	public void testClientsGetTheirOwnCopyByDefault() throws Exception {
+		Asteroid asteroid = new Asteroid(new Position(100, 100), true, 10, true, .33, .33, .34);
+		space.addObject(asteroid);
+		Toroidal2DPhysics snapshot = space.createReadOnlySnapshot();
+
+		MeddlingClient client1 = new MeddlingClient();
+		MeddlingClient client2 = new MeddlingClient();
+		askTeams(snapshot, client1, client2, asteroid.getId());
+
+		assertFalse(client1.changeRejected);
+		assertFalse(client2.changeRejected);
+		assertTrue(client1.seenSpace != snapshot);
+		assertTrue(client1.seenSpace != client2.seenSpace);
+		assertEquals(100, client2.seenX, 0);
+		assertTrue(client2.seenAlive);
+		assertEquals(100, snapshot.getObjectById(asteroid.getId()).getPosition().getX(), 0);
+		assertEquals(100, asteroid.getPosition().getX(), 0);
+		assertTrue(asteroid.isAlive());
+	}
+
+	/**
+	 * Clients that asked for the read-only space share the snapshot and nothing one team 
+	 * tries to do to it can be seen by another team
+	 */
+	@Test
+	public void testReadOnlyClientsShareTheSnapshot() throws Exception {
+		Asteroid asteroid = new Asteroid(new Position(100, 100), true, 10, true, .33, .33, .34);
+		space.addObject(asteroid);
+		Toroidal2DPhysics snapshot = space.createReadOnlySnapshot();
+
+		MeddlingClient client1 = new ReadOnlyMeddlingClient();
+		MeddlingClient client2 = new ReadOnlyMeddlingClient();
+		askTeams(snapshot, client1, client2, asteroid.getId());
+
+		assertTrue(client1.seenSpace == snapshot);
+		assertTrue(client2.seenSpace == snapshot);
+		assertTrue(client1.changeRejected);
+		assertTrue(client2.changeRejected);
+		assertEquals(100, client2.seenX, 0);
+		assertTrue(client2.seenAlive);
+		assertEquals(100, asteroid.getPosition().getX(), 0);
+		assertTrue(asteroid.isAlive());
+	}
+}
@@ -7,6 +7,8 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({
   TestToroidal2DPhysics.class,
   TestCollisionHandler.class,
+  TestSnapshotCodec.class,
+  TestSpaceSettlersSimulator.class,
 })
 
 public class SimulatorTests {
@@ -1,6 +1,7 @@
 package spacesettlers.simulator;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 import java.awt.Color;
 
@@ -8,7 +9,9 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import spacesettlers.objects.AbstractObject;
 import spacesettlers.objects.Asteroid;
+import spacesettlers.objects.Beacon;
 import spacesettlers.objects.Ship;
 import spacesettlers.objects.resources.ResourcePile;
 import spacesettlers.objects.resources.ResourceTypes;
@@ -259,4 +262,40 @@ public class TestCollisionHandler {
 	}
 
 	
+
+	/**
+	 * The rules are found the same way whichever object is passed first
+	 */
+	@Test
+	public void testBeaconCollisionEitherOrder() {
+		for (int order = 0; order < 2; order++) {
+			Position shipPos = new Position(0, 0);
+			shipPos.setTranslationalVelocity(new Vector2D(20, 0));
+			Ship ship = new Ship("team1", Color.BLUE, shipPos);
+			ship.updateEnergy(-3000);
+			double energy = ship.getEnergy();
+			Beacon beacon = new Beacon(new Position(10, 0));
+			beacon.setAlive(true);
+
+			if (order == 0) {
+				collisionHandler.collide(ship, beacon, space);
+			} else {
+				collisionHandler.collide(beacon, ship, space);
+			}
+
+			// the ship picks up the beacon and doesn't bounce
+			assertFalse(beacon.isAlive());
+			assertEquals(1, ship.getNumBeacons());
+			assertEquals(energy + Beacon.BEACON_ENERGY_BOOST, ship.getEnergy(), 0);
+			assertEquals(20, ship.getPosition().getTranslationalVelocityX(), 0);
+		}
+	}
+
+	@Test
+	public void testTypeTags() {
+		assertEquals(AbstractObject.TYPE_SHIP, new Ship("team1", Color.BLUE, new Position(0, 0)).getTypeTag());
+		assertEquals(AbstractObject.TYPE_BEACON, new Beacon(new Position(0, 0)).getTypeTag());
+		assertEquals(AbstractObject.TYPE_ASTEROID,
+				new Asteroid(new Position(0, 0), true, 10, true, .33, .33, .34).getTypeTag());
+	}
 }
@@ -0,0 +1,111 @@
+package spacesettlers.simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.objects.Asteroid;
+import spacesettlers.objects.Beacon;
+import spacesettlers.objects.Ship;
+import spacesettlers.objects.weapons.Missile;
+import spacesettlers.utilities.Position;
+import spacesettlers.utilities.Vector2D;
+
+public class TestSnapshotCodec {
+	Toroidal2DPhysics space;
+	Ship ship;
+	Missile missile;
+
+	@Before
+	public void setUp() throws Exception {
+		space = new Toroidal2DPhysics(480, 640, 0.05);
+
+		Position asteroidPosition = new Position(100, 200);
+		asteroidPosition.setTranslationalVelocity(new Vector2D(3, -4));
+		space.addObject(new Asteroid(asteroidPosition, true, 10, true, 0.2, 0.3, 0.5));
+		Beacon beacon = new Beacon(new Position(300, 50));
+		space.addObject(beacon);
+		ship = new Ship("team", Color.BLUE, new Position(400, 400, Math.PI / 2));
+		space.addObject(ship);
+		missile = new Missile(ship.getPosition(), ship);
+		space.addObject(missile);
+
+		// leave a free slot behind
+		space.removeObject(beacon);
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		Toroidal2DPhysics decoded = SnapshotCodec.decode(SnapshotCodec.encode(space));
+
+		assertEquals(space.getAllObjects().size(), decoded.getAllObjects().size());
+		Iterator<AbstractObject> decodedObjects = decoded.getAllObjects().iterator();
+		for (AbstractObject object : space.getAllObjects()) {
+			AbstractObject copy = decodedObjects.next();
+			assertNotSame(object, copy);
+			assertEquals(object.getClass(), copy.getClass());
+			assertEquals(object.getId(), copy.getId());
+			assertEquals(object.getSlotId(), copy.getSlotId());
+			assertEquals(object.getPosition().getX(), copy.getPosition().getX(), 0);
+			assertEquals(object.getPosition().getY(), copy.getPosition().getY(), 0);
+			assertEquals(object.getPosition().getTranslationalVelocityX(), copy.getPosition().getTranslationalVelocityX(), 0);
+			assertEquals(object.getPosition().getTranslationalVelocityY(), copy.getPosition().getTranslationalVelocityY(), 0);
+			assertSame(copy, decoded.getObjectById(object.getId()));
+		}
+
+		// the missile points at the decoded ship
+		Missile decodedMissile = (Missile) decoded.getObjectById(missile.getId());
+		assertSame(decoded.getObjectById(ship.getId()), decodedMissile.getFiringShip());
+
+		Asteroid asteroid = decoded.getAsteroids().iterator().next();
+		assertEquals(0.5, asteroid.getMetalsProportion(), 0.0001);
+		assertEquals(10, asteroid.getRadius());
+
+		// a new object goes into the freed slot in both spaces
+		Beacon beacon = new Beacon(new Position(10, 10));
+		space.addObject(beacon);
+		Beacon decodedBeacon = new Beacon(new Position(10, 10));
+		decoded.addObject(decodedBeacon);
+		assertEquals(beacon.getSlotId(), decodedBeacon.getSlotId());
+	}
+
+	@Test
+	public void testReadOnlySnapshot() throws Exception {
+		Toroidal2DPhysics snapshot = space.createReadOnlySnapshot();
+		Toroidal2DPhysics decoded = SnapshotCodec.decode(SnapshotCodec.encode(snapshot));
+		assertTrue(decoded.isReadOnly());
+		assertEquals(snapshot.getAllObjects().size(), decoded.getAllObjects().size());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testReadOnlySnapshotCannotChange() throws Exception {
+		Toroidal2DPhysics decoded = SnapshotCodec.decode(SnapshotCodec.encode(space.createReadOnlySnapshot()));
+		decoded.addObject(new Beacon(new Position(10, 10)));
+	}
+
+	@Test
+	public void testWriteObject() throws Exception {
+		ArrayList<Position> positions = new ArrayList<Position>();
+		positions.add(new Position(1, 2, 3));
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		SnapshotCodec.writeObject(new DataOutputStream(bytes), positions);
+		@SuppressWarnings("unchecked")
+		ArrayList<Position> copy = (ArrayList<Position>) SnapshotCodec.readObject(
+				new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		assertEquals(1, copy.size());
+		assertEquals(3, copy.get(0).getOrientation(), 0);
+	}
+}
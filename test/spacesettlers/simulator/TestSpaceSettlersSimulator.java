@@ -0,0 +1,220 @@
+package spacesettlers.simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.converters.reflection.Sun14ReflectionProvider;
+
+import spacesettlers.actions.AbstractAction;
+import spacesettlers.actions.DoNothingAction;
+import spacesettlers.actions.PurchaseCosts;
+import spacesettlers.actions.PurchaseTypes;
+import spacesettlers.clients.BatchedTeamClient;
+import spacesettlers.clients.TeamClient;
+import spacesettlers.clients.TeamTurn;
+import spacesettlers.configs.BaseConfig;
+import spacesettlers.configs.HighLevelTeamConfig;
+import spacesettlers.configs.RandomAsteroidConfig;
+import spacesettlers.configs.SpaceSettlersConfig;
+import spacesettlers.graphics.SpacewarGraphics;
+import spacesettlers.objects.AbstractActionableObject;
+import spacesettlers.objects.Ship;
+import spacesettlers.objects.powerups.SpaceSettlersPowerupEnum;
+import spacesettlers.objects.resources.ResourcePile;
+
+public class TestSpaceSettlersSimulator {
+	@Rule
+	public TemporaryFolder configFolder = new TemporaryFolder();
+
+	SpaceSettlersSimulator simulator;
+
+	/**
+	 * An action that remembers which snapshot it was chosen for
+	 */
+	static class StampedAction extends DoNothingAction {
+		int snapshotNumber;
+
+		StampedAction(int snapshotNumber) {
+			this.snapshotNumber = snapshotNumber;
+		}
+	}
+
+	/**
+	 * A client that stamps its actions with the number of the snapshot it was asked about
+	 * (each step hands the client one snapshot)
+	 */
+	public static class StampingClient extends TeamClient {
+		int numSnapshots;
+
+		public Map<UUID, AbstractAction> getMovementStart(Toroidal2DPhysics space,
+				Set<AbstractActionableObject> actionableObjects) {
+			Map<UUID, AbstractAction> actions = new HashMap<UUID, AbstractAction>();
+			for (AbstractActionableObject actionable : actionableObjects) {
+				actions.put(actionable.getId(), new StampedAction(numSnapshots));
+			}
+			numSnapshots++;
+			return actions;
+		}
+
+		public void getMovementEnd(Toroidal2DPhysics space, Set<AbstractActionableObject> actionableObjects) {
+		}
+
+		public Map<UUID, SpaceSettlersPowerupEnum> getPowerups(Toroidal2DPhysics space,
+				Set<AbstractActionableObject> actionableObjects) {
+			return null;
+		}
+
+		public Map<UUID, PurchaseTypes> getTeamPurchases(Toroidal2DPhysics space,
+				Set<AbstractActionableObject> actionableObjects, ResourcePile resourcesAvailable,
+				PurchaseCosts purchaseCosts) {
+			return null;
+		}
+
+		public void initialize(Toroidal2DPhysics space) {
+		}
+
+		public void shutDown(Toroidal2DPhysics space) {
+		}
+
+		public Set<SpacewarGraphics> getGraphics() {
+			return null;
+		}
+	}
+
+	/**
+	 * The same client answering the whole step at once
+	 */
+	public static class BatchedStampingClient extends StampingClient implements BatchedTeamClient {
+		public TeamTurn getTeamTurn(Toroidal2DPhysics space, Set<AbstractActionableObject> actionableObjects,
+				ResourcePile resourcesAvailable, PurchaseCosts purchaseCosts) {
+			return new TeamTurn(getMovementStart(space, actionableObjects), null, null);
+		}
+
+		public void movementEnded(Toroidal2DPhysics space, Set<AbstractActionableObject> actionableObjects) {
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (simulator != null) {
+			simulator.shutdownTeams();
+		}
+	}
+
+	private void writeFile(String name, String contents) throws IOException {
+		FileWriter writer = new FileWriter(new File(configFolder.getRoot(), name));
+		try {
+			writer.write(contents);
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Make a simulator with one ship run by the client and nothing else in the space
+	 */
+	private SpaceSettlersSimulator makeSimulator(Class<? extends StampingClient> clientClass, int latency)
+			throws Exception {
+		writeFile("stamping-clientinit.xml", "<TeamClientConfig>\n"
+				+ "	<classname>" + clientClass.getName() + "</classname>\n"
+				+ "	<teamColorRed>255</teamColorRed>\n"
+				+ "	<teamColorGreen>0</teamColorGreen>\n"
+				+ "	<teamColorBlue>0</teamColorBlue>\n"
+				+ "	<ladderName>Stamping Client</ladderName>\n"
+				+ "	<numberInitialShipsInTeam>1</numberInitialShipsInTeam>\n"
+				+ "</TeamClientConfig>\n");
+		writeFile("SpaceSettlersConfig.xml", "<SpaceSettlersConfig>\n"
+				+ "	<height>480</height>\n"
+				+ "	<width>640</width>\n"
+				+ "	<simulationSteps>100</simulationSteps>\n"
+				+ "	<simulationTimeStep>0.05</simulationTimeStep>\n"
+				+ "	<randomSeed>5</randomSeed>\n"
+				+ "	<scoringMethod>KillAssistsAndCores</scoringMethod>\n"
+				+ "	<numBeacons>0</numBeacons>\n"
+				+ "	<maximumShipsPerTeam>1</maximumShipsPerTeam>\n"
+				+ "	<maximumInitialShipsPerTeam>1</maximumInitialShipsPerTeam>\n"
+				+ "	<teams>\n"
+				+ "		<HighLevelTeamConfig>\n"
+				+ "			<teamName>StampingTeam</teamName>\n"
+				+ "			<configFile>stamping-clientinit.xml</configFile>\n"
+				+ "		</HighLevelTeamConfig>\n"
+				+ "	</teams>\n"
+				+ "	<bases>\n"
+				+ "		<BaseConfig>\n"
+				+ "			<teamName>StampingTeam</teamName>\n"
+				+ "		</BaseConfig>\n"
+				+ "	</bases>\n"
+				+ "	<randomAsteroids>\n"
+				+ "		<numberInitialAsteroids>0</numberInitialAsteroids>\n"
+				+ "		<maximumNumberAsteroids>0</maximumNumberAsteroids>\n"
+				+ "	</randomAsteroids>\n"
+				+ "	<clientActionLatency>" + latency + "</clientActionLatency>\n"
+				+ "</SpaceSettlersConfig>\n");
+
+		// read with Unsafe so BaseConfig (which has no no-args constructor) loads on any JVM
+		XStream xstream = new XStream(new Sun14ReflectionProvider());
+		xstream.alias("SpaceSettlersConfig", SpaceSettlersConfig.class);
+		xstream.alias("HighLevelTeamConfig", HighLevelTeamConfig.class);
+		xstream.alias("BaseConfig", BaseConfig.class);
+		xstream.alias("AsteroidConfig", RandomAsteroidConfig.class);
+		SpaceSettlersConfig simConfig = (SpaceSettlersConfig) xstream.fromXML(
+				new File(configFolder.getRoot(), "SpaceSettlersConfig.xml"));
+
+		RunSimulator runSimulator = new RunSimulator(new String[] { "--simulatorConfigFile", "SpaceSettlersConfig.xml",
+				"--configPath", configFolder.getRoot().getPath() + File.separator, "--graphics", "false" });
+		return new SpaceSettlersSimulator(simConfig, runSimulator.config);
+	}
+
+	/**
+	 * Run the simulator in pipelined mode and check that the ship does nothing for the first
+	 * latency steps and after that always uses the action chosen latency steps earlier
+	 */
+	private void checkActionsArriveAfterLatency(Class<? extends StampingClient> clientClass, int latency)
+			throws Exception {
+		simulator = makeSimulator(clientClass, latency);
+		Ship ship = simulator.teams.iterator().next().getShips().iterator().next();
+
+		for (int step = 0; step < 10; step++) {
+			simulator.timestep = step;
+			simulator.advanceTime();
+
+			AbstractAction action = ship.getCurrentAction();
+			if (step < latency) {
+				assertFalse(action instanceof StampedAction);
+			} else {
+				assertTrue(action instanceof StampedAction);
+				assertEquals(step - latency, ((StampedAction) action).snapshotNumber);
+			}
+		}
+	}
+
+	@Test
+	public void testPipelinedActionsArriveAfterOneStep() throws Exception {
+		checkActionsArriveAfterLatency(StampingClient.class, 1);
+	}
+
+	@Test
+	public void testPipelinedActionsArriveAfterThreeSteps() throws Exception {
+		checkActionsArriveAfterLatency(StampingClient.class, 3);
+	}
+
+	@Test
+	public void testPipelinedBatchedActionsArriveAfterTwoSteps() throws Exception {
+		checkActionsArriveAfterLatency(BatchedStampingClient.class, 2);
+	}
+}
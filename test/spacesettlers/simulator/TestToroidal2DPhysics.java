@@ -1,14 +1,38 @@
 package spacesettlers.simulator;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import spacesettlers.actions.AbstractAction;
+import spacesettlers.clients.DoNothingTeamClient;
+import spacesettlers.clients.Team;
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.objects.Asteroid;
+import spacesettlers.objects.Base;
+import spacesettlers.objects.Beacon;
+import spacesettlers.objects.Drone;
+import spacesettlers.objects.Ship;
+import spacesettlers.objects.powerups.SpaceSettlersPowerupEnum;
+import spacesettlers.objects.resources.ResourcePile;
+import spacesettlers.objects.weapons.Missile;
 import spacesettlers.simulator.Toroidal2DPhysics;
 import spacesettlers.utilities.Movement;
 import spacesettlers.utilities.Position;
@@ -258,6 +282,42 @@ public class TestToroidal2DPhysics {
 		}
 	}
 
+	/**
+	 * On a crowded map the free location search has to end, has to find the one free
+	 * spot and has to give the same answer for the same seed
+	 */
+	@Test
+	public void testGetRandomFreeLocationCrowded() {
+		// asteroids every 40 pixels leave no free space except where 4 are missing
+		Toroidal2DPhysics crowded = new Toroidal2DPhysics(height, width, timestep);
+		for (int x = 20; x < width; x += 40) {
+			for (int y = 20; y < height; y += 40) {
+				if ((x == 300 || x == 340) && (y == 220 || y == 260)) {
+					continue;
+				}
+				crowded.addObject(new Asteroid(new Position(x, y), false, 10, false, .33, .33, .34));
+			}
+		}
+
+		for (long seed = 0; seed < 20; seed++) {
+			Position location = crowded.getRandomFreeLocation(new Random(seed), 10);
+			assertTrue(crowded.isLocationFree(location, 10));
+			Position again = crowded.getRandomFreeLocation(new Random(seed), 10);
+			assertEquals(location.getX(), again.getX(), 0);
+			assertEquals(location.getY(), again.getY(), 0);
+
+			location = crowded.getRandomFreeLocationInRegion(new Random(seed), 10, 0, 0, 100);
+			assertTrue(crowded.findShortestDistance(new Position(0, 0), location) <= 100);
+			location = crowded.getRandomFreeLocationInRegion(new Random(seed), 10, 200, 100, 400, 300);
+			assertTrue(crowded.isLocationFree(location, 10));
+		}
+
+		// with nothing free it still returns somewhere in the region
+		crowded.addObject(new Asteroid(new Position(320, 240), false, 10, false, .33, .33, .34));
+		Position location = crowded.getRandomFreeLocationInRegion(new Random(1), 10, 320, 240, 50);
+		assertTrue(crowded.findShortestDistance(new Position(320, 240), location) <= 50);
+	}
+
 	@Test
 	public void testToroidalWrap() {
 		Position position = new Position(0,0);
@@ -344,5 +404,764 @@ public class TestToroidal2DPhysics {
 		assertEquals(dist, 0, 0.01);
 	}
 	
+	/**
+	 * The primitive distance functions must agree with the vector version everywhere 
+	 * (including across the edges)
+	 */
+	@Test
+	public void testPrimitiveDistancesMatchVector() {
+		Random random = new Random(11);
+		double[] delta = new double[2];
+		Position[] positions = new Position[100];
+		double[] distances = new double[positions.length];
+		Position center = new Position(random.nextDouble() * width, random.nextDouble() * height);
+		
+		for (int i = 0; i < positions.length; i++) {
+			Position other = new Position(random.nextDouble() * width, random.nextDouble() * height);
+			positions[i] = other;
+			Vector2D expected = space.findShortestDistanceVector(center, other);
+			
+			assertEquals(expected.getMagnitude(), space.findShortestDistance(center, other), 0);
+			assertEquals(expected.getMagnitude() * expected.getMagnitude(), space.findShortestDistanceSquared(center, other), 1e-6);
+			
+			space.findShortestDistanceDelta(center, other, delta);
+			assertEquals(expected.getXValue(), delta[0], 0);
+			assertEquals(expected.getYValue(), delta[1], 0);
+		}
+		
+		space.findShortestDistances(center, positions, distances);
+		for (int i = 0; i < positions.length; i++) {
+			assertEquals(space.findShortestDistanceVector(center, positions[i]).getMagnitude(), distances[i], 0);
+		}
+	}
+
+	/**
+	 * Snapshots are copies that can't have objects added or removed
+	 */
+	@Test
+	public void testReadOnlySnapshot() {
+		Asteroid asteroid = new Asteroid(new Position(10, 10), false, 10, true, .33, .33, .34);
+		space.addObject(asteroid);
+		
+		Toroidal2DPhysics snapshot = space.createReadOnlySnapshot();
+		assertTrue(snapshot.isReadOnly());
+		assertEquals(1, snapshot.getAsteroids().size());
+		
+		AbstractObject copy = snapshot.getObjectById(asteroid.getId());
+		assertTrue(copy != asteroid);
+		
+		try {
+			snapshot.removeObject(copy);
+			fail("Removing from a snapshot should throw an exception");
+		} catch (UnsupportedOperationException e) {
+		}
+		
+		try {
+			snapshot.getAsteroids().clear();
+			fail("Changing the snapshot sets should throw an exception");
+		} catch (UnsupportedOperationException e) {
+		}
+		
+		// a clone of the snapshot can be changed
+		Toroidal2DPhysics clone = snapshot.deepClone();
+		clone.removeObject(clone.getObjectById(asteroid.getId()));
+		assertEquals(0, clone.getAsteroids().size());
+		assertEquals(1, space.getAsteroids().size());
+	}
+
+	/**
+	 * The objects in a snapshot (and their positions and resources) can't be changed 
+	 * but clones of them can
+	 */
+	@Test
+	public void testReadOnlySnapshotObjects() {
+		Asteroid asteroid = new Asteroid(new Position(10, 10), true, 10, true, .33, .33, .34);
+		space.addObject(asteroid);
+		Toroidal2DPhysics snapshot = space.createReadOnlySnapshot();
+		AbstractObject copy = snapshot.getObjectById(asteroid.getId());
+		assertTrue(copy.isReadOnly());
+		
+		try {
+			copy.getPosition().setX(100);
+			fail("Moving a snapshot object should throw an exception");
+		} catch (UnsupportedOperationException e) {
+		}
+		
+		try {
+			copy.setAlive(false);
+			fail("Killing a snapshot object should throw an exception");
+		} catch (UnsupportedOperationException e) {
+		}
+		
+		try {
+			copy.getResources().add(asteroid.getResources());
+			fail("Changing the resources of a snapshot object should throw an exception");
+		} catch (UnsupportedOperationException e) {
+		}
+		assertEquals(10, copy.getPosition().getX(), 0);
+		assertTrue(copy.isAlive());
+		
+		// a clone of a snapshot object can be changed
+		AbstractObject clone = copy.deepClone();
+		assertFalse(clone.isReadOnly());
+		clone.getPosition().setX(100);
+		clone.setAlive(false);
+		assertEquals(10, copy.getPosition().getX(), 0);
+		assertTrue(copy.isAlive());
+		assertFalse(asteroid.isReadOnly());
+	}
+
+	/**
+	 * Records what an action saw of the space (and tries to move the asteroid it is watching)
+	 */
+	class RecordingAction extends AbstractAction {
+		UUID asteroidId;
+		Toroidal2DPhysics seenSpace;
+		double seenX;
+		boolean changeRejected;
+		
+		RecordingAction(UUID asteroidId) {
+			this.asteroidId = asteroidId;
+		}
+
+		@Override
+		public Movement getMovement(Toroidal2DPhysics space, Ship ship) {
+			seenSpace = space;
+			AbstractObject asteroid = space.getObjectById(asteroidId);
+			seenX = asteroid.getPosition().getX();
+			try {
+				asteroid.getPosition().setX(seenX + 100);
+			} catch (UnsupportedOperationException e) {
+				changeRejected = true;
+			}
+			return new Movement();
+		}
+
+		@Override
+		public Movement getMovement(Toroidal2DPhysics space, Drone drone) {
+			return new Movement();
+		}
+
+		@Override
+		public boolean isMovementFinished(Toroidal2DPhysics space) {
+			return false;
+		}
+	}
+
+	/**
+	 * Every action in a step sees the same space as it was before anything moved (even 
+	 * objects that come earlier in the list) and can't change it for the others
+	 */
+	@Test
+	public void testActionsSeeSpaceBeforeMoving() {
+		Position location = new Position(100, 100);
+		location.setTranslationalVelocity(new Vector2D(20, 0));
+		Asteroid asteroid = new Asteroid(location, false, 5, true, .33, .33, .34);
+		space.addObject(asteroid);
+		
+		Ship ship1 = new Ship("team1", Color.BLUE, new Position(300, 300));
+		Ship ship2 = new Ship("team2", Color.RED, new Position(400, 200));
+		RecordingAction action1 = new RecordingAction(asteroid.getId());
+		RecordingAction action2 = new RecordingAction(asteroid.getId());
+		ship1.setCurrentAction(action1);
+		ship2.setCurrentAction(action2);
+		space.addObject(ship1);
+		space.addObject(ship2);
+		
+		space.advanceTime(new Random(0), 0, new HashMap<UUID, SpaceSettlersPowerupEnum>());
+		
+		// the asteroid really moved but both actions saw it where it started
+		assertTrue(asteroid.getPosition().getX() > 100);
+		assertEquals(100, action1.seenX, 0);
+		assertEquals(100, action2.seenX, 0);
+		assertTrue(action1.seenSpace == action2.seenSpace);
+		assertTrue(action1.changeRejected);
+		assertTrue(action2.changeRejected);
+	}
+
+	/**
+	 * Build a crowded field of moving asteroids (including ones near the edges so
+	 * collisions wrap around) for comparing collision detection methods
+	 * 
+	 * @param seed
+	 * @return
+	 */
+	private Toroidal2DPhysics makeAsteroidField(long seed) {
+		Random random = new Random(seed);
+		Toroidal2DPhysics field = new Toroidal2DPhysics(height, width, 0.05);
+		for (int i = 0; i < 300; i++) {
+			Position location = new Position(random.nextDouble() * width, random.nextDouble() * height);
+			location.setTranslationalVelocity(new Vector2D(random.nextDouble() * 100 - 50, random.nextDouble() * 100 - 50));
+			int radius = 5 + random.nextInt(10);
+			field.addObject(new Asteroid(location, false, radius, random.nextBoolean(), .33, .33, .34));
+		}
+		return field;
+	}
+
+	/**
+	 * The spatial hash grid must give exactly the same results as checking all pairs
+	 */
+	@Test
+	public void testGridCollisionsMatchBruteForce() {
+		Toroidal2DPhysics gridSpace = makeAsteroidField(7);
+		Toroidal2DPhysics bruteSpace = makeAsteroidField(7);
+		bruteSpace.setBruteForceCollisionDetection(true);
+		
+		HashMap<UUID, SpaceSettlersPowerupEnum> powerups = new HashMap<UUID, SpaceSettlersPowerupEnum>();
+		for (int step = 0; step < 50; step++) {
+			gridSpace.advanceTime(new Random(step), step, powerups);
+			bruteSpace.advanceTime(new Random(step), step, powerups);
+		}
+		
+		Iterator<AbstractObject> bruteIterator = bruteSpace.getAllObjects().iterator();
+		for (AbstractObject gridObject : gridSpace.getAllObjects()) {
+			AbstractObject bruteObject = bruteIterator.next();
+			assertEquals(bruteObject.getPosition().getX(), gridObject.getPosition().getX(), 0);
+			assertEquals(bruteObject.getPosition().getY(), gridObject.getPosition().getY(), 0);
+			assertEquals(bruteObject.getPosition().getTranslationalVelocityX(), gridObject.getPosition().getTranslationalVelocityX(), 0);
+			assertEquals(bruteObject.getPosition().getTranslationalVelocityY(), gridObject.getPosition().getTranslationalVelocityY(), 0);
+		}
+	}
+
+	/**
+	 * Keeping the asteroids in the state store has to play out exactly the same as 
+	 * keeping them in their own positions (including collisions and removals)
+	 */
+	@Test
+	public void testStateStoreMatchesPositions() {
+		Toroidal2DPhysics storeSpace = makeAsteroidField(13);
+		Toroidal2DPhysics plainSpace = makeAsteroidField(13);
+		storeSpace.setPhysicsStateStore(true);
+
+		HashMap<UUID, SpaceSettlersPowerupEnum> powerups = new HashMap<UUID, SpaceSettlersPowerupEnum>();
+		for (int step = 0; step < 100; step++) {
+			storeSpace.advanceTime(new Random(step), step, powerups);
+			plainSpace.advanceTime(new Random(step), step, powerups);
+
+			// take one out partway through so its slot gets reused
+			if (step == 50) {
+				AbstractObject removed = storeSpace.getAsteroids().iterator().next();
+				Position view = removed.getPosition();
+				storeSpace.removeObject(removed);
+				assertTrue(removed.getPosition() != view);
+				assertEquals(view.getX(), removed.getPosition().getX(), 0);
+				plainSpace.removeObject(plainSpace.getAsteroids().iterator().next());
+
+				storeSpace.addObject(new Asteroid(new Position(10, 10), false, 5, true, .33, .33, .34));
+				plainSpace.addObject(new Asteroid(new Position(10, 10), false, 5, true, .33, .33, .34));
+			}
+		}
+
+		Iterator<AbstractObject> plainIterator = plainSpace.getAllObjects().iterator();
+		for (AbstractObject storeObject : storeSpace.getAllObjects()) {
+			Position storePosition = storeObject.getPosition();
+			Position plainPosition = plainIterator.next().getPosition();
+			assertEquals(plainPosition.getX(), storePosition.getX(), 0);
+			assertEquals(plainPosition.getY(), storePosition.getY(), 0);
+			assertEquals(plainPosition.getOrientation(), storePosition.getOrientation(), 0);
+			assertEquals(plainPosition.getTranslationalVelocityX(), storePosition.getTranslationalVelocityX(), 0);
+			assertEquals(plainPosition.getTranslationalVelocityY(), storePosition.getTranslationalVelocityY(), 0);
+			assertEquals(plainPosition.getAngularVelocity(), storePosition.getAngularVelocity(), 0);
+		}
+
+		// copies of the space never share the store
+		Toroidal2DPhysics clone = storeSpace.deepClone();
+		AbstractObject cloned = clone.getAsteroids().iterator().next();
+		assertTrue(cloned.getPosition().getClass() == Position.class);
+	}
+
+	/**
+	 * Moving the passive objects on a pool must give exactly the same results as moving 
+	 * them one at a time (the field is big enough that the work is actually split up)
+	 */
+	@Test
+	public void testParallelIntegrationMatchesSequential() {
+		Toroidal2DPhysics parallelSpace = makeAsteroidField(17);
+		Toroidal2DPhysics sequentialSpace = makeAsteroidField(17);
+		// not the field's seed (that would put these right on top of the field's asteroids 
+		// and colliding two objects with the same center sets their velocities to NaN)
+		Random random = new Random(71);
+		for (int i = 0; i < 1000; i++) {
+			Position location = new Position(random.nextDouble() * width, random.nextDouble() * height);
+			location.setTranslationalVelocity(new Vector2D(random.nextDouble() * 100 - 50, random.nextDouble() * 100 - 50));
+			location.setAngularVelocity(random.nextDouble() - 0.5);
+			parallelSpace.addObject(new Asteroid(location.deepCopy(), true, 2, true, .33, .33, .34));
+			sequentialSpace.addObject(new Asteroid(location.deepCopy(), true, 2, true, .33, .33, .34));
+		}
+		parallelSpace.setParallelIntegration(true, 4);
+
+		HashMap<UUID, SpaceSettlersPowerupEnum> powerups = new HashMap<UUID, SpaceSettlersPowerupEnum>();
+		for (int step = 0; step < 50; step++) {
+			parallelSpace.advanceTime(new Random(step), step, powerups);
+			sequentialSpace.advanceTime(new Random(step), step, powerups);
+		}
+		parallelSpace.shutdown();
+
+		Iterator<AbstractObject> sequentialIterator = sequentialSpace.getAllObjects().iterator();
+		for (AbstractObject parallelObject : parallelSpace.getAllObjects()) {
+			Position parallelPosition = parallelObject.getPosition();
+			Position sequentialPosition = sequentialIterator.next().getPosition();
+			assertFalse(Double.isNaN(sequentialPosition.getX()) || Double.isNaN(sequentialPosition.getY()));
+			assertEquals(sequentialPosition.getX(), parallelPosition.getX(), 0);
+			assertEquals(sequentialPosition.getY(), parallelPosition.getY(), 0);
+			assertEquals(sequentialPosition.getOrientation(), parallelPosition.getOrientation(), 0);
+			assertEquals(sequentialPosition.getTranslationalVelocityX(), parallelPosition.getTranslationalVelocityX(), 0);
+			assertEquals(sequentialPosition.getTranslationalVelocityY(), parallelPosition.getTranslationalVelocityY(), 0);
+		}
+	}
+
+	/**
+	 * Build a crowded field of asteroids, ships and the missiles they fired (the same for
+	 * the same seed) for comparing ways of resolving collisions
+	 * 
+	 * @param seed
+	 * @return
+	 */
+	private Toroidal2DPhysics makeCrowdedField(long seed) {
+		int width = 4000;
+		int height = 3000;
+		Toroidal2DPhysics field = new Toroidal2DPhysics(height, width, 0.05);
+		Random random = new Random(seed);
+		for (int i = 0; i < 3000; i++) {
+			Position location = new Position(random.nextDouble() * width, random.nextDouble() * height);
+			location.setTranslationalVelocity(new Vector2D(random.nextDouble() * 100 - 50, random.nextDouble() * 100 - 50));
+			field.addObject(new Asteroid(location, false, 5 + random.nextInt(10), random.nextBoolean(), .33, .33, .34));
+		}
+		for (int i = 0; i < 4; i++) {
+			Position location = new Position(random.nextDouble() * width, random.nextDouble() * height);
+			Ship ship = new Ship("team" + i, Color.BLUE, location);
+			field.addObject(ship);
+			for (int j = 0; j < 50; j++) {
+				Position missileLocation = new Position(random.nextDouble() * width, random.nextDouble() * height);
+				missileLocation.setTranslationalVelocity(new Vector2D(random.nextDouble() * 60 - 30, random.nextDouble() * 60 - 30));
+				Missile missile = new Missile(missileLocation, ship);
+				missile.setPosition(missileLocation);
+				ship.incrementWeaponCount();
+				field.addObject(missile);
+			}
+		}
+		return field;
+	}
+
+	/**
+	 * Resolving the collisions in islands in parallel has to play out the same as
+	 * resolving them one pair at a time
+	 */
+	@Test
+	public void testParallelCollisionsMatchSerial() {
+		Toroidal2DPhysics parallelSpace = makeCrowdedField(29);
+		Toroidal2DPhysics serialSpace = makeCrowdedField(29);
+		parallelSpace.setParallelCollisions(true, 4);
+
+		for (int step = 0; step < 20; step++) {
+			parallelSpace.detectCollisions();
+			serialSpace.detectCollisions();
+			assertTrue(parallelSpace.collisionIslands.numParallelIslands > 1);
+			for (AbstractObject object : parallelSpace.getAllObjects()) {
+				object.setPosition(parallelSpace.applyMovement(object.getPosition(), new Movement(), 0.05));
+			}
+			for (AbstractObject object : serialSpace.getAllObjects()) {
+				object.setPosition(serialSpace.applyMovement(object.getPosition(), new Movement(), 0.05));
+			}
+		}
+		parallelSpace.shutdown();
+
+		Iterator<AbstractObject> serialIterator = serialSpace.getAllObjects().iterator();
+		for (AbstractObject parallelObject : parallelSpace.getAllObjects()) {
+			AbstractObject serialObject = serialIterator.next();
+			assertEquals(serialObject.isAlive(), parallelObject.isAlive());
+			assertEquals(serialObject.getPosition().getX(), parallelObject.getPosition().getX(), 0);
+			assertEquals(serialObject.getPosition().getY(), parallelObject.getPosition().getY(), 0);
+			assertEquals(serialObject.getPosition().getTranslationalVelocityX(), parallelObject.getPosition().getTranslationalVelocityX(), 0);
+			assertEquals(serialObject.getPosition().getTranslationalVelocityY(), parallelObject.getPosition().getTranslationalVelocityY(), 0);
+		}
+
+		// the missiles died in the same order
+		List<AbstractObject> serialDeaths = serialSpace.deathQueues.get(AbstractObject.TYPE_MISSILE);
+		List<AbstractObject> parallelDeaths = parallelSpace.deathQueues.get(AbstractObject.TYPE_MISSILE);
+		assertTrue(serialDeaths.size() > 0);
+		assertEquals(serialDeaths.size(), parallelDeaths.size());
+		for (int i = 0; i < serialDeaths.size(); i++) {
+			assertEquals(serialDeaths.get(i).getSlotId(), parallelDeaths.get(i).getSlotId());
+		}
+	}
+
+	/**
+	 * Predictions land where moving one step at a time does, are shared until something
+	 * moves and closest approach matches a head-on pair worked out by hand
+	 */
+	@Test
+	public void testTrajectoryPredictions() {
+		Toroidal2DPhysics field = makeAsteroidField(31);
+		PredictedPositions predicted = field.predictPositions(10);
+		assertTrue(predicted == field.predictPositions(10));
+		assertFalse(predicted == field.createReadOnlySnapshot().predictPositions(10));
+
+		for (AbstractObject object : field.getAllObjects()) {
+			if (!object.isMoveable()) {
+				continue;
+			}
+			Position position = object.getPosition();
+			for (int step = 0; step < 10; step++) {
+				position = field.applyMovement(position, new Movement(), 0.05);
+			}
+			assertEquals(position.getX(), predicted.getX(object), 1e-6);
+			assertEquals(position.getY(), predicted.getY(object), 1e-6);
+		}
+
+		// non-moveable asteroids stay put
+		for (AbstractObject object : field.getAllObjects()) {
+			if (!object.isMoveable()) {
+				assertEquals(object.getPosition().getX(), predicted.getX(object), 0);
+				assertEquals(object.getPosition().getY(), predicted.getY(object), 0);
+			}
+		}
+
+		field.updateSpatialIndex();
+		assertFalse(predicted == field.predictPositions(10));
+
+		// two asteroids 100 apart closing at 20 per second (with a 10 pixel offset) across the edge
+		Toroidal2DPhysics pair = new Toroidal2DPhysics(height, width, 0.05);
+		Position location1 = new Position(width - 50, 200);
+		location1.setTranslationalVelocity(new Vector2D(10, 0));
+		Position location2 = new Position(50, 210);
+		location2.setTranslationalVelocity(new Vector2D(-10, 0));
+		Asteroid asteroid1 = new Asteroid(location1, false, 10, true, .33, .33, .34);
+		Asteroid asteroid2 = new Asteroid(location2, false, 10, true, .33, .33, .34);
+		pair.addObject(asteroid1);
+		pair.addObject(asteroid2);
+		assertEquals(5, pair.timeToClosestApproach(asteroid1, asteroid2), 1e-9);
+		assertEquals(10, pair.distanceAtClosestApproach(asteroid1, asteroid2), 1e-9);
+
+		// moving apart
+		location2.setTranslationalVelocity(new Vector2D(10, 0));
+		pair.updateSpatialIndex();
+		assertEquals(0, pair.timeToClosestApproach(asteroid1, asteroid2), 0);
+	}
+
+	/**
+	 * Slots are dense, reused after removal and kept by copies of the space
+	 */
+	@Test
+	public void testSlotIds() {
+		Toroidal2DPhysics field = makeAsteroidField(19);
+		assertEquals(300, field.getNumSlots());
+		for (AbstractObject object : field.getAllObjects()) {
+			assertTrue(field.getObjectBySlot(object.getSlotId()) == object);
+		}
+
+		Asteroid removed = field.getAsteroids().iterator().next();
+		int freedSlot = removed.getSlotId();
+		field.removeObject(removed);
+		assertEquals(-1, removed.getSlotId());
+		assertNull(field.getObjectBySlot(freedSlot));
+
+		Asteroid added = new Asteroid(new Position(10, 10), false, 5, true, .33, .33, .34);
+		field.addObject(added);
+		assertEquals(freedSlot, added.getSlotId());
+		assertEquals(300, field.getNumSlots());
+
+		Toroidal2DPhysics clone = field.deepClone();
+		for (AbstractObject object : field.getAllObjects()) {
+			assertEquals(object.getId(), clone.getObjectBySlot(object.getSlotId()).getId());
+		}
+		assertEquals(clone.getNumSlots(), field.getNumSlots());
+	}
+
+	/**
+	 * Objects that die are cleaned up or respawned from the death queues
+	 */
+	@Test
+	public void testDeadObjectsCleanedUp() {
+		Toroidal2DPhysics field = new Toroidal2DPhysics(height, width, 0.05);
+		ArrayList<Asteroid> asteroids = new ArrayList<Asteroid>();
+		for (int i = 0; i < 10; i++) {
+			Asteroid asteroid = new Asteroid(new Position(50 * i + 20, 50), i % 2 == 0, 5, true, .33, .33, .34);
+			asteroid.setAlive(true);
+			asteroids.add(asteroid);
+			field.addObject(asteroid);
+		}
+		Beacon beacon = new Beacon(new Position(300, 300));
+		beacon.setAlive(true);
+		field.addObject(beacon);
+
+		// an object that dies twice or comes back to life is only handled once
+		asteroids.get(0).setAlive(false);
+		asteroids.get(0).setAlive(false);
+		asteroids.get(1).setAlive(false);
+		asteroids.get(2).setAlive(false);
+		asteroids.get(3).setAlive(false);
+		asteroids.get(3).setAlive(true);
+		beacon.setAlive(false);
+
+		assertEquals(2, field.cleanupAllAndCountMineableDeadAsteroids());
+		assertEquals(7, field.getAsteroids().size());
+		assertTrue(field.getAsteroids().contains(asteroids.get(3)));
+		assertEquals(0, field.cleanupAllAndCountMineableDeadAsteroids());
+
+		field.respawnDeadObjects(new Random(1));
+		assertTrue(beacon.isAlive());
+		assertEquals(8, field.getAllObjects().size());
+	}
+
+	/**
+	 * A fast asteroid that went all the way through another one during the step only 
+	 * collides with continuous collision detection on
+	 */
+	@Test
+	public void testContinuousCollisionDetection() {
+		for (int mode = 0; mode < 2; mode++) {
+			Toroidal2DPhysics field = new Toroidal2DPhysics(height, width, 0.1);
+			field.setContinuousCollisionDetection(mode == 1);
+
+			// the fast one moved from 90 to 130 and passed through the slow one at 110
+			Position fastPosition = new Position(130, 50);
+			fastPosition.setTranslationalVelocity(new Vector2D(400, 0));
+			Asteroid fast = new Asteroid(fastPosition, false, 5, true, .33, .33, .34);
+			fast.setAlive(true);
+			Asteroid slow = new Asteroid(new Position(110, 50), false, 5, true, .33, .33, .34);
+			slow.setAlive(true);
+			field.addObject(fast);
+			field.addObject(slow);
+
+			field.detectCollisions();
+
+			if (mode == 0) {
+				assertEquals(400, fast.getPosition().getTranslationalVelocityX(), 0);
+				assertEquals(0, slow.getPosition().getTranslationalVelocityX(), 0);
+			} else {
+				// they touched with the fast one at 100 and swapped velocities
+				assertEquals(0, fast.getPosition().getTranslationalVelocityX(), 0.01);
+				assertEquals(400, slow.getPosition().getTranslationalVelocityX(), 0.01);
+				assertEquals(100, fast.getPosition().getX(), 0.01);
+				assertEquals(140, slow.getPosition().getX(), 0.01);
+			}
+		}
+	}
+
+	/**
+	 * A fast asteroid is sub-stepped against the one it passed through and a far away
+	 * one is left alone
+	 */
+	@Test
+	public void testSubstepping() {
+		Toroidal2DPhysics field = new Toroidal2DPhysics(height, width, 0.1);
+		field.setMaxSubstepDisplacement(10);
+
+		// the fast one moved from 90 to 130 and passed through the slow one at 112
+		Position fastPosition = new Position(130, 50);
+		fastPosition.setTranslationalVelocity(new Vector2D(400, 0));
+		Asteroid fast = new Asteroid(fastPosition, false, 5, true, .33, .33, .34);
+		fast.setAlive(true);
+		Asteroid slow = new Asteroid(new Position(112, 50), false, 5, true, .33, .33, .34);
+		slow.setAlive(true);
+		Position farPosition = new Position(500, 400);
+		farPosition.setTranslationalVelocity(new Vector2D(0, 400));
+		Asteroid far = new Asteroid(farPosition, false, 5, true, .33, .33, .34);
+		far.setAlive(true);
+		field.addObject(fast);
+		field.addObject(slow);
+		field.addObject(far);
+
+		assertEquals(1, field.substepScheduler.substep(field));
+		assertEquals(0, fast.getPosition().getTranslationalVelocityX(), 0.01);
+		assertEquals(400, slow.getPosition().getTranslationalVelocityX(), 0.01);
+		assertEquals(400, far.getPosition().getTranslationalVelocityY(), 0);
+		assertEquals(400, far.getPosition().getY(), 0);
+	}
+
+	/**
+	 * Objects that haven't moved, have no velocity and aren't touching anything sleep 
+	 * until something changes them
+	 */
+	@Test
+	public void testStaticAndSleepingObjects() {
+		Toroidal2DPhysics field = new Toroidal2DPhysics(height, width, 0.1);
+
+		// a beacon next to a non-moveable asteroid is left alone
+		Beacon beacon = new Beacon(new Position(100, 100));
+		beacon.setAlive(true);
+		Asteroid rock = new Asteroid(new Position(130, 100), false, 10, false, .33, .33, .34);
+		rock.setAlive(true);
+		Asteroid resting = new Asteroid(new Position(400, 300), false, 5, true, .33, .33, .34);
+		resting.setAlive(true);
+		Position movingPosition = new Position(600, 300);
+		movingPosition.setTranslationalVelocity(new Vector2D(10, 0));
+		Asteroid moving = new Asteroid(movingPosition, false, 5, true, .33, .33, .34);
+		moving.setAlive(true);
+		field.addObject(beacon);
+		field.addObject(rock);
+		field.addObject(resting);
+		field.addObject(moving);
+
+		assertFalse(field.isSleeping(resting));
+		field.detectCollisions();
+		assertTrue(beacon.isAlive());
+		assertTrue(field.isSleeping(beacon));
+		assertTrue(field.isSleeping(rock));
+		assertTrue(field.isSleeping(resting));
+		assertFalse(field.isSleeping(moving));
+
+		// giving it a velocity wakes it up
+		resting.getPosition().setTranslationalVelocity(new Vector2D(1, 0));
+		assertFalse(field.isSleeping(resting));
+
+		// something moving onto the beacon still picks it up
+		moving.setPosition(new Position(100, 95));
+		moving.getPosition().setTranslationalVelocity(new Vector2D(10, 0));
+		field.detectCollisions();
+		assertFalse(beacon.isAlive());
+	}
+
+	/**
+	 * A ship sitting still on its own base is touching it so they never sleep and the 
+	 * base keeps taking its resources every step
+	 */
+	@Test
+	public void testShipRestingOnBaseKeepsColliding() {
+		DoNothingTeamClient client = new DoNothingTeamClient();
+		client.setTeamName("team");
+		client.setTeamColor(Color.BLUE);
+		Team team = new Team(client, "team", 1);
+		team.shutdownExecutor();
+
+		for (int mode = 0; mode < 2; mode++) {
+			Toroidal2DPhysics field = new Toroidal2DPhysics(height, width, 0.1);
+			field.setBruteForceCollisionDetection(mode == 1);
+			Base base = new Base(new Position(200, 200), "team", team, true);
+			Ship ship = new Ship("team", Color.BLUE, new Position(210, 200));
+			field.addObject(base);
+			field.addObject(ship);
+			int startResources = base.getResources().getTotal();
+
+			for (int step = 1; step <= 5; step++) {
+				ship.addResources(new ResourcePile(1, 1, 1));
+				field.detectCollisions();
+				assertEquals(0, ship.getResources().getTotal());
+				assertEquals(startResources + 3 * step, base.getResources().getTotal());
+				assertFalse(field.isSleeping(ship));
+				assertFalse(field.isSleeping(base));
+			}
+		}
+	}
+
+	/**
+	 * The original Vector2D version of isPathClearOfObstructions
+	 */
+	private boolean isPathClearWithVectors(Toroidal2DPhysics field, Position startPosition, Position goalPosition,
+			Set<AbstractObject> obstructions, int freeRadius) {
+		Vector2D pathToGoal = field.findShortestDistanceVector(startPosition, goalPosition);
+		double distanceToGoal = pathToGoal.getMagnitude();
+		for (AbstractObject obstruction : obstructions) {
+			Vector2D pathToObstruction = field.findShortestDistanceVector(startPosition, obstruction.getPosition());
+			if (pathToObstruction.getMagnitude() > distanceToGoal) {
+				continue;
+			}
+			double angleBetween = Math.abs(pathToObstruction.angleBetween(pathToGoal));
+			if (angleBetween > Math.PI / 2) {
+				continue;
+			}
+			if (pathToObstruction.getMagnitude() * Math.sin(angleBetween) < obstruction.getRadius() + freeRadius * 1.5) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Walking the grid cells along each path has to give the same answer as checking every
+	 * obstruction (including paths that wrap around the edges)
+	 */
+	@Test
+	public void testObstructionGridMatchesAllObstructions() {
+		Toroidal2DPhysics field = makeAsteroidField(5);
+		Set<AbstractObject> obstructions = new LinkedHashSet<AbstractObject>(field.getAsteroids());
+		int freeRadius = 10;
+		ObstructionGrid grid = new ObstructionGrid(field, obstructions, freeRadius * 1.5);
+
+		Random random = new Random(9);
+		int numPaths = 2000;
+		Position[] starts = new Position[numPaths];
+		Position[] goals = new Position[numPaths];
+		int numClear = 0;
+		for (int i = 0; i < numPaths; i++) {
+			starts[i] = new Position(random.nextDouble() * width, random.nextDouble() * height);
+			// mostly short paths (like roadmap edges) with some as long as possible
+			double length = (i % 10 == 0) ? width : 150;
+			goals[i] = new Position(starts[i].getX() + (random.nextDouble() - 0.5) * length, 
+					starts[i].getY() + (random.nextDouble() - 0.5) * length);
+			field.toroidalWrap(goals[i]);
+
+			boolean expected = isPathClearWithVectors(field, starts[i], goals[i], obstructions, freeRadius);
+			assertEquals(expected, field.isPathClearOfObstructions(starts[i], goals[i], obstructions, freeRadius));
+			assertEquals(expected, grid.isPathClear(starts[i], goals[i]));
+			if (expected) {
+				numClear++;
+			}
+		}
+
+		// make sure the test has both kinds of paths
+		assertTrue(numClear > 0 && numClear < numPaths);
+
+		boolean[] clear = field.arePathsClearOfObstructions(starts, goals, obstructions, freeRadius);
+		for (int i = 0; i < numPaths; i++) {
+			assertEquals(grid.isPathClear(starts[i], goals[i]), clear[i]);
+		}
+	}
+
+	/**
+	 * The indexed queries should find the same objects as looking at every object 
+	 * (including after objects have moved and been removed)
+	 */
+	@Test
+	public void testSpatialQueriesMatchLinearScan() {
+		Toroidal2DPhysics field = makeAsteroidField(11);
+		HashMap<UUID, SpaceSettlersPowerupEnum> powerups = new HashMap<UUID, SpaceSettlersPowerupEnum>();
+		for (int step = 0; step < 20; step++) {
+			field.advanceTime(new Random(step), step, powerups);
+		}
+		Asteroid removed = field.getAsteroids().iterator().next();
+		field.removeObject(removed);
+
+		Random random = new Random(3);
+		for (int i = 0; i < 200; i++) {
+			Position location = new Position(random.nextDouble() * width, random.nextDouble() * height);
+
+			// distances to all the moveable asteroids the slow way
+			List<Double> distances = new ArrayList<Double>();
+			for (Asteroid asteroid : field.getAsteroids()) {
+				if (asteroid.isMoveable()) {
+					distances.add(field.findShortestDistance(location, asteroid.getPosition()));
+				}
+			}
+			Collections.sort(distances);
+
+			Asteroid nearest = field.nearest(location, Asteroid.class, a -> a.isMoveable());
+			assertTrue(nearest.isMoveable());
+			assertEquals(distances.get(0), field.findShortestDistance(location, nearest.getPosition()), 0);
+
+			List<Asteroid> closest = field.kNearest(location, 5, Asteroid.class, a -> a.isMoveable());
+			assertEquals(5, closest.size());
+			for (int k = 0; k < 5; k++) {
+				assertEquals(distances.get(k), field.findShortestDistance(location, closest.get(k).getPosition()), 0);
+			}
+
+			double radius = random.nextDouble() * 150;
+			List<Asteroid> nearby = field.within(location, radius, Asteroid.class, a -> a.isMoveable());
+			int expected = 0;
+			while (expected < distances.size() && distances.get(expected) <= radius) {
+				expected++;
+			}
+			assertEquals(expected, nearby.size());
+			for (int k = 0; k < nearby.size(); k++) {
+				assertTrue(nearby.get(k) != removed);
+				assertEquals(distances.get(k), field.findShortestDistance(location, nearby.get(k).getPosition()), 0);
+			}
+		}
+
+		assertEquals(field.getAsteroids().size(), field.kNearest(position, 1000, Asteroid.class).size());
+		assertEquals(null, field.nearest(position, Ship.class));
+	}
+
 
 }